@@ -0,0 +1,22 @@
+package com.microsoft.appcenter.sasquatch.util;
+
+import android.util.Log;
+
+import static com.microsoft.appcenter.sasquatch.activities.MainActivity.LOG_TAG;
+
+/* TODO after SDK release, delete this and move project version to main Java folder. */
+public final class StandInIngestion {
+
+    public static final boolean IS_SUPPORTED = false;
+
+    private StandInIngestion() {
+    }
+
+    public static void start() {
+        Log.w(LOG_TAG, "Stand-in ingestion requires a custom HTTP client, not available in this flavor.");
+    }
+
+    public static StandInIngestionServer getServer() {
+        return null;
+    }
+}
@@ -0,0 +1,143 @@
+package com.microsoft.appcenter.sasquatch.activities;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.support.v7.app.AppCompatActivity;
+import android.text.TextUtils;
+import android.view.View;
+import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.EditText;
+import android.widget.TextView;
+
+import com.microsoft.appcenter.analytics.AnalyticsTransmissionTarget;
+import com.microsoft.appcenter.sasquatch.R;
+import com.microsoft.appcenter.sasquatch.util.EventActivityUtil;
+import com.microsoft.appcenter.sasquatch.util.LoadGenerator;
+import com.microsoft.appcenter.sasquatch.util.StandInIngestion;
+import com.microsoft.appcenter.sasquatch.util.StandInIngestionServer;
+
+import java.util.List;
+
+import static com.microsoft.appcenter.sasquatch.activities.MainActivity.STAND_IN_INGESTION_KEY;
+import static com.microsoft.appcenter.sasquatch.activities.MainActivity.sSharedPreferences;
+
+public class LoadGeneratorActivity extends AppCompatActivity {
+
+    private static final long STATUS_REFRESH_INTERVAL = 1000;
+
+    /**
+     * Keep generating while leaving the screen.
+     */
+    private static LoadGenerator sLoadGenerator;
+
+    private final Handler mHandler = new Handler();
+
+    private final Runnable mRefreshStatus = new Runnable() {
+
+        @Override
+        public void run() {
+            updateStatus();
+            mHandler.postDelayed(this, STATUS_REFRESH_INTERVAL);
+        }
+    };
+
+    private EditText mEventsPerSecond;
+
+    private EditText mExceptionsPerSecond;
+
+    private EditText mPropertyCount;
+
+    private EditText mPropertyValueLength;
+
+    private EditText mTargetCount;
+
+    private EditText mDuration;
+
+    private Button mStartStopButton;
+
+    private TextView mStatus;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_load_generator);
+        mEventsPerSecond = findViewById(R.id.events_per_second);
+        mExceptionsPerSecond = findViewById(R.id.exceptions_per_second);
+        mPropertyCount = findViewById(R.id.property_count);
+        mPropertyValueLength = findViewById(R.id.property_value_length);
+        mTargetCount = findViewById(R.id.target_count);
+        mDuration = findViewById(R.id.duration);
+        mStartStopButton = findViewById(R.id.start_stop);
+        mStatus = findViewById(R.id.load_status);
+        CheckBox standInIngestion = findViewById(R.id.stand_in_ingestion);
+        if (StandInIngestion.IS_SUPPORTED) {
+            standInIngestion.setChecked(sSharedPreferences.getBoolean(STAND_IN_INGESTION_KEY, false));
+        } else {
+            standInIngestion.setVisibility(View.GONE);
+        }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mHandler.post(mRefreshStatus);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mHandler.removeCallbacks(mRefreshStatus);
+    }
+
+    public void toggleStandInIngestion(View view) {
+        sSharedPreferences.edit().putBoolean(STAND_IN_INGESTION_KEY, ((CheckBox) view).isChecked()).apply();
+    }
+
+    public void toggleLoad(View view) {
+        if (sLoadGenerator != null && sLoadGenerator.isRunning()) {
+            sLoadGenerator.stop();
+        } else {
+
+            /* The first element is the default transmission, then the target hierarchy. */
+            List<AnalyticsTransmissionTarget> targets = EventActivityUtil.getAnalyticTransmissionTargetList(this);
+            int targetCount = Math.min(getInt(mTargetCount), targets.size() - 1);
+            sLoadGenerator = new LoadGenerator(getDouble(mEventsPerSecond), getDouble(mExceptionsPerSecond),
+                    getInt(mPropertyCount), getInt(mPropertyValueLength), targets.subList(1, 1 + targetCount), getInt(mDuration) * 1000L);
+            StandInIngestionServer server = StandInIngestion.getServer();
+            if (server != null) {
+                server.reset();
+            }
+            sLoadGenerator.start();
+        }
+        updateStatus();
+    }
+
+    private void updateStatus() {
+        boolean running = sLoadGenerator != null && sLoadGenerator.isRunning();
+        mStartStopButton.setText(running ? R.string.load_stop : R.string.load_start);
+        if (sLoadGenerator == null) {
+            return;
+        }
+        String status = getString(R.string.load_status_format, sLoadGenerator.getEventCount(), sLoadGenerator.getExceptionCount(), sLoadGenerator.getLogCount());
+        StandInIngestionServer server = StandInIngestion.getServer();
+        if (server != null) {
+            StandInIngestionServer.Statistics statistics = server.getStatistics();
+            long missingLogs = Math.max(0, sLoadGenerator.getLogCount() - statistics.getLogCount());
+            status += "\n" + getString(R.string.load_ingestion_format, statistics, missingLogs);
+        } else {
+            status += "\n" + getString(R.string.load_ingestion_unavailable);
+        }
+        mStatus.setText(status);
+    }
+
+    private static int getInt(EditText editText) {
+        String text = editText.getText().toString();
+        return TextUtils.isEmpty(text) ? 0 : Integer.parseInt(text);
+    }
+
+    private static double getDouble(EditText editText) {
+        String text = editText.getText().toString();
+        return TextUtils.isEmpty(text) ? 0 : Double.parseDouble(text);
+    }
+}
@@ -34,6 +34,7 @@ import com.microsoft.appcenter.sasquatch.listeners.SasquatchAnalyticsListener;
 import com.microsoft.appcenter.sasquatch.listeners.SasquatchCrashesListener;
 import com.microsoft.appcenter.sasquatch.listeners.SasquatchDistributeListener;
 import com.microsoft.appcenter.sasquatch.listeners.SasquatchPushListener;
+import com.microsoft.appcenter.sasquatch.util.StandInIngestion;
 import com.microsoft.appcenter.utils.async.AppCenterConsumer;
 
 import java.util.UUID;
@@ -52,6 +53,8 @@ public class MainActivity extends AppCompatActivity {
 
     static final String FIREBASE_ENABLED_KEY = "firebaseEnabled";
 
+    static final String STAND_IN_INGESTION_KEY = "standInIngestion";
+
     private static final String SENDER_ID = "177539951155";
 
     private static final String TEXT_ATTACHMENT_KEY = "textAttachment";
@@ -111,6 +114,11 @@ public class MainActivity extends AppCompatActivity {
             AppCenter.setLogUrl(logUrl);
         }
 
+        /* Send all logs to the stand-in ingestion server for load tests if enabled in load generator. */
+        if (sSharedPreferences.getBoolean(STAND_IN_INGESTION_KEY, false)) {
+            StandInIngestion.start();
+        }
+
         /* Set listeners. */
         AnalyticsPrivateHelper.setListener(getAnalyticsListener());
         Crashes.setListener(getCrashesListener());
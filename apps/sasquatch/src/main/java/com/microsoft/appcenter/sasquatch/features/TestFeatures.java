@@ -12,6 +12,7 @@ import com.microsoft.appcenter.sasquatch.activities.CustomPropertiesActivity;
 import com.microsoft.appcenter.sasquatch.activities.DeviceInfoActivity;
 import com.microsoft.appcenter.sasquatch.activities.DummyActivity;
 import com.microsoft.appcenter.sasquatch.activities.EventActivity;
+import com.microsoft.appcenter.sasquatch.activities.LoadGeneratorActivity;
 import com.microsoft.appcenter.sasquatch.activities.MSALoginActivity;
 import com.microsoft.appcenter.sasquatch.activities.ManagedErrorActivity;
 import com.microsoft.appcenter.sasquatch.activities.PageActivity;
@@ -49,6 +50,7 @@ public final class TestFeatures {
         sTestFeatureModels.add(new TestFeatureTitle(R.string.miscellaneous_title));
         sTestFeatureModels.add(new TestFeature(R.string.title_custom_properties, R.string.description_custom_properties, CustomPropertiesActivity.class));
         sTestFeatureModels.add(new TestFeature(R.string.title_device_info, R.string.description_device_info, DeviceInfoActivity.class));
+        sTestFeatureModels.add(new TestFeature(R.string.title_load_generator, R.string.description_load_generator, LoadGeneratorActivity.class));
     }
 
     public static List<TestFeatureModel> getAvailableControls() {
@@ -0,0 +1,164 @@
+package com.microsoft.appcenter.sasquatch.util;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import com.microsoft.appcenter.analytics.Analytics;
+import com.microsoft.appcenter.analytics.AnalyticsTransmissionTarget;
+import com.microsoft.appcenter.crashes.CrashesPrivateHelper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generate sustained load: events tracked by Analytics and by transmission targets,
+ * and handled exceptions tracked by Crashes, at a constant rate.
+ */
+public class LoadGenerator implements Runnable {
+
+    /**
+     * Delay between 2 generation rounds.
+     */
+    private static final long TICK_INTERVAL = 100;
+
+    private final double mEventsPerSecond;
+
+    private final double mExceptionsPerSecond;
+
+    private final Map<String, String> mProperties;
+
+    /**
+     * Transmission targets receiving each event in addition to the default transmission.
+     */
+    private final List<AnalyticsTransmissionTarget> mTargets;
+
+    private final long mDurationMillis;
+
+    private HandlerThread mThread;
+
+    private Handler mHandler;
+
+    private long mStartTime;
+
+    private volatile long mEventCount;
+
+    private volatile long mExceptionCount;
+
+    private volatile long mLogCount;
+
+    private volatile boolean mRunning;
+
+    /**
+     * Init.
+     *
+     * @param eventsPerSecond     events to generate per second.
+     * @param exceptionsPerSecond handled exceptions to generate per second.
+     * @param propertyCount       number of properties of each event and exception.
+     * @param propertyValueLength length of each property value.
+     * @param targets             transmission targets each event is also sent to.
+     * @param durationMillis      duration of the generation, 0 to run until stopped.
+     */
+    public LoadGenerator(double eventsPerSecond, double exceptionsPerSecond, int propertyCount, int propertyValueLength, List<AnalyticsTransmissionTarget> targets, long durationMillis) {
+        mEventsPerSecond = eventsPerSecond;
+        mExceptionsPerSecond = exceptionsPerSecond;
+        char[] value = new char[propertyValueLength];
+        Arrays.fill(value, 'x');
+        mProperties = new HashMap<>();
+        for (int i = 0; i < propertyCount; i++) {
+            mProperties.put("property" + i, new String(value));
+        }
+        mTargets = new ArrayList<>(targets);
+        mDurationMillis = durationMillis;
+    }
+
+    /**
+     * Start generating logs on a background thread.
+     */
+    public synchronized void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        mThread = new HandlerThread("LoadGenerator");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mStartTime = SystemClock.elapsedRealtime();
+        mHandler.post(this);
+    }
+
+    /**
+     * Stop generating logs.
+     */
+    public synchronized void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        mHandler.removeCallbacks(this);
+        mThread.quit();
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * Get the number of events generated, each one is tracked once per target.
+     *
+     * @return number of events.
+     */
+    public long getEventCount() {
+        return mEventCount;
+    }
+
+    public long getExceptionCount() {
+        return mExceptionCount;
+    }
+
+    /**
+     * Get the number of logs sent to the SDK, which should eventually reach ingestion.
+     *
+     * @return number of logs.
+     */
+    public long getLogCount() {
+        return mLogCount;
+    }
+
+    @Override
+    public void run() {
+        if (!mRunning) {
+            return;
+        }
+        long elapsed = SystemClock.elapsedRealtime() - mStartTime;
+        if (mDurationMillis > 0 && elapsed >= mDurationMillis) {
+            elapsed = mDurationMillis;
+        }
+
+        /* Catch up with the expected counts, so that slow SDK calls don't lower the rate. */
+        long expectedEvents = (long) (mEventsPerSecond * elapsed / 1000);
+        while (mEventCount < expectedEvents && mRunning) {
+            String name = "load" + mEventCount;
+            Analytics.trackEvent(name, mProperties);
+            for (AnalyticsTransmissionTarget target : mTargets) {
+                target.trackEvent(name, mProperties);
+            }
+            mLogCount += 1 + mTargets.size();
+            mEventCount++;
+        }
+        long expectedExceptions = (long) (mExceptionsPerSecond * elapsed / 1000);
+        while (mExceptionCount < expectedExceptions && mRunning) {
+            CrashesPrivateHelper.trackException(new IllegalStateException("Load test exception " + mExceptionCount), mProperties);
+            mLogCount++;
+            mExceptionCount++;
+        }
+        if (mDurationMillis > 0 && elapsed >= mDurationMillis) {
+            stop();
+        } else {
+            mHandler.postDelayed(this, TICK_INTERVAL);
+        }
+    }
+}
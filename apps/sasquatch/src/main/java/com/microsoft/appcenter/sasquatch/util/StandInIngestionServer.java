@@ -0,0 +1,492 @@
+package com.microsoft.appcenter.sasquatch.util;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static com.microsoft.appcenter.sasquatch.activities.MainActivity.LOG_TAG;
+
+/**
+ * Minimal HTTP server standing in for App Center and One Collector ingestion on the device.
+ * <p>
+ * It acknowledges every request (unless failures are simulated) and records throughput
+ * and the latency of logs, computed from the log timestamps, so that load tests do not depend
+ * on the network or on the real backends.
+ */
+public class StandInIngestionServer implements Closeable {
+
+    /**
+     * Maximum number of latency samples kept to compute percentiles.
+     */
+    private static final int MAX_LATENCY_SAMPLES = 10000;
+
+    /**
+     * Matches the timestamp of App Center logs and the time of Common Schema logs, one per log.
+     */
+    private static final Pattern LOG_TIME_PATTERN = Pattern.compile("\"(?:timestamp|time)\"\\s*:\\s*\"([^\"]+)\"");
+
+    /**
+     * Response body, ingestion responses are not parsed by the SDK.
+     */
+    private static final byte[] RESPONSE_BODY = "{}".getBytes();
+
+    /**
+     * Content encoding of payloads compressed with a preset dictionary.
+     */
+    private static final String DICTIONARY_DEFLATE_ENCODING = "x-appcenter-deflate-dict";
+
+    /**
+     * Header identifying the preset dictionary.
+     */
+    private static final String DICTIONARY_ID_HEADER = "X-AppCenter-Dictionary-Id";
+
+    private final ServerSocket mServerSocket;
+
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+
+    private final Random mRandom = new Random();
+
+    /**
+     * ISO 8601 date parser, not thread safe so always used within lock.
+     */
+    private final DateFormat mDateFormat;
+
+    private final long[] mLatencySamples = new long[MAX_LATENCY_SAMPLES];
+
+    private int mLatencySampleCount;
+
+    private long mStartTime;
+
+    private long mRequestCount;
+
+    private long mFailedRequestCount;
+
+    private long mLogCount;
+
+    private long mByteCount;
+
+    private double mFailureRate;
+
+    private byte[] mDeflateDictionary;
+
+    private String mDeflateDictionaryId;
+
+    /**
+     * Start listening on the loopback interface.
+     *
+     * @param port port to listen to, 0 to pick any free port.
+     * @throws IOException if the socket cannot be opened.
+     */
+    public StandInIngestionServer(int port) throws IOException {
+        mServerSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+        mDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
+        mDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        reset();
+        Thread acceptThread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "StandInIngestionServer");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * Get the base URL of the server.
+     *
+     * @return base URL without trailing slash.
+     */
+    public String getUrl() {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort();
+    }
+
+    /**
+     * Simulate ingestion failures: requests fail with HTTP 503 at the given rate.
+     * Logs of failed requests are not counted as received.
+     *
+     * @param failureRate rate between 0 and 1.
+     */
+    public synchronized void setFailureRate(double failureRate) {
+        mFailureRate = failureRate;
+    }
+
+    /**
+     * Set the preset dictionary used to decode "x-appcenter-deflate-dict" payloads.
+     *
+     * @param dictionary dictionary, or null if payloads don't use one.
+     */
+    public synchronized void setDeflateDictionary(byte[] dictionary) {
+        mDeflateDictionary = dictionary;
+        if (dictionary != null) {
+            Adler32 checksum = new Adler32();
+            checksum.update(dictionary);
+            mDeflateDictionaryId = String.format(Locale.US, "%08x", checksum.getValue());
+        } else {
+            mDeflateDictionaryId = null;
+        }
+    }
+
+    /**
+     * Reset statistics.
+     */
+    public synchronized void reset() {
+        mStartTime = System.currentTimeMillis();
+        mRequestCount = 0;
+        mFailedRequestCount = 0;
+        mLogCount = 0;
+        mByteCount = 0;
+        mLatencySampleCount = 0;
+    }
+
+    /**
+     * Get a snapshot of the statistics since the server started or was last reset.
+     *
+     * @return statistics.
+     */
+    public synchronized Statistics getStatistics() {
+        int sampleCount = Math.min(mLatencySampleCount, MAX_LATENCY_SAMPLES);
+        long[] samples = Arrays.copyOf(mLatencySamples, sampleCount);
+        Arrays.sort(samples);
+        return new Statistics(System.currentTimeMillis() - mStartTime, mRequestCount, mFailedRequestCount, mLogCount, mByteCount, samples);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mServerSocket.close();
+        mExecutor.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                mExecutor.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        serveConnection(socket);
+                    }
+                });
+            } catch (IOException e) {
+                if (!mServerSocket.isClosed()) {
+                    Log.w(LOG_TAG, "Stand-in ingestion failed to accept connection.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Serve requests of a connection until the client closes it.
+     *
+     * @param socket connection.
+     */
+    private void serveConnection(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            String requestLine;
+            while ((requestLine = readLine(in)) != null) {
+                if (requestLine.isEmpty()) {
+                    continue;
+                }
+
+                /* Read headers. */
+                int contentLength = 0;
+                String contentEncoding = null;
+                String dictionaryId = null;
+                String line;
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    int separator = line.indexOf(':');
+                    if (separator > 0) {
+                        String name = line.substring(0, separator).trim();
+                        String value = line.substring(separator + 1).trim();
+                        if ("Content-Length".equalsIgnoreCase(name)) {
+                            contentLength = Integer.parseInt(value);
+                        } else if ("Content-Encoding".equalsIgnoreCase(name)) {
+                            contentEncoding = value;
+                        } else if (DICTIONARY_ID_HEADER.equalsIgnoreCase(name)) {
+                            dictionaryId = value;
+                        }
+                    }
+                }
+
+                /* Read body. */
+                byte[] body = new byte[contentLength];
+                int offset = 0;
+                while (offset < contentLength) {
+                    int read = in.read(body, offset, contentLength - offset);
+                    if (read < 0) {
+                        return;
+                    }
+                    offset += read;
+                }
+                int statusCode = onRequest(body, contentEncoding, dictionaryId);
+                String statusLine = statusCode == 200 ? "200 OK" : statusCode + " Service Unavailable";
+                String headers = "HTTP/1.1 " + statusLine + "\r\n"
+                        + "Content-Type: application/json\r\n"
+                        + "Content-Length: " + RESPONSE_BODY.length + "\r\n"
+                        + "\r\n";
+                out.write(headers.getBytes("US-ASCII"));
+                out.write(RESPONSE_BODY);
+                out.flush();
+            }
+        } catch (IOException e) {
+            Log.d(LOG_TAG, "Stand-in ingestion connection closed: " + e);
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Record a request.
+     *
+     * @param body            request body as received.
+     * @param contentEncoding content encoding header value, may be null.
+     * @param dictionaryId    dictionary identifier header value, may be null.
+     * @return HTTP status code to respond.
+     */
+    private int onRequest(byte[] body, String contentEncoding, String dictionaryId) {
+        long now = System.currentTimeMillis();
+        String payload = decode(body, contentEncoding, dictionaryId);
+        synchronized (this) {
+            mRequestCount++;
+            mByteCount += body.length;
+            if (mFailureRate > 0 && mRandom.nextDouble() < mFailureRate) {
+                mFailedRequestCount++;
+                return 503;
+            }
+            if (payload == null) {
+                return 200;
+            }
+            Matcher matcher = LOG_TIME_PATTERN.matcher(payload);
+            while (matcher.find()) {
+                mLogCount++;
+                try {
+                    Date time = mDateFormat.parse(matcher.group(1));
+                    mLatencySamples[mLatencySampleCount++ % MAX_LATENCY_SAMPLES] = now - time.getTime();
+                } catch (ParseException ignored) {
+                }
+            }
+        }
+        return 200;
+    }
+
+    /**
+     * Decode a request body.
+     *
+     * @param body            request body as received.
+     * @param contentEncoding content encoding header value, may be null.
+     * @param dictionaryId    dictionary identifier header value, may be null.
+     * @return payload, or null if it cannot be decoded.
+     */
+    private String decode(byte[] body, String contentEncoding, String dictionaryId) {
+        try {
+            if (contentEncoding == null || "identity".equalsIgnoreCase(contentEncoding)) {
+                return new String(body, "UTF-8");
+            }
+            if ("gzip".equalsIgnoreCase(contentEncoding)) {
+                return new String(readFully(new GZIPInputStream(new ByteArrayInputStream(body))), "UTF-8");
+            }
+            if ("deflate".equalsIgnoreCase(contentEncoding)) {
+                return new String(inflate(body, null), "UTF-8");
+            }
+            if (DICTIONARY_DEFLATE_ENCODING.equalsIgnoreCase(contentEncoding)) {
+                byte[] dictionary;
+                synchronized (this) {
+                    dictionary = dictionaryId != null && dictionaryId.equalsIgnoreCase(mDeflateDictionaryId) ? mDeflateDictionary : null;
+                }
+                if (dictionary == null) {
+                    Log.w(LOG_TAG, "Stand-in ingestion does not know dictionary " + dictionaryId);
+                    return null;
+                }
+                return new String(inflate(body, dictionary), "UTF-8");
+            }
+        } catch (IOException | DataFormatException e) {
+            Log.w(LOG_TAG, "Stand-in ingestion failed to decode payload.", e);
+            return null;
+        }
+        Log.w(LOG_TAG, "Stand-in ingestion does not support content encoding " + contentEncoding);
+        return null;
+    }
+
+    private static byte[] inflate(byte[] body, byte[] dictionary) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(body);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0) {
+                    if (inflater.needsDictionary() && dictionary != null) {
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsDictionary() || inflater.needsInput()) {
+                        throw new DataFormatException("Truncated payload or missing dictionary.");
+                    }
+                }
+                out.write(buffer, 0, inflated);
+            }
+            return out.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Read a header line.
+     *
+     * @param in input.
+     * @return line without the line terminator, or null at end of stream.
+     * @throws IOException if the connection fails.
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (c == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() > 0 ? line.toString() : null;
+    }
+
+    /**
+     * Statistics of the stand-in ingestion.
+     */
+    public static class Statistics {
+
+        private final long mElapsedMillis;
+
+        private final long mRequestCount;
+
+        private final long mFailedRequestCount;
+
+        private final long mLogCount;
+
+        private final long mByteCount;
+
+        /**
+         * Sorted latency samples.
+         */
+        private final long[] mLatencies;
+
+        Statistics(long elapsedMillis, long requestCount, long failedRequestCount, long logCount, long byteCount, long[] latencies) {
+            mElapsedMillis = elapsedMillis;
+            mRequestCount = requestCount;
+            mFailedRequestCount = failedRequestCount;
+            mLogCount = logCount;
+            mByteCount = byteCount;
+            mLatencies = latencies;
+        }
+
+        public long getElapsedMillis() {
+            return mElapsedMillis;
+        }
+
+        public long getRequestCount() {
+            return mRequestCount;
+        }
+
+        public long getFailedRequestCount() {
+            return mFailedRequestCount;
+        }
+
+        /**
+         * Get the number of logs received in acknowledged requests.
+         *
+         * @return number of logs.
+         */
+        public long getLogCount() {
+            return mLogCount;
+        }
+
+        /**
+         * Get the number of bytes received, as sent on the wire.
+         *
+         * @return number of bytes.
+         */
+        public long getByteCount() {
+            return mByteCount;
+        }
+
+        /**
+         * Get the number of logs received per second.
+         *
+         * @return throughput.
+         */
+        public double getLogsPerSecond() {
+            return mElapsedMillis == 0 ? 0 : mLogCount * 1000.0 / mElapsedMillis;
+        }
+
+        /**
+         * Get a percentile of the time between log creation and reception.
+         * Log timestamps have a second precision in Common Schema.
+         *
+         * @param percentile percentile between 0 and 100.
+         * @return latency in milliseconds, or -1 if no log was received.
+         */
+        public long getLatencyPercentile(double percentile) {
+            if (mLatencies.length == 0) {
+                return -1;
+            }
+            int index = (int) Math.ceil(percentile / 100 * mLatencies.length) - 1;
+            return mLatencies[Math.max(0, Math.min(index, mLatencies.length - 1))];
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "requests=%d failed=%d logs=%d bytes=%d logs/s=%.1f latency p50=%dms p95=%dms p99=%dms",
+                    mRequestCount, mFailedRequestCount, mLogCount, mByteCount, getLogsPerSecond(),
+                    getLatencyPercentile(50), getLatencyPercentile(95), getLatencyPercentile(99));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.microsoft.appcenter.sasquatch.util;
+
+import android.util.Log;
+
+import com.microsoft.appcenter.AppCenter;
+import com.microsoft.appcenter.http.DefaultHttpClient;
+import com.microsoft.appcenter.http.DictionaryDeflateEncoder;
+import com.microsoft.appcenter.http.HttpClient;
+import com.microsoft.appcenter.http.ServiceCall;
+import com.microsoft.appcenter.http.ServiceCallback;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static com.microsoft.appcenter.sasquatch.activities.MainActivity.LOG_TAG;
+
+/**
+ * Send all SDK traffic to a {@link StandInIngestionServer} running in the application.
+ * <p>
+ * TODO move to main source folder after SDK release (and delete jCenter version).
+ */
+public final class StandInIngestion {
+
+    public static final boolean IS_SUPPORTED = true;
+
+    private static StandInIngestionServer sServer;
+
+    private StandInIngestion() {
+    }
+
+    /**
+     * Start the server and redirect SDK requests to it, must be called before starting App Center.
+     */
+    public static synchronized void start() {
+        if (sServer != null) {
+            return;
+        }
+        try {
+            sServer = new StandInIngestionServer(0);
+            sServer.setDeflateDictionary(DictionaryDeflateEncoder.DEFAULT_DICTIONARY.getBytes("UTF-8"));
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to start stand-in ingestion.", e);
+            return;
+        }
+
+        /* One Collector URL cannot be changed, so redirect requests at the HTTP client level. */
+        AppCenter.setHttpClient(new RedirectingHttpClient(new DefaultHttpClient(), sServer.getUrl()));
+        Log.i(LOG_TAG, "Stand-in ingestion listening at " + sServer.getUrl());
+    }
+
+    /**
+     * Get the running server.
+     *
+     * @return server or null if not started.
+     */
+    public static synchronized StandInIngestionServer getServer() {
+        return sServer;
+    }
+
+    /**
+     * Replace scheme, host and port of every request by the ones of the stand-in server.
+     */
+    private static class RedirectingHttpClient implements HttpClient {
+
+        private final HttpClient mHttpClient;
+
+        private final String mBaseUrl;
+
+        RedirectingHttpClient(HttpClient httpClient, String baseUrl) {
+            mHttpClient = httpClient;
+            mBaseUrl = baseUrl;
+        }
+
+        @Override
+        public ServiceCall callAsync(String url, String method, Map<String, String> headers, CallTemplate callTemplate, ServiceCallback serviceCallback) {
+            int authorityStart = url.indexOf("://");
+            int pathStart = authorityStart < 0 ? -1 : url.indexOf('/', authorityStart + 3);
+            String path = pathStart < 0 ? "/" : url.substring(pathStart);
+            return mHttpClient.callAsync(mBaseUrl + path, method, headers, callTemplate, serviceCallback);
+        }
+
+        @Override
+        public void reopen() {
+            mHttpClient.reopen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mHttpClient.close();
+        }
+    }
+}
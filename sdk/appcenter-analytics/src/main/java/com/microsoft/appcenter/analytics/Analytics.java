@@ -9,6 +9,8 @@ import android.support.annotation.WorkerThread;
 import com.microsoft.appcenter.AbstractAppCenterService;
 import com.microsoft.appcenter.analytics.channel.AnalyticsListener;
 import com.microsoft.appcenter.analytics.channel.AnalyticsValidator;
+import com.microsoft.appcenter.analytics.channel.EventAggregator;
+import com.microsoft.appcenter.analytics.channel.EventSampler;
 import com.microsoft.appcenter.analytics.channel.SessionTracker;
 import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
 import com.microsoft.appcenter.analytics.ingestion.models.PageLog;
@@ -22,6 +24,7 @@ import com.microsoft.appcenter.channel.Channel;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.LogFactory;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.UUIDUtils;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 import com.microsoft.appcenter.utils.async.DefaultAppCenterFuture;
@@ -55,6 +58,12 @@ public class Analytics extends AbstractAppCenterService {
      */
     private static final String ACTIVITY_SUFFIX = "Activity";
 
+    /**
+     * Maximum time in milliseconds aggregated events are kept in memory before being enqueued.
+     */
+    @VisibleForTesting
+    static final long AGGREGATION_WINDOW = 60 * 1000;
+
     /**
      * Shared instance.
      */
@@ -95,6 +104,40 @@ public class Analytics extends AbstractAppCenterService {
      */
     private AnalyticsValidator mAnalyticsValidator;
 
+    /**
+     * Event sampler, kept across enabled state changes to preserve its configuration.
+     */
+    private final EventSampler mEventSampler;
+
+    /**
+     * Event aggregator.
+     */
+    private EventAggregator mEventAggregator;
+
+    /**
+     * True when an activity was paused and no activity resumed since, aggregated events are then persisted right away.
+     */
+    private boolean mActivityPaused;
+
+    /**
+     * Flushes aggregated events at the end of the aggregation window.
+     */
+    private final Runnable mFlushAggregatedEventsRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            post(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (mEventAggregator != null) {
+                        mEventAggregator.flush();
+                    }
+                }
+            });
+        }
+    };
+
     /**
      * Channel listener used by transmission targets to decorate logs.
      */
@@ -121,6 +164,7 @@ public class Analytics extends AbstractAppCenterService {
         mFactories.put(EventLog.TYPE, new EventLogFactory());
         mFactories.put(CommonSchemaEventLog.TYPE, new CommonSchemaEventLogFactory());
         mTransmissionTargets = new HashMap<>();
+        mEventSampler = new EventSampler();
     }
 
     /**
@@ -274,6 +318,56 @@ public class Analytics extends AbstractAppCenterService {
         getInstance().trackEventAsync(name, properties, transmissionTarget);
     }
 
+    /**
+     * Track an event that is only counted in memory. All occurrences with the same name and properties
+     * are sent as a single event with an additional "count" property holding the number of occurrences.
+     * Aggregated events are persisted at the latest after a minute, when an activity is paused or
+     * when the SDK shuts down. Events tracked while no activity is resumed are persisted right away.
+     * Name and properties have the same limits as {@link #trackEvent(String, Map)}, except that the "count" property name is reserved
+     * and counts in the maximum number of properties: events that use it or have more than 19 properties are discarded.
+     *
+     * @param name       An event name.
+     * @param properties Optional properties.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static void trackAggregatedEvent(String name, Map<String, String> properties) {
+        getInstance().trackAggregatedEventAsync(name, properties);
+    }
+
+    /**
+     * Set the percentage of events to keep, every event being sampled independently.
+     * Events sent to transmission targets that are kept have their popSample set accordingly.
+     * The default value is 100, meaning no sampling.
+     *
+     * @param samplingRate percentage between 0 and 100.
+     */
+    public static void setEventSamplingRate(double samplingRate) {
+        getInstance().mEventSampler.setEventSamplingRate(samplingRate);
+    }
+
+    /**
+     * Set the percentage of installs to keep events for.
+     * The decision is based on the install identifier, so it stays the same for a given install.
+     * The default value is 100, meaning no sampling.
+     *
+     * @param samplingRate percentage between 0 and 100.
+     */
+    public static void setInstallSamplingRate(double samplingRate) {
+        getInstance().mEventSampler.setInstallSamplingRate(samplingRate);
+    }
+
+    /**
+     * Limit the number of events tracked for an event name.
+     * Events exceeding the limit are discarded before being persisted.
+     *
+     * @param eventName event name or null to set the limit for every event name that has no specific limit.
+     * @param maxEvents maximum number of events per period, also used as burst size. 0 removes the limit.
+     * @param period    period in milliseconds.
+     */
+    public static void setEventRateLimit(String eventName, int maxEvents, long period) {
+        getInstance().mEventSampler.setRateLimit(eventName, maxEvents, period);
+    }
+
     /**
      * Get a transmission target to use to track events. Will create a new transmission target if necessary.
      *
@@ -355,6 +449,7 @@ public class Analytics extends AbstractAppCenterService {
             @Override
             public void run() {
                 mCurrentActivity = new WeakReference<>(activity);
+                mActivityPaused = false;
             }
         };
         post(new Runnable() {
@@ -389,6 +484,7 @@ public class Analytics extends AbstractAppCenterService {
             @Override
             public void run() {
                 mCurrentActivity = null;
+                mActivityPaused = true;
             }
         };
         post(new Runnable() {
@@ -399,6 +495,12 @@ public class Analytics extends AbstractAppCenterService {
                 if (mSessionTracker != null) {
                     mSessionTracker.onActivityPaused();
                 }
+
+                /* Don't keep aggregated events in memory while in background. */
+                if (mEventAggregator != null) {
+                    HandlerUtils.getMainHandler().removeCallbacks(mFlushAggregatedEventsRunnable);
+                    mEventAggregator.flush();
+                }
             }
         }, updateCurrentActivityRunnable, updateCurrentActivityRunnable);
     }
@@ -441,6 +543,10 @@ public class Analytics extends AbstractAppCenterService {
         /* If we enabled the service. */
         if (enabled) {
 
+            /* Aggregation works for both application and libraries. */
+            mEventAggregator = new EventAggregator(mChannel, ANALYTICS_GROUP);
+            mChannel.addListener(mEventAggregator);
+
             /* Check if service started at application level and enable corresponding features. */
             startAppLevelFeatures();
         }
@@ -449,9 +555,18 @@ public class Analytics extends AbstractAppCenterService {
         else {
 
             /* Cleanup resources. */
+            if (mEventAggregator != null) {
+                HandlerUtils.getMainHandler().removeCallbacks(mFlushAggregatedEventsRunnable);
+                mEventAggregator.clear();
+                mChannel.removeListener(mEventAggregator);
+                mEventAggregator = null;
+            }
             if (mAnalyticsValidator != null) {
                 mChannel.removeListener(mAnalyticsValidator);
                 mAnalyticsValidator = null;
+
+                /* Sampler is registered along with the validator. */
+                mChannel.removeListener(mEventSampler);
             }
             if (mSessionTracker != null) {
                 mChannel.removeListener(mSessionTracker);
@@ -478,6 +593,9 @@ public class Analytics extends AbstractAppCenterService {
             mAnalyticsValidator = new AnalyticsValidator();
             mChannel.addListener(mAnalyticsValidator);
 
+            /* Enable sampling and rate limiting of events. */
+            mChannel.addListener(mEventSampler);
+
             /* Start session tracker. */
             mSessionTracker = new SessionTracker(mChannel, ANALYTICS_GROUP);
             mChannel.addListener(mSessionTracker);
@@ -567,6 +685,51 @@ public class Analytics extends AbstractAppCenterService {
         });
     }
 
+    /**
+     * Count an aggregated event.
+     *
+     * @param name       event name.
+     * @param properties optional properties.
+     */
+    private synchronized void trackAggregatedEventAsync(final String name, Map<String, String> properties) {
+
+        /* Make a copy to prevent concurrent modification, the copy is also used as the aggregation key. */
+        final Map<String, String> propertiesCopy = properties != null ? new HashMap<>(properties) : null;
+        post(new Runnable() {
+
+            @Override
+            public void run() {
+                if (name == null || name.isEmpty()) {
+                    AppCenterLog.error(LOG_TAG, "Aggregated event name cannot be null or empty.");
+                    return;
+                }
+                if (!EventAggregator.validateProperties(name, propertiesCopy)) {
+                    return;
+                }
+                String transmissionTargetToken = null;
+                if (mDefaultTransmissionTarget != null) {
+                    if (!mDefaultTransmissionTarget.isEnabled()) {
+                        AppCenterLog.error(LOG_TAG, "This transmission target is disabled.");
+                        return;
+                    }
+                    transmissionTargetToken = mDefaultTransmissionTarget.getTransmissionTargetToken();
+                } else if (!mStartedFromApp) {
+                    AppCenterLog.error(LOG_TAG, "Cannot track aggregated event if not started from app.");
+                    return;
+                }
+                boolean firstAggregate = mEventAggregator.add(name, propertiesCopy, transmissionTargetToken);
+
+                /* The process may be killed at any time in background, don't keep events in memory. */
+                if (mActivityPaused) {
+                    HandlerUtils.getMainHandler().removeCallbacks(mFlushAggregatedEventsRunnable);
+                    mEventAggregator.flush();
+                } else if (firstAggregate) {
+                    HandlerUtils.getMainHandler().postDelayed(mFlushAggregatedEventsRunnable, AGGREGATION_WINDOW);
+                }
+            }
+        });
+    }
+
     /**
      * Implements {@link #isAutoPageTrackingEnabled()}.
      */
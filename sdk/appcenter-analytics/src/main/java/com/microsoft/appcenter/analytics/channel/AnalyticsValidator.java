@@ -9,11 +9,13 @@ import com.microsoft.appcenter.analytics.ingestion.models.PageLog;
 import com.microsoft.appcenter.channel.AbstractChannelListener;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.metrics.MetricsRegistry;
 
 import java.util.HashMap;
 import java.util.Map;
 
 import static com.microsoft.appcenter.analytics.Analytics.LOG_TAG;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.ANALYTICS_FILTERED_LOGS;
 
 public class AnalyticsValidator extends AbstractChannelListener {
 
@@ -32,14 +34,13 @@ public class AnalyticsValidator extends AbstractChannelListener {
     /**
      * Max number of properties.
      */
-    @VisibleForTesting
     static final int MAX_PROPERTY_COUNT = 20;
 
     @Override
     public boolean shouldFilter(@NonNull Log log) {
-        //noinspection SimplifiableIfStatement
-        if (log instanceof EventLog || log instanceof PageLog) {
-            return !validateLog((LogWithNameAndProperties) log);
+        if ((log instanceof EventLog || log instanceof PageLog) && !validateLog((LogWithNameAndProperties) log)) {
+            MetricsRegistry.getInstance().getCounter(ANALYTICS_FILTERED_LOGS).increment();
+            return true;
         }
         return false;
     }
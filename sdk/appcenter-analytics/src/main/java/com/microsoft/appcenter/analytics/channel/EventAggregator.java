@@ -0,0 +1,237 @@
+package com.microsoft.appcenter.analytics.channel;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
+import com.microsoft.appcenter.channel.AbstractChannelListener;
+import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.UUIDUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.microsoft.appcenter.analytics.Analytics.LOG_TAG;
+
+/**
+ * Rolls up identical events into counters and enqueues a single event per distinct name and properties
+ * when flushed, with the number of occurrences in the {@link #COUNT_PROPERTY} property.
+ * <p>
+ * Aggregates are also flushed when the channel shuts down so that they get persisted.
+ */
+public class EventAggregator extends AbstractChannelListener implements Channel.ShutdownListener {
+
+    /**
+     * Property holding the number of aggregated occurrences, reserved in aggregated event properties.
+     */
+    public static final String COUNT_PROPERTY = "count";
+
+    /**
+     * Maximum number of properties of an aggregated event, one less than events to leave room for {@link #COUNT_PROPERTY}.
+     */
+    @VisibleForTesting
+    static final int MAX_PROPERTY_COUNT = AnalyticsValidator.MAX_PROPERTY_COUNT - 1;
+
+    /**
+     * Maximum number of distinct aggregates kept in memory, reaching it triggers a flush.
+     */
+    @VisibleForTesting
+    static final int MAX_AGGREGATES = 100;
+
+    /**
+     * Channel.
+     */
+    private final Channel mChannel;
+
+    /**
+     * Group name used to send aggregated events.
+     */
+    private final String mGroupName;
+
+    /**
+     * Counters by aggregation key, in order of first occurrence.
+     */
+    private final Map<AggregationKey, Long> mCounters = new LinkedHashMap<>();
+
+    /**
+     * Init.
+     *
+     * @param channel   channel.
+     * @param groupName group name used to send aggregated events.
+     */
+    public EventAggregator(Channel channel, String groupName) {
+        mChannel = channel;
+        mGroupName = groupName;
+    }
+
+    /**
+     * Check that properties of an aggregated event leave room for the count.
+     *
+     * @param name       event name.
+     * @param properties properties, can be null.
+     * @return true if the event can be aggregated, false if it must be discarded.
+     */
+    public static boolean validateProperties(@NonNull String name, Map<String, String> properties) {
+        if (properties == null) {
+            return true;
+        }
+        if (properties.containsKey(COUNT_PROPERTY)) {
+            AppCenterLog.error(LOG_TAG, String.format("Aggregated event '%s' : property '%s' is reserved. Event will be discarded.", name, COUNT_PROPERTY));
+            return false;
+        }
+        if (properties.size() > MAX_PROPERTY_COUNT) {
+            AppCenterLog.error(LOG_TAG, String.format("Aggregated event '%s' : properties cannot contain more than %s items. Event will be discarded.", name, MAX_PROPERTY_COUNT));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Count an occurrence of an event.
+     *
+     * @param name                    event name.
+     * @param properties              optional properties, must not be modified afterwards.
+     * @param transmissionTargetToken optional transmission target token.
+     * @return true if this is the first aggregate since last flush, the caller is then expected to schedule a flush.
+     */
+    public boolean add(@NonNull String name, Map<String, String> properties, String transmissionTargetToken) {
+        List<EventLog> eventLogs = null;
+        boolean first;
+        synchronized (this) {
+            if (mCounters.size() >= MAX_AGGREGATES) {
+                AppCenterLog.debug(LOG_TAG, "Maximum number of aggregated events reached, flushing.");
+                eventLogs = drain();
+            }
+            first = mCounters.isEmpty();
+            AggregationKey key = new AggregationKey(name, properties, transmissionTargetToken);
+            Long count = mCounters.get(key);
+            mCounters.put(key, count == null ? 1 : count + 1);
+        }
+        enqueue(eventLogs);
+        return first;
+    }
+
+    /**
+     * Enqueue one event per aggregate and reset counters.
+     */
+    public void flush() {
+        List<EventLog> eventLogs;
+        synchronized (this) {
+            eventLogs = drain();
+        }
+        enqueue(eventLogs);
+    }
+
+    /**
+     * Convert aggregates to event logs and reset counters.
+     *
+     * @return event logs.
+     */
+    private List<EventLog> drain() {
+        List<EventLog> eventLogs = new ArrayList<>(mCounters.size());
+        for (Map.Entry<AggregationKey, Long> entry : mCounters.entrySet()) {
+            AggregationKey key = entry.getKey();
+            Map<String, String> properties = new HashMap<>();
+            if (key.mProperties != null) {
+                properties.putAll(key.mProperties);
+            }
+            properties.put(COUNT_PROPERTY, String.valueOf(entry.getValue()));
+            EventLog eventLog = new EventLog();
+            eventLog.setId(UUIDUtils.randomUUID());
+            eventLog.setName(key.mName);
+            eventLog.setProperties(properties);
+            if (key.mTransmissionTargetToken != null) {
+                eventLog.addTransmissionTarget(key.mTransmissionTargetToken);
+            }
+            eventLogs.add(eventLog);
+        }
+        mCounters.clear();
+        return eventLogs;
+    }
+
+    /**
+     * Enqueue event logs outside of the lock as the channel calls back listeners.
+     *
+     * @param eventLogs event logs, can be null.
+     */
+    private void enqueue(List<EventLog> eventLogs) {
+        if (eventLogs == null || eventLogs.isEmpty()) {
+            return;
+        }
+        AppCenterLog.debug(LOG_TAG, "Flushing " + eventLogs.size() + " aggregated event(s).");
+        for (EventLog eventLog : eventLogs) {
+            mChannel.enqueue(eventLog, mGroupName);
+        }
+    }
+
+    /**
+     * Discard aggregates without sending them.
+     */
+    public synchronized void clear() {
+        mCounters.clear();
+    }
+
+    @VisibleForTesting
+    synchronized int getAggregateCount() {
+        return mCounters.size();
+    }
+
+    @Override
+    public void onShutdown() {
+        flush();
+    }
+
+    /**
+     * Identity of aggregated events.
+     */
+    private static class AggregationKey {
+
+        /**
+         * Event name.
+         */
+        final String mName;
+
+        /**
+         * Event properties.
+         */
+        final Map<String, String> mProperties;
+
+        /**
+         * Transmission target token.
+         */
+        final String mTransmissionTargetToken;
+
+        /**
+         * Init.
+         */
+        AggregationKey(String name, Map<String, String> properties, String transmissionTargetToken) {
+            mName = name;
+            mProperties = properties;
+            mTransmissionTargetToken = transmissionTargetToken;
+        }
+
+        @Override
+        @SuppressWarnings("SimplifiableIfStatement")
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            AggregationKey that = (AggregationKey) o;
+            if (!mName.equals(that.mName)) return false;
+            if (mProperties != null ? !mProperties.equals(that.mProperties) : that.mProperties != null)
+                return false;
+            return mTransmissionTargetToken != null ? mTransmissionTargetToken.equals(that.mTransmissionTargetToken) : that.mTransmissionTargetToken == null;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mName.hashCode();
+            result = 31 * result + (mProperties != null ? mProperties.hashCode() : 0);
+            result = 31 * result + (mTransmissionTargetToken != null ? mTransmissionTargetToken.hashCode() : 0);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.microsoft.appcenter.analytics.channel;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
+import com.microsoft.appcenter.analytics.ingestion.models.one.CommonSchemaEventLog;
+import com.microsoft.appcenter.channel.AbstractChannelListener;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.IdHelper;
+import com.microsoft.appcenter.utils.metrics.MetricsRegistry;
+import com.microsoft.appcenter.utils.metrics.StripedCounter;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static com.microsoft.appcenter.analytics.Analytics.LOG_TAG;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.ANALYTICS_RATE_LIMITED_EVENTS;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.ANALYTICS_SAMPLED_OUT_EVENTS;
+
+/**
+ * Channel listener that samples and rate limits events before they are persisted.
+ * <p>
+ * Three stages are applied in order:
+ * <ol>
+ * <li>Install sampling: a deterministic decision based on the install identifier, all events of a given install are either kept or dropped.</li>
+ * <li>Event sampling: a probabilistic decision for every event.</li>
+ * <li>Rate limiting: a token bucket per event name.</li>
+ * </ol>
+ * Common schema events that are kept while sampling is active get their popSample updated so that the backend can re-weight them.
+ * Dropped events are counted in the {@link MetricsRegistry}.
+ */
+public class EventSampler extends AbstractChannelListener {
+
+    /**
+     * Sampling rate meaning no sampling, in percent.
+     */
+    @VisibleForTesting
+    static final double MAX_SAMPLING_RATE = 100;
+
+    /**
+     * Granularity of the install sampling decision.
+     */
+    private static final int INSTALL_SAMPLING_BUCKETS = 1000000;
+
+    /**
+     * Maximum number of token buckets kept in memory, least recently used ones are discarded.
+     */
+    @VisibleForTesting
+    static final int MAX_TOKEN_BUCKETS = 256;
+
+    /**
+     * Random used for probabilistic sampling.
+     */
+    private final Random mRandom;
+
+    /**
+     * Rate limits by event name, the null key holds the default limit applied to all event names.
+     */
+    private final Map<String, RateLimit> mRateLimits = new HashMap<>();
+
+    /**
+     * Token buckets by event name.
+     */
+    private final Map<String, TokenBucket> mTokenBuckets = new LinkedHashMap<String, TokenBucket>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+            return size() > MAX_TOKEN_BUCKETS;
+        }
+    };
+
+    /**
+     * Event sampling rate in percent.
+     */
+    private double mEventSamplingRate = MAX_SAMPLING_RATE;
+
+    /**
+     * Install sampling rate in percent.
+     */
+    private double mInstallSamplingRate = MAX_SAMPLING_RATE;
+
+    /**
+     * Install sampling bucket, computed lazily from install identifier.
+     */
+    private Integer mInstallBucket;
+
+    /**
+     * Counter of events dropped by install or event sampling.
+     */
+    private final StripedCounter mSampledOutEvents;
+
+    /**
+     * Counter of events dropped by rate limiting.
+     */
+    private final StripedCounter mRateLimitedEvents;
+
+    /**
+     * Init.
+     */
+    public EventSampler() {
+        this(new Random());
+    }
+
+    /**
+     * Init with a specific random generator.
+     *
+     * @param random random generator used for probabilistic sampling.
+     */
+    @VisibleForTesting
+    EventSampler(Random random) {
+        mRandom = random;
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        mSampledOutEvents = metrics.getCounter(ANALYTICS_SAMPLED_OUT_EVENTS);
+        mRateLimitedEvents = metrics.getCounter(ANALYTICS_RATE_LIMITED_EVENTS);
+    }
+
+    /**
+     * Get the bucket of an install for the deterministic sampling.
+     *
+     * @param installId install identifier.
+     * @return bucket between 0 inclusive and {@link #INSTALL_SAMPLING_BUCKETS} exclusive.
+     */
+    @VisibleForTesting
+    static int getInstallBucket(@NonNull UUID installId) {
+
+        /* The random bits of a version 4 UUID are uniformly distributed. */
+        return (int) ((installId.getLeastSignificantBits() & Long.MAX_VALUE) % INSTALL_SAMPLING_BUCKETS);
+    }
+
+    /**
+     * Check sampling rate is in valid range.
+     */
+    private static boolean isValidSamplingRate(double samplingRate) {
+        return samplingRate >= 0 && samplingRate <= MAX_SAMPLING_RATE;
+    }
+
+    /**
+     * Set the probabilistic sampling rate applied to every event.
+     *
+     * @param samplingRate percentage of events to keep, between 0 and 100.
+     * @return true if the value was accepted, false if out of range.
+     */
+    public synchronized boolean setEventSamplingRate(double samplingRate) {
+        if (!isValidSamplingRate(samplingRate)) {
+            AppCenterLog.error(LOG_TAG, "Event sampling rate must be between 0 and 100.");
+            return false;
+        }
+        mEventSamplingRate = samplingRate;
+        return true;
+    }
+
+    /**
+     * Set the deterministic sampling rate applied to this install.
+     *
+     * @param samplingRate percentage of installs to keep events for, between 0 and 100.
+     * @return true if the value was accepted, false if out of range.
+     */
+    public synchronized boolean setInstallSamplingRate(double samplingRate) {
+        if (!isValidSamplingRate(samplingRate)) {
+            AppCenterLog.error(LOG_TAG, "Install sampling rate must be between 0 and 100.");
+            return false;
+        }
+        mInstallSamplingRate = samplingRate;
+        return true;
+    }
+
+    /**
+     * Set a rate limit for an event name.
+     *
+     * @param eventName event name or null to set the default limit for all event names without a specific limit.
+     * @param maxEvents maximum number of events per period, this is also the burst size. 0 or less removes the limit.
+     * @param period    period in milliseconds.
+     * @return true if the value was accepted, false if invalid.
+     */
+    public synchronized boolean setRateLimit(String eventName, int maxEvents, long period) {
+        if (maxEvents <= 0) {
+            mRateLimits.remove(eventName);
+        } else if (period <= 0) {
+            AppCenterLog.error(LOG_TAG, "Rate limit period must be positive.");
+            return false;
+        } else {
+            mRateLimits.put(eventName, new RateLimit(maxEvents, period));
+        }
+        mTokenBuckets.clear();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean shouldFilter(@NonNull Log log) {
+
+        /*
+         * Events targeting transmission targets are converted to common schema events
+         * and filtered out by the one collector listener: process only the converted ones.
+         */
+        String name;
+        if (log instanceof EventLog) {
+            if (!log.getTransmissionTargetTokens().isEmpty()) {
+                return false;
+            }
+            name = ((EventLog) log).getName();
+        } else if (log instanceof CommonSchemaEventLog) {
+            name = ((CommonSchemaEventLog) log).getName();
+        } else {
+            return false;
+        }
+
+        /* Apply sampling. */
+        if (!isSampledIn()) {
+            mSampledOutEvents.increment();
+            AppCenterLog.verbose(LOG_TAG, "Event '" + name + "' was sampled out.");
+            return true;
+        }
+
+        /* Apply rate limit. */
+        if (!tryAcquireToken(name)) {
+            mRateLimitedEvents.increment();
+            AppCenterLog.verbose(LOG_TAG, "Event '" + name + "' was rate limited.");
+            return true;
+        }
+
+        /* Let the backend re-weight common schema events, combining with any sampling already applied. */
+        double effectiveSamplingRate = mInstallSamplingRate * mEventSamplingRate / MAX_SAMPLING_RATE;
+        if (log instanceof CommonSchemaLog && effectiveSamplingRate < MAX_SAMPLING_RATE) {
+            CommonSchemaLog commonSchemaLog = (CommonSchemaLog) log;
+            Double popSample = commonSchemaLog.getPopSample();
+            if (popSample != null) {
+                effectiveSamplingRate = effectiveSamplingRate * popSample / MAX_SAMPLING_RATE;
+            }
+            commonSchemaLog.setPopSample(effectiveSamplingRate);
+        }
+        return false;
+    }
+
+    /**
+     * Apply install then event sampling.
+     *
+     * @return true to keep the event.
+     */
+    private boolean isSampledIn() {
+        if (mInstallSamplingRate < MAX_SAMPLING_RATE) {
+            if (mInstallBucket == null) {
+                mInstallBucket = getInstallBucket(IdHelper.getInstallId());
+            }
+            if (mInstallBucket >= mInstallSamplingRate / MAX_SAMPLING_RATE * INSTALL_SAMPLING_BUCKETS) {
+                return false;
+            }
+        }
+        return mEventSamplingRate >= MAX_SAMPLING_RATE || mRandom.nextDouble() * MAX_SAMPLING_RATE < mEventSamplingRate;
+    }
+
+    /**
+     * Consume a token from the bucket of the event name.
+     *
+     * @param name event name.
+     * @return true if a token was available or the event name has no rate limit.
+     */
+    private boolean tryAcquireToken(String name) {
+        RateLimit rateLimit = mRateLimits.get(name);
+        if (rateLimit == null) {
+            rateLimit = mRateLimits.get(null);
+            if (rateLimit == null) {
+                return true;
+            }
+        }
+        long now = SystemClock.elapsedRealtime();
+        TokenBucket tokenBucket = mTokenBuckets.get(name);
+        if (tokenBucket == null) {
+            tokenBucket = new TokenBucket(rateLimit.mMaxEvents, now);
+            mTokenBuckets.put(name, tokenBucket);
+        } else {
+            double refill = (now - tokenBucket.mLastRefillTime) * rateLimit.mMaxEvents / (double) rateLimit.mPeriod;
+            tokenBucket.mTokens = Math.min(rateLimit.mMaxEvents, tokenBucket.mTokens + refill);
+            tokenBucket.mLastRefillTime = now;
+        }
+        if (tokenBucket.mTokens < 1) {
+            return false;
+        }
+        tokenBucket.mTokens--;
+        return true;
+    }
+
+    /**
+     * Rate limit configuration.
+     */
+    private static class RateLimit {
+
+        /**
+         * Maximum events per period.
+         */
+        final int mMaxEvents;
+
+        /**
+         * Period in milliseconds.
+         */
+        final long mPeriod;
+
+        /**
+         * Init.
+         */
+        RateLimit(int maxEvents, long period) {
+            mMaxEvents = maxEvents;
+            mPeriod = period;
+        }
+    }
+
+    /**
+     * Token bucket state for an event name.
+     */
+    private static class TokenBucket {
+
+        /**
+         * Available tokens.
+         */
+        double mTokens;
+
+        /**
+         * Last time tokens were refilled.
+         */
+        long mLastRefillTime;
+
+        /**
+         * Init.
+         */
+        TokenBucket(double tokens, long lastRefillTime) {
+            mTokens = tokens;
+            mLastRefillTime = lastRefillTime;
+        }
+    }
+}
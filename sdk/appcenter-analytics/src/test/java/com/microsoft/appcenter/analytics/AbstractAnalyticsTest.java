@@ -1,5 +1,6 @@
 package com.microsoft.appcenter.analytics;
 
+import android.os.Handler;
 import android.os.SystemClock;
 
 import com.microsoft.appcenter.AppCenter;
@@ -36,6 +37,9 @@ abstract class AbstractAnalyticsTest {
     @Mock
     AppCenterHandler mAppCenterHandler;
 
+    @Mock
+    Handler mMainHandler;
+
     @Mock
     private AppCenterFuture<Boolean> mCoreEnabledFuture;
 
@@ -59,6 +63,7 @@ abstract class AbstractAnalyticsTest {
         mockStatic(HandlerUtils.class);
         doAnswer(runNow).when(HandlerUtils.class);
         HandlerUtils.runOnUiThread(any(Runnable.class));
+        when(HandlerUtils.getMainHandler()).thenReturn(mMainHandler);
 
         /* First call to com.microsoft.appcenter.AppCenter.isEnabled shall return true, initial state. */
         mockStatic(StorageHelper.PreferencesStorage.class);
@@ -5,6 +5,7 @@ import android.content.Context;
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.analytics.channel.AnalyticsListener;
 import com.microsoft.appcenter.analytics.channel.AnalyticsValidator;
+import com.microsoft.appcenter.analytics.channel.EventAggregator;
 import com.microsoft.appcenter.analytics.channel.SessionTracker;
 import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
 import com.microsoft.appcenter.analytics.ingestion.models.PageLog;
@@ -35,6 +36,7 @@ import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -220,6 +222,89 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
         verify(channel, times(2)).enqueue(isA(EventLog.class), anyString());
     }
 
+    @Test
+    public void trackAggregatedEvent() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        verify(channel).addListener(isA(EventAggregator.class));
+
+        /* Invalid name is ignored. */
+        Analytics.trackAggregatedEvent(null, null);
+        Analytics.trackAggregatedEvent("", null);
+        verify(mMainHandler, never()).postDelayed(any(Runnable.class), anyLong());
+
+        /* Track same event several times: flush scheduled once and nothing enqueued yet. */
+        Map<String, String> properties = new HashMap<>();
+        properties.put("a", "b");
+        Analytics.trackAggregatedEvent("eventName", properties);
+        Analytics.trackAggregatedEvent("eventName", properties);
+        Analytics.trackAggregatedEvent("eventName", null);
+        ArgumentCaptor<Runnable> flushRunnable = ArgumentCaptor.forClass(Runnable.class);
+        verify(mMainHandler).postDelayed(flushRunnable.capture(), eq(Analytics.AGGREGATION_WINDOW));
+        verify(channel, never()).enqueue(isA(EventLog.class), anyString());
+
+        /* Flush at end of window. */
+        flushRunnable.getValue().run();
+        ArgumentCaptor<EventLog> eventLog = ArgumentCaptor.forClass(EventLog.class);
+        verify(channel, times(2)).enqueue(eventLog.capture(), eq(analytics.getGroupName()));
+        assertEquals("eventName", eventLog.getAllValues().get(0).getName());
+        assertEquals("2", eventLog.getAllValues().get(0).getProperties().get(EventAggregator.COUNT_PROPERTY));
+        assertEquals("b", eventLog.getAllValues().get(0).getProperties().get("a"));
+        assertEquals("1", eventLog.getAllValues().get(1).getProperties().get(EventAggregator.COUNT_PROPERTY));
+
+        /* Flush on pause. */
+        Analytics.trackAggregatedEvent("eventName", null);
+        verify(mMainHandler, times(2)).postDelayed(any(Runnable.class), eq(Analytics.AGGREGATION_WINDOW));
+        analytics.onActivityPaused(new Activity());
+        verify(channel, times(3)).enqueue(isA(EventLog.class), eq(analytics.getGroupName()));
+
+        /* Pending window flush is cancelled as there is nothing left to flush. */
+        verify(mMainHandler).removeCallbacks(flushRunnable.getValue());
+
+        /* Events are persisted right away while paused. */
+        Analytics.trackAggregatedEvent("eventName", null);
+        verify(channel, times(4)).enqueue(isA(EventLog.class), eq(analytics.getGroupName()));
+        verify(mMainHandler, times(2)).postDelayed(any(Runnable.class), eq(Analytics.AGGREGATION_WINDOW));
+        verify(mMainHandler, times(2)).removeCallbacks(flushRunnable.getValue());
+
+        /* Aggregation resumes with an activity. */
+        analytics.onActivityResumed(new Activity());
+        Analytics.trackAggregatedEvent("eventName", null);
+        verify(channel, times(4)).enqueue(isA(EventLog.class), eq(analytics.getGroupName()));
+
+        /* Disabling discards aggregates. */
+        Analytics.setEnabled(false);
+        verify(mMainHandler, times(3)).removeCallbacks(flushRunnable.getValue());
+        verify(channel).removeListener(isA(EventAggregator.class));
+        verify(channel, times(4)).enqueue(isA(EventLog.class), eq(analytics.getGroupName()));
+    }
+
+    @Test
+    public void trackAggregatedEventWithReservedProperty() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        Map<String, String> properties = new HashMap<>();
+        properties.put(EventAggregator.COUNT_PROPERTY, "5");
+        Analytics.trackAggregatedEvent("eventName", properties);
+        verify(mMainHandler, never()).postDelayed(any(Runnable.class), anyLong());
+        analytics.onActivityPaused(new Activity());
+        verify(channel, never()).enqueue(isA(EventLog.class), anyString());
+    }
+
+    @Test
+    public void trackAggregatedEventFromLibrary() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, null, null, false);
+        Analytics.trackAggregatedEvent("eventName", null);
+        verify(mMainHandler, never()).postDelayed(any(Runnable.class), anyLong());
+    }
+
     @Test
     public void trackPageFromApp() {
         Analytics analytics = Analytics.getInstance();
@@ -0,0 +1,134 @@
+package com.microsoft.appcenter.analytics.channel;
+
+import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
+import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.ingestion.models.Log;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class EventAggregatorTest {
+
+    private static final String TEST_GROUP = "group_test";
+
+    private Channel mChannel;
+
+    private EventAggregator mEventAggregator;
+
+    @Before
+    public void setUp() {
+        mChannel = mock(Channel.class);
+        mEventAggregator = new EventAggregator(mChannel, TEST_GROUP);
+    }
+
+    private List<EventLog> captureEnqueuedLogs(int count) {
+        ArgumentCaptor<EventLog> captor = ArgumentCaptor.forClass(EventLog.class);
+        verify(mChannel, times(count)).enqueue(captor.capture(), eq(TEST_GROUP));
+        return captor.getAllValues();
+    }
+
+    @Test
+    public void aggregateByNamePropertiesAndTarget() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("a", "b");
+        Map<String, String> sameProperties = new HashMap<>(properties);
+        assertTrue(mEventAggregator.add("e1", properties, null));
+        assertFalse(mEventAggregator.add("e1", sameProperties, null));
+        assertFalse(mEventAggregator.add("e1", null, null));
+        assertFalse(mEventAggregator.add("e2", properties, null));
+        assertFalse(mEventAggregator.add("e1", properties, "token"));
+        assertFalse(mEventAggregator.add("e1", properties, "token"));
+        assertFalse(mEventAggregator.add("e1", properties, "token"));
+        assertEquals(4, mEventAggregator.getAggregateCount());
+        verify(mChannel, never()).enqueue(any(Log.class), anyString());
+
+        /* Flush in order of first occurrence. */
+        mEventAggregator.flush();
+        List<EventLog> logs = captureEnqueuedLogs(4);
+        assertEquals("e1", logs.get(0).getName());
+        assertEquals("2", logs.get(0).getProperties().get(EventAggregator.COUNT_PROPERTY));
+        assertEquals("b", logs.get(0).getProperties().get("a"));
+        assertEquals("1", logs.get(1).getProperties().get(EventAggregator.COUNT_PROPERTY));
+        assertEquals(1, logs.get(1).getProperties().size());
+        assertEquals("e2", logs.get(2).getName());
+        assertEquals("3", logs.get(3).getProperties().get(EventAggregator.COUNT_PROPERTY));
+        assertTrue(logs.get(3).getTransmissionTargetTokens().contains("token"));
+        assertTrue(logs.get(0).getTransmissionTargetTokens().isEmpty());
+        assertEquals(0, mEventAggregator.getAggregateCount());
+
+        /* Next add is the first of a new window. */
+        assertTrue(mEventAggregator.add("e1", null, null));
+
+        /* Original properties were not modified. */
+        assertEquals(1, properties.size());
+    }
+
+    @Test
+    public void flushWhenEmpty() {
+        mEventAggregator.flush();
+        verify(mChannel, never()).enqueue(any(Log.class), anyString());
+    }
+
+    @Test
+    public void flushOnShutdown() {
+        mEventAggregator.add("e1", null, null);
+        mEventAggregator.onShutdown();
+        assertEquals("1", captureEnqueuedLogs(1).get(0).getProperties().get(EventAggregator.COUNT_PROPERTY));
+    }
+
+    @Test
+    public void validateProperties() {
+        assertTrue(EventAggregator.validateProperties("e1", null));
+        Map<String, String> properties = new HashMap<>();
+        for (int i = 0; i < EventAggregator.MAX_PROPERTY_COUNT; i++) {
+            properties.put("key" + i, "value");
+        }
+        assertTrue(EventAggregator.validateProperties("e1", properties));
+
+        /* No room left for the count. */
+        properties.put("other", "value");
+        assertFalse(EventAggregator.validateProperties("e1", properties));
+
+        /* Count is reserved. */
+        Map<String, String> reserved = new HashMap<>();
+        reserved.put(EventAggregator.COUNT_PROPERTY, "1");
+        assertFalse(EventAggregator.validateProperties("e1", reserved));
+    }
+
+    @Test
+    public void clear() {
+        mEventAggregator.add("e1", null, null);
+        mEventAggregator.clear();
+        mEventAggregator.flush();
+        verify(mChannel, never()).enqueue(any(Log.class), anyString());
+    }
+
+    @Test
+    public void flushWhenFull() {
+        for (int i = 0; i < EventAggregator.MAX_AGGREGATES; i++) {
+            mEventAggregator.add("e" + i, null, null);
+        }
+        verify(mChannel, never()).enqueue(any(Log.class), anyString());
+
+        /* One more distinct event flushes the previous ones and starts a new window. */
+        assertTrue(mEventAggregator.add("other", null, null));
+        captureEnqueuedLogs(EventAggregator.MAX_AGGREGATES);
+        assertEquals(1, mEventAggregator.getAggregateCount());
+    }
+}
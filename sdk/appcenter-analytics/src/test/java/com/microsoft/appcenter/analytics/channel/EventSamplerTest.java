@@ -0,0 +1,216 @@
+package com.microsoft.appcenter.analytics.channel;
+
+import android.os.SystemClock;
+
+import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
+import com.microsoft.appcenter.analytics.ingestion.models.PageLog;
+import com.microsoft.appcenter.analytics.ingestion.models.one.CommonSchemaEventLog;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.IdHelper;
+import com.microsoft.appcenter.utils.metrics.MetricsRegistry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.Random;
+import java.util.UUID;
+
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.ANALYTICS_RATE_LIMITED_EVENTS;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.ANALYTICS_SAMPLED_OUT_EVENTS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest({SystemClock.class, IdHelper.class, AppCenterLog.class})
+public class EventSamplerTest {
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    private Random mRandom;
+
+    private EventSampler mEventSampler;
+
+    private long mMockTime;
+
+    private static EventLog newEvent(String name) {
+        EventLog eventLog = new EventLog();
+        eventLog.setName(name);
+        return eventLog;
+    }
+
+    private static CommonSchemaEventLog newCommonSchemaEvent(String name) {
+        CommonSchemaEventLog log = new CommonSchemaEventLog();
+        log.setName(name);
+        return log;
+    }
+
+    private void spendTime(long time) {
+        mMockTime += time;
+        when(SystemClock.elapsedRealtime()).thenReturn(mMockTime);
+    }
+
+    private static long getCount(String name) {
+        return MetricsRegistry.getInstance().getCounter(name).sum();
+    }
+
+    @Before
+    public void setUp() {
+        MetricsRegistry.unsetInstance();
+        mockStatic(SystemClock.class);
+        mockStatic(IdHelper.class);
+        mockStatic(AppCenterLog.class);
+        spendTime(1000);
+        mRandom = mock(Random.class);
+        mEventSampler = new EventSampler(mRandom);
+    }
+
+    @Test
+    public void noSamplingByDefault() {
+        CommonSchemaEventLog log = newCommonSchemaEvent("test");
+        for (int i = 0; i < 100; i++) {
+            assertFalse(mEventSampler.shouldFilter(newEvent("test")));
+        }
+        assertFalse(mEventSampler.shouldFilter(log));
+        assertNull(log.getPopSample());
+        assertFalse(mEventSampler.shouldFilter(new PageLog()));
+        assertEquals(0, getCount(ANALYTICS_SAMPLED_OUT_EVENTS));
+        assertEquals(0, getCount(ANALYTICS_RATE_LIMITED_EVENTS));
+    }
+
+    @Test
+    public void invalidSamplingRates() {
+        assertFalse(mEventSampler.setEventSamplingRate(-1));
+        assertFalse(mEventSampler.setEventSamplingRate(101));
+        assertFalse(mEventSampler.setInstallSamplingRate(-0.1));
+        assertFalse(mEventSampler.setInstallSamplingRate(100.1));
+        assertFalse(mEventSampler.setRateLimit("test", 1, 0));
+        assertFalse(mEventSampler.shouldFilter(newEvent("test")));
+    }
+
+    @Test
+    public void eventSampling() {
+        assertTrue(mEventSampler.setEventSamplingRate(25));
+
+        /* Random under the rate keeps the event. */
+        when(mRandom.nextDouble()).thenReturn(0.2);
+        CommonSchemaEventLog log = newCommonSchemaEvent("test");
+        assertFalse(mEventSampler.shouldFilter(log));
+        assertEquals(25, log.getPopSample(), 0);
+        assertFalse(mEventSampler.shouldFilter(newEvent("test")));
+
+        /* Random above the rate drops the event. */
+        when(mRandom.nextDouble()).thenReturn(0.3);
+        assertTrue(mEventSampler.shouldFilter(newCommonSchemaEvent("test")));
+        assertTrue(mEventSampler.shouldFilter(newEvent("test")));
+        assertEquals(2, getCount(ANALYTICS_SAMPLED_OUT_EVENTS));
+    }
+
+    @Test
+    public void popSampleCombinesWithExistingValue() {
+        mEventSampler.setEventSamplingRate(50);
+        when(mRandom.nextDouble()).thenReturn(0.1);
+        CommonSchemaEventLog log = newCommonSchemaEvent("test");
+        log.setPopSample(10.0);
+        assertFalse(mEventSampler.shouldFilter(log));
+        assertEquals(5, log.getPopSample(), 0);
+    }
+
+    @Test
+    public void eventsForTransmissionTargetsAreSampledAfterConversion() {
+        mEventSampler.setEventSamplingRate(0);
+        EventLog log = newEvent("test");
+        log.addTransmissionTarget("token");
+        assertFalse(mEventSampler.shouldFilter(log));
+        assertTrue(mEventSampler.shouldFilter(newCommonSchemaEvent("test")));
+        assertEquals(1, getCount(ANALYTICS_SAMPLED_OUT_EVENTS));
+    }
+
+    @Test
+    public void installSampling() {
+        UUID installId = UUID.fromString("00000000-0000-4000-8000-000000001234");
+        when(IdHelper.getInstallId()).thenReturn(installId);
+        assertEquals(0x1234, EventSampler.getInstallBucket(installId));
+        double bucketRate = 0x1234 / 10000.0;
+
+        /* Install is just above the rate: everything dropped. */
+        mEventSampler.setInstallSamplingRate(bucketRate - 0.0001);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(mEventSampler.shouldFilter(newEvent("test")));
+        }
+        assertEquals(10, getCount(ANALYTICS_SAMPLED_OUT_EVENTS));
+
+        /* Install is under the rate: everything kept, random is not used. */
+        mEventSampler.setInstallSamplingRate(bucketRate + 0.0001);
+        CommonSchemaEventLog log = newCommonSchemaEvent("test");
+        assertFalse(mEventSampler.shouldFilter(log));
+        assertEquals(bucketRate + 0.0001, log.getPopSample(), 0.000001);
+        assertEquals(10, getCount(ANALYTICS_SAMPLED_OUT_EVENTS));
+    }
+
+    @Test
+    public void rateLimitPerEventName() {
+        assertTrue(mEventSampler.setRateLimit("limited", 2, 1000));
+
+        /* Burst consumes the bucket. */
+        assertFalse(mEventSampler.shouldFilter(newEvent("limited")));
+        assertFalse(mEventSampler.shouldFilter(newEvent("limited")));
+        assertTrue(mEventSampler.shouldFilter(newEvent("limited")));
+
+        /* Other names are not limited. */
+        for (int i = 0; i < 10; i++) {
+            assertFalse(mEventSampler.shouldFilter(newEvent("other")));
+        }
+
+        /* Refill half the period gives one token. */
+        spendTime(500);
+        assertFalse(mEventSampler.shouldFilter(newCommonSchemaEvent("limited")));
+        assertTrue(mEventSampler.shouldFilter(newCommonSchemaEvent("limited")));
+
+        /* Refill does not exceed burst size. */
+        spendTime(10000);
+        assertFalse(mEventSampler.shouldFilter(newEvent("limited")));
+        assertFalse(mEventSampler.shouldFilter(newEvent("limited")));
+        assertTrue(mEventSampler.shouldFilter(newEvent("limited")));
+        assertEquals(3, getCount(ANALYTICS_RATE_LIMITED_EVENTS));
+        assertEquals(0, getCount(ANALYTICS_SAMPLED_OUT_EVENTS));
+
+        /* Remove limit. */
+        mEventSampler.setRateLimit("limited", 0, 0);
+        assertFalse(mEventSampler.shouldFilter(newEvent("limited")));
+    }
+
+    @Test
+    public void defaultRateLimit() {
+        mEventSampler.setRateLimit(null, 1, 1000);
+        mEventSampler.setRateLimit("specific", 3, 1000);
+        assertFalse(mEventSampler.shouldFilter(newEvent("a")));
+        assertTrue(mEventSampler.shouldFilter(newEvent("a")));
+        assertFalse(mEventSampler.shouldFilter(newEvent("b")));
+        assertTrue(mEventSampler.shouldFilter(newEvent("b")));
+        assertFalse(mEventSampler.shouldFilter(newEvent("specific")));
+        assertFalse(mEventSampler.shouldFilter(newEvent("specific")));
+        assertFalse(mEventSampler.shouldFilter(newEvent("specific")));
+        assertTrue(mEventSampler.shouldFilter(newEvent("specific")));
+        assertEquals(3, getCount(ANALYTICS_RATE_LIMITED_EVENTS));
+    }
+
+    @Test
+    public void sampledOutEventsDoNotConsumeTokens() {
+        mEventSampler.setRateLimit("test", 1, 1000);
+        mEventSampler.setEventSamplingRate(50);
+        when(mRandom.nextDouble()).thenReturn(0.9);
+        assertTrue(mEventSampler.shouldFilter(newEvent("test")));
+        when(mRandom.nextDouble()).thenReturn(0.1);
+        assertFalse(mEventSampler.shouldFilter(newEvent("test")));
+        assertEquals(1, getCount(ANALYTICS_SAMPLED_OUT_EVENTS));
+        assertEquals(0, getCount(ANALYTICS_RATE_LIMITED_EVENTS));
+    }
+}
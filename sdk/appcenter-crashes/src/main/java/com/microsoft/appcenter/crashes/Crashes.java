@@ -1,7 +1,9 @@
 package com.microsoft.appcenter.crashes;
 
 import android.annotation.SuppressLint;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
@@ -30,6 +32,8 @@ import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 import com.microsoft.appcenter.utils.async.DefaultAppCenterFuture;
+import com.microsoft.appcenter.utils.metrics.MetricsRegistry;
+import com.microsoft.appcenter.utils.metrics.MetricsSnapshot;
 import com.microsoft.appcenter.utils.storage.StorageHelper;
 
 import org.json.JSONException;
@@ -50,7 +54,7 @@ import java.util.UUID;
  * Crashes service.
  */
 @SuppressWarnings("WeakerAccess")
-public class Crashes extends AbstractAppCenterService {
+public class Crashes extends AbstractAppCenterService implements ComponentCallbacks2 {
 
     /**
      * Constant for SEND crash report.
@@ -718,7 +722,9 @@ public class Crashes extends AbstractAppCenterService {
     }
 
     private void removeStoredThrowable(UUID id) {
-        mErrorReportCache.remove(id);
+        if (mErrorReportCache.remove(id) != null) {
+            updateErrorReportCacheBytes();
+        }
         WrapperSdkExceptionManager.deleteWrapperExceptionData(id);
         ErrorLogHelper.removeStoredThrowableFile(id);
     }
@@ -751,6 +757,7 @@ public class Crashes extends AbstractAppCenterService {
                     }
                     ErrorReport report = ErrorLogHelper.getErrorReportFromErrorLog(log, throwable);
                     mErrorReportCache.put(id, new ErrorLogReport(log, report));
+                    updateErrorReportCacheBytes();
                     return report;
                 } catch (ClassNotFoundException ignored) {
                     AppCenterLog.error(LOG_TAG, "Cannot read throwable file " + file.getName(), ignored);
@@ -762,6 +769,43 @@ public class Crashes extends AbstractAppCenterService {
         return null;
     }
 
+    /**
+     * Update the gauge of estimated heap bytes held by the error report cache.
+     */
+    private void updateErrorReportCacheBytes() {
+        long bytes = 0;
+        for (ErrorLogReport errorLogReport : mErrorReportCache.values()) {
+            bytes += errorLogReport.estimatedSize;
+        }
+        MetricsRegistry.getInstance().getGauge(MetricsSnapshot.MEMORY_ERROR_REPORT_CACHE_BYTES).set(bytes);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW || level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            return;
+        }
+        post(new Runnable() {
+
+            @Override
+            public void run() {
+
+                /* Reports are read again from their files when needed. */
+                mErrorReportCache.clear();
+                updateErrorReportCacheBytes();
+            }
+        });
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
     @VisibleForTesting
     CrashesListener getInstanceListener() {
         return mCrashesListener;
@@ -1078,13 +1122,30 @@ public class Crashes extends AbstractAppCenterService {
      */
     private static class ErrorLogReport {
 
+        /**
+         * Approximate heap bytes of a report without its stack traces.
+         */
+        private static final int REPORT_OVERHEAD_BYTES = 4096;
+
+        /**
+         * Approximate heap bytes of a stack frame.
+         */
+        private static final int FRAME_BYTES = 256;
+
         private final ManagedErrorLog log;
 
         private final ErrorReport report;
 
+        private final long estimatedSize;
+
         private ErrorLogReport(ManagedErrorLog log, ErrorReport report) {
             this.log = log;
             this.report = report;
+            long size = REPORT_OVERHEAD_BYTES;
+            for (Throwable cause = report.getThrowable(); cause != null; cause = cause.getCause()) {
+                size += (long) FRAME_BYTES * cause.getStackTrace().length;
+            }
+            this.estimatedSize = size;
         }
     }
 }
@@ -1,5 +1,6 @@
 package com.microsoft.appcenter.crashes;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.os.Looper;
 import android.os.SystemClock;
@@ -32,6 +33,9 @@ import com.microsoft.appcenter.utils.PrefStorageConstants;
 import com.microsoft.appcenter.utils.UUIDUtils;
 import com.microsoft.appcenter.utils.async.AppCenterConsumer;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
+import com.microsoft.appcenter.utils.metrics.Gauge;
+import com.microsoft.appcenter.utils.metrics.MetricsRegistry;
+import com.microsoft.appcenter.utils.metrics.MetricsSnapshot;
 import com.microsoft.appcenter.utils.storage.StorageHelper;
 
 import org.json.JSONException;
@@ -877,6 +881,53 @@ public class CrashesTest {
         assertNull(report);
     }
 
+    @Test
+    public void clearErrorReportCacheOnTrimMemory() throws IOException, ClassNotFoundException {
+        MetricsRegistry.unsetInstance();
+        mErrorLog.setDevice(mock(Device.class));
+        ErrorReport errorReport = ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, EXCEPTION);
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        File throwableFile = mock(File.class);
+        when(throwableFile.length()).thenReturn(1L);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(throwableFile);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, EXCEPTION)).thenReturn(errorReport);
+        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(EXCEPTION);
+        Crashes crashes = Crashes.getInstance();
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), mock(Channel.class), "", null, true);
+        Gauge cacheBytes = MetricsRegistry.getInstance().getGauge(MetricsSnapshot.MEMORY_ERROR_REPORT_CACHE_BYTES);
+
+        /* Cache the report. */
+        assertNotNull(crashes.buildErrorReport(mErrorLog));
+        long bytes = cacheBytes.get();
+        assertTrue(bytes > 0);
+
+        /* Hiding the UI or a moderate level keeps the cache. */
+        crashes.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        crashes.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals(bytes, cacheBytes.get());
+        assertNotNull(crashes.buildErrorReport(mErrorLog));
+        verifyStatic();
+        ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, EXCEPTION);
+
+        /* Running low clears the cache, the report is read again from its file. */
+        crashes.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(0, cacheBytes.get());
+        assertNotNull(crashes.buildErrorReport(mErrorLog));
+        assertEquals(bytes, cacheBytes.get());
+        verifyStatic(times(2));
+        ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, EXCEPTION);
+
+        /* Low memory clears it as well. */
+        crashes.onLowMemory();
+        assertEquals(0, cacheBytes.get());
+        assertNotNull(crashes.buildErrorReport(mErrorLog));
+        verifyStatic(times(3));
+        ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, EXCEPTION);
+    }
+
     @Test
     public void buildErrorReportError() throws IOException, ClassNotFoundException {
         mockStatic(ErrorLogHelper.class);
@@ -0,0 +1,288 @@
+package com.microsoft.appcenter.okhttp;
+
+import android.os.AsyncTask;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import com.microsoft.appcenter.http.HttpClient;
+import com.microsoft.appcenter.http.HttpException;
+import com.microsoft.appcenter.http.HttpUtils;
+import com.microsoft.appcenter.http.ServiceCall;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_TYPE_KEY;
+import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
+import static com.microsoft.appcenter.http.DefaultHttpClient.RETRY_AFTER_KEY;
+
+/**
+ * HTTP client running App Center calls on an OkHttp client provided by the application.
+ * <p>
+ * Calls share the connection pool, the dispatcher and the HTTP/2 connections of that client,
+ * so that parallel batches are multiplexed on a single connection when the server supports HTTP/2.
+ * Use it with {@link com.microsoft.appcenter.AppCenter#setHttpClient(HttpClient)} before App Center is configured.
+ * <p>
+ * Like with the default HTTP client, the request body is built on a background thread, even when calls are made
+ * from the UI thread, and callbacks are called on the UI thread.
+ */
+public class OkHttpClientAdapter implements HttpClient {
+
+    /**
+     * Default content type.
+     */
+    private static final String CONTENT_TYPE_VALUE = "application/json";
+
+    /**
+     * Character encoding.
+     */
+    private static final String CHARSET_NAME = "UTF-8";
+
+    /**
+     * OkHttp client provided by the application.
+     */
+    private final OkHttpClient mOkHttpClient;
+
+    /**
+     * Executor building requests.
+     */
+    private final Executor mExecutor;
+
+    /**
+     * Init.
+     *
+     * @param okHttpClient OkHttp client of the application.
+     */
+    public OkHttpClientAdapter(@NonNull OkHttpClient okHttpClient) {
+        this(okHttpClient, AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Init.
+     *
+     * @param okHttpClient OkHttp client of the application.
+     * @param executor     executor building requests.
+     */
+    @VisibleForTesting
+    OkHttpClientAdapter(OkHttpClient okHttpClient, Executor executor) {
+        mOkHttpClient = okHttpClient;
+        mExecutor = executor;
+    }
+
+    @Override
+    public ServiceCall callAsync(String url, String method, Map<String, String> headers, CallTemplate callTemplate, ServiceCallback serviceCallback) {
+        AdapterCall call = new AdapterCall(url, method, headers, callTemplate, serviceCallback);
+        mExecutor.execute(call);
+        return call;
+    }
+
+    /**
+     * Call building its request on a background thread before enqueuing it in OkHttp.
+     */
+    private class AdapterCall implements ServiceCall, Runnable, Callback {
+
+        private final String mUrl;
+
+        private final String mMethod;
+
+        private final Map<String, String> mHeaders;
+
+        private final CallTemplate mCallTemplate;
+
+        private final ServiceCallback mServiceCallback;
+
+        /**
+         * OkHttp call, null until the request is built.
+         */
+        private Call mCall;
+
+        /**
+         * True if canceled.
+         */
+        private boolean mCanceled;
+
+        AdapterCall(String url, String method, Map<String, String> headers, CallTemplate callTemplate, ServiceCallback serviceCallback) {
+            mUrl = url;
+            mMethod = method;
+            mHeaders = headers;
+            mCallTemplate = callTemplate;
+            mServiceCallback = serviceCallback;
+        }
+
+        @Override
+        public void run() {
+            if (isCanceled()) {
+                return;
+            }
+
+            /* Build request, reporting errors asynchronously like the call itself. */
+            Call call;
+            try {
+                call = mOkHttpClient.newCall(buildRequest(mUrl, mMethod, mHeaders, mCallTemplate));
+            } catch (Exception e) {
+                notifyFailure(e);
+                return;
+            }
+            boolean canceled;
+            synchronized (this) {
+                mCall = call;
+                canceled = mCanceled;
+            }
+
+            /* Canceled while building the request. */
+            if (canceled) {
+                return;
+            }
+            call.enqueue(this);
+        }
+
+        @Override
+        public void cancel() {
+            Call call;
+            synchronized (this) {
+                mCanceled = true;
+                call = mCall;
+            }
+            if (call != null) {
+                call.cancel();
+            }
+        }
+
+        synchronized boolean isCanceled() {
+            return mCanceled;
+        }
+
+        @Override
+        public void onFailure(@NonNull Call call, @NonNull IOException e) {
+            notifyFailure(e);
+        }
+
+        @Override
+        public void onResponse(@NonNull Call call, @NonNull Response response) {
+            String payload;
+            try {
+
+                /* Closing the response without reading the body is enough to keep the connection reusable. */
+                ResponseBody body = response.body();
+                boolean discardResponseBody = HttpUtils.shouldDiscardResponseBody(mCallTemplate);
+                boolean discardBody = discardResponseBody && response.isSuccessful() && AppCenterLog.getLogLevel() > Log.VERBOSE;
+                payload = body == null || discardBody ? "" : body.string();
+            } catch (IOException e) {
+                notifyFailure(e);
+                return;
+            } finally {
+                response.close();
+            }
+            int status = response.code();
+            AppCenterLog.verbose(LOG_TAG, "HTTP response status=" + status + " protocol=" + response.protocol() + " payload=" + payload);
+
+            /* Accept all 2xx codes. */
+            if (status >= 200 && status < 300) {
+                notifySuccess(payload);
+            } else {
+                Map<String, String> responseHeaders = new HashMap<>();
+                String retryAfter = response.header(RETRY_AFTER_KEY);
+                if (retryAfter != null) {
+                    responseHeaders.put(RETRY_AFTER_KEY, retryAfter);
+                }
+                notifyFailure(new HttpException(status, payload, responseHeaders));
+            }
+        }
+
+        /**
+         * Call back success on the UI thread unless the call was canceled.
+         */
+        private void notifySuccess(final String payload) {
+            HandlerUtils.runOnUiThread(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (!isCanceled()) {
+                        mServiceCallback.onCallSucceeded(payload);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Call back failure on the UI thread unless the call was canceled.
+         */
+        private void notifyFailure(final Exception e) {
+            HandlerUtils.runOnUiThread(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (!isCanceled()) {
+                        mServiceCallback.onCallFailed(e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Build the OkHttp request.
+     */
+    private static Request buildRequest(String url, String method, Map<String, String> headers, CallTemplate callTemplate) throws Exception {
+
+        /* Build payload now if POST. */
+        RequestBody body = null;
+        if (METHOD_POST.equals(method)) {
+            byte[] binaryPayload = new byte[0];
+            if (callTemplate != null) {
+                String payload = callTemplate.buildRequestBody();
+                AppCenterLog.verbose(LOG_TAG, payload);
+                binaryPayload = payload.getBytes(CHARSET_NAME);
+
+                /* If no content type specified, assume json. */
+                if (!headers.containsKey(CONTENT_TYPE_KEY)) {
+                    headers.put(CONTENT_TYPE_KEY, CONTENT_TYPE_VALUE);
+                }
+
+                /* Compress payload if the encoding policy finds it worth it. */
+                binaryPayload = HttpUtils.encodePayload(binaryPayload, headers);
+            }
+            String contentType = headers.get(CONTENT_TYPE_KEY);
+            body = RequestBody.create(contentType == null ? null : MediaType.parse(contentType), binaryPayload);
+        }
+        Request.Builder builder = new Request.Builder().url(url).method(method, body);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+
+        /* Call back before the payload is sent. */
+        if (callTemplate != null) {
+            callTemplate.onBeforeCalling(new URL(url), headers);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void close() {
+
+        /* No-op. The OkHttp client belongs to the application and a decorator tracks calls to cancel. */
+    }
+
+    @Override
+    public void reopen() {
+
+        /* Nothing to do. */
+    }
+}
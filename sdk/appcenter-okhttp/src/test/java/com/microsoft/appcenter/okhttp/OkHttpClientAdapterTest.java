@@ -0,0 +1,286 @@
+package com.microsoft.appcenter.okhttp;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.microsoft.appcenter.http.HttpClient;
+import com.microsoft.appcenter.http.HttpException;
+import com.microsoft.appcenter.http.ServiceCall;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.test.TestUtils;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
+
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+import static com.microsoft.appcenter.http.DefaultContentEncodingPolicy.MIN_GZIP_LENGTH;
+import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_GET;
+import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
+import static com.microsoft.appcenter.http.HttpUtils.CONTENT_ENCODING_KEY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@SuppressWarnings("unused")
+@PrepareForTest({HandlerUtils.class, AppCenterLog.class})
+public class OkHttpClientAdapterTest {
+
+    private static final String URL = "https://mock/logs?api-version=1.0.0";
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    private OkHttpClient mOkHttpClient;
+
+    private Call mCall;
+
+    private ServiceCallback mServiceCallback;
+
+    /**
+     * Runs request building synchronously.
+     */
+    private final Executor mExecutor = new Executor() {
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+        mockStatic(HandlerUtils.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(HandlerUtils.class);
+        HandlerUtils.runOnUiThread(any(Runnable.class));
+        mOkHttpClient = mock(OkHttpClient.class);
+        mCall = mock(Call.class);
+        when(mOkHttpClient.newCall(any(Request.class))).thenReturn(mCall);
+        mServiceCallback = mock(ServiceCallback.class);
+    }
+
+    private Request captureRequest() {
+        ArgumentCaptor<Request> request = ArgumentCaptor.forClass(Request.class);
+        verify(mOkHttpClient).newCall(request.capture());
+        return request.getValue();
+    }
+
+    private Callback captureCallback() {
+        ArgumentCaptor<Callback> callback = ArgumentCaptor.forClass(Callback.class);
+        verify(mCall).enqueue(callback.capture());
+        return callback.getValue();
+    }
+
+    private static Response response(Request request, int code, String body) {
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_2)
+                .code(code)
+                .message("mock")
+                .body(ResponseBody.create(null, body))
+                .build();
+    }
+
+    private static String bodyOf(Request request) throws IOException {
+        Buffer buffer = new Buffer();
+        RequestBody body = request.body();
+        assertNotNull(body);
+        body.writeTo(buffer);
+        return buffer.readUtf8();
+    }
+
+    @Test
+    public void post200() throws Exception {
+        HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn("{a:1,b:2}");
+        Map<String, String> headers = new HashMap<>();
+        headers.put("App-Secret", "SHORT");
+        new OkHttpClientAdapter(mOkHttpClient, mExecutor).callAsync(URL, METHOD_POST, headers, callTemplate, mServiceCallback);
+
+        /* Verify request. */
+        Request request = captureRequest();
+        assertEquals("POST", request.method());
+        assertEquals("SHORT", request.header("App-Secret"));
+        assertEquals("application/json", request.header("Content-Type"));
+        assertNull(request.header(CONTENT_ENCODING_KEY));
+        assertEquals("{a:1,b:2}", bodyOf(request));
+        verify(callTemplate).onBeforeCalling(eq(new URL(URL)), anyMapOf(String.class, String.class));
+
+        /* Simulate response. */
+        Callback callback = captureCallback();
+        callback.onResponse(mCall, response(request, 200, "OK"));
+        verify(mServiceCallback).onCallSucceeded("OK");
+        verifyNoMoreInteractions(mServiceCallback);
+    }
+
+    @Test
+    public void postGzip() throws Exception {
+        HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn(TestUtils.generateString(MIN_GZIP_LENGTH, '*'));
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "text/plain");
+        new OkHttpClientAdapter(mOkHttpClient, mExecutor).callAsync(URL, METHOD_POST, headers, callTemplate, mServiceCallback);
+        Request request = captureRequest();
+        assertEquals("text/plain", request.header("Content-Type"));
+        assertEquals("gzip", request.header(CONTENT_ENCODING_KEY));
+        RequestBody body = request.body();
+        assertNotNull(body);
+        assertTrue(body.contentLength() < MIN_GZIP_LENGTH);
+    }
+
+    @Test
+    public void discardResponseBody() throws Exception {
+        when(AppCenterLog.getLogLevel()).thenReturn(Log.WARN);
+        HttpClient.DiscardableResponseCallTemplate callTemplate = mock(HttpClient.DiscardableResponseCallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn("{}");
+        when(callTemplate.shouldDiscardResponseBody()).thenReturn(true);
+        new OkHttpClientAdapter(mOkHttpClient, mExecutor).callAsync(URL, METHOD_POST, new HashMap<String, String>(), callTemplate, mServiceCallback);
+        Request request = captureRequest();
+        Callback callback = captureCallback();
+        callback.onResponse(mCall, response(request, 200, "OK"));
+        verify(mServiceCallback).onCallSucceeded("");
+
+        /* Error body is still read. */
+        callback.onResponse(mCall, response(request, 503, "Busy"));
+        verify(mServiceCallback).onCallFailed(new HttpException(503, "Busy"));
+    }
+
+    @Test
+    public void postWithoutCallTemplate() throws Exception {
+        new OkHttpClientAdapter(mOkHttpClient, mExecutor).callAsync(URL, METHOD_POST, new HashMap<String, String>(), null, mServiceCallback);
+        Request request = captureRequest();
+        assertNull(request.header("Content-Type"));
+        assertEquals("", bodyOf(request));
+    }
+
+    @Test
+    public void get503() {
+        new OkHttpClientAdapter(mOkHttpClient, mExecutor).callAsync(URL, METHOD_GET, new HashMap<String, String>(), null, mServiceCallback);
+        Request request = captureRequest();
+        assertEquals("GET", request.method());
+        assertNull(request.body());
+        captureCallback().onResponse(mCall, response(request, 503, "Busy"));
+        verify(mServiceCallback).onCallFailed(new HttpException(503, "Busy"));
+        verifyNoMoreInteractions(mServiceCallback);
+    }
+
+    @Test
+    public void networkFailure() {
+        new OkHttpClientAdapter(mOkHttpClient, mExecutor).callAsync(URL, METHOD_GET, new HashMap<String, String>(), null, mServiceCallback);
+        IOException exception = new IOException("mock");
+        captureCallback().onFailure(mCall, exception);
+        verify(mServiceCallback).onCallFailed(exception);
+        verifyNoMoreInteractions(mServiceCallback);
+    }
+
+    @Test
+    public void failedSerialization() throws Exception {
+        HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
+        JSONException exception = new JSONException("mock");
+        when(callTemplate.buildRequestBody()).thenThrow(exception);
+        ServiceCall serviceCall = new OkHttpClientAdapter(mOkHttpClient, mExecutor).callAsync(URL, METHOD_POST, new HashMap<String, String>(), callTemplate, mServiceCallback);
+        verify(mServiceCallback).onCallFailed(exception);
+        verifyZeroInteractions(mOkHttpClient);
+
+        /* Cancel is allowed but does nothing. */
+        serviceCall.cancel();
+    }
+
+    @Test
+    public void cancel() {
+        OkHttpClientAdapter httpClient = new OkHttpClientAdapter(mOkHttpClient, mExecutor);
+        ServiceCall serviceCall = httpClient.callAsync(URL, METHOD_GET, new HashMap<String, String>(), null, mServiceCallback);
+        Request request = captureRequest();
+        serviceCall.cancel();
+        verify(mCall).cancel();
+
+        /* No callback once canceled. */
+        when(mCall.isCanceled()).thenReturn(true);
+        Callback callback = captureCallback();
+        callback.onResponse(mCall, response(request, 200, "OK"));
+        callback.onFailure(mCall, new IOException("Canceled"));
+        verifyZeroInteractions(mServiceCallback);
+
+        /* Closing does not affect the application client. */
+        httpClient.close();
+        httpClient.reopen();
+        verifyNoMoreInteractions(mOkHttpClient);
+    }
+
+    @Test
+    public void buildRequestInBackground() throws Exception {
+        Executor executor = mock(Executor.class);
+        HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn("{}");
+        new OkHttpClientAdapter(mOkHttpClient, executor).callAsync(URL, METHOD_POST, new HashMap<String, String>(), callTemplate, mServiceCallback);
+
+        /* Nothing is built on the calling thread. */
+        ArgumentCaptor<Runnable> build = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).execute(build.capture());
+        verifyZeroInteractions(callTemplate);
+        verifyZeroInteractions(mOkHttpClient);
+        build.getValue().run();
+        verify(callTemplate).buildRequestBody();
+        captureRequest();
+        captureCallback();
+    }
+
+    @Test
+    public void cancelBeforeBuildingRequest() throws Exception {
+        Executor executor = mock(Executor.class);
+        HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
+        ServiceCall serviceCall = new OkHttpClientAdapter(mOkHttpClient, executor).callAsync(URL, METHOD_POST, new HashMap<String, String>(), callTemplate, mServiceCallback);
+        ArgumentCaptor<Runnable> build = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).execute(build.capture());
+        serviceCall.cancel();
+
+        /* Canceled call is not built. */
+        build.getValue().run();
+        verify(callTemplate, never()).buildRequestBody();
+        verifyZeroInteractions(mOkHttpClient);
+        verifyZeroInteractions(mServiceCallback);
+    }
+}
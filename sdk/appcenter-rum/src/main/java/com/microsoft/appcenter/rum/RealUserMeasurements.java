@@ -8,9 +8,9 @@ import android.util.Log;
 import com.microsoft.appcenter.AbstractAppCenterService;
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.channel.Channel;
-import com.microsoft.appcenter.http.DefaultHttpClient;
 import com.microsoft.appcenter.http.HttpClient;
 import com.microsoft.appcenter.http.HttpClientNetworkStateHandler;
+import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.NetworkStateHelper;
@@ -217,7 +217,7 @@ public class RealUserMeasurements extends AbstractAppCenterService {
 
             /* Configure HTTP client with no retries but handling network state. */
             NetworkStateHelper networkStateHelper = NetworkStateHelper.getSharedInstance(mContext);
-            mHttpClient = new HttpClientNetworkStateHandler(new DefaultHttpClient(), networkStateHelper);
+            mHttpClient = new HttpClientNetworkStateHandler(HttpUtils.getBaseHttpClient(), networkStateHelper);
 
             /* Get configuration. */
             getConfiguration(0, rumKey, mHttpClient);
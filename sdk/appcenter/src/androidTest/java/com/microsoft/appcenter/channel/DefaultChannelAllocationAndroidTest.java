@@ -0,0 +1,117 @@
+package com.microsoft.appcenter.channel;
+
+import android.content.Context;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.microsoft.appcenter.ingestion.Ingestion;
+import com.microsoft.appcenter.ingestion.models.json.MockLog;
+import com.microsoft.appcenter.persistence.Persistence;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Measure objects allocated by enqueuing logs, depending on the log level.
+ */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class DefaultChannelAllocationAndroidTest {
+
+    private static final String TEST_GROUP = "group_test";
+
+    private static final int LOG_COUNT = 1000;
+
+    /**
+     * Enqueue logs and count objects allocated by the current thread meanwhile.
+     *
+     * @param logLevel log level to use.
+     * @return objects allocated per enqueued log.
+     */
+    @SuppressWarnings("deprecation")
+    private static double measureAllocationsPerLog(int logLevel) {
+        Context context = InstrumentationRegistry.getTargetContext();
+        DefaultChannel channel = new DefaultChannel(context, "secret", new NoOpPersistence(), mock(Ingestion.class), new Handler(Looper.getMainLooper()));
+        channel.addGroup(TEST_GROUP, Integer.MAX_VALUE, Long.MAX_VALUE / 2, 1, null, null);
+        MockLog[] logs = new MockLog[LOG_COUNT + 1];
+        for (int i = 0; i < logs.length; i++) {
+            logs[i] = new MockLog();
+        }
+        AppCenterLog.setLogLevel(logLevel);
+        try {
+
+            /* Warm up: the first log caches device properties. */
+            channel.enqueue(logs[0], TEST_GROUP);
+            Debug.resetThreadAllocCount();
+            Debug.startAllocCounting();
+            for (int i = 1; i <= LOG_COUNT; i++) {
+                channel.enqueue(logs[i], TEST_GROUP);
+            }
+            Debug.stopAllocCounting();
+            return (double) Debug.getThreadAllocCount() / LOG_COUNT;
+        } finally {
+            AppCenterLog.setLogLevel(Log.ASSERT);
+            channel.removeGroup(TEST_GROUP);
+            channel.shutdown();
+        }
+    }
+
+    @Test
+    public void enqueueDoesNotBuildMessagesWhenNotLogged() {
+        double verboseAllocations = measureAllocationsPerLog(Log.VERBOSE);
+        double warnAllocations = measureAllocationsPerLog(Log.WARN);
+        Log.i("AppCenterTest", "Objects allocated per enqueued log: verbose=" + verboseAllocations + " warn=" + warnAllocations);
+
+        /* Each debug message builds at least a string builder, its buffer and the resulting string. */
+        assertTrue(verboseAllocations - warnAllocations >= 3);
+    }
+
+    /**
+     * Persistence keeping nothing, to measure the channel only.
+     */
+    private static class NoOpPersistence extends Persistence {
+
+        @Override
+        public long putLog(@NonNull String group, @NonNull com.microsoft.appcenter.ingestion.models.Log log) {
+            return 0;
+        }
+
+        @Override
+        public void deleteLogs(@NonNull String group, @NonNull String id) {
+        }
+
+        @Override
+        public void deleteLogs(String group) {
+        }
+
+        @Override
+        public int countLogs(@NonNull String group) {
+            return 0;
+        }
+
+        @Override
+        public String getLogs(@NonNull String group, int limit, @NonNull List<com.microsoft.appcenter.ingestion.models.Log> outLogs) {
+            return null;
+        }
+
+        @Override
+        public void clearPendingLogState() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
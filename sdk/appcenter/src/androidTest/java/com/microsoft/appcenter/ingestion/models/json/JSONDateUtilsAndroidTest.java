@@ -3,7 +3,13 @@ package com.microsoft.appcenter.ingestion.models.json;
 import org.json.JSONException;
 import org.junit.Test;
 
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
 
 import static org.junit.Assert.assertEquals;
 
@@ -25,6 +31,36 @@ public class JSONDateUtilsAndroidTest {
         assertEquals(date, dateParsed);
     }
 
+    @Test
+    public void sameResultsAsDateFormat() throws JSONException, ParseException {
+        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        long[] times = {0, -1, 86399999, 86400000, 951782400000L, 253402300799999L, 253402300800000L, -62135596800000L};
+        for (long time : times) {
+            Date date = new Date(time);
+            String expected = dateFormat.format(date);
+            assertEquals(expected, JSONDateUtils.toString(date));
+            assertEquals(dateFormat.parse(expected), JSONDateUtils.toDate(expected));
+        }
+        Random random = new Random();
+        for (int i = 0; i < 1000; i++) {
+            Date date = new Date((long) (random.nextDouble() * 253402300800000L));
+            String expected = dateFormat.format(date);
+            assertEquals(expected, JSONDateUtils.toString(date));
+            assertEquals(date, JSONDateUtils.toDate(expected));
+        }
+    }
+
+    @Test
+    public void parseLenientDates() throws JSONException {
+
+        /* Strings not in the exact format are still parsed like before. */
+        assertEquals(1488448800000L, JSONDateUtils.toDate("2017-02-30T10:00:00.000Z").getTime());
+        assertEquals(1514764800000L, JSONDateUtils.toDate("2017-13-01T00:00:00.000Z").getTime());
+        assertEquals(1483315200000L, JSONDateUtils.toDate("2017-01-01T24:00:00.000Z").getTime());
+        assertEquals(1483264800000L, JSONDateUtils.toDate("2017-1-01T10:00:00.000Z").getTime());
+    }
+
     @SuppressWarnings("ResultOfMethodCallIgnored")
     @Test(expected = JSONException.class)
     public void formatNullDate() throws JSONException {
@@ -40,4 +76,9 @@ public class JSONDateUtilsAndroidTest {
     public void parseInvalidDate() throws JSONException {
         JSONDateUtils.toDate("Fri Jul 07 17:43:56 PDT 2017");
     }
+
+    @Test(expected = JSONException.class)
+    public void parseInvalidDigits() throws JSONException {
+        JSONDateUtils.toDate("2017-01-01T1a:00:00.000Z");
+    }
 }
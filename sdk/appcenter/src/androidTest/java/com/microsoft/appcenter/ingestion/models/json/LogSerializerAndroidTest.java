@@ -5,13 +5,19 @@ import com.microsoft.appcenter.ingestion.models.CustomPropertiesLog;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.StartServiceLog;
+import com.microsoft.appcenter.ingestion.models.one.Data;
+import com.microsoft.appcenter.ingestion.models.one.MockCommonSchemaLog;
+import com.microsoft.appcenter.ingestion.models.one.MockCommonSchemaLogFactory;
 import com.microsoft.appcenter.utils.UUIDUtils;
 
+import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -163,6 +169,123 @@ public class LogSerializerAndroidTest {
         serializer.serializeLog(invalidTypeLog);
     }
 
+    @Test
+    public void binaryLog() throws JSONException {
+        MockLog log = AndroidTestUtils.generateMockLog();
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        byte[] payload = serializer.serializeLogBinary(log);
+        Assert.assertEquals(log, serializer.deserializeLogBinary(payload, LogSerializer.UNKNOWN_TYPE_CODE));
+        Assert.assertEquals(log, serializer.deserializeLogBinary(payload, serializer.getTypeCode(MOCK_LOG_TYPE)));
+
+        /* Binary format is smaller than JSON. */
+        Assert.assertTrue(payload.length < serializer.serializeLog(log).getBytes().length);
+    }
+
+    @Test
+    public void binaryCustomPropertiesLog() throws JSONException {
+        CustomPropertiesLog log = new CustomPropertiesLog();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("t1", "test");
+        properties.put("t2", new Date(0));
+        properties.put("t3", 0);
+        properties.put("t4", false);
+        properties.put("t5", null);
+        properties.put("t6", -1.5);
+        log.setProperties(properties);
+        log.setSid(UUIDUtils.randomUUID());
+        log.setTimestamp(new Date());
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(CustomPropertiesLog.TYPE, new CustomPropertiesLogFactory());
+        byte[] payload = serializer.serializeLogBinary(log);
+        Assert.assertEquals(log, serializer.deserializeLogBinary(payload, LogSerializer.UNKNOWN_TYPE_CODE));
+    }
+
+    @Test
+    public void binaryCommonSchemaLog() throws JSONException {
+        MockCommonSchemaLog log = new MockCommonSchemaLog();
+        log.setName("test");
+        log.setIKey("o:test");
+        log.setTimestamp(new Date());
+        log.setVer("3.0");
+        log.setData(new Data());
+        JSONObject nested = new JSONObject();
+        nested.put("b", "\u00e9t\u00e9");
+        nested.put("c", new JSONArray().put(1).put(JSONObject.NULL).put(true));
+        log.getData().getProperties().put("a", 42.5);
+        log.getData().getProperties().put("nested", nested);
+        log.getData().getProperties().put("long", Long.MIN_VALUE);
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(MockCommonSchemaLog.TYPE, new MockCommonSchemaLogFactory());
+        byte[] payload = serializer.serializeLogBinary(log);
+        Log actualLog = serializer.deserializeLogBinary(payload, LogSerializer.UNKNOWN_TYPE_CODE);
+        Assert.assertEquals(log, actualLog);
+        Assert.assertEquals(serializer.serializeLog(log), serializer.serializeLog(actualLog));
+    }
+
+    @Test(expected = JSONException.class)
+    public void deserializeBinaryUnsupportedVersion() throws JSONException {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        byte[] payload = serializer.serializeLogBinary(AndroidTestUtils.generateMockLog());
+        payload[1]++;
+        serializer.deserializeLogBinary(payload, LogSerializer.UNKNOWN_TYPE_CODE);
+    }
+
+    @Test(expected = JSONException.class)
+    public void deserializeBinaryTruncated() throws JSONException {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        byte[] payload = serializer.serializeLogBinary(AndroidTestUtils.generateMockLog());
+        serializer.deserializeLogBinary(Arrays.copyOf(payload, payload.length - 1), LogSerializer.UNKNOWN_TYPE_CODE);
+    }
+
+    @Test(expected = JSONException.class)
+    public void deserializeBinaryJson() throws JSONException {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        String payload = serializer.serializeLog(AndroidTestUtils.generateMockLog());
+        serializer.deserializeLogBinary(payload.getBytes(), LogSerializer.UNKNOWN_TYPE_CODE);
+    }
+
+    @Test
+    public void mixedTypes() throws JSONException {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        serializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
+        serializer.addLogFactory(CustomPropertiesLog.TYPE, new CustomPropertiesLogFactory());
+        Assert.assertEquals(0, serializer.getTypeCode(MOCK_LOG_TYPE));
+        Assert.assertEquals(1, serializer.getTypeCode(StartServiceLog.TYPE));
+        Assert.assertEquals(2, serializer.getTypeCode(CustomPropertiesLog.TYPE));
+        Assert.assertEquals(LogSerializer.UNKNOWN_TYPE_CODE, serializer.getTypeCode("unknown"));
+
+        /* Registering again keeps the code. */
+        serializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
+        Assert.assertEquals(1, serializer.getTypeCode(StartServiceLog.TYPE));
+
+        /* Deserialize a mixed batch by code. */
+        StartServiceLog startServiceLog = new StartServiceLog();
+        startServiceLog.setServices(Collections.singletonList("FIRST"));
+        startServiceLog.setTimestamp(new Date());
+        CustomPropertiesLog customPropertiesLog = new CustomPropertiesLog();
+        customPropertiesLog.setProperties(Collections.<String, Object>singletonMap("key", "value"));
+        customPropertiesLog.setTimestamp(new Date());
+        List<Log> logs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            logs.add(AndroidTestUtils.generateMockLog());
+            logs.add(startServiceLog);
+            logs.add(customPropertiesLog);
+        }
+        for (Log log : logs) {
+            byte[] payload = serializer.serializeLogBinary(log);
+            Assert.assertEquals(log, serializer.deserializeLogBinary(payload, serializer.getTypeCode(log.getType())));
+        }
+
+        /* An out of range code falls back to the type in the payload. */
+        byte[] payload = serializer.serializeLogBinary(startServiceLog);
+        Assert.assertEquals(startServiceLog, serializer.deserializeLogBinary(payload, 42));
+    }
+
     @Test
     public void toCommonSchemaLog() {
         LogFactory logFactory = mock(LogFactory.class);
@@ -172,4 +295,9 @@ public class LogSerializerAndroidTest {
         serializer.toCommonSchemaLog(log);
         verify(logFactory).toCommonSchemaLogs(log);
     }
-}
\ No newline at end of file
+
+    @Test(expected = IllegalArgumentException.class)
+    public void toCommonSchemaLogUnknownType() {
+        new DefaultLogSerializer().toCommonSchemaLog(AndroidTestUtils.generateMockLog());
+    }
+}
@@ -48,6 +48,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
@@ -114,6 +115,10 @@ public class DatabasePersistenceAndroidTest {
             /* Count logs. */
             assertEquals(1, persistence.countLogs("test-p1"));
 
+            /* Verify the log is stored in the binary format. */
+            ContentValues values = persistence.mDatabaseStorage.get(DatabasePersistence.COLUMN_GROUP, "test-p1");
+            assertNotNull(values.getAsByteArray(DatabasePersistence.COLUMN_LOG));
+
             /* Get a log from persistence. */
             List<Log> outputLogs = new ArrayList<>();
             persistence.getLogs("test-p1", 1, outputLogs);
@@ -316,6 +321,49 @@ public class DatabasePersistenceAndroidTest {
         }
     }
 
+    @Test
+    public void countLogsAcrossGroupsWhenFull() throws PersistenceException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext, 2, DatabasePersistence.SCHEMA, 3);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Load counts before storing logs so that they are updated incrementally. */
+            assertEquals(0, persistence.countLogs("test-p1"));
+            persistence.putLog("test-p1", AndroidTestUtils.generateMockLog());
+            persistence.putLog("test-p2", AndroidTestUtils.generateMockLog());
+            persistence.putLog("test-p2", AndroidTestUtils.generateMockLog());
+            assertEquals(1, persistence.countLogs("test-p1"));
+            assertEquals(2, persistence.countLogs("test-p2"));
+
+            /* Storing another log purges the oldest one, of another group. */
+            persistence.putLog("test-p3", AndroidTestUtils.generateMockLog());
+            assertEquals(0, persistence.countLogs("test-p1"));
+            assertEquals(2, persistence.countLogs("test-p2"));
+            assertEquals(1, persistence.countLogs("test-p3"));
+
+            /* Deleting sent logs updates count. */
+            List<Log> outputLogs = new ArrayList<>();
+            String id = persistence.getLogs("test-p2", 1, outputLogs);
+            assertNotNull(id);
+            persistence.deleteLogs("test-p2", id);
+            assertEquals(1, persistence.countLogs("test-p2"));
+            persistence.deleteLogs("test-p2");
+            assertEquals(0, persistence.countLogs("test-p2"));
+            assertEquals(1, persistence.countLogs("test-p3"));
+        } finally {
+
+            /* Close. */
+            //noinspection ThrowFromFinallyBlock
+            persistence.close();
+        }
+    }
+
     @Test(expected = PersistenceException.class)
     public void putLogException() throws PersistenceException, JSONException {
 
@@ -324,7 +372,7 @@ public class DatabasePersistenceAndroidTest {
 
         /* Set a mock log serializer. */
         LogSerializer logSerializer = mock(LogSerializer.class);
-        doThrow(new JSONException("JSON exception")).when(logSerializer).serializeLog(any(Log.class));
+        doThrow(new JSONException("JSON exception")).when(logSerializer).serializeLogBinary(any(Log.class));
         persistence.setLogSerializer(logSerializer);
         try {
 
@@ -575,7 +623,7 @@ public class DatabasePersistenceAndroidTest {
                 .doThrow(new JSONException("JSON exception"))
                 /* Return a normal log for further calls. */
                 .doReturn(AndroidTestUtils.generateMockLog())
-                .when(logSerializer).deserializeLog(anyString(), anyString());
+                .when(logSerializer).deserializeLogBinary(any(byte[].class), anyInt());
         persistence.setLogSerializer(logSerializer);
         try {
 
@@ -689,6 +737,69 @@ public class DatabasePersistenceAndroidTest {
             assertNotNull(token);
             assertNotEquals("test-guid", token);
             assertEquals("test-guid", CryptoUtils.getInstance(sContext).decrypt(token, false).getDecryptedData());
+
+            /* Verify type is stored as a code. */
+            assertNull(values.getAsString(DatabasePersistence.COLUMN_DATA_TYPE));
+            assertNotNull(values.getAsInteger(DatabasePersistence.COLUMN_DATA_TYPE_CODE));
+        } finally {
+
+            /* Close. */
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void upgradeTypeToCode() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence with schema storing types as text. */
+        ContentValues oldSchema = new ContentValues(DatabasePersistence.SCHEMA);
+        oldSchema.remove(DatabasePersistence.COLUMN_DATA_TYPE_CODE);
+        StorageHelper.DatabaseStorage databaseStorage = StorageHelper.DatabaseStorage.getDatabaseStorage(DatabasePersistence.DATABASE, DatabasePersistence.TABLE, 2, oldSchema, new DatabaseManager.Listener() {
+
+            @Override
+            public boolean onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+                return false;
+            }
+
+            @Override
+            public void onError(String operation, RuntimeException e) {
+                throw e;
+            }
+        });
+
+        /* Init log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+
+        /* Insert old data before upgrade. */
+        Log oldLog = AndroidTestUtils.generateMockLog();
+        try {
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(DatabasePersistence.COLUMN_GROUP, "test");
+            contentValues.put(DatabasePersistence.COLUMN_LOG, logSerializer.serializeLogBinary(oldLog));
+            contentValues.put(DatabasePersistence.COLUMN_DATA_TYPE, oldLog.getType());
+            databaseStorage.put(contentValues);
+        } finally {
+
+            /* Close. */
+            databaseStorage.close();
+        }
+
+        /* Upgrade. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Get old data. */
+            List<Log> outputLogs = new ArrayList<>();
+            persistence.getLogs("test", 1, outputLogs);
+            assertEquals(1, outputLogs.size());
+            assertEquals(oldLog, outputLogs.get(0));
+
+            /* Verify type was migrated to a code. */
+            ContentValues values = persistence.mDatabaseStorage.get(DatabasePersistence.COLUMN_GROUP, "test");
+            assertNull(values.getAsString(DatabasePersistence.COLUMN_DATA_TYPE));
+            assertNotNull(values.getAsInteger(DatabasePersistence.COLUMN_DATA_TYPE_CODE));
         } finally {
 
             /* Close. */
@@ -132,6 +132,10 @@ public class StorageHelperAndroidTest {
         sContext.deleteDatabase("test-databaseStorageScannerRemove");
         sContext.deleteDatabase("test-databaseStorageScannerNext");
         sContext.deleteDatabase("test-databaseStorageInMemoryDB");
+
+        /* Delete the journal written after the simulated database failure. */
+        //noinspection ResultOfMethodCallIgnored
+        new File(sContext.getFilesDir(), "test-databaseStorageInMemoryDB.test.databaseStorageInMemoryDB.journal").delete();
     }
 
     private static SharedPreferencesTestData[] generateSharedPreferenceData() throws NoSuchMethodException {
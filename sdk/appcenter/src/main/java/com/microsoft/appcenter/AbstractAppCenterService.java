@@ -6,6 +6,7 @@ import android.os.Bundle;
 import android.support.annotation.NonNull;
 
 import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.channel.DefaultChannel;
 import com.microsoft.appcenter.ingestion.models.json.LogFactory;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.HandlerUtils;
@@ -38,6 +39,21 @@ public abstract class AbstractAppCenterService implements AppCenterService {
      */
     private AppCenterHandler mHandler;
 
+    /**
+     * Channel the group was registered to while the start of this service is deferred, null otherwise.
+     */
+    private Channel mDeferredChannel;
+
+    /**
+     * Command starting this service on first use while its start is deferred, null otherwise.
+     */
+    private Runnable mDeferredStart;
+
+    /**
+     * Conditions to wait for before sending logs of this service.
+     */
+    private int mUploadConditions = Channel.UPLOAD_ANY_TIME;
+
     @Override
     public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
     }
@@ -132,19 +148,20 @@ public abstract class AbstractAppCenterService implements AppCenterService {
             return;
         }
 
-        /* Initialize channel group. */
+        /* Initialize channel group, it's also registered while the start is deferred. */
         String groupName = getGroupName();
-        if (mChannel != null && groupName != null) {
+        Channel channel = mChannel != null ? mChannel : mDeferredChannel;
+        if (channel != null && groupName != null) {
 
             /* Register service to channel on enabling. */
             if (enabled) {
-                mChannel.addGroup(groupName, getTriggerCount(), getTriggerInterval(), getTriggerMaxParallelRequests(), null, getChannelListener());
+                channel.addGroup(groupName, getTriggerCount(), getTriggerInterval(), getTriggerMaxParallelRequests(), null, getChannelListener());
             }
 
             /* Otherwise, clear all persisted logs and remove a group for the service. */
             else {
-                mChannel.clear(groupName);
-                mChannel.removeGroup(groupName);
+                channel.clear(groupName);
+                channel.removeGroup(groupName);
             }
         }
 
@@ -180,11 +197,48 @@ public abstract class AbstractAppCenterService implements AppCenterService {
         mHandler = handler;
     }
 
+    /**
+     * Called instead of {@link #onStarted} when the start of this service is deferred.
+     * The group is registered right away so that stored logs are sent without waiting for the start.
+     *
+     * @param channel channel.
+     * @param start   command to start the service, run on background thread on first use of the service.
+     */
+    synchronized void onStartDeferred(@NonNull Channel channel, @NonNull Runnable start) {
+        mDeferredChannel = channel;
+        mDeferredStart = start;
+        applyUploadConditions(channel);
+        String groupName = getGroupName();
+        if (groupName != null && isInstanceEnabled()) {
+            channel.addGroup(groupName, getTriggerCount(), getTriggerInterval(), getTriggerMaxParallelRequests(), null, getChannelListener());
+        }
+    }
+
+    /**
+     * Start this service now if its start is deferred.
+     */
+    private void startIfDeferred() {
+        Runnable start;
+        synchronized (this) {
+            start = mDeferredStart;
+            mDeferredStart = null;
+        }
+        if (start != null) {
+            start.run();
+        }
+    }
+
     @Override
     public synchronized void onStarted(@NonNull Context context, @NonNull Channel channel, String appSecret, String transmissionTargetToken, boolean startedFromApp) {
         String groupName = getGroupName();
         boolean enabled = isInstanceEnabled();
-        if (groupName != null) {
+
+        /* If the start was deferred, the group is already registered and kept up to date with enabled state. */
+        boolean groupRegistered = enabled && channel == mDeferredChannel;
+        mDeferredChannel = null;
+        mDeferredStart = null;
+        applyUploadConditions(channel);
+        if (groupName != null && !groupRegistered) {
             channel.removeGroup(groupName);
 
             /* Add a group to the channel if the service is enabled */
@@ -201,6 +255,43 @@ public abstract class AbstractAppCenterService implements AppCenterService {
         applyEnabledState(enabled);
     }
 
+    /**
+     * Set the conditions to wait for before sending the logs of this service.
+     * Logs are stored until at least one of the conditions is met. This can be called before or after starting the service.
+     *
+     * @param uploadConditions combination of {@link Channel} upload condition flags,
+     *                         {@link Channel#UPLOAD_ANY_TIME} by default to send logs at any time.
+     */
+    public synchronized void setUploadConditions(int uploadConditions) {
+        mUploadConditions = uploadConditions;
+        if (mHandler != null) {
+            mHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    applyUploadConditions(null);
+                }
+            }, null);
+        }
+    }
+
+    /**
+     * Apply upload conditions to the group of this service.
+     *
+     * @param channel channel the group is registered to, null to use the current one.
+     */
+    private synchronized void applyUploadConditions(Channel channel) {
+        if (channel == null) {
+            channel = mChannel != null ? mChannel : mDeferredChannel;
+        }
+        String groupName = getGroupName();
+
+        /* Channels of other implementations send logs at any time. */
+        if (channel instanceof DefaultChannel && groupName != null) {
+            ((DefaultChannel) channel).setUploadConditions(groupName, mUploadConditions);
+        }
+    }
+
     @Override
     public void onConfigurationUpdated(String appSecret, String transmissionTargetToken) {
 
@@ -297,6 +388,7 @@ public abstract class AbstractAppCenterService implements AppCenterService {
 
                 @Override
                 public void run() {
+                    startIfDeferred();
                     if (isInstanceEnabled()) {
                         runnable.run();
                     } else if (serviceDisabledRunnable != null) {
@@ -2,9 +2,14 @@ package com.microsoft.appcenter;
 
 import android.annotation.SuppressLint;
 import android.app.Application;
+import android.content.ComponentCallbacks;
 import android.content.Context;
+import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Process;
 import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
@@ -14,6 +19,8 @@ import android.util.Log;
 import com.microsoft.appcenter.channel.Channel;
 import com.microsoft.appcenter.channel.DefaultChannel;
 import com.microsoft.appcenter.channel.OneCollectorChannelListener;
+import com.microsoft.appcenter.http.HttpClient;
+import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.ingestion.models.CustomPropertiesLog;
 import com.microsoft.appcenter.ingestion.models.StartServiceLog;
 import com.microsoft.appcenter.ingestion.models.WrapperSdk;
@@ -24,16 +31,21 @@ import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.ingestion.models.json.StartServiceLogFactory;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
+import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.IdHelper;
 import com.microsoft.appcenter.utils.NetworkStateHelper;
 import com.microsoft.appcenter.utils.PrefStorageConstants;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 import com.microsoft.appcenter.utils.async.DefaultAppCenterFuture;
+import com.microsoft.appcenter.utils.metrics.MetricsListener;
+import com.microsoft.appcenter.utils.metrics.MetricsRegistry;
+import com.microsoft.appcenter.utils.metrics.MetricsSnapshot;
 import com.microsoft.appcenter.utils.storage.StorageHelper;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -83,6 +95,21 @@ public class AppCenter {
     @VisibleForTesting
     static final String TRANSMISSION_TARGET_TOKEN_KEY = "target";
 
+    /**
+     * Background flush requirement: only send logs on a network that is not metered.
+     */
+    public static final int BACKGROUND_FLUSH_REQUIRES_UNMETERED_NETWORK = 1;
+
+    /**
+     * Background flush requirement: only send logs while the device is charging.
+     */
+    public static final int BACKGROUND_FLUSH_REQUIRES_CHARGING = 1 << 1;
+
+    /**
+     * Background flush requirement: only send logs while the device is idle.
+     */
+    public static final int BACKGROUND_FLUSH_REQUIRES_DEVICE_IDLE = 1 << 2;
+
     /**
      * Shared instance.
      */
@@ -99,6 +126,16 @@ public class AppCenter {
      */
     private String mLogUrl;
 
+    /**
+     * True if persisted logs are sent by a job once the application is in background.
+     */
+    private boolean mBackgroundFlushEnabled;
+
+    /**
+     * Combination of BACKGROUND_FLUSH_REQUIRES_ flags for the background flush job.
+     */
+    private int mBackgroundFlushRequirements;
+
     /**
      * Application context.
      */
@@ -141,6 +178,11 @@ public class AppCenter {
      */
     private Set<AppCenterService> mServicesStartedFromLibrary;
 
+    /**
+     * Services registered but not started yet, accessed only from background thread.
+     */
+    private final Set<AppCenterService> mDeferredServices = new LinkedHashSet<>();
+
     /**
      * Log serializer.
      */
@@ -166,6 +208,16 @@ public class AppCenter {
      */
     private AppCenterHandler mAppCenterHandler;
 
+    /**
+     * Startup profiler.
+     */
+    private final StartupProfiler mStartupProfiler = new StartupProfiler();
+
+    /**
+     * Periodic metrics reporter, null if no listener.
+     */
+    private MetricsReporter mMetricsReporter;
+
     /**
      * Get unique instance.
      *
@@ -228,6 +280,73 @@ public class AppCenter {
         getInstance().setInstanceLogUrl(logUrl);
     }
 
+    /**
+     * Set the HTTP client used by App Center services to send requests, for example to share
+     * the connection pool of the application.
+     * Retries and network state handling are still applied on top of it.
+     * This must be called before configuring or starting App Center.
+     *
+     * @param httpClient HTTP client, or null to use the default one.
+     */
+    public static void setHttpClient(HttpClient httpClient) {
+        getInstance().setInstanceHttpClient(httpClient);
+    }
+
+    /**
+     * Send logs left in storage from a background job once the application is in background,
+     * instead of waiting for the next launch. This requires Android 5.0 or above.
+     * <p>
+     * This must be called before configuring App Center, which must be done from {@link Application#onCreate()}
+     * so that the job can send logs when the process is started only to run it.
+     * App Center background thread runs with a lower priority while the job is sending logs.
+     *
+     * @param enabled true to enable background flush, false to disable it.
+     */
+    public static void setBackgroundFlushEnabled(boolean enabled) {
+        getInstance().setInstanceBackgroundFlushEnabled(enabled);
+    }
+
+    /**
+     * Set device requirements for the background flush job, a connected network is always required.
+     * This must be called before configuring App Center.
+     *
+     * @param requirements combination of BACKGROUND_FLUSH_REQUIRES_ flags, 0 for none.
+     * @see #setBackgroundFlushEnabled(boolean)
+     */
+    public static void setBackgroundFlushRequirements(int requirements) {
+        getInstance().setInstanceBackgroundFlushRequirements(requirements);
+    }
+
+    /**
+     * Get the startup timeline of App Center: wall and CPU time of each phase of configuring App Center
+     * and starting services, and the thread it ran on. Phases are also visible as trace sections in systrace.
+     *
+     * @return phases recorded so far, see {@link StartupMetrics} for phase names.
+     */
+    public static StartupMetrics getStartupMetrics() {
+        return getInstance().mStartupProfiler.getMetrics();
+    }
+
+    /**
+     * Get a snapshot of App Center metrics: channel queues, storage, HTTP retries and circuit breakers.
+     *
+     * @return metrics, see {@link MetricsSnapshot} for metric names.
+     */
+    public static MetricsSnapshot getMetrics() {
+        return MetricsRegistry.getInstance().snapshot();
+    }
+
+    /**
+     * Set a listener periodically called with a snapshot of App Center metrics.
+     * The listener is called from App Center background thread once App Center is configured.
+     *
+     * @param listener       listener, null to stop reporting.
+     * @param intervalMillis reporting interval in milliseconds.
+     */
+    public static void setMetricsListener(MetricsListener listener, long intervalMillis) {
+        getInstance().setInstanceMetricsListener(listener, intervalMillis);
+    }
+
     /**
      * Get the current version of App Center SDK.
      *
@@ -288,7 +407,20 @@ public class AppCenter {
      */
     @SafeVarargs
     public static void start(Class<? extends AppCenterService>... services) {
-        getInstance().startServices(true, services);
+        getInstance().startServices(true, StartMode.IMMEDIATE, services);
+    }
+
+    /**
+     * Start services with the given start mode, for example to defer the start of services that are not needed
+     * during the first seconds of the application.
+     * The SDK must be configured first, this may be called only once per service per application process lifetime.
+     *
+     * @param startMode how to start the services.
+     * @param services  List of services to use.
+     */
+    @SafeVarargs
+    public static void start(StartMode startMode, Class<? extends AppCenterService>... services) {
+        getInstance().startServices(true, startMode, services);
     }
 
     /**
@@ -435,6 +567,124 @@ public class AppCenter {
         }
     }
 
+    /**
+     * {@link #setHttpClient(HttpClient)} implementation at instance level.
+     *
+     * @param httpClient HTTP client.
+     */
+    private synchronized void setInstanceHttpClient(HttpClient httpClient) {
+
+        /* Services already created their HTTP client when configured. */
+        if (mHandler != null) {
+            AppCenterLog.error(LOG_TAG, "HTTP client must be set before App Center is configured.");
+            return;
+        }
+        HttpUtils.setBaseHttpClient(httpClient);
+    }
+
+    /**
+     * {@link #setBackgroundFlushEnabled(boolean)} implementation at instance level.
+     *
+     * @param enabled true to enable background flush.
+     */
+    private synchronized void setInstanceBackgroundFlushEnabled(boolean enabled) {
+        if (mHandler != null) {
+            AppCenterLog.error(LOG_TAG, "Background flush must be configured before App Center is configured.");
+            return;
+        }
+        mBackgroundFlushEnabled = enabled;
+    }
+
+    /**
+     * {@link #setBackgroundFlushRequirements(int)} implementation at instance level.
+     *
+     * @param requirements background flush requirements.
+     */
+    private synchronized void setInstanceBackgroundFlushRequirements(int requirements) {
+        if (mHandler != null) {
+            AppCenterLog.error(LOG_TAG, "Background flush must be configured before App Center is configured.");
+            return;
+        }
+        mBackgroundFlushRequirements = requirements;
+    }
+
+    /**
+     * {@link #setMetricsListener(MetricsListener, long)} implementation at instance level.
+     *
+     * @param listener       listener, null to stop reporting.
+     * @param intervalMillis reporting interval in milliseconds.
+     */
+    private synchronized void setInstanceMetricsListener(MetricsListener listener, long intervalMillis) {
+        if (listener != null && intervalMillis <= 0) {
+            AppCenterLog.error(LOG_TAG, "Metrics reporting interval must be positive.");
+            return;
+        }
+        if (mMetricsReporter != null) {
+            mMetricsReporter.stop();
+            mMetricsReporter = null;
+        }
+        if (listener != null) {
+            mMetricsReporter = new MetricsReporter(listener, intervalMillis);
+            if (mHandler != null) {
+                mMetricsReporter.start(mHandler);
+            }
+        }
+    }
+
+    /**
+     * Send persisted logs on behalf of the background flush job.
+     *
+     * @param listener listener notified when there is nothing left to send.
+     * @return false if logs cannot be sent from this process.
+     */
+    synchronized boolean flushInBackground(final Channel.FlushListener listener) {
+        if (!mBackgroundFlushEnabled || !isInstanceConfigured()) {
+            AppCenterLog.warn(LOG_TAG, "Cannot send logs in background, App Center must be configured with background flush enabled in Application.onCreate.");
+            return false;
+        }
+        handlerAppCenterOperation(new Runnable() {
+
+            @Override
+            public void run() {
+
+                /* Channels of other implementations send logs on their own. */
+                if (!(mChannel instanceof DefaultChannel)) {
+                    listener.onFlushCompleted(true);
+                    return;
+                }
+
+                /* Drain at a lower priority so that it does not compete with the application. */
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                ((DefaultChannel) mChannel).flush(listener);
+            }
+        }, new Runnable() {
+
+            @Override
+            public void run() {
+
+                /* Nothing to send while disabled, logs are deleted. */
+                listener.onFlushCompleted(true);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Restore the priority of the App Center background thread once the background flush job is finished.
+     */
+    synchronized void stopFlushInBackground() {
+        if (mHandler == null) {
+            return;
+        }
+        mHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_DEFAULT);
+            }
+        });
+    }
+
     /**
      * {@link #setCustomProperties(CustomProperties)} implementation at instance level.
      *
@@ -522,12 +772,14 @@ public class AppCenter {
         }
 
         /* Store state. */
+        StartupProfiler.Section section = mStartupProfiler.begin(StartupMetrics.PHASE_CONFIGURE);
         mApplication = application;
 
         /* Start looper. */
         mHandlerThread = new HandlerThread("AppCenter.Looper");
         mHandlerThread.start();
         mHandler = new Handler(mHandlerThread.getLooper());
+        HandlerUtils.setSdkHandler(mHandler);
         mAppCenterHandler = new AppCenterHandler() {
 
             @Override
@@ -536,6 +788,16 @@ public class AppCenter {
             }
         };
 
+        /* Start reporting metrics if a listener was set before configuring. */
+        if (mMetricsReporter != null) {
+            mMetricsReporter.start(mHandler);
+        }
+
+        /* Schedule the background flush job when the application goes to background. */
+        if (mBackgroundFlushEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            application.registerActivityLifecycleCallbacks(new BackgroundFlushScheduler(application, mBackgroundFlushRequirements, mHandler));
+        }
+
         /* The rest of initialization is done in background as we need storage. */
         mServices = new HashSet<>();
         mServicesStartedFromLibrary = new HashSet<>();
@@ -547,6 +809,7 @@ public class AppCenter {
             }
         });
         AppCenterLog.info(LOG_TAG, "App Center SDK configured successfully.");
+        section.end();
         return true;
     }
 
@@ -632,30 +895,45 @@ public class AppCenter {
 
     @WorkerThread
     private void finishConfiguration() {
+        StartupProfiler.Section section = mStartupProfiler.begin(StartupMetrics.PHASE_FINISH_CONFIGURATION);
 
         /* Load some global constants. */
+        StartupProfiler.Section phase = mStartupProfiler.begin(StartupMetrics.PHASE_LOAD_CONSTANTS);
         Constants.loadFromContext(mApplication);
+        phase.end();
 
         /* If parameters are valid, init context related resources. */
+        phase = mStartupProfiler.begin(StartupMetrics.PHASE_INITIALIZE_STORAGE);
         StorageHelper.initialize(mApplication);
+        phase.end();
 
         /* Initialize session storage. */
+        phase = mStartupProfiler.begin(StartupMetrics.PHASE_LOAD_SESSIONS);
         SessionContext.getInstance();
+        phase.end();
 
         /* Get enabled state. */
         boolean enabled = isInstanceEnabled();
 
         /* Init channel. */
+        phase = mStartupProfiler.begin(StartupMetrics.PHASE_CREATE_CHANNEL);
         mLogSerializer = new DefaultLogSerializer();
         mLogSerializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
         mLogSerializer.addLogFactory(CustomPropertiesLog.TYPE, new CustomPropertiesLogFactory());
-        mChannel = new DefaultChannel(mApplication, mAppSecret, mLogSerializer, mHandler);
+        DefaultChannel channel = new DefaultChannel(mApplication, mAppSecret, mLogSerializer, mHandler);
+        mChannel = channel;
         mChannel.setEnabled(enabled);
         mChannel.addGroup(CORE_GROUP, DEFAULT_TRIGGER_COUNT, DEFAULT_TRIGGER_INTERVAL, DEFAULT_TRIGGER_MAX_PARALLEL_REQUESTS, null, null);
         if (mLogUrl != null) {
             mChannel.setLogUrl(mLogUrl);
         }
+        phase.end();
+        phase = mStartupProfiler.begin(StartupMetrics.PHASE_CREATE_ONE_COLLECTOR_CHANNEL);
         mChannel.addListener(new OneCollectorChannelListener(mApplication, mChannel, mLogSerializer, IdHelper.getInstallId()));
+        phase.end();
+
+        /* Release memory held by the channel when the system runs low on memory. */
+        mApplication.registerComponentCallbacks(new MemoryPressureListener(mHandler, channel));
 
         /* Disable listening network if we start while being disabled. */
         if (!enabled) {
@@ -668,10 +946,11 @@ public class AppCenter {
             mUncaughtExceptionHandler.register();
         }
         AppCenterLog.debug(LOG_TAG, "App Center initialized.");
+        section.end();
     }
 
     @SafeVarargs
-    private final synchronized void startServices(final boolean startFromApp, Class<? extends AppCenterService>... services) {
+    private final synchronized void startServices(final boolean startFromApp, final StartMode startMode, Class<? extends AppCenterService>... services) {
         if (services == null) {
             AppCenterLog.error(LOG_TAG, "Cannot start services, services array is null. Failed to start services.");
             return;
@@ -686,6 +965,7 @@ public class AppCenter {
         }
 
         /* Start each service and collect info for send start service log. */
+        StartupProfiler.Section section = mStartupProfiler.begin(StartupMetrics.PHASE_START_SERVICES);
         final Collection<AppCenterService> startedServices = new ArrayList<>();
         final Collection<AppCenterService> updatedServices = new ArrayList<>();
         for (Class<? extends AppCenterService> service : services) {
@@ -706,9 +986,10 @@ public class AppCenter {
 
             @Override
             public void run() {
-                finishStartServices(updatedServices, startedServices, startFromApp);
+                finishStartServices(updatedServices, startedServices, startFromApp, startMode == StartMode.DEFERRED);
             }
         });
+        section.end();
     }
 
     private void startOrUpdateService(AppCenterService serviceInstance, Collection<AppCenterService> startedServices, Collection<AppCenterService> updatedServices, boolean startFromApp) {
@@ -756,6 +1037,11 @@ public class AppCenter {
         } else {
             serviceInstance.onStarting(mAppCenterHandler);
             mApplication.registerActivityLifecycleCallbacks(serviceInstance);
+
+            /* Memory signals are optional for services. */
+            if (serviceInstance instanceof ComponentCallbacks) {
+                mApplication.registerComponentCallbacks((ComponentCallbacks) serviceInstance);
+            }
             mServices.add(serviceInstance);
             startedServices.add(serviceInstance);
             return true;
@@ -763,7 +1049,8 @@ public class AppCenter {
     }
 
     @WorkerThread
-    private void finishStartServices(Iterable<AppCenterService> updatedServices, Iterable<AppCenterService> startedServices, boolean startFromApp) {
+    private void finishStartServices(Iterable<AppCenterService> updatedServices, Iterable<AppCenterService> startedServices, boolean startFromApp, boolean deferred) {
+        StartupProfiler.Section section = mStartupProfiler.begin(StartupMetrics.PHASE_FINISH_START_SERVICES);
 
         /* Update existing services with app secret and/or transmission target. */
         for (AppCenterService service : updatedServices) {
@@ -783,12 +1070,10 @@ public class AppCenter {
             if (!enabled && service.isInstanceEnabled()) {
                 service.setInstanceEnabled(false);
             }
-            if (startFromApp) {
-                service.onStarted(mApplication, mChannel, mAppSecret, mTransmissionTargetToken, true);
-                AppCenterLog.info(LOG_TAG, service.getClass().getSimpleName() + " service started from application.");
+            if (deferred && startFromApp) {
+                deferServiceStart(service);
             } else {
-                service.onStarted(mApplication, mChannel, null, null, false);
-                AppCenterLog.info(LOG_TAG, service.getClass().getSimpleName() + " service started from library.");
+                finishStartService(service, startFromApp);
             }
         }
 
@@ -802,6 +1087,80 @@ public class AppCenter {
             }
             sendStartServiceLog();
         }
+        section.end();
+    }
+
+    /**
+     * Call {@link AppCenterService#onStarted}.
+     *
+     * @param service      service to start.
+     * @param startFromApp true if started from application, false if started from a library.
+     */
+    @WorkerThread
+    private void finishStartService(AppCenterService service, boolean startFromApp) {
+        StartupProfiler.Section phase = mStartupProfiler.begin(service.getServiceName() + StartupMetrics.PHASE_ON_STARTED_SUFFIX);
+        if (startFromApp) {
+            service.onStarted(mApplication, mChannel, mAppSecret, mTransmissionTargetToken, true);
+            AppCenterLog.info(LOG_TAG, service.getClass().getSimpleName() + " service started from application.");
+        } else {
+            service.onStarted(mApplication, mChannel, null, null, false);
+            AppCenterLog.info(LOG_TAG, service.getClass().getSimpleName() + " service started from library.");
+        }
+        phase.end();
+    }
+
+    /**
+     * Defer {@link AppCenterService#onStarted} until background thread is idle or the service is first used.
+     *
+     * @param service service to start later.
+     */
+    @WorkerThread
+    private void deferServiceStart(final AppCenterService service) {
+        AppCenterLog.info(LOG_TAG, service.getClass().getSimpleName() + " service start deferred.");
+        if (mDeferredServices.isEmpty()) {
+            Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+
+                @Override
+                public boolean queueIdle() {
+                    startDeferredServices();
+                    return false;
+                }
+            });
+        }
+        mDeferredServices.add(service);
+
+        /* Let the service send its stored logs and start itself on first use. */
+        if (service instanceof AbstractAppCenterService) {
+            ((AbstractAppCenterService) service).onStartDeferred(mChannel, new Runnable() {
+
+                @Override
+                public void run() {
+                    startDeferredService(service);
+                }
+            });
+        }
+    }
+
+    /**
+     * Start a service whose start was deferred, if not already started.
+     *
+     * @param service service to start.
+     */
+    @WorkerThread
+    private void startDeferredService(AppCenterService service) {
+        if (mDeferredServices.remove(service)) {
+            finishStartService(service, true);
+        }
+    }
+
+    /**
+     * Start all services whose start was deferred.
+     */
+    @WorkerThread
+    private void startDeferredServices() {
+        for (AppCenterService service : new ArrayList<>(mDeferredServices)) {
+            startDeferredService(service);
+        }
     }
 
     /**
@@ -834,7 +1193,7 @@ public class AppCenter {
     private void configureAndStartServices(Application application, String appSecret, boolean startFromApp, Class<? extends AppCenterService>[] services) {
         boolean configuredSuccessfully = configureInstance(application, appSecret, startFromApp);
         if (configuredSuccessfully) {
-            startServices(startFromApp, services);
+            startServices(startFromApp, StartMode.IMMEDIATE, services);
         }
     }
 
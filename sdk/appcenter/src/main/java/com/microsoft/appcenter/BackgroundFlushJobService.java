@@ -0,0 +1,112 @@
+package com.microsoft.appcenter;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
+/**
+ * Job sending logs left in storage while the application is in background.
+ * It reuses the channel of the running App Center instance and stops after a bounded time budget,
+ * the job is rescheduled if some logs could not be sent.
+ *
+ * @see AppCenter#setBackgroundFlushEnabled(boolean)
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public class BackgroundFlushJobService extends JobService {
+
+    /**
+     * Maximum time in milliseconds to spend sending logs before rescheduling the job.
+     */
+    @VisibleForTesting
+    static final long TIME_BUDGET = 60000;
+
+    /**
+     * Flush in progress, if any.
+     */
+    private Flush mFlush;
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        AppCenterLog.debug(LOG_TAG, "Background flush started.");
+        Flush flush = new Flush(params);
+        HandlerUtils.getMainHandler().postDelayed(flush, TIME_BUDGET);
+        if (!AppCenter.getInstance().flushInBackground(flush)) {
+            flush.cancel();
+            return false;
+        }
+        mFlush = flush;
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        AppCenterLog.debug(LOG_TAG, "Background flush stopped by the system.");
+        if (mFlush != null) {
+            mFlush.cancel();
+            mFlush = null;
+        }
+        return true;
+    }
+
+    /**
+     * A flush started by the job, finished either by the channel or the time budget.
+     */
+    private class Flush implements Runnable, Channel.FlushListener {
+
+        /**
+         * Job parameters.
+         */
+        private final JobParameters mParams;
+
+        /**
+         * True once the job is finished or stopped.
+         */
+        private boolean mFinished;
+
+        Flush(JobParameters params) {
+            mParams = params;
+        }
+
+        @Override
+        public void run() {
+            AppCenterLog.debug(LOG_TAG, "Background flush time budget elapsed.");
+            finish(true);
+        }
+
+        @Override
+        public void onFlushCompleted(boolean drained) {
+            AppCenterLog.debug(LOG_TAG, "Background flush completed, drained=" + drained);
+            finish(!drained);
+        }
+
+        /**
+         * Stop waiting without finishing the job.
+         */
+        synchronized void cancel() {
+            mFinished = true;
+            HandlerUtils.getMainHandler().removeCallbacks(this);
+            AppCenter.getInstance().stopFlushInBackground();
+        }
+
+        /**
+         * Finish the job.
+         *
+         * @param reschedule true to run the job again later.
+         */
+        private synchronized void finish(boolean reschedule) {
+            if (mFinished) {
+                return;
+            }
+            cancel();
+            jobFinished(mParams, reschedule);
+        }
+    }
+}
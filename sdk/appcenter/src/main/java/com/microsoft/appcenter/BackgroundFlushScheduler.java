@@ -0,0 +1,133 @@
+package com.microsoft.appcenter;
+
+import android.app.Activity;
+import android.app.Application;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.support.annotation.RequiresApi;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import static com.microsoft.appcenter.AppCenter.BACKGROUND_FLUSH_REQUIRES_CHARGING;
+import static com.microsoft.appcenter.AppCenter.BACKGROUND_FLUSH_REQUIRES_DEVICE_IDLE;
+import static com.microsoft.appcenter.AppCenter.BACKGROUND_FLUSH_REQUIRES_UNMETERED_NETWORK;
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
+/**
+ * Schedule {@link BackgroundFlushJobService} each time the application goes to background.
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+class BackgroundFlushScheduler implements Application.ActivityLifecycleCallbacks {
+
+    /**
+     * Job identifier, unique within the application.
+     */
+    @VisibleForTesting
+    static final int JOB_ID = 0x41707043;
+
+    /**
+     * Application context.
+     */
+    private final Context mContext;
+
+    /**
+     * Combination of BACKGROUND_FLUSH_REQUIRES_ flags.
+     */
+    private final int mRequirements;
+
+    /**
+     * App Center background thread handler, used to avoid scheduling from UI thread.
+     */
+    private final Handler mHandler;
+
+    /**
+     * Number of started activities.
+     */
+    private int mStartedActivities;
+
+    /**
+     * Init.
+     *
+     * @param context      application context.
+     * @param requirements combination of BACKGROUND_FLUSH_REQUIRES_ flags.
+     * @param handler      App Center background thread handler.
+     */
+    BackgroundFlushScheduler(Context context, int requirements, Handler handler) {
+        mContext = context;
+        mRequirements = requirements;
+        mHandler = handler;
+    }
+
+    /**
+     * Schedule the job, replacing any pending one.
+     */
+    @VisibleForTesting
+    void schedule() {
+        JobScheduler jobScheduler = (JobScheduler) mContext.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler == null) {
+            AppCenterLog.warn(LOG_TAG, "Job scheduler is not available, logs will be sent on next launch.");
+            return;
+        }
+        JobInfo jobInfo = new JobInfo.Builder(JOB_ID, new ComponentName(mContext, BackgroundFlushJobService.class))
+                .setRequiredNetworkType((mRequirements & BACKGROUND_FLUSH_REQUIRES_UNMETERED_NETWORK) != 0 ? JobInfo.NETWORK_TYPE_UNMETERED : JobInfo.NETWORK_TYPE_ANY)
+                .setRequiresCharging((mRequirements & BACKGROUND_FLUSH_REQUIRES_CHARGING) != 0)
+                .setRequiresDeviceIdle((mRequirements & BACKGROUND_FLUSH_REQUIRES_DEVICE_IDLE) != 0)
+                .build();
+        try {
+            if (jobScheduler.schedule(jobInfo) == JobScheduler.RESULT_SUCCESS) {
+                AppCenterLog.debug(LOG_TAG, "Background flush scheduled.");
+            } else {
+                AppCenterLog.warn(LOG_TAG, "Background flush could not be scheduled.");
+            }
+        } catch (RuntimeException e) {
+
+            /* The service may have been removed from the manifest by the application. */
+            AppCenterLog.error(LOG_TAG, "Failed to schedule background flush.", e);
+        }
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        mStartedActivities++;
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+        mStartedActivities = Math.max(0, mStartedActivities - 1);
+        if (mStartedActivities == 0) {
+            mHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    schedule();
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+    }
+}
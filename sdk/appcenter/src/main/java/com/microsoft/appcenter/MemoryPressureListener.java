@@ -0,0 +1,61 @@
+package com.microsoft.appcenter;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.os.Handler;
+
+import com.microsoft.appcenter.channel.DefaultChannel;
+
+/**
+ * Release channel and storage memory when the system signals memory pressure.
+ */
+class MemoryPressureListener implements ComponentCallbacks2 {
+
+    /**
+     * App Center background thread handler, the channel is not thread safe.
+     */
+    private final Handler mHandler;
+
+    /**
+     * Channel to trim.
+     */
+    private final DefaultChannel mChannel;
+
+    /**
+     * Init.
+     *
+     * @param handler App Center background thread handler.
+     * @param channel channel to trim.
+     */
+    MemoryPressureListener(Handler handler, DefaultChannel channel) {
+        mHandler = handler;
+        mChannel = channel;
+    }
+
+    @Override
+    public void onTrimMemory(final int level) {
+
+        /* Hiding the UI is not a sign of memory pressure. */
+        if (level < TRIM_MEMORY_RUNNING_LOW || level == TRIM_MEMORY_UI_HIDDEN) {
+            return;
+        }
+        mHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                mChannel.trimMemory(level);
+            }
+        });
+    }
+
+    @Override
+    public void onLowMemory() {
+
+        /* Called on API levels without trim levels, handle it as the most severe level. */
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
@@ -0,0 +1,73 @@
+package com.microsoft.appcenter;
+
+import android.os.Handler;
+import android.support.annotation.NonNull;
+
+import com.microsoft.appcenter.utils.metrics.MetricsListener;
+import com.microsoft.appcenter.utils.metrics.MetricsRegistry;
+
+/**
+ * Periodically report a metrics snapshot to a listener from App Center background thread.
+ *
+ * @see AppCenter#setMetricsListener(MetricsListener, long)
+ */
+class MetricsReporter implements Runnable {
+
+    /**
+     * Listener.
+     */
+    private final MetricsListener mListener;
+
+    /**
+     * Reporting interval in milliseconds.
+     */
+    private final long mInterval;
+
+    /**
+     * Handler the reporter is scheduled on, null if stopped.
+     */
+    private Handler mHandler;
+
+    /**
+     * Init.
+     *
+     * @param listener listener.
+     * @param interval reporting interval in milliseconds.
+     */
+    MetricsReporter(@NonNull MetricsListener listener, long interval) {
+        mListener = listener;
+        mInterval = interval;
+    }
+
+    /**
+     * Start reporting.
+     *
+     * @param handler App Center background thread handler.
+     */
+    synchronized void start(Handler handler) {
+        stop();
+        mHandler = handler;
+        mHandler.postDelayed(this, mInterval);
+    }
+
+    /**
+     * Stop reporting.
+     */
+    synchronized void stop() {
+        if (mHandler != null) {
+            mHandler.removeCallbacks(this);
+            mHandler = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            if (mHandler == null) {
+                return;
+            }
+            mHandler.postDelayed(this, mInterval);
+        }
+        mListener.onMetrics(MetricsRegistry.getInstance().snapshot());
+    }
+}
@@ -0,0 +1,20 @@
+package com.microsoft.appcenter;
+
+/**
+ * How services are started by {@link AppCenter#start(StartMode, Class[])}.
+ */
+public enum StartMode {
+
+    /**
+     * Start services right away, before handling logs of the next services.
+     */
+    IMMEDIATE,
+
+    /**
+     * Register log factories and log groups right away, but start services only once App Center background
+     * thread is idle or when the service is first used.
+     * Use it for services that are not needed during the first seconds of the application,
+     * so that they don't delay services started after them.
+     */
+    DEFERRED
+}
@@ -0,0 +1,190 @@
+package com.microsoft.appcenter;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Timeline of App Center startup: each phase of configuring App Center and starting services,
+ * with the thread it ran on and the time it took.
+ *
+ * @see AppCenter#getStartupMetrics()
+ */
+public class StartupMetrics {
+
+    /**
+     * Configuring App Center on the calling thread: starting its background thread.
+     */
+    public static final String PHASE_CONFIGURE = "AppCenter.configure";
+
+    /**
+     * Configuring App Center in background, contains the phases up to {@link #PHASE_CREATE_ONE_COLLECTOR_CHANNEL}.
+     */
+    public static final String PHASE_FINISH_CONFIGURATION = "AppCenter.finishConfiguration";
+
+    /**
+     * Loading constants from the application context.
+     */
+    public static final String PHASE_LOAD_CONSTANTS = "AppCenter.loadConstants";
+
+    /**
+     * Initializing shared preferences.
+     */
+    public static final String PHASE_INITIALIZE_STORAGE = "AppCenter.initializeStorage";
+
+    /**
+     * Loading stored sessions.
+     */
+    public static final String PHASE_LOAD_SESSIONS = "AppCenter.loadSessions";
+
+    /**
+     * Creating the channel, which opens the database.
+     */
+    public static final String PHASE_CREATE_CHANNEL = "AppCenter.createChannel";
+
+    /**
+     * Creating the One Collector channel listener and its ingestion.
+     */
+    public static final String PHASE_CREATE_ONE_COLLECTOR_CHANNEL = "AppCenter.createOneCollectorChannel";
+
+    /**
+     * Starting services on the calling thread.
+     */
+    public static final String PHASE_START_SERVICES = "AppCenter.startServices";
+
+    /**
+     * Starting services in background, contains a phase named after each service, like "Analytics.onStarted".
+     */
+    public static final String PHASE_FINISH_START_SERVICES = "AppCenter.finishStartServices";
+
+    /**
+     * Suffix of the phase of each service started in background.
+     */
+    public static final String PHASE_ON_STARTED_SUFFIX = ".onStarted";
+
+    /**
+     * Phases by start time.
+     */
+    private final List<Phase> mPhases;
+
+    StartupMetrics(@NonNull List<Phase> phases) {
+        mPhases = Collections.unmodifiableList(phases);
+    }
+
+    /**
+     * Get the phases recorded so far, by start time. A phase can contain other phases.
+     *
+     * @return phases.
+     */
+    @NonNull
+    public List<Phase> getPhases() {
+        return mPhases;
+    }
+
+    /**
+     * Get a phase by name.
+     *
+     * @param name phase name.
+     * @return the first phase with that name or null if not recorded.
+     */
+    public Phase getPhase(String name) {
+        for (Phase phase : mPhases) {
+            if (phase.getName().equals(name)) {
+                return phase;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return mPhases.toString();
+    }
+
+    /**
+     * A startup phase.
+     */
+    public static class Phase {
+
+        private final String mName;
+
+        private final String mThreadName;
+
+        private final boolean mMainThread;
+
+        private final long mStartOffsetNanos;
+
+        private final long mWallTimeNanos;
+
+        private final long mCpuTimeNanos;
+
+        Phase(String name, String threadName, boolean mainThread, long startOffsetNanos, long wallTimeNanos, long cpuTimeNanos) {
+            mName = name;
+            mThreadName = threadName;
+            mMainThread = mainThread;
+            mStartOffsetNanos = startOffsetNanos;
+            mWallTimeNanos = wallTimeNanos;
+            mCpuTimeNanos = cpuTimeNanos;
+        }
+
+        /**
+         * Get the phase name, also used as the name of the trace section.
+         *
+         * @return phase name.
+         */
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * Get the name of the thread the phase ran on.
+         *
+         * @return thread name.
+         */
+        public String getThreadName() {
+            return mThreadName;
+        }
+
+        /**
+         * Check whether the phase ran on the main thread.
+         *
+         * @return true if the phase ran on the main thread.
+         */
+        public boolean isMainThread() {
+            return mMainThread;
+        }
+
+        /**
+         * Get the start time of the phase relative to the start of the first phase.
+         *
+         * @return start offset in nanoseconds.
+         */
+        public long getStartOffsetNanos() {
+            return mStartOffsetNanos;
+        }
+
+        /**
+         * Get the elapsed time of the phase.
+         *
+         * @return wall time in nanoseconds.
+         */
+        public long getWallTimeNanos() {
+            return mWallTimeNanos;
+        }
+
+        /**
+         * Get the CPU time the thread spent in the phase.
+         *
+         * @return CPU time in nanoseconds.
+         */
+        public long getCpuTimeNanos() {
+            return mCpuTimeNanos;
+        }
+
+        @Override
+        public String toString() {
+            return mName + "{thread=" + mThreadName + ", startOffset=" + mStartOffsetNanos / 1000 + "us, wallTime=" + mWallTimeNanos / 1000 + "us, cpuTime=" + mCpuTimeNanos / 1000 + "us}";
+        }
+    }
+}
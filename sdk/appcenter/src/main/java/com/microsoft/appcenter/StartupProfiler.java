@@ -0,0 +1,108 @@
+package com.microsoft.appcenter;
+
+import android.os.Build;
+import android.os.Debug;
+import android.os.Looper;
+import android.os.Trace;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Record startup phases as {@link Trace} sections and as {@link StartupMetrics}.
+ * Sections must end on the thread they began, they can be nested.
+ */
+class StartupProfiler {
+
+    /**
+     * Phases by start time, null while in progress.
+     */
+    private final List<StartupMetrics.Phase> mPhases = new ArrayList<>();
+
+    /**
+     * Start time of the first phase, in nanoseconds.
+     */
+    private Long mStartTime;
+
+    /**
+     * Begin a phase.
+     *
+     * @param name phase name.
+     * @return section to end when the phase is finished.
+     */
+    Section begin(String name) {
+        return new Section(name);
+    }
+
+    /**
+     * Get the phases completed so far.
+     *
+     * @return startup metrics.
+     */
+    synchronized StartupMetrics getMetrics() {
+        List<StartupMetrics.Phase> phases = new ArrayList<>(mPhases.size());
+        for (StartupMetrics.Phase phase : mPhases) {
+            if (phase != null) {
+                phases.add(phase);
+            }
+        }
+        return new StartupMetrics(phases);
+    }
+
+    /**
+     * Reserve the slot of a phase, nested phases end before their parent but must be listed after it.
+     */
+    private synchronized int reserve(long startTime) {
+        if (mStartTime == null) {
+            mStartTime = startTime;
+        }
+        mPhases.add(null);
+        return mPhases.size() - 1;
+    }
+
+    private synchronized void addPhase(Section section, long wallTime, long cpuTime) {
+        mPhases.set(section.mIndex, new StartupMetrics.Phase(section.mName, section.mThread.getName(), section.mMainThread, section.mStartTime - mStartTime, wallTime, cpuTime));
+    }
+
+    /**
+     * Phase in progress.
+     */
+    class Section {
+
+        private final String mName;
+
+        private final Thread mThread;
+
+        private final boolean mMainThread;
+
+        private final long mStartTime;
+
+        private final long mStartCpuTime;
+
+        private final int mIndex;
+
+        private Section(String name) {
+            mName = name;
+            mThread = Thread.currentThread();
+            mMainThread = Looper.myLooper() != null && Looper.myLooper() == Looper.getMainLooper();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                Trace.beginSection(name);
+            }
+            mStartCpuTime = Debug.threadCpuTimeNanos();
+            mStartTime = System.nanoTime();
+            mIndex = reserve(mStartTime);
+        }
+
+        /**
+         * End the phase, on the thread it began.
+         */
+        void end() {
+            long wallTime = System.nanoTime() - mStartTime;
+            long cpuTime = Math.max(0, Debug.threadCpuTimeNanos() - mStartCpuTime);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                Trace.endSection();
+            }
+            addPhase(this, wallTime, cpuTime);
+        }
+    }
+}
@@ -10,6 +10,27 @@ import com.microsoft.appcenter.ingestion.models.Log;
  */
 public interface Channel {
 
+    /**
+     * Upload condition: send logs at any time on any connected network.
+     * Conditions are combined as flags, logs being sent once at least one of them is met.
+     */
+    int UPLOAD_ANY_TIME = 0;
+
+    /**
+     * Upload condition: send logs when connected to a network that is neither metered nor roaming.
+     */
+    int UPLOAD_ON_UNMETERED_NETWORK = 1;
+
+    /**
+     * Upload condition: send logs while the device is charging.
+     */
+    int UPLOAD_WHILE_CHARGING = 1 << 1;
+
+    /**
+     * Upload condition: send logs while the application is in background.
+     */
+    int UPLOAD_IN_BACKGROUND = 1 << 2;
+
     /**
      * Set app secret. Intended usage is to use that only if there was no app secret at initialization time.
      * The behavior is undefined if trying to update app secret a second time.
@@ -160,6 +181,46 @@ public interface Channel {
         void onClear(@NonNull String groupName);
     }
 
+    /**
+     * Optional callback for listeners holding logs in memory, checked when the channel shuts down.
+     */
+    interface ShutdownListener extends Listener {
+
+        /**
+         * Called when the channel is about to shut down, before it stops sending logs.
+         * Logs enqueued from this callback are still persisted.
+         */
+        void onShutdown();
+    }
+
+    /**
+     * Optional callback for listeners measuring delivery, checked when ingestion acknowledges a batch.
+     */
+    interface DeliveryListener extends Listener {
+
+        /**
+         * Called when a batch of logs has been acknowledged by ingestion.
+         *
+         * @param groupName group of the logs.
+         * @param trace     timeline of the batch and of each of its logs.
+         */
+        void onLogsDelivered(@NonNull String groupName, @NonNull DeliveryTrace trace);
+    }
+
+    /**
+     * Flush listener specification.
+     */
+    interface FlushListener {
+
+        /**
+         * Called when a flush completes.
+         *
+         * @param drained true if all logs that could be sent were sent,
+         *                false if some logs are left because sending failed or the channel is disabled.
+         */
+        void onFlushCompleted(boolean drained);
+    }
+
     /**
      * Channel group listener specification.
      */
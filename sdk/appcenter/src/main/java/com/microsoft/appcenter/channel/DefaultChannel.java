@@ -1,7 +1,9 @@
 package com.microsoft.appcenter.channel;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
@@ -10,6 +12,7 @@ import com.microsoft.appcenter.CancellationException;
 import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.AppCenterIngestion;
+import com.microsoft.appcenter.ingestion.CoalescingIngestion;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
@@ -21,14 +24,20 @@ import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.IdHelper;
+import com.microsoft.appcenter.utils.metrics.Gauge;
+import com.microsoft.appcenter.utils.metrics.Histogram;
+import com.microsoft.appcenter.utils.metrics.MetricsRegistry;
+import com.microsoft.appcenter.utils.metrics.StripedCounter;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -36,6 +45,15 @@ import java.util.Set;
 import java.util.UUID;
 
 import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+import static com.microsoft.appcenter.channel.OneCollectorChannelListener.ONE_COLLECTOR_GROUP_NAME_SUFFIX;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.CHANNEL_BATCHES_IN_FLIGHT;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.CHANNEL_BATCH_LATENCY_MILLIS;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.CHANNEL_DELIVERY_LATENCY_MILLIS;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.CHANNEL_ENQUEUED_LOGS;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.CHANNEL_PENDING_LOGS;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.CHANNEL_QUEUE_DELAY_MILLIS;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.MEMORY_TRIMS;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.getGroupMetricName;
 
 public class DefaultChannel implements Channel {
 
@@ -45,6 +63,18 @@ public class DefaultChannel implements Channel {
     @VisibleForTesting
     static final int CLEAR_BATCH_SIZE = 100;
 
+    /**
+     * Maximum number of pending logs traced per group, the oldest are not traced anymore beyond that.
+     */
+    @VisibleForTesting
+    static final int MAX_TRACED_LOGS = 1000;
+
+    /**
+     * Time in milliseconds groups send only one batch at a time after a memory pressure signal.
+     */
+    @VisibleForTesting
+    static final long MEMORY_PRESSURE_DURATION = 60000;
+
     /**
      * Application context.
      */
@@ -70,6 +100,11 @@ public class DefaultChannel implements Channel {
      */
     private final Collection<Listener> mListeners;
 
+    /**
+     * Listeners of flushes in progress.
+     */
+    private final List<FlushListener> mFlushListeners;
+
     /**
      * The Persistence instance used to store events in the local storage.
      */
@@ -106,12 +141,32 @@ public class DefaultChannel implements Channel {
      */
     private Device mDevice;
 
+    /**
+     * Upload conditions by group name, kept when a group is removed so that they apply if it's added again.
+     */
+    private final Map<String, Integer> mUploadConditions = new HashMap<>();
+
+    /**
+     * Monitor of upload conditions, null until a group needs it and after shutdown.
+     */
+    private UploadConditionsMonitor mUploadConditionsMonitor;
+
     /**
      * State checker. If this counter changes during an async call, we have to ignore the result in the callback.
      * Cancelling a database call would be unreliable, and if it's too fast you could still have the callback being called.
      */
     private int mCurrentState;
 
+    /**
+     * Time until which groups send only one batch at a time because memory is low.
+     */
+    private long mMemoryPressureEndTime;
+
+    /**
+     * Counter of memory pressure signals handled.
+     */
+    private final StripedCounter mMemoryTrims;
+
     /**
      * Creates and initializes a new instance.
      *
@@ -121,7 +176,7 @@ public class DefaultChannel implements Channel {
      * @param appCenterHandler App Center looper thread handler.
      */
     public DefaultChannel(@NonNull Context context, String appSecret, @NonNull LogSerializer logSerializer, @NonNull Handler appCenterHandler) {
-        this(context, appSecret, buildDefaultPersistence(context, logSerializer), new AppCenterIngestion(context, logSerializer), appCenterHandler);
+        this(context, appSecret, buildDefaultPersistence(context, logSerializer), new CoalescingIngestion(new AppCenterIngestion(context, logSerializer)), appCenterHandler);
     }
 
     /**
@@ -140,12 +195,21 @@ public class DefaultChannel implements Channel {
         mInstallId = IdHelper.getInstallId();
         mGroupStates = new HashMap<>();
         mListeners = new LinkedHashSet<>();
+        mFlushListeners = new ArrayList<>();
         mPersistence = persistence;
         mIngestion = ingestion;
         mIngestions = new HashSet<>();
         mIngestions.add(mIngestion);
         mAppCenterHandler = appCenterHandler;
         mEnabled = true;
+        mMemoryTrims = MetricsRegistry.getInstance().getCounter(MEMORY_TRIMS);
+        mPersistence.setLogIdsListener(new Persistence.LogIdsListener() {
+
+            @Override
+            public void onLogIdsChanged(@NonNull Map<Long, Long> identifiers) {
+                updateLogIds(identifiers);
+            }
+        });
     }
 
     /**
@@ -196,9 +260,12 @@ public class DefaultChannel implements Channel {
         mIngestions.add(ingestion);
         final GroupState groupState = new GroupState(groupName, maxLogsPerBatch, batchTimeInterval, maxParallelBatches, ingestion, groupListener);
         mGroupStates.put(groupName, groupState);
+        groupState.mUploadConditions = getUploadConditions(groupName);
+        startUploadConditionsMonitor(groupState.mUploadConditions);
 
         /* Count pending logs. */
         groupState.mPendingLogCount = mPersistence.countLogs(groupName);
+        groupState.mPendingLogsGauge.set(groupState.mPendingLogCount);
 
         /* If no app secret, don't resume sending App Center logs from storage. */
         if (mAppSecret != null && mIngestion == ingestion) {
@@ -219,6 +286,7 @@ public class DefaultChannel implements Channel {
         GroupState groupState = mGroupStates.remove(groupName);
         if (groupState != null) {
             cancelTimer(groupState);
+            checkFlushCompleted();
         }
 
         /* Call listeners so that they can react on group removed. */
@@ -281,6 +349,7 @@ public class DefaultChannel implements Channel {
         }
         AppCenterLog.debug(LOG_TAG, "clear(" + groupName + ")");
         mPersistence.deleteLogs(groupName);
+        mGroupStates.get(groupName).mLogTimes.clear();
 
         /* Call listeners so that they can react on group clearing. */
         for (Listener listener : mListeners) {
@@ -293,6 +362,94 @@ public class DefaultChannel implements Channel {
         mDevice = null;
     }
 
+    /**
+     * Release memory when the system is running low on memory.
+     *
+     * @param level trim level, as in {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public synchronized void trimMemory(int level) {
+        if (level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return;
+        }
+        AppCenterLog.debug(LOG_TAG, "trimMemory(" + level + ")");
+        mMemoryTrims.increment();
+
+        /* Batches being sent hold their logs in memory, send one at a time for a while. */
+        mMemoryPressureEndTime = SystemClock.elapsedRealtime() + MEMORY_PRESSURE_DURATION;
+
+        /*
+         * Traces are only diagnostics, drop the ones of pending logs.
+         * Storage identifiers can change when persistence trims memory, so logs of batches being sent
+         * are not traced anymore if they have to be sent again.
+         */
+        for (GroupState groupState : mGroupStates.values()) {
+            groupState.mLogTimes.clear();
+            for (DeliveryTrace trace : groupState.mBatchTraces.values()) {
+                Arrays.fill(trace.mLogIds, DeliveryTrace.UNKNOWN);
+            }
+        }
+        mPersistence.trimMemory(level);
+    }
+
+    /**
+     * Send pending logs of all groups now, without waiting for batch timers.
+     * Logs of groups whose upload conditions are not met are kept.
+     *
+     * @param listener listener notified once there is nothing left to send.
+     */
+    public synchronized void flush(@NonNull FlushListener listener) {
+        if (!mEnabled) {
+            listener.onFlushCompleted(false);
+            return;
+        }
+        AppCenterLog.debug(LOG_TAG, "Flushing pending logs.");
+        mFlushListeners.add(listener);
+        for (GroupState groupState : mGroupStates.values()) {
+            if (canSendLogs(groupState)) {
+                checkPendingLogs(groupState.mName);
+            }
+        }
+        checkFlushCompleted();
+    }
+
+    /**
+     * Check whether logs of a group can be sent, which requires the app secret for the default ingestion.
+     *
+     * @param groupState the group state.
+     * @return true if logs can be sent.
+     */
+    private boolean canSendLogs(@NonNull GroupState groupState) {
+        return mAppSecret != null || groupState.mIngestion != mIngestion;
+    }
+
+    /**
+     * Notify flush listeners if no group has logs left to send.
+     */
+    private void checkFlushCompleted() {
+        if (mFlushListeners.isEmpty()) {
+            return;
+        }
+        for (GroupState groupState : mGroupStates.values()) {
+            if (canSendLogs(groupState) && (!groupState.mSendingBatches.isEmpty() || (groupState.mPendingLogCount > 0 && areUploadConditionsMet(groupState)))) {
+                return;
+            }
+        }
+        notifyFlushCompleted(true);
+    }
+
+    /**
+     * Notify and remove all flush listeners.
+     *
+     * @param drained true if all logs that could be sent were sent.
+     */
+    private void notifyFlushCompleted(boolean drained) {
+        List<FlushListener> flushListeners = new ArrayList<>(mFlushListeners);
+        mFlushListeners.clear();
+        for (FlushListener flushListener : flushListeners) {
+            flushListener.onFlushCompleted(drained);
+        }
+    }
+
     /**
      * Stop sending logs until app is restarted or the channel is enabled again.
      *
@@ -311,6 +468,10 @@ public class DefaultChannel implements Channel {
                 Map.Entry<String, List<Log>> entry = iterator.next();
                 List<Log> removedLogsForBatchId = groupState.mSendingBatches.get(entry.getKey());
                 iterator.remove();
+                DeliveryTrace trace = groupState.mBatchTraces.remove(entry.getKey());
+                if (!deleteLogs && trace != null) {
+                    restoreLogTimes(groupState, trace);
+                }
                 if (deleteLogs) {
                     GroupListener groupListener = groupState.mListener;
                     if (groupListener != null) {
@@ -320,6 +481,7 @@ public class DefaultChannel implements Channel {
                     }
                 }
             }
+            groupState.mBatchesInFlightGauge.set(0);
         }
         for (Ingestion ingestion : mIngestions) {
             try {
@@ -331,10 +493,14 @@ public class DefaultChannel implements Channel {
         if (deleteLogs) {
             for (GroupState groupState : mGroupStates.values()) {
                 deleteLogsOnSuspended(groupState);
+                groupState.mLogTimes.clear();
             }
         } else {
             mPersistence.clearPendingLogState();
         }
+
+        /* Logs cannot be sent until enabled again. */
+        notifyFlushCompleted(false);
     }
 
     private void deleteLogsOnSuspended(final GroupState groupState) {
@@ -381,12 +547,17 @@ public class DefaultChannel implements Channel {
         final GroupState groupState = mGroupStates.get(groupName);
         int pendingLogCount = groupState.mPendingLogCount;
         int maxFetch = Math.min(pendingLogCount, groupState.mMaxLogsPerBatch);
-        AppCenterLog.debug(LOG_TAG, "triggerIngestion(" + groupName + ") pendingLogCount=" + pendingLogCount);
+        if (AppCenterLog.isDebugEnabled()) {
+            AppCenterLog.debug(LOG_TAG, "triggerIngestion(" + groupName + ") pendingLogCount=" + pendingLogCount);
+        }
         cancelTimer(groupState);
 
         /* Check if we have reached the maximum number of pending batches, log to LogCat and don't trigger another sending. */
-        if (groupState.mSendingBatches.size() == groupState.mMaxParallelBatches) {
-            AppCenterLog.debug(LOG_TAG, "Already sending " + groupState.mMaxParallelBatches + " batches of analytics data to the server.");
+        int maxParallelBatches = SystemClock.elapsedRealtime() < mMemoryPressureEndTime ? 1 : groupState.mMaxParallelBatches;
+        if (groupState.mSendingBatches.size() >= maxParallelBatches) {
+            if (AppCenterLog.isDebugEnabled()) {
+                AppCenterLog.debug(LOG_TAG, "Already sending " + maxParallelBatches + " batches of analytics data to the server.");
+            }
             return;
         }
 
@@ -397,12 +568,15 @@ public class DefaultChannel implements Channel {
 
         /* Decrement counter. */
         groupState.mPendingLogCount -= maxFetch;
+        groupState.mPendingLogsGauge.set(groupState.mPendingLogCount);
 
         /* Nothing more to do if no logs. */
         if (batchId == null) {
             return;
         }
-        AppCenterLog.debug(LOG_TAG, "ingestLogs(" + groupState.mName + "," + batchId + ") pendingLogCount=" + groupState.mPendingLogCount);
+        if (AppCenterLog.isDebugEnabled()) {
+            AppCenterLog.debug(LOG_TAG, "ingestLogs(" + groupState.mName + "," + batchId + ") pendingLogCount=" + groupState.mPendingLogCount);
+        }
 
         /* Call group listener before sending logs to ingestion service. */
         if (groupState.mListener != null) {
@@ -413,6 +587,8 @@ public class DefaultChannel implements Channel {
 
         /* Remember this batch. */
         groupState.mSendingBatches.put(batchId, batch);
+        groupState.mBatchTraces.put(batchId, startTrace(groupState, batchId, batch.size()));
+        groupState.mBatchesInFlightGauge.set(groupState.mSendingBatches.size());
 
         /*
          * Due to bug on old Android versions (verified on 4.0.4),
@@ -436,6 +612,86 @@ public class DefaultChannel implements Channel {
         });
     }
 
+    /**
+     * Start tracing a batch read from storage, with the times recorded for its logs when they were enqueued.
+     *
+     * @param groupState the group state.
+     * @param batchId    the batch ID.
+     * @param logCount   number of logs in the batch.
+     * @return the trace.
+     */
+    private DeliveryTrace startTrace(@NonNull GroupState groupState, @NonNull String batchId, int logCount) {
+        DeliveryTrace trace = new DeliveryTrace(logCount, SystemClock.elapsedRealtime());
+        List<Long> logIds = mPersistence.getLogIds(groupState.mName, batchId);
+        for (int i = 0; i < logCount; i++) {
+            long[] times = logIds != null && i < logIds.size() ? groupState.mLogTimes.remove(logIds.get(i)) : null;
+            if (times != null) {
+                trace.mLogIds[i] = logIds.get(i);
+                trace.mEnqueueTimes[i] = times[0];
+                trace.mPersistTimes[i] = times[1];
+                groupState.mQueueDelay.record(trace.getQueueDelay(i));
+            } else {
+                trace.mEnqueueTimes[i] = DeliveryTrace.UNKNOWN;
+                trace.mPersistTimes[i] = DeliveryTrace.UNKNOWN;
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * Keep tracing logs that got new storage identifiers.
+     *
+     * @param identifiers new identifiers by previous identifier.
+     */
+    private synchronized void updateLogIds(@NonNull Map<Long, Long> identifiers) {
+        for (GroupState groupState : mGroupStates.values()) {
+            Map<Long, long[]> logTimes = new LinkedHashMap<>(groupState.mLogTimes);
+            groupState.mLogTimes.clear();
+            for (Map.Entry<Long, long[]> entry : logTimes.entrySet()) {
+                Long newIdentifier = identifiers.get(entry.getKey());
+                groupState.mLogTimes.put(newIdentifier != null ? newIdentifier : entry.getKey(), entry.getValue());
+            }
+            for (DeliveryTrace trace : groupState.mBatchTraces.values()) {
+                for (int i = 0; i < trace.mLogIds.length; i++) {
+                    Long newIdentifier = identifiers.get(trace.mLogIds[i]);
+                    if (newIdentifier != null) {
+                        trace.mLogIds[i] = newIdentifier;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Keep tracing logs of a batch that will be read again from storage.
+     *
+     * @param groupState the group state.
+     * @param trace      the batch trace.
+     */
+    private static void restoreLogTimes(@NonNull GroupState groupState, @NonNull DeliveryTrace trace) {
+        for (int i = 0; i < trace.getLogCount(); i++) {
+            if (trace.mEnqueueTimes[i] != DeliveryTrace.UNKNOWN && trace.mLogIds[i] != DeliveryTrace.UNKNOWN) {
+                groupState.mLogTimes.put(trace.mLogIds[i], new long[]{trace.mEnqueueTimes[i], trace.mPersistTimes[i]});
+            }
+        }
+    }
+
+    /**
+     * Update metrics when a batch is not sent anymore.
+     *
+     * @param groupState the group state.
+     * @param batchId    the batch ID.
+     * @return the batch trace, null if unknown.
+     */
+    private DeliveryTrace recordBatchCompleted(@NonNull GroupState groupState, @NonNull String batchId) {
+        DeliveryTrace trace = groupState.mBatchTraces.remove(batchId);
+        if (trace != null) {
+            groupState.mBatchLatency.record(SystemClock.elapsedRealtime() - trace.mPickupTime);
+        }
+        groupState.mBatchesInFlightGauge.set(groupState.mSendingBatches.size());
+        return trace;
+    }
+
     /**
      * Send logs.
      *
@@ -451,6 +707,10 @@ public class DefaultChannel implements Channel {
             /* Send logs. */
             LogContainer logContainer = new LogContainer();
             logContainer.setLogs(batch);
+            DeliveryTrace trace = groupState.mBatchTraces.get(batchId);
+            if (trace != null) {
+                trace.mSendTime = SystemClock.elapsedRealtime();
+            }
             groupState.mIngestion.sendAsync(mAppSecret, mInstallId, logContainer, new ServiceCallback() {
 
                 @Override
@@ -487,6 +747,17 @@ public class DefaultChannel implements Channel {
         }
     }
 
+    /**
+     * Send logs of a group after the batch timer, unless upload conditions are not met anymore.
+     *
+     * @param groupState the group state.
+     */
+    private synchronized void checkUploadConditionsAndTriggerIngestion(@NonNull GroupState groupState) {
+        if (areUploadConditionsMet(groupState)) {
+            triggerIngestion(groupState.mName);
+        }
+    }
+
     private void checkPendingLogsAfterPost(@NonNull final GroupState groupState, int currentState) {
         if (checkStateDidNotChange(groupState, currentState)) {
             checkPendingLogs(groupState.mName);
@@ -505,12 +776,27 @@ public class DefaultChannel implements Channel {
             String groupName = groupState.mName;
             mPersistence.deleteLogs(groupName, batchId);
             List<Log> removedLogsForBatchId = groupState.mSendingBatches.remove(batchId);
+            DeliveryTrace trace = recordBatchCompleted(groupState, batchId);
             GroupListener groupListener = groupState.mListener;
             if (groupListener != null) {
                 for (Log log : removedLogsForBatchId) {
                     groupListener.onSuccess(log);
                 }
             }
+            if (trace != null) {
+                trace.mAcknowledgementTime = SystemClock.elapsedRealtime();
+                for (int i = 0; i < trace.getLogCount(); i++) {
+                    long latency = trace.getDeliveryLatency(i);
+                    if (latency != DeliveryTrace.UNKNOWN) {
+                        groupState.mDeliveryLatency.record(latency);
+                    }
+                }
+                for (Listener listener : mListeners) {
+                    if (listener instanceof DeliveryListener) {
+                        ((DeliveryListener) listener).onLogsDelivered(groupName, trace);
+                    }
+                }
+            }
             checkPendingLogs(groupName);
         }
     }
@@ -530,9 +816,14 @@ public class DefaultChannel implements Channel {
             String groupName = groupState.mName;
             AppCenterLog.error(LOG_TAG, "Sending logs groupName=" + groupName + " id=" + batchId + " failed", e);
             List<Log> removedLogsForBatchId = groupState.mSendingBatches.remove(batchId);
+            DeliveryTrace trace = recordBatchCompleted(groupState, batchId);
             boolean recoverableError = HttpUtils.isRecoverableError(e);
             if (recoverableError) {
                 groupState.mPendingLogCount += removedLogsForBatchId.size();
+                groupState.mPendingLogsGauge.set(groupState.mPendingLogCount);
+                if (trace != null) {
+                    restoreLogTimes(groupState, trace);
+                }
             } else {
                 GroupListener groupListener = groupState.mListener;
                 if (groupListener != null) {
@@ -560,6 +851,7 @@ public class DefaultChannel implements Channel {
             AppCenterLog.error(LOG_TAG, "Invalid group name:" + groupName);
             return;
         }
+        long enqueueTime = SystemClock.elapsedRealtime();
 
         /* Check if disabled with discarding logs. */
         if (mDiscardLogs) {
@@ -611,7 +903,9 @@ public class DefaultChannel implements Channel {
 
         /* If filtered out, nothing more to do. */
         if (filteredOut) {
-            AppCenterLog.debug(LOG_TAG, "Log of type '" + log.getType() + "' was filtered out by listener(s)");
+            if (AppCenterLog.isDebugEnabled()) {
+                AppCenterLog.debug(LOG_TAG, "Log of type '" + log.getType() + "' was filtered out by listener(s)");
+            }
         } else {
             if (mAppSecret == null && groupState.mIngestion == mIngestion) {
 
@@ -624,9 +918,14 @@ public class DefaultChannel implements Channel {
             try {
 
                 /* Increment counters and schedule ingestion if we are enabled. */
-                mPersistence.putLog(groupName, log);
+                long logId = mPersistence.putLog(groupName, log);
+                groupState.mLogTimes.put(logId, new long[]{enqueueTime, SystemClock.elapsedRealtime()});
                 groupState.mPendingLogCount++;
-                AppCenterLog.debug(LOG_TAG, "enqueue(" + groupState.mName + ") pendingLogCount=" + groupState.mPendingLogCount);
+                groupState.mEnqueuedLogs.increment();
+                groupState.mPendingLogsGauge.set(groupState.mPendingLogCount);
+                if (AppCenterLog.isDebugEnabled()) {
+                    AppCenterLog.debug(LOG_TAG, "enqueue(" + groupState.mName + ") pendingLogCount=" + groupState.mPendingLogCount);
+                }
                 if (mEnabled) {
                     checkPendingLogs(groupState.mName);
                 } else {
@@ -638,21 +937,128 @@ public class DefaultChannel implements Channel {
         }
     }
 
+    /**
+     * Set the conditions to wait for before sending logs of a group.
+     * The One Collector group derived from this group gets the same conditions.
+     *
+     * @param groupName        the group name, the group does not need to be added yet.
+     * @param uploadConditions combination of upload condition flags, {@link #UPLOAD_ANY_TIME} to send logs at any time.
+     */
+    public synchronized void setUploadConditions(@NonNull String groupName, int uploadConditions) {
+        mUploadConditions.put(groupName, uploadConditions);
+        updateUploadConditions(groupName);
+        updateUploadConditions(groupName + ONE_COLLECTOR_GROUP_NAME_SUFFIX);
+    }
+
+    /**
+     * Get the upload conditions of a group, One Collector groups inheriting the conditions of the group they are derived from.
+     *
+     * @param groupName the group name.
+     * @return upload conditions.
+     */
+    private int getUploadConditions(@NonNull String groupName) {
+        Integer uploadConditions = mUploadConditions.get(groupName);
+        if (uploadConditions == null && groupName.endsWith(ONE_COLLECTOR_GROUP_NAME_SUFFIX)) {
+            uploadConditions = mUploadConditions.get(groupName.substring(0, groupName.length() - ONE_COLLECTOR_GROUP_NAME_SUFFIX.length()));
+        }
+        return uploadConditions == null ? UPLOAD_ANY_TIME : uploadConditions;
+    }
+
+    /**
+     * Apply new upload conditions to a group if it's added.
+     *
+     * @param groupName the group name.
+     */
+    private void updateUploadConditions(@NonNull String groupName) {
+        GroupState groupState = mGroupStates.get(groupName);
+        if (groupState == null) {
+            return;
+        }
+        groupState.mUploadConditions = getUploadConditions(groupName);
+        startUploadConditionsMonitor(groupState.mUploadConditions);
+
+        /* Send logs that were deferred or defer logs scheduled to be sent. */
+        if (mEnabled && canSendLogs(groupState)) {
+            checkPendingLogs(groupName);
+        }
+    }
+
+    /**
+     * Start monitoring device conditions the first time a group needs them.
+     *
+     * @param uploadConditions upload conditions of a group.
+     */
+    private void startUploadConditionsMonitor(int uploadConditions) {
+        if (uploadConditions == UPLOAD_ANY_TIME || mUploadConditionsMonitor != null) {
+            return;
+        }
+        mUploadConditionsMonitor = new UploadConditionsMonitor(mContext, new UploadConditionsMonitor.Listener() {
+
+            @Override
+            public void onUploadConditionsUpdated() {
+                mAppCenterHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        checkDeferredGroups();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Check whether the upload conditions of a group are met.
+     *
+     * @param groupState the group state.
+     * @return true if logs of this group can be sent now.
+     */
+    private synchronized boolean areUploadConditionsMet(@NonNull GroupState groupState) {
+        if (groupState.mUploadConditions == UPLOAD_ANY_TIME) {
+            return true;
+        }
+        return mUploadConditionsMonitor != null && mUploadConditionsMonitor.areConditionsMet(groupState.mUploadConditions);
+    }
+
+    /**
+     * Check pending logs of groups waiting for upload conditions, after one of the conditions became met.
+     */
+    private synchronized void checkDeferredGroups() {
+        if (!mEnabled) {
+            return;
+        }
+        for (GroupState groupState : mGroupStates.values()) {
+            if (groupState.mUploadConditions != UPLOAD_ANY_TIME && canSendLogs(groupState)) {
+                checkPendingLogs(groupState.mName);
+            }
+        }
+    }
+
     /**
      * Check for logs to trigger immediately or schedule with a timer or does nothing if no logs.
+     * Logs are kept in storage if the upload conditions of the group are not met,
+     * and are sent without waiting for the timer while flushing.
      *
      * @param groupName the group name.
      */
     private synchronized void checkPendingLogs(@NonNull String groupName) {
         GroupState groupState = mGroupStates.get(groupName);
         long pendingLogCount = groupState.mPendingLogCount;
-        AppCenterLog.debug(LOG_TAG, "checkPendingLogs(" + groupName + ") pendingLogCount=" + pendingLogCount);
-        if (pendingLogCount >= groupState.mMaxLogsPerBatch) {
+        if (AppCenterLog.isDebugEnabled()) {
+            AppCenterLog.debug(LOG_TAG, "checkPendingLogs(" + groupName + ") pendingLogCount=" + pendingLogCount);
+        }
+        if (pendingLogCount > 0 && !areUploadConditionsMet(groupState)) {
+            if (AppCenterLog.isDebugEnabled()) {
+                AppCenterLog.debug(LOG_TAG, "Upload conditions of " + groupName + " are not met, deferring.");
+            }
+            cancelTimer(groupState);
+        } else if (pendingLogCount >= groupState.mMaxLogsPerBatch || (pendingLogCount > 0 && !mFlushListeners.isEmpty())) {
             triggerIngestion(groupName);
         } else if (pendingLogCount > 0 && !groupState.mScheduled) {
             groupState.mScheduled = true;
             mAppCenterHandler.postDelayed(groupState.mRunnable, groupState.mBatchTimeInterval);
         }
+        checkFlushCompleted();
     }
 
     @Override
@@ -667,7 +1073,20 @@ public class DefaultChannel implements Channel {
 
     @Override
     public synchronized void shutdown() {
+
+        /* Let listeners enqueue any log they hold in memory before suspending. */
+        for (Listener listener : mListeners) {
+            if (listener instanceof ShutdownListener) {
+                ((ShutdownListener) listener).onShutdown();
+            }
+        }
         suspend(false, new CancellationException());
+
+        /* Stop monitoring device conditions. */
+        if (mUploadConditionsMonitor != null) {
+            mUploadConditionsMonitor.close();
+            mUploadConditionsMonitor = null;
+        }
     }
 
     /**
@@ -695,11 +1114,33 @@ public class DefaultChannel implements Channel {
          */
         final int mMaxParallelBatches;
 
+        /**
+         * Conditions to send logs.
+         */
+        int mUploadConditions;
+
         /**
          * Batches being currently sent to ingestion.
          */
         final Map<String, List<Log>> mSendingBatches = new HashMap<>();
 
+        /**
+         * Trace of each batch being sent, by batch ID.
+         */
+        final Map<String, DeliveryTrace> mBatchTraces = new HashMap<>();
+
+        /**
+         * Enqueue and persist times of pending logs by storage identifier, in insertion order.
+         * This is kept outside of logs so that it's never serialized.
+         */
+        final Map<Long, long[]> mLogTimes = new LinkedHashMap<Long, long[]>() {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, long[]> eldest) {
+                return size() > MAX_TRACED_LOGS;
+            }
+        };
+
         /**
          * Ingestion for the group state.
          */
@@ -720,6 +1161,36 @@ public class DefaultChannel implements Channel {
          */
         boolean mScheduled;
 
+        /**
+         * Number of enqueued logs, for metrics.
+         */
+        final StripedCounter mEnqueuedLogs;
+
+        /**
+         * Pending log count, for metrics.
+         */
+        final Gauge mPendingLogsGauge;
+
+        /**
+         * Number of batches being sent, for metrics.
+         */
+        final Gauge mBatchesInFlightGauge;
+
+        /**
+         * Time to send a batch, for metrics.
+         */
+        final Histogram mBatchLatency;
+
+        /**
+         * Time logs wait before being part of a batch, for metrics.
+         */
+        final Histogram mQueueDelay;
+
+        /**
+         * Time from enqueuing logs to their acknowledgement, for metrics.
+         */
+        final Histogram mDeliveryLatency;
+
         /**
          * Runnable that triggers ingestion of this group data
          * and triggers itself in {@link #mBatchTimeInterval} ms.
@@ -729,7 +1200,7 @@ public class DefaultChannel implements Channel {
             @Override
             public void run() {
                 mScheduled = false;
-                triggerIngestion(mName);
+                checkUploadConditionsAndTriggerIngestion(GroupState.this);
             }
         };
 
@@ -750,6 +1221,13 @@ public class DefaultChannel implements Channel {
             mMaxParallelBatches = maxParallelBatches;
             mIngestion = ingestion;
             mListener = listener;
+            MetricsRegistry metrics = MetricsRegistry.getInstance();
+            mEnqueuedLogs = metrics.getCounter(getGroupMetricName(CHANNEL_ENQUEUED_LOGS, name));
+            mPendingLogsGauge = metrics.getGauge(getGroupMetricName(CHANNEL_PENDING_LOGS, name));
+            mBatchesInFlightGauge = metrics.getGauge(getGroupMetricName(CHANNEL_BATCHES_IN_FLIGHT, name));
+            mBatchLatency = metrics.getHistogram(getGroupMetricName(CHANNEL_BATCH_LATENCY_MILLIS, name));
+            mQueueDelay = metrics.getHistogram(getGroupMetricName(CHANNEL_QUEUE_DELAY_MILLIS, name));
+            mDeliveryLatency = metrics.getHistogram(getGroupMetricName(CHANNEL_DELIVERY_LATENCY_MILLIS, name));
         }
     }
 }
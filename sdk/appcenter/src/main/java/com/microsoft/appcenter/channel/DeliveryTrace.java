@@ -0,0 +1,139 @@
+package com.microsoft.appcenter.channel;
+
+/**
+ * Timeline of a batch of logs delivered by the channel, from enqueue to acknowledgement by ingestion.
+ * <p>
+ * Times are {@link android.os.SystemClock#elapsedRealtime()} values in milliseconds.
+ * Per log times are unknown (-1) for logs enqueued by a previous process
+ * or when too many logs are pending to trace them all.
+ *
+ * @see Channel.DeliveryListener#onLogsDelivered(String, DeliveryTrace)
+ */
+public class DeliveryTrace {
+
+    /**
+     * Value of unknown times.
+     */
+    public static final long UNKNOWN = -1;
+
+    /**
+     * Storage identifiers of the logs.
+     */
+    final long[] mLogIds;
+
+    /**
+     * Time each log was enqueued.
+     */
+    final long[] mEnqueueTimes;
+
+    /**
+     * Time each log was persisted.
+     */
+    final long[] mPersistTimes;
+
+    /**
+     * Time the batch was read from storage.
+     */
+    final long mPickupTime;
+
+    /**
+     * Time the batch was handed to ingestion.
+     */
+    long mSendTime = UNKNOWN;
+
+    /**
+     * Time ingestion acknowledged the batch.
+     */
+    long mAcknowledgementTime = UNKNOWN;
+
+    /**
+     * Init.
+     *
+     * @param logCount   number of logs in the batch.
+     * @param pickupTime time the batch was read from storage.
+     */
+    DeliveryTrace(int logCount, long pickupTime) {
+        mLogIds = new long[logCount];
+        mEnqueueTimes = new long[logCount];
+        mPersistTimes = new long[logCount];
+        mPickupTime = pickupTime;
+    }
+
+    /**
+     * Get the number of logs in the batch.
+     *
+     * @return number of logs.
+     */
+    public int getLogCount() {
+        return mEnqueueTimes.length;
+    }
+
+    /**
+     * Get the time a log was enqueued.
+     *
+     * @param index log index in the batch.
+     * @return time in milliseconds or {@link #UNKNOWN}.
+     */
+    public long getEnqueueTime(int index) {
+        return mEnqueueTimes[index];
+    }
+
+    /**
+     * Get the time a log was persisted.
+     *
+     * @param index log index in the batch.
+     * @return time in milliseconds or {@link #UNKNOWN}.
+     */
+    public long getPersistTime(int index) {
+        return mPersistTimes[index];
+    }
+
+    /**
+     * Get the time the batch was read from storage.
+     *
+     * @return time in milliseconds.
+     */
+    public long getPickupTime() {
+        return mPickupTime;
+    }
+
+    /**
+     * Get the time the batch was handed to ingestion.
+     *
+     * @return time in milliseconds or {@link #UNKNOWN}.
+     */
+    public long getSendTime() {
+        return mSendTime;
+    }
+
+    /**
+     * Get the time ingestion acknowledged the batch.
+     *
+     * @return time in milliseconds or {@link #UNKNOWN}.
+     */
+    public long getAcknowledgementTime() {
+        return mAcknowledgementTime;
+    }
+
+    /**
+     * Get the time a log waited in the channel before being part of a batch.
+     *
+     * @param index log index in the batch.
+     * @return delay in milliseconds or {@link #UNKNOWN}.
+     */
+    public long getQueueDelay(int index) {
+        long enqueueTime = mEnqueueTimes[index];
+        return enqueueTime == UNKNOWN ? UNKNOWN : mPickupTime - enqueueTime;
+    }
+
+    /**
+     * Get the time from enqueuing a log to its acknowledgement by ingestion.
+     *
+     * @param index log index in the batch.
+     * @return latency in milliseconds or {@link #UNKNOWN}.
+     */
+    public long getDeliveryLatency(int index) {
+        long enqueueTime = mEnqueueTimes[index];
+        return enqueueTime == UNKNOWN || mAcknowledgementTime == UNKNOWN ? UNKNOWN : mAcknowledgementTime - enqueueTime;
+    }
+}
@@ -0,0 +1,199 @@
+package com.microsoft.appcenter.channel;
+
+import android.app.Activity;
+import android.app.ActivityManager;
+import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.NetworkStateHelper;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+import static com.microsoft.appcenter.channel.Channel.UPLOAD_IN_BACKGROUND;
+import static com.microsoft.appcenter.channel.Channel.UPLOAD_ON_UNMETERED_NETWORK;
+import static com.microsoft.appcenter.channel.Channel.UPLOAD_WHILE_CHARGING;
+
+/**
+ * Monitor device conditions that a log group can wait for before sending logs:
+ * unmetered network, charging and application in background.
+ */
+class UploadConditionsMonitor implements NetworkStateHelper.UnmeteredListener, Application.ActivityLifecycleCallbacks {
+
+    /**
+     * Application context.
+     */
+    private final Context mContext;
+
+    /**
+     * Listener notified when a condition becomes met.
+     */
+    private final Listener mListener;
+
+    /**
+     * Network state helper.
+     */
+    private final NetworkStateHelper mNetworkStateHelper;
+
+    /**
+     * Receiver of power connection changes.
+     */
+    private final BroadcastReceiver mPowerReceiver = new BroadcastReceiver() {
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            onChargingUpdated(Intent.ACTION_POWER_CONNECTED.equals(intent.getAction()));
+        }
+    };
+
+    /**
+     * Whether the device is charging.
+     */
+    private boolean mCharging;
+
+    /**
+     * Number of started activities.
+     */
+    private int mStartedActivities;
+
+    /**
+     * Whether the application is in background.
+     */
+    private boolean mBackground;
+
+    /**
+     * Init and start monitoring.
+     *
+     * @param context  any context.
+     * @param listener listener notified when a condition becomes met.
+     */
+    UploadConditionsMonitor(@NonNull Context context, @NonNull Listener listener) {
+        Context applicationContext = context.getApplicationContext();
+        mContext = applicationContext != null ? applicationContext : context;
+        mListener = listener;
+        mNetworkStateHelper = NetworkStateHelper.getSharedInstance(mContext);
+        mNetworkStateHelper.addUnmeteredListener(this);
+        try {
+            IntentFilter powerFilter = new IntentFilter();
+            powerFilter.addAction(Intent.ACTION_POWER_CONNECTED);
+            powerFilter.addAction(Intent.ACTION_POWER_DISCONNECTED);
+            mContext.registerReceiver(mPowerReceiver, powerFilter);
+
+            /* Battery state is a sticky broadcast, read initial value from it. */
+            Intent batteryStatus = mContext.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+            mCharging = batteryStatus != null && batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Cannot monitor charging state", e);
+        }
+
+        /* Activities may already be started, check process importance for initial state. */
+        ActivityManager.RunningAppProcessInfo processInfo = new ActivityManager.RunningAppProcessInfo();
+        ActivityManager.getMyMemoryState(processInfo);
+        mBackground = processInfo.importance > ActivityManager.RunningAppProcessInfo.IMPORTANCE_VISIBLE;
+        if (mContext instanceof Application) {
+            ((Application) mContext).registerActivityLifecycleCallbacks(this);
+        }
+    }
+
+    /**
+     * Check whether logs can be sent.
+     *
+     * @param uploadConditions combination of upload condition flags, see {@link Channel#addGroup}.
+     * @return true if there is no condition or if at least one is met.
+     */
+    synchronized boolean areConditionsMet(int uploadConditions) {
+        return uploadConditions == Channel.UPLOAD_ANY_TIME
+                || ((uploadConditions & UPLOAD_ON_UNMETERED_NETWORK) != 0 && mNetworkStateHelper.isNetworkUnmetered())
+                || ((uploadConditions & UPLOAD_WHILE_CHARGING) != 0 && mCharging)
+                || ((uploadConditions & UPLOAD_IN_BACKGROUND) != 0 && mBackground);
+    }
+
+    /**
+     * Stop monitoring.
+     */
+    void close() {
+        mNetworkStateHelper.removeUnmeteredListener(this);
+        try {
+            mContext.unregisterReceiver(mPowerReceiver);
+        } catch (RuntimeException e) {
+
+            /* Not registered if registration failed. */
+            AppCenterLog.warn(LOG_TAG, "Cannot stop monitoring charging state", e);
+        }
+        if (mContext instanceof Application) {
+            ((Application) mContext).unregisterActivityLifecycleCallbacks(this);
+        }
+    }
+
+    @Override
+    public void onNetworkUnmeteredUpdated(boolean unmetered) {
+        if (unmetered) {
+            mListener.onUploadConditionsUpdated();
+        }
+    }
+
+    private void onChargingUpdated(boolean charging) {
+        synchronized (this) {
+            mCharging = charging;
+        }
+        if (charging) {
+            mListener.onUploadConditionsUpdated();
+        }
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        synchronized (this) {
+            mStartedActivities++;
+            mBackground = false;
+        }
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+        synchronized (this) {
+            mStartedActivities = Math.max(0, mStartedActivities - 1);
+            if (mStartedActivities > 0 || mBackground) {
+                return;
+            }
+            mBackground = true;
+        }
+        mListener.onUploadConditionsUpdated();
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+    }
+
+    /**
+     * Listener specification.
+     */
+    interface Listener {
+
+        /**
+         * Called when a condition becomes met, on any thread.
+         */
+        void onUploadConditionsUpdated();
+    }
+}
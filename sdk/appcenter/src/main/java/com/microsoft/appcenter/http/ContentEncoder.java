@@ -0,0 +1,25 @@
+package com.microsoft.appcenter.http;
+
+import java.io.IOException;
+
+/**
+ * Encoder of request payloads, such as a compression algorithm.
+ */
+public interface ContentEncoder {
+
+    /**
+     * Get the content encoding name, used as the value of the Content-Encoding header.
+     *
+     * @return content encoding name.
+     */
+    String getContentEncoding();
+
+    /**
+     * Encode a payload.
+     *
+     * @param payload payload to encode.
+     * @return encoded payload.
+     * @throws IOException if encoding failed.
+     */
+    byte[] encode(byte[] payload) throws IOException;
+}
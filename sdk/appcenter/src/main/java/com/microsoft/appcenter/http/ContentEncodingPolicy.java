@@ -0,0 +1,18 @@
+package com.microsoft.appcenter.http;
+
+/**
+ * Policy selecting how each request payload is encoded.
+ * It is notified of the result of every encoding so that it can adapt its next choices.
+ *
+ * @see HttpUtils#setContentEncodingPolicy(ContentEncodingPolicy)
+ */
+public interface ContentEncodingPolicy extends PayloadEncodingListener {
+
+    /**
+     * Select the encoder of a payload, called on the thread sending the request.
+     *
+     * @param payloadLength payload length in bytes.
+     * @return encoder to use or null to send the payload as is.
+     */
+    ContentEncoder selectEncoder(int payloadLength);
+}
@@ -0,0 +1,119 @@
+package com.microsoft.appcenter.http;
+
+import android.support.annotation.VisibleForTesting;
+
+import java.util.zip.Deflater;
+
+/**
+ * Default content encoding policy.
+ * <p>
+ * Payloads large enough to be worth it are compressed with gzip, using a faster level for large payloads.
+ * If a CPU budget is set, the compression level is lowered when encoding costs more than the budget
+ * and raised back when it costs less than half of it.
+ * Small payloads are sent as is, unless an encoder for small payloads is set, which is meant for
+ * dictionary based encoders such as {@link DictionaryDeflateEncoder} and requires server support.
+ */
+public class DefaultContentEncodingPolicy implements ContentEncodingPolicy {
+
+    /**
+     * Minimum payload length in bytes to use gzip.
+     */
+    public static final int MIN_GZIP_LENGTH = 1400;
+
+    /**
+     * Minimum payload length in bytes to use the small payload encoder.
+     */
+    @VisibleForTesting
+    static final int MIN_SMALL_PAYLOAD_LENGTH = 128;
+
+    /**
+     * Payload length in bytes from which the fastest compression level is used.
+     */
+    @VisibleForTesting
+    static final int LARGE_PAYLOAD_LENGTH = 64 * 1024;
+
+    /**
+     * Default gzip level, same as {@link Deflater#DEFAULT_COMPRESSION}.
+     */
+    @VisibleForTesting
+    static final int DEFAULT_LEVEL = 6;
+
+    /**
+     * Gzip encoders by level.
+     */
+    private final GzipEncoder[] mGzipEncoders = new GzipEncoder[Deflater.BEST_COMPRESSION + 1];
+
+    /**
+     * Current gzip level.
+     */
+    private int mLevel = DEFAULT_LEVEL;
+
+    /**
+     * CPU budget in nanoseconds per kilobyte of payload, 0 if not limited.
+     */
+    private long mCpuBudget;
+
+    /**
+     * Encoder for small payloads, if any.
+     */
+    private ContentEncoder mSmallPayloadEncoder;
+
+    /**
+     * Set the CPU time to spend compressing each kilobyte of payload, the compression level adapts to it.
+     *
+     * @param nanosPerKilobyte CPU budget in nanoseconds per kilobyte, 0 to always use the default level.
+     */
+    public synchronized void setCpuBudget(long nanosPerKilobyte) {
+        mCpuBudget = Math.max(0, nanosPerKilobyte);
+        if (mCpuBudget == 0) {
+            mLevel = DEFAULT_LEVEL;
+        }
+    }
+
+    /**
+     * Set the encoder of payloads too small for gzip, such as {@link DictionaryDeflateEncoder}.
+     * Only use it if the server can decode it.
+     *
+     * @param encoder encoder or null to send small payloads as is.
+     */
+    public synchronized void setSmallPayloadEncoder(ContentEncoder encoder) {
+        mSmallPayloadEncoder = encoder;
+    }
+
+    /**
+     * Get the current gzip level.
+     *
+     * @return gzip level.
+     */
+    public synchronized int getLevel() {
+        return mLevel;
+    }
+
+    @Override
+    public synchronized ContentEncoder selectEncoder(int payloadLength) {
+        if (payloadLength < MIN_GZIP_LENGTH) {
+            return payloadLength >= MIN_SMALL_PAYLOAD_LENGTH ? mSmallPayloadEncoder : null;
+        }
+        int level = payloadLength >= LARGE_PAYLOAD_LENGTH ? Deflater.BEST_SPEED : mLevel;
+        GzipEncoder encoder = mGzipEncoders[level];
+        if (encoder == null) {
+            encoder = mGzipEncoders[level] = new GzipEncoder(level);
+        }
+        return encoder;
+    }
+
+    @Override
+    public synchronized void onPayloadEncoded(String contentEncoding, int payloadLength, int wireLength, long cpuTimeNanos) {
+        if (mCpuBudget == 0 || payloadLength < MIN_GZIP_LENGTH || payloadLength >= LARGE_PAYLOAD_LENGTH || !GzipEncoder.CONTENT_ENCODING.equals(contentEncoding)) {
+            return;
+        }
+
+        /* Adapt level to the cost per kilobyte, never above default as higher levels barely improve ratio. */
+        long cost = cpuTimeNanos * 1024 / payloadLength;
+        if (cost > mCpuBudget) {
+            mLevel = Math.max(Deflater.BEST_SPEED, mLevel - 1);
+        } else if (cost < mCpuBudget / 2) {
+            mLevel = Math.min(DEFAULT_LEVEL, mLevel + 1);
+        }
+    }
+}
@@ -11,18 +11,18 @@ import com.microsoft.appcenter.utils.HandlerUtils;
 
 import org.json.JSONObject;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.zip.GZIPOutputStream;
 
 import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
 
 import static com.microsoft.appcenter.AppCenter.LOG_TAG;
 import static java.lang.Math.max;
@@ -52,6 +52,11 @@ public class DefaultHttpClient implements HttpClient {
      */
     public static final String CONTENT_TYPE_KEY = "Content-Type";
 
+    /**
+     * Retry after header key.
+     */
+    public static final String RETRY_AFTER_KEY = "Retry-After";
+
     /**
      * Content type header value.
      */
@@ -63,55 +68,108 @@ public class DefaultHttpClient implements HttpClient {
     private static final String CHARSET_NAME = "UTF-8";
 
     /**
-     * Content encoding header key.
+     * Initial read buffer size.
      */
-    private static final String CONTENT_ENCODING_KEY = "Content-Encoding";
+    @VisibleForTesting
+    static final int READ_BUFFER_SIZE = 1024;
 
     /**
-     * Content encoding header key.
+     * Maximum size of a read buffer kept for the next calls of a thread.
      */
-    private static final String CONTENT_ENCODING_VALUE = "gzip";
+    @VisibleForTesting
+    static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
 
     /**
-     * Default string builder capacity.
+     * HTTP connection timeout.
      */
-    private static final int DEFAULT_STRING_BUILDER_CAPACITY = 16;
+    private static final int CONNECT_TIMEOUT = 60000;
 
     /**
-     * Read buffer size.
+     * HTTP read timeout.
      */
-    private static final int READ_BUFFER_SIZE = 1024;
+    private static final int READ_TIMEOUT = 20000;
 
     /**
-     * HTTP connection timeout.
+     * Read buffer of each thread, reused by calls to avoid allocating buffers for every response.
      */
-    private static final int CONNECT_TIMEOUT = 60000;
+    private static final ThreadLocal<byte[]> sReadBuffer = new ThreadLocal<byte[]>() {
+
+        @Override
+        protected byte[] initialValue() {
+            return new byte[READ_BUFFER_SIZE];
+        }
+    };
 
     /**
-     * HTTP read timeout.
+     * Get the size of the read buffer of the current thread.
+     *
+     * @return read buffer size.
      */
-    private static final int READ_TIMEOUT = 20000;
+    @VisibleForTesting
+    static int getReadBufferSize() {
+        return sReadBuffer.get().length;
+    }
+
+    /**
+     * Socket factory shared by all calls to reuse connections.
+     */
+    private static KeepAliveSocketFactory sSocketFactory;
+
+    /**
+     * Get the socket factory shared by all calls, creating it on first use.
+     *
+     * @return socket factory.
+     */
+    @VisibleForTesting
+    static synchronized KeepAliveSocketFactory getSocketFactory() {
+        if (sSocketFactory == null) {
+
+            /*
+             * Make sure we use TLS 1.2 when the device supports it but not enabled by default.
+             * Don't hardcode TLS version when enabled by default to avoid unnecessary wrapping and
+             * to support future versions of TLS such as say 1.3 without having to patch this code.
+             * We have to drop support for API level 15 if we want to enforce TLS 1.2 on all devices.
+             */
+            SSLSocketFactory delegate;
+            int apiLevel = Build.VERSION.SDK_INT;
+            if (apiLevel >= Build.VERSION_CODES.JELLY_BEAN && apiLevel < Build.VERSION_CODES.KITKAT_WATCH) {
+                delegate = new TLS1_2SocketFactory();
+            } else {
+                delegate = HttpsURLConnection.getDefaultSSLSocketFactory();
+            }
+            sSocketFactory = new KeepAliveSocketFactory(delegate);
+        }
+        return sSocketFactory;
+    }
+
+    /**
+     * Get the number of connections opened by HTTP calls since process start, each one implies a TLS handshake.
+     *
+     * @return number of connections.
+     */
+    public static long getConnectionCount() {
+        return getSocketFactory().getConnectionCount();
+    }
 
     /**
-     * Minimum payload length in bytes to use gzip.
+     * Get the number of HTTP calls since process start that reused a pooled connection.
+     *
+     * @return number of calls that did not open a new connection.
      */
-    private static final int MIN_GZIP_LENGTH = 1400;
+    public static long getReusedConnectionCount() {
+        KeepAliveSocketFactory socketFactory = getSocketFactory();
+        return max(0, socketFactory.getCallCount() - socketFactory.getConnectionCount());
+    }
 
     /**
      * Dump stream to string.
      *
      * @param urlConnection URL connection.
-     * @return dumped string.
+     * @param discardBody   true to read the body without decoding it.
+     * @return dumped string, empty if discarded.
      * @throws IOException if an error occurred.
      */
-    private static String dump(HttpURLConnection urlConnection) throws IOException {
-
-        /*
-         * Though content length header value is less than actual payload length (gzip), we want to init
-         * buffer with a reasonable start size to optimize (default is 16 and is way too low for this
-         * use case).
-         */
-        StringBuilder builder = new StringBuilder(max(urlConnection.getContentLength(), DEFAULT_STRING_BUILDER_CAPACITY));
+    private static String dump(HttpURLConnection urlConnection, boolean discardBody) throws IOException {
         InputStream stream;
         int status = urlConnection.getResponseCode();
         if (status >= 200 && status < 400) {
@@ -119,14 +177,47 @@ public class DefaultHttpClient implements HttpClient {
         } else {
             stream = urlConnection.getErrorStream();
         }
+
+        /* There is no error stream when the response has no body. */
+        if (stream == null) {
+            return "";
+        }
         try {
-            InputStreamReader in = new InputStreamReader(stream, CHARSET_NAME);
-            char[] buffer = new char[READ_BUFFER_SIZE];
+
+            /* Read until the end so that the connection can be reused once the stream is closed. */
+            byte[] buffer = sReadBuffer.get();
+            if (discardBody) {
+                int len;
+                do {
+                    len = stream.read(buffer);
+                } while (len > 0);
+                return "";
+            }
+
+            /*
+             * Though content length header value is less than actual payload length (gzip), we want to init
+             * buffer with a reasonable start size to avoid growing it several times.
+             */
+            int contentLength = urlConnection.getContentLength();
+            if (contentLength >= buffer.length) {
+
+                /* One more byte lets the last read see the end of the stream without growing the buffer. */
+                buffer = new byte[contentLength + 1];
+            }
+            int length = 0;
             int len;
-            while ((len = in.read(buffer)) > 0) {
-                builder.append(buffer, 0, len);
+            while ((len = stream.read(buffer, length, buffer.length - length)) > 0) {
+                length += len;
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
             }
-            return builder.toString();
+
+            /* Keep the buffer if it grew, unless it's too big to be kept in memory. */
+            if (buffer.length <= MAX_POOLED_BUFFER_SIZE) {
+                sReadBuffer.set(buffer);
+            }
+            return new String(buffer, 0, length, CHARSET_NAME);
         } finally {
             stream.close();
         }
@@ -151,18 +242,19 @@ public class DefaultHttpClient implements HttpClient {
 
         /* HTTP session. */
         URL url = new URL(urlString);
-        HttpsURLConnection urlConnection = (HttpsURLConnection) url.openConnection();
+        KeepAliveSocketFactory socketFactory = getSocketFactory();
+        socketFactory.onCallStarted();
+        HttpURLConnection urlConnection = null;
+        boolean responseConsumed = false;
         try {
 
             /*
-             * Make sure we use TLS 1.2 when the device supports it but not enabled by default.
-             * Don't hardcode TLS version when enabled by default to avoid unnecessary wrapping and
-             * to support future versions of TLS such as say 1.3 without having to patch this code.
-             * We have to drop support for API level 15 if we want to enforce TLS 1.2 on all devices.
+             * Use the shared socket factory so that the connection can be pooled and reused by next calls.
+             * Plain HTTP is only used by test servers, there is no socket factory to set.
              */
-            int apiLevel = Build.VERSION.SDK_INT;
-            if (apiLevel >= Build.VERSION_CODES.JELLY_BEAN && apiLevel < Build.VERSION_CODES.KITKAT_WATCH) {
-                urlConnection.setSSLSocketFactory(new TLS1_2SocketFactory());
+            urlConnection = (HttpURLConnection) url.openConnection();
+            if (urlConnection instanceof HttpsURLConnection) {
+                ((HttpsURLConnection) urlConnection).setSSLSocketFactory(socketFactory);
             }
 
             /* Configure connection timeouts. */
@@ -173,14 +265,12 @@ public class DefaultHttpClient implements HttpClient {
             urlConnection.setRequestMethod(method);
             String payload = null;
             byte[] binaryPayload = null;
-            boolean shouldCompress = false;
             boolean isPost = method.equals(METHOD_POST);
             if (isPost && callTemplate != null) {
 
-                /* Get bytes, check if large enough to compress. */
+                /* Get bytes. */
                 payload = callTemplate.buildRequestBody();
                 binaryPayload = payload.getBytes(CHARSET_NAME);
-                shouldCompress = binaryPayload.length >= MIN_GZIP_LENGTH;
 
                 /* If no content type specified, assume json. */
                 if (!headers.containsKey(CONTENT_TYPE_KEY)) {
@@ -188,9 +278,17 @@ public class DefaultHttpClient implements HttpClient {
                 }
             }
 
-            /* If about to compress, add corresponding header. */
-            if (shouldCompress) {
-                headers.put(CONTENT_ENCODING_KEY, CONTENT_ENCODING_VALUE);
+            /* Log payload before encoding it. */
+            if (binaryPayload != null) {
+                if (AppCenterLog.getLogLevel() <= Log.VERBOSE) {
+                    if (CONTENT_TYPE_VALUE.equals(headers.get(CONTENT_TYPE_KEY))) {
+                        payload = new JSONObject(payload).toString(2);
+                    }
+                    AppCenterLog.verbose(LOG_TAG, payload);
+                }
+
+                /* Compress payload if the encoding policy finds it worth it, this adds the corresponding header. */
+                binaryPayload = HttpUtils.encodePayload(binaryPayload, headers);
             }
 
             /* Send headers. */
@@ -203,25 +301,8 @@ public class DefaultHttpClient implements HttpClient {
                 callTemplate.onBeforeCalling(url, headers);
             }
 
-            /* Send payload. */
+            /* Send payload on the wire. */
             if (binaryPayload != null) {
-
-                /* Compress payload if large enough to be worth it. */
-                if (AppCenterLog.getLogLevel() <= Log.VERBOSE) {
-                    if (CONTENT_TYPE_VALUE.equals(headers.get(CONTENT_TYPE_KEY))) {
-                        payload = new JSONObject(payload).toString(2);
-                    }
-                    AppCenterLog.verbose(LOG_TAG, payload);
-                }
-                if (shouldCompress) {
-                    ByteArrayOutputStream gzipBuffer = new ByteArrayOutputStream(binaryPayload.length);
-                    GZIPOutputStream gzipStream = new GZIPOutputStream(gzipBuffer);
-                    gzipStream.write(binaryPayload);
-                    gzipStream.close();
-                    binaryPayload = gzipBuffer.toByteArray();
-                }
-
-                /* Send payload on the wire. */
                 urlConnection.setDoOutput(true);
                 urlConnection.setFixedLengthStreamingMode(binaryPayload.length);
                 OutputStream out = urlConnection.getOutputStream();
@@ -229,9 +310,11 @@ public class DefaultHttpClient implements HttpClient {
                 out.close();
             }
 
-            /* Read response. */
+            /* Read response, the body of a success is not decoded if the caller does not need it unless it's logged. */
             int status = urlConnection.getResponseCode();
-            String response = dump(urlConnection);
+            boolean discardBody = status >= 200 && status < 300 && HttpUtils.shouldDiscardResponseBody(callTemplate) && AppCenterLog.getLogLevel() > Log.VERBOSE;
+            String response = dump(urlConnection, discardBody);
+            responseConsumed = true;
             String contentType = urlConnection.getHeaderField(CONTENT_TYPE_KEY);
             String logPayload;
             if (contentType == null || contentType.startsWith("text/") || contentType.startsWith("application/")) {
@@ -246,12 +329,23 @@ public class DefaultHttpClient implements HttpClient {
                 return response;
             }
 
-            /* Generate exception on failure. */
-            throw new HttpException(status, response);
+            /* Generate exception on failure, keeping the delay the server may ask before retrying. */
+            Map<String, String> responseHeaders = new HashMap<>();
+            String retryAfter = urlConnection.getHeaderField(RETRY_AFTER_KEY);
+            if (retryAfter != null) {
+                responseHeaders.put(RETRY_AFTER_KEY, retryAfter);
+            }
+            throw new HttpException(status, response, responseHeaders);
         } finally {
 
-            /* Release connection. */
-            urlConnection.disconnect();
+            /*
+             * Once the response is fully read and closed, the connection is back in the pool.
+             * Disconnecting would close the socket, so only do it when the response was not consumed.
+             */
+            if (!responseConsumed && urlConnection != null) {
+                urlConnection.disconnect();
+            }
+            socketFactory.onCallCompleted();
         }
     }
 
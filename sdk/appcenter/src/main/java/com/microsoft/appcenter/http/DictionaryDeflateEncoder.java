@@ -0,0 +1,141 @@
+package com.microsoft.appcenter.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Locale;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Compress payloads using zlib deflate with a preset dictionary.
+ * <p>
+ * Small batches are mostly made of the same JSON keys and values, which a regular compressor
+ * cannot take advantage of in so few bytes. A preset dictionary holding them lets small payloads
+ * be compressed too. The server must know the exact same dictionary to decode the payloads.
+ * <p>
+ * Such payloads cannot be decoded as standard "deflate", so they use a private content encoding name
+ * and the {@link #DICTIONARY_ID_KEY} header tells the server which dictionary to use.
+ */
+public class DictionaryDeflateEncoder implements ContentEncoder {
+
+    /**
+     * Content encoding name.
+     */
+    public static final String CONTENT_ENCODING = "x-appcenter-deflate-dict";
+
+    /**
+     * Dictionary identifier header key.
+     */
+    public static final String DICTIONARY_ID_KEY = "X-AppCenter-Dictionary-Id";
+
+    /**
+     * Dictionary of common App Center and Common Schema log fragments.
+     * Deflate favors the closest matches so the most frequent fragments are at the end.
+     */
+    public static final String DEFAULT_DICTIONARY = "\"wrapperSdkName\":\"\",\"wrapperSdkVersion\":\"\",\"wrapperRuntimeVersion\":\"\","
+            + "\"liveUpdateReleaseLabel\":\"\",\"liveUpdateDeploymentKey\":\"\",\"liveUpdatePackageHash\":\"\",\"distributionGroupId\":\"\","
+            + "\"type\":\"startService\",\"services\":[\"Analytics\",\"Crashes\"],\"type\":\"handledError\",\"type\":\"managedError\",\"frames\":[],"
+            + "\"typedProperties\":[{\"type\":\"string\",\"type\":\"boolean\",\"type\":\"number\",\"type\":\"dateTime\",\"name\":\"\",\"value\":\"\"}],"
+            + "{\"ver\":\"3.0\",\"name\":\"\",\"time\":\"\",\"popSample\":100,\"iKey\":\"o:\",\"flags\":,\"cV\":\"\","
+            + "\"ext\":{\"protocol\":{\"ticketKeys\":[],\"devMake\":\"\",\"devModel\":\"\"},\"user\":{\"localId\":\"\",\"locale\":\"\"},"
+            + "\"os\":{\"name\":\"Android\",\"ver\":\"\"},\"app\":{\"id\":\"\",\"ver\":\"\",\"locale\":\"\",\"userId\":\"\"},\"net\":{\"provider\":\"\"},"
+            + "\"sdk\":{\"libVer\":\"appcenter.android-\",\"epoch\":\"\",\"seq\":,\"installId\":\"\"},\"loc\":{\"tz\":\"\"},\"device\":{\"localId\":\"\"}},"
+            + "\"data\":{\"baseType\":\"\",\"baseData\":{},\"baseDataType\":\"\"}}\n"
+            + "\"device\":{\"sdkName\":\"appcenter.android\",\"sdkVersion\":\"\",\"model\":\"\",\"oemName\":\"\",\"osName\":\"Android\",\"osVersion\":\"\","
+            + "\"osBuild\":\"\",\"osApiLevel\":,\"locale\":\"\",\"timeZoneOffset\":,\"screenSize\":\"\",\"appVersion\":\"\",\"carrierName\":\"\","
+            + "\"carrierCountry\":\"\",\"appBuild\":\"\",\"appNamespace\":\"\"}},"
+            + "{\"logs\":[{\"type\":\"startSession\",\"type\":\"event\",\"type\":\"page\",\"id\":\"\",\"name\":\"\",\"properties\":{},"
+            + "\"timestamp\":\"\",\"sid\":\"\",\"userId\":\"\",";
+
+    /**
+     * Preset dictionary.
+     */
+    private final byte[] mDictionary;
+
+    /**
+     * Dictionary identifier.
+     */
+    private final String mDictionaryId;
+
+    /**
+     * Compression level.
+     */
+    private final int mLevel;
+
+    /**
+     * Init with the default dictionary and compression level.
+     */
+    public DictionaryDeflateEncoder() {
+        this(getDefaultDictionary(), Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Init.
+     *
+     * @param dictionary preset dictionary, must be the one the server uses.
+     * @param level      compression level.
+     */
+    public DictionaryDeflateEncoder(byte[] dictionary, int level) {
+        mDictionary = dictionary;
+        mDictionaryId = getDictionaryId(dictionary);
+        mLevel = level;
+    }
+
+    /**
+     * Get the identifier of a dictionary: its Adler-32 checksum in hexadecimal, as stored in the zlib stream header.
+     *
+     * @param dictionary dictionary.
+     * @return dictionary identifier.
+     */
+    public static String getDictionaryId(byte[] dictionary) {
+        Adler32 checksum = new Adler32();
+        checksum.update(dictionary);
+        return String.format(Locale.US, "%08x", checksum.getValue());
+    }
+
+    /**
+     * Get the default dictionary bytes.
+     *
+     * @return default dictionary encoded in UTF-8.
+     */
+    public static byte[] getDefaultDictionary() {
+        try {
+            return DEFAULT_DICTIONARY.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+
+            /* Cannot happen, UTF-8 is always supported. */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get the identifier of the dictionary, to send in the {@link #DICTIONARY_ID_KEY} header.
+     *
+     * @return dictionary identifier.
+     */
+    public String getDictionaryId() {
+        return mDictionaryId;
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return CONTENT_ENCODING;
+    }
+
+    @Override
+    public byte[] encode(byte[] payload) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(payload.length);
+        Deflater deflater = new Deflater(mLevel);
+        try {
+            deflater.setDictionary(mDictionary);
+            DeflaterOutputStream deflaterStream = new DeflaterOutputStream(buffer, deflater);
+            deflaterStream.write(payload);
+            deflaterStream.close();
+        } finally {
+            deflater.end();
+        }
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,243 @@
+package com.microsoft.appcenter.http;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * List of equivalent endpoints (scheme and authority) serving the same API, ordered by measured latency.
+ * <p>
+ * Calls are sent to the fastest endpoint. An endpoint that failed recently is only used when no other one is available.
+ * When hedging is enabled, a call still pending after the 95th percentile of the latencies of its endpoint
+ * is sent again to the next endpoint and the first success wins.
+ *
+ * @see HttpUtils#addEndpointSelector(EndpointSelector)
+ */
+public class EndpointSelector {
+
+    /**
+     * Number of latency samples kept per endpoint.
+     */
+    @VisibleForTesting
+    static final int LATENCY_SAMPLES = 20;
+
+    /**
+     * Minimum number of samples to derive the hedging delay from.
+     */
+    @VisibleForTesting
+    static final int MIN_LATENCY_SAMPLES = 5;
+
+    /**
+     * Hedging delay in milliseconds used until enough latencies are measured.
+     */
+    @VisibleForTesting
+    static final long DEFAULT_HEDGING_DELAY = 5000;
+
+    /**
+     * Minimum hedging delay in milliseconds, to avoid doubling the traffic of fast endpoints.
+     */
+    @VisibleForTesting
+    static final long MIN_HEDGING_DELAY = 500;
+
+    /**
+     * Time in milliseconds an endpoint is avoided after a failure.
+     */
+    @VisibleForTesting
+    static final long FAILURE_PENALTY = 60000;
+
+    /**
+     * Endpoints in configuration order.
+     */
+    private final List<Endpoint> mEndpoints = new ArrayList<>();
+
+    /**
+     * Whether hedging is enabled.
+     */
+    private boolean mHedgingEnabled;
+
+    /**
+     * Init.
+     *
+     * @param endpoints endpoints by order of preference, each made of a scheme and an authority, like "https://in.appcenter.ms".
+     */
+    public EndpointSelector(@NonNull String... endpoints) {
+        for (String url : endpoints) {
+            mEndpoints.add(new Endpoint(url));
+        }
+    }
+
+    /**
+     * Enable or disable hedged calls.
+     *
+     * @param enabled true to send calls still pending after a delay to another endpoint as well.
+     */
+    public synchronized void setHedgingEnabled(boolean enabled) {
+        mHedgingEnabled = enabled;
+    }
+
+    /**
+     * Check whether hedged calls are enabled.
+     *
+     * @return true if hedged calls are enabled.
+     */
+    public synchronized boolean isHedgingEnabled() {
+        return mHedgingEnabled;
+    }
+
+    /**
+     * Check whether an endpoint is part of this selector.
+     *
+     * @param url endpoint.
+     * @return true if the endpoint is part of this selector.
+     */
+    synchronized boolean contains(String url) {
+        return getEndpoint(url) != null;
+    }
+
+    /**
+     * Get all endpoints, ordered by preference: endpoints that failed recently last, then by median latency.
+     * Endpoints without measured latency keep their configuration order after measured ones.
+     *
+     * @return endpoints.
+     */
+    public synchronized List<String> getEndpoints() {
+        final long now = SystemClock.elapsedRealtime();
+        List<Endpoint> endpoints = new ArrayList<>(mEndpoints);
+        Collections.sort(endpoints, new Comparator<Endpoint>() {
+
+            @Override
+            public int compare(Endpoint lhs, Endpoint rhs) {
+                boolean lhsFailed = lhs.hasFailedRecently(now);
+                boolean rhsFailed = rhs.hasFailedRecently(now);
+                if (lhsFailed != rhsFailed) {
+                    return lhsFailed ? 1 : -1;
+                }
+                long lhsLatency = lhs.getPercentile(50);
+                long rhsLatency = rhs.getPercentile(50);
+                if (lhsLatency == rhsLatency) {
+                    return 0;
+                }
+                if (lhsLatency < 0) {
+                    return 1;
+                }
+                if (rhsLatency < 0) {
+                    return -1;
+                }
+                return lhsLatency < rhsLatency ? -1 : 1;
+            }
+        });
+        List<String> urls = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            urls.add(endpoint.mUrl);
+        }
+        return urls;
+    }
+
+    /**
+     * Get the delay after which a pending call to an endpoint is sent to another one.
+     *
+     * @param url endpoint.
+     * @return delay in milliseconds.
+     */
+    public synchronized long getHedgingDelay(String url) {
+        Endpoint endpoint = getEndpoint(url);
+        long latency = endpoint != null ? endpoint.getPercentile(95) : -1;
+        return latency < 0 ? DEFAULT_HEDGING_DELAY : Math.max(MIN_HEDGING_DELAY, latency);
+    }
+
+    /**
+     * Record the latency of a successful call. It can also be fed by other measurements of the endpoint.
+     *
+     * @param url     endpoint.
+     * @param latency latency in milliseconds.
+     */
+    public synchronized void onCallSucceeded(String url, long latency) {
+        Endpoint endpoint = getEndpoint(url);
+        if (endpoint != null) {
+            endpoint.addSample(latency);
+            endpoint.mFailureTime = null;
+        }
+    }
+
+    /**
+     * Record a failed call.
+     *
+     * @param url endpoint.
+     */
+    public synchronized void onCallFailed(String url) {
+        Endpoint endpoint = getEndpoint(url);
+        if (endpoint != null) {
+            endpoint.mFailureTime = SystemClock.elapsedRealtime();
+        }
+    }
+
+    private Endpoint getEndpoint(String url) {
+        for (Endpoint endpoint : mEndpoints) {
+            if (endpoint.mUrl.equals(url)) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Endpoint statistics.
+     */
+    private static class Endpoint {
+
+        /**
+         * Scheme and authority.
+         */
+        private final String mUrl;
+
+        /**
+         * Latest latencies, circular buffer.
+         */
+        private final long[] mSamples = new long[LATENCY_SAMPLES];
+
+        /**
+         * Number of samples recorded so far.
+         */
+        private int mSampleCount;
+
+        /**
+         * Time of last failure, null if last call succeeded.
+         */
+        private Long mFailureTime;
+
+        Endpoint(String url) {
+            mUrl = url;
+        }
+
+        void addSample(long latency) {
+            mSamples[mSampleCount % LATENCY_SAMPLES] = latency;
+            mSampleCount++;
+        }
+
+        boolean hasFailedRecently(long now) {
+            return mFailureTime != null && now - mFailureTime < FAILURE_PENALTY;
+        }
+
+        /**
+         * Get a latency percentile.
+         *
+         * @return latency in milliseconds or -1 if not enough samples.
+         */
+        long getPercentile(int percentile) {
+            int count = Math.min(mSampleCount, LATENCY_SAMPLES);
+            if (count < MIN_LATENCY_SAMPLES) {
+                return -1;
+            }
+            long[] samples = Arrays.copyOf(mSamples, count);
+            Arrays.sort(samples);
+            int index = (int) Math.ceil(count * percentile / 100.0) - 1;
+            return samples[Math.max(0, index)];
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.microsoft.appcenter.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compress payloads using gzip at a given compression level.
+ */
+public class GzipEncoder implements ContentEncoder {
+
+    /**
+     * Content encoding name.
+     */
+    public static final String CONTENT_ENCODING = "gzip";
+
+    /**
+     * Compression level, from {@link java.util.zip.Deflater#BEST_SPEED} to {@link java.util.zip.Deflater#BEST_COMPRESSION}.
+     */
+    private final int mLevel;
+
+    /**
+     * Init.
+     *
+     * @param level compression level, from {@link java.util.zip.Deflater#BEST_SPEED}
+     *              to {@link java.util.zip.Deflater#BEST_COMPRESSION}.
+     */
+    public GzipEncoder(int level) {
+        mLevel = level;
+    }
+
+    /**
+     * Get the compression level.
+     *
+     * @return compression level.
+     */
+    public int getLevel() {
+        return mLevel;
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return CONTENT_ENCODING;
+    }
+
+    @Override
+    public byte[] encode(byte[] payload) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(payload.length);
+        GZIPOutputStream gzipStream = new LevelGZIPOutputStream(buffer, mLevel);
+        gzipStream.write(payload);
+        gzipStream.close();
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Gzip stream with a custom compression level, the level of the default one cannot be changed.
+     */
+    private static class LevelGZIPOutputStream extends GZIPOutputStream {
+
+        LevelGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out);
+            def.setLevel(level);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.microsoft.appcenter.http;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
+/**
+ * Decorator sending calls to the preferred endpoint of their {@link EndpointSelector}.
+ * <p>
+ * A call failing with a recoverable error is sent to the next endpoint. When hedging is enabled,
+ * a call still pending after the hedging delay is also sent to the next endpoint: the first attempt that succeeds
+ * completes the call and the other attempts are canceled, so that the caller gets a single result.
+ * This client is meant to be decorated by {@link HttpClientRetryer}: each attempt is a single try, so that failing over
+ * and measured latencies are not delayed by retries, and the call is only retried once all endpoints failed.
+ * <p>
+ * Calls to endpoints without a selector are forwarded as is.
+ */
+public class HedgingHttpClient extends HttpClientDecorator {
+
+    /**
+     * Android "timer", null to use the App Center background thread.
+     */
+    private final Handler mHandler;
+
+    /**
+     * Init.
+     *
+     * @param decoratedApi API to decorate.
+     */
+    public HedgingHttpClient(HttpClient decoratedApi) {
+        this(decoratedApi, null);
+    }
+
+    /**
+     * Init.
+     *
+     * @param decoratedApi API to decorate.
+     * @param handler      handler for hedging delays.
+     */
+    @VisibleForTesting
+    HedgingHttpClient(HttpClient decoratedApi, Handler handler) {
+        super(decoratedApi);
+        mHandler = handler;
+    }
+
+    @Override
+    public ServiceCall callAsync(String url, String method, Map<String, String> headers, CallTemplate callTemplate, ServiceCallback serviceCallback) {
+        String endpoint = HttpClientRetryer.getEndpoint(url);
+        EndpointSelector selector = HttpUtils.getEndpointSelector(endpoint);
+        if (selector == null) {
+            return mDecoratedApi.callAsync(url, method, headers, callTemplate, serviceCallback);
+        }
+        HedgedCall call = new HedgedCall(url.substring(endpoint.length()), method, headers, callTemplate, serviceCallback, selector);
+        call.start();
+        return call;
+    }
+
+    /**
+     * Call sent to one or more endpoints, it's also the hedging timer callback.
+     */
+    private class HedgedCall implements ServiceCall, Runnable {
+
+        private final String mPath;
+
+        private final String mMethod;
+
+        private final Map<String, String> mHeaders;
+
+        private final CallTemplate mCallTemplate;
+
+        private final ServiceCallback mServiceCallback;
+
+        private final EndpointSelector mSelector;
+
+        /**
+         * Endpoints not tried yet, by order of preference.
+         */
+        private final List<String> mEndpoints;
+
+        /**
+         * Pending attempts.
+         */
+        private final List<Attempt> mAttempts = new ArrayList<>();
+
+        /**
+         * Handler of the hedging timer, null if not scheduled.
+         */
+        private Handler mTimerHandler;
+
+        /**
+         * True once the result is reported or the call canceled.
+         */
+        private boolean mCompleted;
+
+        HedgedCall(String path, String method, Map<String, String> headers, CallTemplate callTemplate, ServiceCallback serviceCallback, EndpointSelector selector) {
+            mPath = path;
+            mMethod = method;
+            mHeaders = headers;
+            mCallTemplate = callTemplate;
+            mServiceCallback = serviceCallback;
+            mSelector = selector;
+            mEndpoints = selector.getEndpoints();
+        }
+
+        /**
+         * Send to the preferred endpoint.
+         */
+        void start() {
+            if (sendNextAttempt()) {
+                scheduleHedging();
+            }
+        }
+
+        /**
+         * Send the call to the next endpoint.
+         *
+         * @return true if sent, false if there is no endpoint left or the call is completed.
+         */
+        private boolean sendNextAttempt() {
+            Attempt attempt;
+            synchronized (this) {
+                if (mCompleted || mEndpoints.isEmpty()) {
+                    return false;
+                }
+                attempt = new Attempt(mEndpoints.remove(0));
+                mAttempts.add(attempt);
+            }
+            attempt.send();
+            return true;
+        }
+
+        /**
+         * Schedule sending to the next endpoint if the last attempt is still pending after its hedging delay.
+         */
+        private void scheduleHedging() {
+            Handler handler;
+            long delay;
+            synchronized (this) {
+                if (mCompleted || mEndpoints.isEmpty() || mAttempts.isEmpty() || !mSelector.isHedgingEnabled()) {
+                    return;
+                }
+                delay = mSelector.getHedgingDelay(mAttempts.get(mAttempts.size() - 1).mEndpoint);
+                handler = mTimerHandler = mHandler != null ? mHandler : HandlerUtils.getSdkHandler();
+            }
+            handler.postDelayed(this, delay);
+        }
+
+        private void cancelHedging() {
+            Handler handler;
+            synchronized (this) {
+                handler = mTimerHandler;
+                mTimerHandler = null;
+            }
+            if (handler != null) {
+                handler.removeCallbacks(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (mCompleted || mEndpoints.isEmpty()) {
+                    return;
+                }
+                mTimerHandler = null;
+                AppCenterLog.debug(LOG_TAG, "Call is still pending, sending it to " + mEndpoints.get(0) + " as well.");
+            }
+            if (sendNextAttempt()) {
+                scheduleHedging();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            List<Attempt> attempts;
+            synchronized (this) {
+                mCompleted = true;
+                attempts = new ArrayList<>(mAttempts);
+                mAttempts.clear();
+            }
+            cancelHedging();
+            for (Attempt attempt : attempts) {
+                attempt.cancel();
+            }
+        }
+
+        private void onAttemptSucceeded(Attempt attempt, String payload) {
+            mSelector.onCallSucceeded(attempt.mEndpoint, SystemClock.elapsedRealtime() - attempt.mStartTime);
+            List<Attempt> otherAttempts;
+            synchronized (this) {
+                if (mCompleted) {
+                    return;
+                }
+                mCompleted = true;
+                mAttempts.remove(attempt);
+                otherAttempts = new ArrayList<>(mAttempts);
+                mAttempts.clear();
+            }
+            cancelHedging();
+
+            /* First success wins, the result of other attempts is ignored. */
+            for (Attempt otherAttempt : otherAttempts) {
+                otherAttempt.cancel();
+            }
+            mServiceCallback.onCallSucceeded(payload);
+        }
+
+        private void onAttemptFailed(Attempt attempt, Exception e) {
+            mSelector.onCallFailed(attempt.mEndpoint);
+            String nextEndpoint = null;
+            synchronized (this) {
+                if (mCompleted) {
+                    return;
+                }
+                mAttempts.remove(attempt);
+
+                /* Wait for other attempts. */
+                if (!mAttempts.isEmpty()) {
+                    return;
+                }
+
+                /* The next endpoint would reject a call that cannot be retried as well. */
+                if (!mEndpoints.isEmpty() && HttpUtils.isRecoverableError(e)) {
+                    nextEndpoint = mEndpoints.get(0);
+                } else {
+                    mCompleted = true;
+                }
+            }
+            cancelHedging();
+            if (nextEndpoint != null) {
+                AppCenterLog.warn(LOG_TAG, "Call to " + attempt.mEndpoint + " failed, sending it to " + nextEndpoint + ".", e);
+                if (sendNextAttempt()) {
+                    scheduleHedging();
+                }
+            } else {
+                mServiceCallback.onCallFailed(e);
+            }
+        }
+
+        /**
+         * Call sent to one endpoint.
+         */
+        private class Attempt implements ServiceCallback {
+
+            /**
+             * Endpoint.
+             */
+            private final String mEndpoint;
+
+            /**
+             * Time when the attempt was sent.
+             */
+            private long mStartTime;
+
+            /**
+             * Call in the decorated client.
+             */
+            private ServiceCall mServiceCall;
+
+            /**
+             * True if canceled.
+             */
+            private boolean mCanceled;
+
+            Attempt(String endpoint) {
+                mEndpoint = endpoint;
+            }
+
+            void send() {
+                mStartTime = SystemClock.elapsedRealtime();
+
+                /* Each attempt needs its own headers as clients may add some. */
+                ServiceCall serviceCall = mDecoratedApi.callAsync(mEndpoint + mPath, mMethod, new HashMap<>(mHeaders), mCallTemplate, this);
+                boolean canceled;
+                synchronized (this) {
+                    mServiceCall = serviceCall;
+                    canceled = mCanceled;
+                }
+                if (canceled) {
+                    serviceCall.cancel();
+                }
+            }
+
+            void cancel() {
+                ServiceCall serviceCall;
+                synchronized (this) {
+                    mCanceled = true;
+                    serviceCall = mServiceCall;
+                }
+                if (serviceCall != null) {
+                    serviceCall.cancel();
+                }
+            }
+
+            synchronized boolean isCanceled() {
+                return mCanceled;
+            }
+
+            @Override
+            public void onCallSucceeded(String payload) {
+                if (!isCanceled()) {
+                    onAttemptSucceeded(this, payload);
+                }
+            }
+
+            @Override
+            public void onCallFailed(Exception e) {
+                if (!isCanceled()) {
+                    onAttemptFailed(this, e);
+                }
+            }
+        }
+    }
+}
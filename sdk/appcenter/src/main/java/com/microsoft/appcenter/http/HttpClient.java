@@ -45,6 +45,21 @@ public interface HttpClient extends Closeable {
         void onBeforeCalling(URL url, Map<String, String> headers);
     }
 
+    /**
+     * Optional extension of {@link CallTemplate} for callers that may not need the body of successful responses.
+     */
+    interface DiscardableResponseCallTemplate extends CallTemplate {
+
+        /**
+         * Check whether the caller needs the body of a successful response.
+         * If not, the body is read to keep the connection reusable but is not decoded,
+         * and the call succeeds with an empty payload.
+         *
+         * @return true to discard the body of a successful response.
+         */
+        boolean shouldDiscardResponseBody();
+    }
+
     /**
      * Make this client active again after closing.
      */
@@ -1,19 +1,40 @@
 package com.microsoft.appcenter.http;
 
 import android.os.Handler;
-import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
+import com.microsoft.appcenter.utils.metrics.Gauge;
+import com.microsoft.appcenter.utils.metrics.MetricsRegistry;
+import com.microsoft.appcenter.utils.metrics.StripedCounter;
 
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.HTTP_CIRCUIT_OPENINGS;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.HTTP_CIRCUIT_STATE;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.HTTP_RETRIES;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.getGroupMetricName;
+
 /**
  * Decorator managing retries.
+ * <p>
+ * Retries are coordinated per endpoint with a circuit breaker: when a call fails with a recoverable error,
+ * the endpoint is considered down and all calls to it wait for the same timer instead of retrying independently.
+ * When the timer expires, a single call is sent as a probe and the other calls are released only once the endpoint
+ * answers. The delay is the one asked by the server with the Retry-After header on 429 and 503 responses,
+ * otherwise it grows with the number of consecutive failures.
+ * <p>
+ * Timers run on the App Center background thread.
  */
 public class HttpClientRetryer extends HttpClientDecorator {
 
@@ -28,7 +49,13 @@ public class HttpClientRetryer extends HttpClientDecorator {
     };
 
     /**
-     * Android "timer" using the main thread loop.
+     * Maximum delay to honor from a Retry-After header.
+     */
+    @VisibleForTesting
+    static final long MAX_RETRY_AFTER = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Android "timer", null to use the App Center background thread.
      */
     private final Handler mHandler;
 
@@ -37,13 +64,28 @@ public class HttpClientRetryer extends HttpClientDecorator {
      */
     private final Random mRandom = new Random();
 
+    /**
+     * Circuit breakers by endpoint.
+     */
+    private final Map<String, CircuitBreaker> mCircuitBreakers = new HashMap<>();
+
+    /**
+     * Number of retried calls, for metrics.
+     */
+    private final StripedCounter mRetries;
+
+    /**
+     * Number of circuit openings, for metrics.
+     */
+    private final StripedCounter mCircuitOpenings;
+
     /**
      * Init with default retry policy.
      *
      * @param decoratedApi API to decorate.
      */
     public HttpClientRetryer(HttpClient decoratedApi) {
-        this(decoratedApi, new Handler(Looper.getMainLooper()));
+        this(decoratedApi, null);
     }
 
     /**
@@ -56,52 +98,384 @@ public class HttpClientRetryer extends HttpClientDecorator {
     HttpClientRetryer(HttpClient decoratedApi, Handler handler) {
         super(decoratedApi);
         mHandler = handler;
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        mRetries = metrics.getCounter(HTTP_RETRIES);
+        mCircuitOpenings = metrics.getCounter(HTTP_CIRCUIT_OPENINGS);
     }
 
+    /**
+     * Get the endpoint of a URL: scheme and authority.
+     */
+    @VisibleForTesting
+    static String getEndpoint(String url) {
+        if (url == null) {
+            return "";
+        }
+        int authorityStart = url.indexOf("://");
+        authorityStart = authorityStart < 0 ? 0 : authorityStart + 3;
+        int authorityEnd = url.indexOf('/', authorityStart);
+        return authorityEnd < 0 ? url : url.substring(0, authorityEnd);
+    }
 
     @Override
     public ServiceCall callAsync(String url, String method, Map<String, String> headers, CallTemplate callTemplate, ServiceCallback serviceCallback) {
 
         /* Wrap the call with the retry logic and call delegate. */
-        RetryableCall retryableCall = new RetryableCall(mDecoratedApi, url, method, headers, callTemplate, serviceCallback);
+        CircuitBreaker circuitBreaker;
+        synchronized (this) {
+            String endpoint = getEndpoint(url);
+            circuitBreaker = mCircuitBreakers.get(endpoint);
+            if (circuitBreaker == null) {
+                circuitBreaker = new CircuitBreaker(endpoint);
+                mCircuitBreakers.put(endpoint, circuitBreaker);
+            }
+        }
+        RetryableCall retryableCall = new RetryableCall(mDecoratedApi, url, method, headers, callTemplate, serviceCallback, circuitBreaker);
         retryableCall.run();
         return retryableCall;
     }
 
+    /**
+     * Circuit breaker states.
+     */
+    private enum State {
+
+        /**
+         * Endpoint is up, calls are sent.
+         */
+        CLOSED,
+
+        /**
+         * Endpoint is down, calls wait for the retry time.
+         */
+        OPEN,
+
+        /**
+         * Retry time elapsed, a single probe call is sent.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Circuit breaker of an endpoint, it's also the timer callback. State is guarded by the retryer lock.
+     */
+    private class CircuitBreaker implements Runnable {
+
+        /**
+         * Endpoint, used for logging.
+         */
+        private final String mEndpoint;
+
+        /**
+         * Calls waiting for the endpoint to be up again.
+         */
+        private final LinkedList<RetryableCall> mWaitingCalls = new LinkedList<>();
+
+        /**
+         * Current state.
+         */
+        private State mState = State.CLOSED;
+
+        /**
+         * Number of consecutive failures, selects the retry interval.
+         */
+        private int mFailureCount;
+
+        /**
+         * Uptime in milliseconds when the state can switch from open to half-open.
+         */
+        private long mRetryTime;
+
+        /**
+         * Call sent while half-open.
+         */
+        private RetryableCall mProbe;
+
+        /**
+         * Handler used to schedule the timer, null if the timer is not scheduled.
+         */
+        private Handler mTimerHandler;
+
+        /**
+         * State, for metrics.
+         */
+        private final Gauge mStateGauge;
+
+        /**
+         * Retry time the timer is scheduled for.
+         */
+        private long mTimerTime;
+
+        CircuitBreaker(String endpoint) {
+            mEndpoint = endpoint;
+            mStateGauge = MetricsRegistry.getInstance().getGauge(getGroupMetricName(HTTP_CIRCUIT_STATE, endpoint));
+            mStateGauge.set(State.CLOSED.ordinal());
+        }
+
+        /**
+         * Change state and update its metric.
+         */
+        private void setState(State state) {
+            mState = state;
+            mStateGauge.set(state.ordinal());
+        }
+
+        /**
+         * Check if a call can be sent now, otherwise put it in the waiting list.
+         *
+         * @return true if the call can be sent now.
+         */
+        boolean admit(RetryableCall call) {
+            if (mState == State.OPEN && SystemClock.uptimeMillis() >= mRetryTime) {
+                setState(State.HALF_OPEN);
+            }
+            if (mState == State.CLOSED) {
+                return true;
+            }
+            if (mState == State.HALF_OPEN && mProbe == null) {
+                mProbe = call;
+                return true;
+            }
+            mWaitingCalls.add(call);
+            return false;
+        }
+
+        /**
+         * Handle a recoverable failure of a call.
+         *
+         * @return delay in milliseconds before the endpoint is tried again.
+         */
+        long onFailure(RetryableCall call, Exception e) {
+            long now = SystemClock.uptimeMillis();
+            long retryAfter = HttpUtils.getRetryAfter(e);
+
+            /* Open the circuit if closed or if the probe failed. */
+            if (mState == State.CLOSED || (mState == State.HALF_OPEN && mProbe == call)) {
+                long delay;
+                if (retryAfter >= 0) {
+                    delay = Math.min(retryAfter, MAX_RETRY_AFTER);
+                } else {
+                    delay = RETRY_INTERVALS[Math.min(mFailureCount, RETRY_INTERVALS.length - 1)] / 2;
+                    delay += mRandom.nextInt((int) delay);
+                }
+                mFailureCount++;
+                setState(State.OPEN);
+                mCircuitOpenings.increment();
+                mProbe = null;
+                mRetryTime = now + delay;
+                AppCenterLog.warn(AppCenter.LOG_TAG, "Endpoint " + mEndpoint + " is unavailable, calls are paused for " + delay + " ms.");
+            }
+
+            /* A call started before the circuit was opened can only extend the delay. */
+            else if (retryAfter >= 0) {
+                mRetryTime = Math.max(mRetryTime, now + Math.min(retryAfter, MAX_RETRY_AFTER));
+            }
+            return Math.max(0, mRetryTime - now);
+        }
+
+        /**
+         * Close the circuit after a response from the endpoint.
+         *
+         * @return calls to send again.
+         */
+        List<RetryableCall> onResponse() {
+            if (mState == State.CLOSED) {
+                return null;
+            }
+            AppCenterLog.info(AppCenter.LOG_TAG, "Endpoint " + mEndpoint + " is available again, resuming " + mWaitingCalls.size() + " calls.");
+            setState(State.CLOSED);
+            mFailureCount = 0;
+            mProbe = null;
+            List<RetryableCall> calls = new ArrayList<>(mWaitingCalls);
+            mWaitingCalls.clear();
+            return calls;
+        }
+
+        /**
+         * Schedule the timer for the retry time if calls are waiting and it's not already scheduled for that time.
+         */
+        void scheduleTimer() {
+            Handler previousHandler;
+            Handler handler;
+            long delay;
+            synchronized (HttpClientRetryer.this) {
+                if (mWaitingCalls.isEmpty() || (mTimerHandler != null && mTimerTime == mRetryTime)) {
+                    return;
+                }
+                previousHandler = mTimerHandler;
+                handler = mTimerHandler = mHandler != null ? mHandler : HandlerUtils.getSdkHandler();
+                mTimerTime = mRetryTime;
+                delay = Math.max(0, mRetryTime - SystemClock.uptimeMillis());
+            }
+            if (previousHandler != null) {
+                previousHandler.removeCallbacks(this);
+            }
+            handler.postDelayed(this, delay);
+        }
+
+        /**
+         * Cancel the timer if no call is waiting anymore.
+         */
+        void cancelTimerIfIdle() {
+            Handler handler;
+            synchronized (HttpClientRetryer.this) {
+                if (mTimerHandler == null || !mWaitingCalls.isEmpty()) {
+                    return;
+                }
+                handler = mTimerHandler;
+                mTimerHandler = null;
+            }
+            handler.removeCallbacks(this);
+        }
+
+        /**
+         * Timer callback: send a probe call.
+         */
+        @Override
+        public void run() {
+            RetryableCall probe = null;
+            synchronized (HttpClientRetryer.this) {
+                mTimerHandler = null;
+                if (mState == State.OPEN) {
+                    setState(State.HALF_OPEN);
+                }
+                if (mState == State.HALF_OPEN && mProbe == null) {
+                    mProbe = probe = mWaitingCalls.poll();
+                }
+            }
+            if (probe != null) {
+                AppCenterLog.debug(AppCenter.LOG_TAG, "Probing endpoint " + mEndpoint + ".");
+                probe.send();
+            }
+        }
+    }
+
     /**
      * Retry wrapper logic.
      */
     private class RetryableCall extends HttpClientCallDecorator {
 
+        /**
+         * Circuit breaker of the endpoint.
+         */
+        private final CircuitBreaker mCircuitBreaker;
+
         /**
          * Current retry counter. 0 means its the first try.
          */
         private int mRetryCount;
 
-        RetryableCall(HttpClient decoratedApi, String url, String method, Map<String, String> headers, CallTemplate callTemplate, ServiceCallback serviceCallback) {
+        /**
+         * True if canceled. Guarded by the retryer lock.
+         */
+        private boolean mCanceled;
+
+        RetryableCall(HttpClient decoratedApi, String url, String method, Map<String, String> headers, CallTemplate callTemplate, ServiceCallback serviceCallback, CircuitBreaker circuitBreaker) {
             super(decoratedApi, url, method, headers, callTemplate, serviceCallback);
+            mCircuitBreaker = circuitBreaker;
+        }
+
+        @Override
+        public void run() {
+            boolean admitted;
+            synchronized (HttpClientRetryer.this) {
+                admitted = mCircuitBreaker.admit(this);
+            }
+            if (admitted) {
+                super.run();
+            } else {
+                mCircuitBreaker.scheduleTimer();
+            }
+        }
+
+        /**
+         * Send the call, bypassing the circuit breaker.
+         */
+        void send() {
+            synchronized (HttpClientRetryer.this) {
+                if (mCanceled) {
+                    return;
+                }
+            }
+            super.run();
+        }
+
+        @Override
+        public void cancel() {
+            RetryableCall nextProbe = null;
+            synchronized (HttpClientRetryer.this) {
+                mCanceled = true;
+                if (!mCircuitBreaker.mWaitingCalls.remove(this) && mCircuitBreaker.mProbe == this) {
+
+                    /* Use another call as the probe. */
+                    mCircuitBreaker.mProbe = nextProbe = mCircuitBreaker.mWaitingCalls.poll();
+                }
+            }
+            mCircuitBreaker.cancelTimerIfIdle();
+            synchronized (this) {
+                if (mServiceCall != null) {
+                    mServiceCall.cancel();
+                }
+            }
+            if (nextProbe != null) {
+                nextProbe.send();
+            }
         }
 
         @Override
-        public synchronized void cancel() {
-            mHandler.removeCallbacks(this);
-            super.cancel();
+        public void onCallSucceeded(String payload) {
+            resumeWaitingCalls();
+            super.onCallSucceeded(payload);
         }
 
         @Override
         public void onCallFailed(Exception e) {
-            if (mRetryCount < RETRY_INTERVALS.length && HttpUtils.isRecoverableError(e)) {
-                long delay = RETRY_INTERVALS[mRetryCount++] / 2;
-                delay += mRandom.nextInt((int) delay);
+
+            /* Any other error means the endpoint answered. */
+            if (!HttpUtils.isRecoverableError(e)) {
+                resumeWaitingCalls();
+                mServiceCallback.onCallFailed(e);
+                return;
+            }
+            long delay;
+            boolean retry;
+            synchronized (HttpClientRetryer.this) {
+                delay = mCircuitBreaker.onFailure(this, e);
+                retry = mRetryCount < RETRY_INTERVALS.length;
+                if (retry) {
+                    mRetryCount++;
+                    mRetries.increment();
+                    mCircuitBreaker.mWaitingCalls.add(this);
+                }
+            }
+            if (retry) {
                 String message = "Try #" + mRetryCount + " failed and will be retried in " + delay + " ms";
                 if (e instanceof UnknownHostException) {
                     message += " (UnknownHostException)";
                 }
                 AppCenterLog.warn(AppCenter.LOG_TAG, message, e);
-                mHandler.postDelayed(this, delay);
             } else {
                 mServiceCallback.onCallFailed(e);
             }
+
+            /* Even when giving up, a failed probe reopened the circuit and the waiting calls need the timer. */
+            mCircuitBreaker.scheduleTimer();
+        }
+
+        /**
+         * Close the circuit and send the calls that were waiting.
+         */
+        private void resumeWaitingCalls() {
+            List<RetryableCall> calls;
+            synchronized (HttpClientRetryer.this) {
+                calls = mCircuitBreaker.onResponse();
+            }
+            if (calls != null) {
+                mCircuitBreaker.cancelTimerIfIdle();
+                for (RetryableCall call : calls) {
+                    call.send();
+                }
+            }
         }
     }
 }
@@ -4,6 +4,8 @@ import android.support.annotation.NonNull;
 import android.text.TextUtils;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * HTTP exception.
@@ -20,6 +22,11 @@ public class HttpException extends IOException {
      */
     private final String payload;
 
+    /**
+     * HTTP response headers that are relevant to handle the error.
+     */
+    private final Map<String, String> headers;
+
     /**
      * Init with empty response body.
      *
@@ -37,9 +44,21 @@ public class HttpException extends IOException {
      */
     @SuppressWarnings("WeakerAccess")
     public HttpException(int status, @NonNull String payload) {
+        this(status, payload, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * Init with response headers.
+     *
+     * @param status  HTTP status code.
+     * @param payload HTTP payload.
+     * @param headers HTTP response headers.
+     */
+    public HttpException(int status, @NonNull String payload, @NonNull Map<String, String> headers) {
         super(getDetailMessage(status, payload));
         this.payload = payload;
         this.statusCode = status;
+        this.headers = headers;
     }
 
     @NonNull
@@ -71,6 +90,16 @@ public class HttpException extends IOException {
         return payload;
     }
 
+    /**
+     * Get the HTTP response headers.
+     *
+     * @return HTTP response headers. Can be empty.
+     */
+    @NonNull
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -1,18 +1,37 @@
 package com.microsoft.appcenter.http;
 
+import android.os.Debug;
 import android.support.annotation.VisibleForTesting;
 
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.metrics.MetricsRegistry;
+
 import java.io.EOFException;
+import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import javax.net.ssl.SSLException;
 
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+import static com.microsoft.appcenter.http.DefaultHttpClient.RETRY_AFTER_KEY;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.HTTP_PAYLOAD_BYTES;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.HTTP_WIRE_BYTES;
+
 /**
  * HTTP utilities.
  */
@@ -39,10 +58,169 @@ public class HttpUtils {
      */
     private static final Pattern CONNECTION_ISSUE_PATTERN = Pattern.compile("connection (time|reset)|failure in ssl library, usually a protocol error|anchor for certification path not found");
 
+    /**
+     * Date format of the retry after header when not expressed in seconds.
+     */
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    /**
+     * Content encoding header key.
+     */
+    public static final String CONTENT_ENCODING_KEY = "Content-Encoding";
+
+    /**
+     * Base HTTP client set by the application, null to use {@link DefaultHttpClient}.
+     */
+    private static HttpClient sBaseHttpClient;
+
+    /**
+     * Content encoding policy set by the application, null to use {@link DefaultContentEncodingPolicy}.
+     */
+    private static ContentEncodingPolicy sContentEncodingPolicy;
+
+    /**
+     * Listener of payload encoding metrics, if any.
+     */
+    private static PayloadEncodingListener sPayloadEncodingListener;
+
+    /**
+     * Endpoint selectors set by the application.
+     */
+    private static final List<EndpointSelector> sEndpointSelectors = new ArrayList<>();
+
     @VisibleForTesting
     HttpUtils() {
     }
 
+    /**
+     * Set the HTTP client that all services use as the base transport.
+     * Retries and network state handling are still applied on top of it.
+     * The same instance is shared by all services, so its {@link HttpClient#close()} implementation
+     * must not cancel calls made on behalf of other services.
+     *
+     * @param httpClient HTTP client or null to use the default one.
+     */
+    public static synchronized void setBaseHttpClient(HttpClient httpClient) {
+        sBaseHttpClient = httpClient;
+    }
+
+    /**
+     * Get the HTTP client to use as the base transport.
+     *
+     * @return the HTTP client set by the application or a {@link DefaultHttpClient}.
+     */
+    public static synchronized HttpClient getBaseHttpClient() {
+        return sBaseHttpClient != null ? sBaseHttpClient : new DefaultHttpClient();
+    }
+
+    /**
+     * Set the policy selecting how request payloads are encoded.
+     *
+     * @param policy content encoding policy or null to use the default one.
+     */
+    public static synchronized void setContentEncodingPolicy(ContentEncodingPolicy policy) {
+        sContentEncodingPolicy = policy;
+    }
+
+    /**
+     * Get the policy selecting how request payloads are encoded.
+     *
+     * @return the policy set by the application or a shared {@link DefaultContentEncodingPolicy}.
+     */
+    public static synchronized ContentEncodingPolicy getContentEncodingPolicy() {
+        if (sContentEncodingPolicy == null) {
+            sContentEncodingPolicy = new DefaultContentEncodingPolicy();
+        }
+        return sContentEncodingPolicy;
+    }
+
+    /**
+     * Set a listener of payload encoding metrics: bytes sent on the wire and CPU time spent for each request.
+     *
+     * @param listener listener or null to remove it.
+     */
+    public static synchronized void setPayloadEncodingListener(PayloadEncodingListener listener) {
+        sPayloadEncodingListener = listener;
+    }
+
+    /**
+     * Encode a request payload as selected by the content encoding policy.
+     * The payload is sent as is if encoding does not make it smaller.
+     *
+     * @param payload payload to encode.
+     * @param headers request headers, the content encoding headers are added if the payload is encoded.
+     * @return payload to send on the wire.
+     * @throws IOException if encoding failed.
+     */
+    public static byte[] encodePayload(byte[] payload, Map<String, String> headers) throws IOException {
+        ContentEncodingPolicy policy = getContentEncodingPolicy();
+        PayloadEncodingListener listener;
+        synchronized (HttpUtils.class) {
+            listener = sPayloadEncodingListener;
+        }
+        ContentEncoder encoder = policy.selectEncoder(payload.length);
+        String contentEncoding = null;
+        byte[] wirePayload = payload;
+        long cpuTime = 0;
+        if (encoder != null) {
+            long startTime = Debug.threadCpuTimeNanos();
+            byte[] encodedPayload = encoder.encode(payload);
+            cpuTime = Math.max(0, Debug.threadCpuTimeNanos() - startTime);
+            if (encodedPayload.length < payload.length) {
+                contentEncoding = encoder.getContentEncoding();
+                wirePayload = encodedPayload;
+                headers.put(CONTENT_ENCODING_KEY, contentEncoding);
+
+                /* The server needs to know which dictionary to decode with. */
+                if (encoder instanceof DictionaryDeflateEncoder) {
+                    headers.put(DictionaryDeflateEncoder.DICTIONARY_ID_KEY, ((DictionaryDeflateEncoder) encoder).getDictionaryId());
+                }
+            }
+            AppCenterLog.verbose(LOG_TAG, "Payload encoding=" + contentEncoding + " length=" + payload.length + " wireLength=" + wirePayload.length + " cpuTimeNanos=" + cpuTime);
+        }
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.getCounter(HTTP_PAYLOAD_BYTES).add(payload.length);
+        metrics.getCounter(HTTP_WIRE_BYTES).add(wirePayload.length);
+        policy.onPayloadEncoded(contentEncoding, payload.length, wirePayload.length, cpuTime);
+        if (listener != null) {
+            listener.onPayloadEncoded(contentEncoding, payload.length, wirePayload.length, cpuTime);
+        }
+        return wirePayload;
+    }
+
+    /**
+     * Add a list of equivalent endpoints: calls to any of them are then sent to the endpoint the selector prefers.
+     *
+     * @param selector endpoint selector.
+     */
+    public static synchronized void addEndpointSelector(EndpointSelector selector) {
+        sEndpointSelectors.add(selector);
+    }
+
+    /**
+     * Remove a list of equivalent endpoints.
+     *
+     * @param selector endpoint selector.
+     */
+    public static synchronized void removeEndpointSelector(EndpointSelector selector) {
+        sEndpointSelectors.remove(selector);
+    }
+
+    /**
+     * Get the selector of an endpoint.
+     *
+     * @param endpoint scheme and authority.
+     * @return the selector containing this endpoint or null if none.
+     */
+    static synchronized EndpointSelector getEndpointSelector(String endpoint) {
+        for (EndpointSelector selector : sEndpointSelectors) {
+            if (selector.contains(endpoint)) {
+                return selector;
+            }
+        }
+        return null;
+    }
+
     /**
      * Check whether an exception/error describes a recoverable error or not.
      *
@@ -87,6 +265,58 @@ public class HttpUtils {
         return false;
     }
 
+    /**
+     * Get the delay the server asked to wait before retrying a call that failed
+     * with a 429 or 503 status code.
+     *
+     * @param t exception or error.
+     * @return delay in milliseconds, or -1 if the server did not specify one.
+     */
+    public static long getRetryAfter(Throwable t) {
+        if (!(t instanceof HttpException)) {
+            return -1;
+        }
+        HttpException exception = (HttpException) t;
+        int code = exception.getStatusCode();
+        if (code != 429 && code != 503) {
+            return -1;
+        }
+        String value = exception.getHeaders().get(RETRY_AFTER_KEY);
+        if (value == null) {
+            return -1;
+        }
+        value = value.trim();
+
+        /* Delay in seconds. */
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+        } catch (NumberFormatException ignore) {
+
+            /* Try date format. */
+        }
+
+        /* Or date to wait for. */
+        try {
+            DateFormat dateFormat = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+            dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+            Date date = dateFormat.parse(value);
+            return Math.max(0, date.getTime() - System.currentTimeMillis());
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Check whether the caller of a call does not need the body of a successful response.
+     *
+     * @param callTemplate call template, can be null.
+     * @return true if the call template discards the body of successful responses.
+     */
+    public static boolean shouldDiscardResponseBody(HttpClient.CallTemplate callTemplate) {
+        return callTemplate instanceof HttpClient.DiscardableResponseCallTemplate
+                && ((HttpClient.DiscardableResponseCallTemplate) callTemplate).shouldDiscardResponseBody();
+    }
+
     public static String hideSecret(String secret) {
 
         /* Cannot hide null or empty string. */
@@ -0,0 +1,251 @@
+package com.microsoft.appcenter.http;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.net.ssl.SSLSocketFactory;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
+/**
+ * Socket factory shared by all calls so that the platform connection pool can reuse connections,
+ * as pooled connections are keyed by socket factory instance.
+ * <p>
+ * It counts new connections (TLS handshakes) and closes the sockets it created when no call happened
+ * during {@link #IDLE_TIMEOUT}, so that a stale connection closed by the server is not reused and sockets
+ * are not kept for the lifetime of the platform pool. A timer closes them once the last call completes,
+ * they are also checked when the next call starts as the timer does not run while the device sleeps.
+ */
+class KeepAliveSocketFactory extends SSLSocketFactory {
+
+    /**
+     * Time in milliseconds without calls after which pooled connections are closed.
+     */
+    @VisibleForTesting
+    static final long IDLE_TIMEOUT = 30000;
+
+    /**
+     * Factory creating the actual sockets.
+     */
+    private final SSLSocketFactory mDelegate;
+
+    /**
+     * Handler for the idle timer, null to use the App Center background thread.
+     */
+    private final Handler mHandler;
+
+    /**
+     * Idle timer callback.
+     */
+    private final Runnable mIdleTimeoutRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            onIdleTimeout();
+        }
+    };
+
+    /**
+     * Handler of the idle timer, null if not scheduled.
+     */
+    private Handler mTimerHandler;
+
+    /**
+     * Sockets created by this factory that are not closed yet.
+     */
+    private final List<Socket> mSockets = new ArrayList<>();
+
+    /**
+     * Number of calls currently using a connection.
+     */
+    private int mActiveCalls;
+
+    /**
+     * Time of the last call completion.
+     */
+    private long mLastActivityTime;
+
+    /**
+     * Total number of calls.
+     */
+    private long mCallCount;
+
+    /**
+     * Total number of connections created.
+     */
+    private long mConnectionCount;
+
+    /**
+     * Init.
+     *
+     * @param delegate factory creating the actual sockets.
+     */
+    KeepAliveSocketFactory(SSLSocketFactory delegate) {
+        this(delegate, null);
+    }
+
+    /**
+     * Init.
+     *
+     * @param delegate factory creating the actual sockets.
+     * @param handler  handler for the idle timer.
+     */
+    @VisibleForTesting
+    KeepAliveSocketFactory(SSLSocketFactory delegate, Handler handler) {
+        mDelegate = delegate;
+        mHandler = handler;
+    }
+
+    /**
+     * Get factory creating the actual sockets.
+     *
+     * @return delegate factory.
+     */
+    SSLSocketFactory getDelegate() {
+        return mDelegate;
+    }
+
+    /**
+     * Called before opening a connection. Closes idle sockets if the idle timeout is reached.
+     */
+    synchronized void onCallStarted() {
+        cancelIdleTimer();
+        closeIdleSockets();
+        mActiveCalls++;
+        mCallCount++;
+    }
+
+    /**
+     * Called when a call completed, whether the connection was released to the pool or not.
+     */
+    synchronized void onCallCompleted() {
+        mActiveCalls--;
+        mLastActivityTime = SystemClock.elapsedRealtime();
+
+        /* Forget sockets closed by the pool or the server. */
+        for (Iterator<Socket> iterator = mSockets.iterator(); iterator.hasNext(); ) {
+            if (iterator.next().isClosed()) {
+                iterator.remove();
+            }
+        }
+
+        /* Close remaining sockets if no other call starts in time. */
+        if (mActiveCalls == 0 && !mSockets.isEmpty() && mTimerHandler == null) {
+            mTimerHandler = mHandler != null ? mHandler : HandlerUtils.getSdkHandler();
+            mTimerHandler.postDelayed(mIdleTimeoutRunnable, IDLE_TIMEOUT);
+        }
+    }
+
+    /**
+     * Called when the idle timer expires.
+     */
+    private synchronized void onIdleTimeout() {
+        mTimerHandler = null;
+        closeIdleSockets();
+    }
+
+    /**
+     * Cancel the idle timer if scheduled.
+     */
+    private void cancelIdleTimer() {
+        if (mTimerHandler != null) {
+            mTimerHandler.removeCallbacks(mIdleTimeoutRunnable);
+            mTimerHandler = null;
+        }
+    }
+
+    /**
+     * Close sockets if no call happened during the idle timeout.
+     */
+    private void closeIdleSockets() {
+        if (mActiveCalls == 0 && !mSockets.isEmpty() && SystemClock.elapsedRealtime() - mLastActivityTime >= IDLE_TIMEOUT) {
+            AppCenterLog.debug(LOG_TAG, "Closing " + mSockets.size() + " idle connection(s).");
+            for (Socket socket : mSockets) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    AppCenterLog.warn(LOG_TAG, "Failed to close idle connection.", e);
+                }
+            }
+            mSockets.clear();
+        }
+    }
+
+    /**
+     * Get total number of calls.
+     *
+     * @return number of calls.
+     */
+    synchronized long getCallCount() {
+        return mCallCount;
+    }
+
+    /**
+     * Get total number of connections created, each one implies a TLS handshake.
+     *
+     * @return number of connections.
+     */
+    synchronized long getConnectionCount() {
+        return mConnectionCount;
+    }
+
+    /**
+     * Track a new socket.
+     */
+    private synchronized Socket track(Socket socket) {
+        mConnectionCount++;
+        mSockets.add(socket);
+        return socket;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return mDelegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return mDelegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return track(mDelegate.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return track(mDelegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return track(mDelegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return track(mDelegate.createSocket(host, port, localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return track(mDelegate.createSocket(address, port, localAddress, localPort));
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+        return track(mDelegate.createSocket(socket, host, port, autoClose));
+    }
+}
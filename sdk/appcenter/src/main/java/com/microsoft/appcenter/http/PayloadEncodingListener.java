@@ -0,0 +1,17 @@
+package com.microsoft.appcenter.http;
+
+/**
+ * Listener of request payload encoding metrics.
+ */
+public interface PayloadEncodingListener {
+
+    /**
+     * Called after a request payload is encoded, on the thread sending the request.
+     *
+     * @param contentEncoding content encoding sent on the wire, null if the payload is sent as is.
+     * @param payloadLength   payload length in bytes before encoding.
+     * @param wireLength      payload length in bytes sent on the wire.
+     * @param cpuTimeNanos    CPU time in nanoseconds spent encoding the payload.
+     */
+    void onPayloadEncoded(String contentEncoding, int payloadLength, int wireLength, long cpuTimeNanos);
+}
@@ -0,0 +1,191 @@
+package com.microsoft.appcenter.http;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.NetworkStateHelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.microsoft.appcenter.utils.AppCenterLog.LOG_TAG;
+
+/**
+ * Reference to the HTTP pipeline shared by all ingestions of the process.
+ * <p>
+ * The pipeline handles retries and network state once for all references: there is a single network state listener,
+ * a single retry timer and a single registry of in-flight calls, so that all pending calls are resumed together
+ * when network comes back instead of once per ingestion.
+ * <p>
+ * The pipeline is created by the first reference and closed when the last open reference is closed.
+ * Closing a reference only cancels the calls made through that reference.
+ */
+public class SharedHttpClient implements HttpClient {
+
+    /**
+     * Shared pipeline, created on first use.
+     */
+    private static HttpClient sPipeline;
+
+    /**
+     * Number of open references.
+     */
+    private static int sReferenceCount;
+
+    /**
+     * Context used to create the pipeline.
+     */
+    private final Context mContext;
+
+    /**
+     * Calls made through this reference that are not completed yet.
+     */
+    private final Set<Call> mCalls = new HashSet<>();
+
+    /**
+     * True when this reference is closed.
+     */
+    private boolean mClosed;
+
+    /**
+     * Init and open the reference.
+     *
+     * @param context any context.
+     */
+    public SharedHttpClient(@NonNull Context context) {
+        mContext = context;
+        acquire(context);
+    }
+
+    /**
+     * Open a reference, creating or reopening the pipeline if needed.
+     */
+    private static synchronized void acquire(Context context) {
+        if (sPipeline == null) {
+
+            /* Endpoint failover is below retries so that it happens on the first error of each endpoint. */
+            HedgingHttpClient hedgingHttpClient = new HedgingHttpClient(HttpUtils.getBaseHttpClient());
+            HttpClientRetryer retryer = new HttpClientRetryer(hedgingHttpClient);
+            sPipeline = new HttpClientNetworkStateHandler(retryer, NetworkStateHelper.getSharedInstance(context));
+        } else if (sReferenceCount == 0) {
+            sPipeline.reopen();
+        }
+        sReferenceCount++;
+    }
+
+    /**
+     * Close a reference, closing the pipeline if it was the last one.
+     */
+    private static synchronized void release() throws IOException {
+        if (--sReferenceCount == 0) {
+            AppCenterLog.debug(LOG_TAG, "Closing shared HTTP pipeline.");
+            sPipeline.close();
+        }
+    }
+
+    /**
+     * Get shared pipeline.
+     */
+    private static synchronized HttpClient getPipeline() {
+        return sPipeline;
+    }
+
+    @Override
+    public ServiceCall callAsync(String url, String method, Map<String, String> headers, CallTemplate callTemplate, ServiceCallback serviceCallback) {
+        Call call = new Call(serviceCallback);
+        synchronized (this) {
+            mCalls.add(call);
+        }
+        ServiceCall serviceCall = getPipeline().callAsync(url, method, headers, callTemplate, call);
+        call.setServiceCall(serviceCall);
+        return call;
+    }
+
+    @Override
+    public void close() throws IOException {
+        List<Call> calls;
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            calls = new ArrayList<>(mCalls);
+            mCalls.clear();
+        }
+        for (Call call : calls) {
+            call.cancel();
+        }
+        release();
+    }
+
+    @Override
+    public void reopen() {
+        synchronized (this) {
+            if (!mClosed) {
+                return;
+            }
+            mClosed = false;
+        }
+        acquire(mContext);
+    }
+
+    /**
+     * Remove a call from the ones to cancel on close.
+     */
+    private synchronized void removeCall(Call call) {
+        mCalls.remove(call);
+    }
+
+    /**
+     * Call made through this reference.
+     */
+    private class Call implements ServiceCall, ServiceCallback {
+
+        /**
+         * Callback of the caller.
+         */
+        private final ServiceCallback mServiceCallback;
+
+        /**
+         * Call in the shared pipeline.
+         */
+        private ServiceCall mServiceCall;
+
+        Call(ServiceCallback serviceCallback) {
+            mServiceCallback = serviceCallback;
+        }
+
+        synchronized void setServiceCall(ServiceCall serviceCall) {
+            mServiceCall = serviceCall;
+        }
+
+        @Override
+        public void cancel() {
+            removeCall(this);
+            ServiceCall serviceCall;
+            synchronized (this) {
+                serviceCall = mServiceCall;
+            }
+            if (serviceCall != null) {
+                serviceCall.cancel();
+            }
+        }
+
+        @Override
+        public void onCallSucceeded(String payload) {
+            removeCall(this);
+            mServiceCallback.onCallSucceeded(payload);
+        }
+
+        @Override
+        public void onCallFailed(Exception e) {
+            removeCall(this);
+            mServiceCallback.onCallFailed(e);
+        }
+    }
+}
@@ -4,17 +4,14 @@ import android.content.Context;
 import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 
-import com.microsoft.appcenter.http.DefaultHttpClient;
 import com.microsoft.appcenter.http.HttpClient;
-import com.microsoft.appcenter.http.HttpClientNetworkStateHandler;
-import com.microsoft.appcenter.http.HttpClientRetryer;
 import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.http.SharedHttpClient;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.utils.AppCenterLog;
-import com.microsoft.appcenter.utils.NetworkStateHelper;
 
 import org.json.JSONException;
 
@@ -77,9 +74,7 @@ public class AppCenterIngestion implements Ingestion {
      */
     public AppCenterIngestion(@NonNull Context context, @NonNull LogSerializer logSerializer) {
         mLogSerializer = logSerializer;
-        HttpClientRetryer retryer = new HttpClientRetryer(new DefaultHttpClient());
-        NetworkStateHelper networkStateHelper = NetworkStateHelper.getSharedInstance(context);
-        mHttpClient = new HttpClientNetworkStateHandler(retryer, networkStateHelper);
+        mHttpClient = new SharedHttpClient(context);
         mLogUrl = DEFAULT_LOG_URL;
     }
 
@@ -116,7 +111,7 @@ public class AppCenterIngestion implements Ingestion {
     /**
      * Inner class is used to be able to mock System.currentTimeMillis, does not work if using anonymous inner class...
      */
-    private static class IngestionCallTemplate implements HttpClient.CallTemplate {
+    private static class IngestionCallTemplate implements HttpClient.DiscardableResponseCallTemplate {
 
         private final LogSerializer mLogSerializer;
 
@@ -150,5 +145,12 @@ public class AppCenterIngestion implements Ingestion {
                 AppCenterLog.verbose(LOG_TAG, "Headers: " + logHeaders);
             }
         }
+
+        @Override
+        public boolean shouldDiscardResponseBody() {
+
+            /* Channel only needs to know whether logs were accepted. */
+            return true;
+        }
     }
 }
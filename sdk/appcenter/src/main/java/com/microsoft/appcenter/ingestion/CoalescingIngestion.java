@@ -0,0 +1,358 @@
+package com.microsoft.appcenter.ingestion;
+
+import android.os.Handler;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.http.HttpUtils;
+import com.microsoft.appcenter.http.ServiceCall;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
+/**
+ * Ingestion decorator merging batches sent within a short window into a single request.
+ * <p>
+ * Log groups sharing an ingestion each send their own batches, which results in several small concurrent requests
+ * to the same endpoint, typically at application start. Since a log container accepts any log type,
+ * batches with the same app secret and install identifier are merged and the result of the request is reported
+ * to the callback of every batch.
+ * <p>
+ * If the merged request fails with an error that cannot be retried, each batch is sent again separately
+ * so that only the batches actually rejected by the server are reported as failed.
+ * Canceling a merged batch cancels the request and sends the other batches again without it.
+ * <p>
+ * Batches are sent from the App Center background thread.
+ */
+public class CoalescingIngestion implements Ingestion {
+
+    /**
+     * Time in milliseconds to wait for other batches before sending.
+     */
+    @VisibleForTesting
+    static final long COALESCING_WINDOW = 100;
+
+    /**
+     * Decorated ingestion.
+     */
+    private final Ingestion mIngestion;
+
+    /**
+     * Handler used to wait for other batches, null to use the App Center background thread.
+     */
+    private final Handler mHandler;
+
+    /**
+     * Handler the window is scheduled on, null if not scheduled.
+     */
+    private Handler mFlushHandler;
+
+    /**
+     * Batches waiting for the window to elapse.
+     */
+    private final List<Batch> mPendingBatches = new ArrayList<>();
+
+    /**
+     * Sends pending batches.
+     */
+    private final Runnable mFlushRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Init.
+     *
+     * @param ingestion ingestion to decorate.
+     */
+    public CoalescingIngestion(@NonNull Ingestion ingestion) {
+        this(ingestion, null);
+    }
+
+    /**
+     * Init.
+     *
+     * @param ingestion ingestion to decorate.
+     * @param handler   handler used to wait for other batches.
+     */
+    @VisibleForTesting
+    CoalescingIngestion(@NonNull Ingestion ingestion, Handler handler) {
+        mIngestion = ingestion;
+        mHandler = handler;
+    }
+
+    @Override
+    public synchronized ServiceCall sendAsync(String appSecret, UUID installId, LogContainer logContainer, ServiceCallback serviceCallback) throws IllegalArgumentException {
+        Batch batch = new Batch(appSecret, installId, logContainer, serviceCallback);
+        if (mPendingBatches.isEmpty()) {
+            mFlushHandler = mHandler != null ? mHandler : HandlerUtils.getSdkHandler();
+            mFlushHandler.postDelayed(mFlushRunnable, COALESCING_WINDOW);
+        }
+        mPendingBatches.add(batch);
+        return batch;
+    }
+
+    /**
+     * Send pending batches, merging the ones with the same credentials.
+     */
+    private synchronized void flush() {
+        mFlushHandler = null;
+        while (!mPendingBatches.isEmpty()) {
+
+            /* Take all batches that can be merged with the first one. */
+            Batch first = mPendingBatches.remove(0);
+            List<Batch> batches = new ArrayList<>();
+            batches.add(first);
+            for (Iterator<Batch> iterator = mPendingBatches.iterator(); iterator.hasNext(); ) {
+                Batch batch = iterator.next();
+                if (first.canMergeWith(batch)) {
+                    batches.add(batch);
+                    iterator.remove();
+                }
+            }
+
+            sendBatches(batches);
+        }
+    }
+
+    /**
+     * Send batches that can be merged.
+     *
+     * @param batches batches with the same credentials.
+     */
+    private void sendBatches(List<Batch> batches) {
+
+        /* Send it as is if alone. */
+        if (batches.size() == 1) {
+            batches.get(0).send();
+        } else {
+            new MergedCall(batches).send();
+        }
+    }
+
+    /**
+     * Stop waiting for other batches.
+     */
+    private void cancelFlush() {
+        if (mFlushHandler != null) {
+            mFlushHandler.removeCallbacks(mFlushRunnable);
+            mFlushHandler = null;
+        }
+    }
+
+    @Override
+    public void setLogUrl(String logUrl) {
+        mIngestion.setLogUrl(logUrl);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            cancelFlush();
+            for (Batch batch : mPendingBatches) {
+                batch.mCanceled = true;
+            }
+            mPendingBatches.clear();
+        }
+        mIngestion.close();
+    }
+
+    @Override
+    public void reopen() {
+        mIngestion.reopen();
+    }
+
+    /**
+     * Batch sent by a log group.
+     */
+    private class Batch implements ServiceCall, ServiceCallback {
+
+        final String mAppSecret;
+
+        final UUID mInstallId;
+
+        final LogContainer mLogContainer;
+
+        final ServiceCallback mServiceCallback;
+
+        /**
+         * Call sending this batch alone, if any.
+         */
+        ServiceCall mServiceCall;
+
+        /**
+         * Merged call including this batch, if any.
+         */
+        MergedCall mMergedCall;
+
+        /**
+         * True when canceled, the callback is not called anymore.
+         */
+        boolean mCanceled;
+
+        Batch(String appSecret, UUID installId, LogContainer logContainer, ServiceCallback serviceCallback) {
+            mAppSecret = appSecret;
+            mInstallId = installId;
+            mLogContainer = logContainer;
+            mServiceCallback = serviceCallback;
+        }
+
+        boolean canMergeWith(Batch batch) {
+            return (mAppSecret == null ? batch.mAppSecret == null : mAppSecret.equals(batch.mAppSecret))
+                    && (mInstallId == null ? batch.mInstallId == null : mInstallId.equals(batch.mInstallId));
+        }
+
+        /**
+         * Send this batch alone.
+         */
+        void send() {
+            mMergedCall = null;
+            mServiceCall = mIngestion.sendAsync(mAppSecret, mInstallId, mLogContainer, this);
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (CoalescingIngestion.this) {
+                if (mCanceled) {
+                    return;
+                }
+                mCanceled = true;
+                if (mPendingBatches.remove(this)) {
+                    if (mPendingBatches.isEmpty()) {
+                        cancelFlush();
+                    }
+                } else if (mMergedCall != null) {
+                    mMergedCall.remove(this);
+                } else if (mServiceCall != null) {
+                    mServiceCall.cancel();
+                }
+            }
+        }
+
+        @Override
+        public void onCallSucceeded(String payload) {
+            if (!isCanceled()) {
+                mServiceCallback.onCallSucceeded(payload);
+            }
+        }
+
+        @Override
+        public void onCallFailed(Exception e) {
+            if (!isCanceled()) {
+                mServiceCallback.onCallFailed(e);
+            }
+        }
+
+        private boolean isCanceled() {
+            synchronized (CoalescingIngestion.this) {
+                return mCanceled;
+            }
+        }
+    }
+
+    /**
+     * Request merging several batches.
+     */
+    private class MergedCall implements ServiceCallback {
+
+        final List<Batch> mBatches;
+
+        ServiceCall mServiceCall;
+
+        /**
+         * True when canceled to send the batches again, results are ignored. Guarded by the ingestion lock.
+         */
+        boolean mCanceled;
+
+        MergedCall(List<Batch> batches) {
+            mBatches = batches;
+        }
+
+        void send() {
+            List<Log> logs = new ArrayList<>();
+            for (Batch batch : mBatches) {
+                batch.mMergedCall = this;
+                logs.addAll(batch.mLogContainer.getLogs());
+            }
+            AppCenterLog.debug(LOG_TAG, "Merging " + mBatches.size() + " batches into a single request of " + logs.size() + " logs.");
+            LogContainer logContainer = new LogContainer();
+            logContainer.setLogs(logs);
+            Batch first = mBatches.get(0);
+            mServiceCall = mIngestion.sendAsync(first.mAppSecret, first.mInstallId, logContainer, this);
+        }
+
+        /**
+         * Cancel this request because a batch was canceled, and send the other batches again without it.
+         * Called with the ingestion lock held.
+         *
+         * @param canceledBatch the canceled batch.
+         */
+        void remove(Batch canceledBatch) {
+            mCanceled = true;
+            if (mServiceCall != null) {
+                mServiceCall.cancel();
+            }
+            List<Batch> batches = new ArrayList<>();
+            for (Batch batch : mBatches) {
+                if (batch != canceledBatch && !batch.mCanceled) {
+                    batches.add(batch);
+                }
+            }
+            if (!batches.isEmpty()) {
+                sendBatches(batches);
+            }
+        }
+
+        private boolean isCanceled() {
+            synchronized (CoalescingIngestion.this) {
+                return mCanceled;
+            }
+        }
+
+        @Override
+        public void onCallSucceeded(String payload) {
+            if (isCanceled()) {
+                return;
+            }
+            for (Batch batch : mBatches) {
+                batch.onCallSucceeded(payload);
+            }
+        }
+
+        @Override
+        public void onCallFailed(Exception e) {
+            if (isCanceled()) {
+                return;
+            }
+
+            /* Find out which batches are rejected by sending them separately. */
+            if (!HttpUtils.isRecoverableError(e)) {
+                AppCenterLog.warn(LOG_TAG, "Merged request failed, sending batches separately.");
+                synchronized (CoalescingIngestion.this) {
+                    for (Batch batch : mBatches) {
+                        if (!batch.mCanceled) {
+                            batch.send();
+                        }
+                    }
+                }
+                return;
+            }
+            for (Batch batch : mBatches) {
+                batch.onCallFailed(e);
+            }
+        }
+    }
+}
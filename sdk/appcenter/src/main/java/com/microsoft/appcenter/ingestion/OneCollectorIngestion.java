@@ -5,19 +5,16 @@ import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.appcenter.Constants;
-import com.microsoft.appcenter.http.DefaultHttpClient;
 import com.microsoft.appcenter.http.HttpClient;
-import com.microsoft.appcenter.http.HttpClientNetworkStateHandler;
-import com.microsoft.appcenter.http.HttpClientRetryer;
 import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.http.SharedHttpClient;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import com.microsoft.appcenter.utils.AppCenterLog;
-import com.microsoft.appcenter.utils.NetworkStateHelper;
 import com.microsoft.appcenter.utils.TicketCache;
 
 import org.json.JSONException;
@@ -108,9 +105,7 @@ public class OneCollectorIngestion implements Ingestion {
      */
     public OneCollectorIngestion(@NonNull Context context, @NonNull LogSerializer logSerializer) {
         mLogSerializer = logSerializer;
-        HttpClientRetryer retryer = new HttpClientRetryer(new DefaultHttpClient());
-        NetworkStateHelper networkStateHelper = NetworkStateHelper.getSharedInstance(context);
-        mHttpClient = new HttpClientNetworkStateHandler(retryer, networkStateHelper);
+        mHttpClient = new SharedHttpClient(context);
         mLogUrl = DEFAULT_LOG_URL;
     }
 
@@ -201,7 +196,7 @@ public class OneCollectorIngestion implements Ingestion {
     /**
      * Call template implementation for One Collector.
      */
-    private static class IngestionCallTemplate implements HttpClient.CallTemplate {
+    private static class IngestionCallTemplate implements HttpClient.DiscardableResponseCallTemplate {
 
         /**
          * Log serializer.
@@ -253,5 +248,12 @@ public class OneCollectorIngestion implements Ingestion {
                 AppCenterLog.verbose(LOG_TAG, "Headers: " + logHeaders);
             }
         }
+
+        @Override
+        public boolean shouldDiscardResponseBody() {
+
+            /* Channel only needs to know whether logs were accepted. */
+            return true;
+        }
     }
 }
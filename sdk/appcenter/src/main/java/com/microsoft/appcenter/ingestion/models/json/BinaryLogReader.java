@@ -0,0 +1,195 @@
+package com.microsoft.appcenter.ingestion.models.json;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.microsoft.appcenter.ingestion.models.json.BinaryLogWriter.KEY_END;
+import static com.microsoft.appcenter.ingestion.models.json.BinaryLogWriter.KEY_INDEX_OFFSET;
+import static com.microsoft.appcenter.ingestion.models.json.BinaryLogWriter.KEY_NEW;
+import static com.microsoft.appcenter.ingestion.models.json.BinaryLogWriter.MAGIC;
+import static com.microsoft.appcenter.ingestion.models.json.BinaryLogWriter.TAG_ARRAY;
+import static com.microsoft.appcenter.ingestion.models.json.BinaryLogWriter.TAG_DOUBLE;
+import static com.microsoft.appcenter.ingestion.models.json.BinaryLogWriter.TAG_END;
+import static com.microsoft.appcenter.ingestion.models.json.BinaryLogWriter.TAG_FALSE;
+import static com.microsoft.appcenter.ingestion.models.json.BinaryLogWriter.TAG_LONG;
+import static com.microsoft.appcenter.ingestion.models.json.BinaryLogWriter.TAG_NULL;
+import static com.microsoft.appcenter.ingestion.models.json.BinaryLogWriter.TAG_OBJECT;
+import static com.microsoft.appcenter.ingestion.models.json.BinaryLogWriter.TAG_STRING;
+import static com.microsoft.appcenter.ingestion.models.json.BinaryLogWriter.TAG_TRUE;
+import static com.microsoft.appcenter.ingestion.models.json.BinaryLogWriter.UTF_8;
+import static com.microsoft.appcenter.ingestion.models.json.BinaryLogWriter.VERSION;
+
+/**
+ * Reader of the binary storage format produced by {@link BinaryLogWriter}.
+ * Records are decoded straight into {@link JSONObject} so that models are read with their existing implementation,
+ * without tokenizing JSON text.
+ */
+public class BinaryLogReader {
+
+    /**
+     * Record being read.
+     */
+    private final byte[] mData;
+
+    /**
+     * Keys by index, in order of first occurrence.
+     */
+    private final List<String> mKeys = new ArrayList<>();
+
+    /**
+     * Read position.
+     */
+    private int mPosition;
+
+    /**
+     * Init.
+     *
+     * @param data record.
+     */
+    private BinaryLogReader(byte[] data) {
+        mData = data;
+    }
+
+    /**
+     * Decode a record.
+     *
+     * @param data record.
+     * @return decoded root object.
+     * @throws JSONException if the record is corrupted or uses an unsupported version of the format.
+     */
+    @NonNull
+    public static JSONObject read(@NonNull byte[] data) throws JSONException {
+        if (data.length < 2 || data[0] != MAGIC) {
+            throw new JSONException("Not a binary log record");
+        }
+        if (data[1] != VERSION) {
+            throw new JSONException("Unsupported binary log format version: " + data[1]);
+        }
+        BinaryLogReader reader = new BinaryLogReader(data);
+        reader.mPosition = 2;
+        if (reader.readByte() != TAG_OBJECT) {
+            throw new JSONException("Binary log record root is not an object");
+        }
+        JSONObject object = reader.readObject();
+        if (reader.mPosition != data.length) {
+            throw new JSONException("Unexpected data at the end of binary log record");
+        }
+        return object;
+    }
+
+    /**
+     * Read a value.
+     */
+    private Object readValue(byte tag) throws JSONException {
+        switch (tag) {
+            case TAG_NULL:
+                return JSONObject.NULL;
+
+            case TAG_FALSE:
+                return false;
+
+            case TAG_TRUE:
+                return true;
+
+            case TAG_LONG:
+                long value = readVarLong();
+                return (value >>> 1) ^ -(value & 1);
+
+            case TAG_DOUBLE:
+                long bits = 0;
+                for (int i = 0; i < 8; i++) {
+                    bits = (bits << 8) | (readByte() & 0xFF);
+                }
+                return Double.longBitsToDouble(bits);
+
+            case TAG_STRING:
+                return readString();
+
+            case TAG_OBJECT:
+                return readObject();
+
+            case TAG_ARRAY:
+                return readArray();
+
+            default:
+                throw new JSONException("Invalid tag in binary log record: " + tag);
+        }
+    }
+
+    /**
+     * Read object entries after its start tag.
+     */
+    private JSONObject readObject() throws JSONException {
+        JSONObject object = new JSONObject();
+        long keyReference;
+        while ((keyReference = readVarLong()) != KEY_END) {
+            String key;
+            if (keyReference == KEY_NEW) {
+                key = readString();
+                mKeys.add(key);
+            } else if (keyReference > KEY_NEW && keyReference - KEY_INDEX_OFFSET < mKeys.size()) {
+                key = mKeys.get((int) keyReference - KEY_INDEX_OFFSET);
+            } else {
+                throw new JSONException("Invalid key reference in binary log record");
+            }
+            object.put(key, readValue(readByte()));
+        }
+        return object;
+    }
+
+    /**
+     * Read array values after its start tag.
+     */
+    private JSONArray readArray() throws JSONException {
+        JSONArray array = new JSONArray();
+        byte tag;
+        while ((tag = readByte()) != TAG_END) {
+            array.put(readValue(tag));
+        }
+        return array;
+    }
+
+    /**
+     * Read a length prefixed UTF-8 string.
+     */
+    private String readString() throws JSONException {
+        long length = readVarLong();
+        if (length < 0 || length > mData.length - mPosition) {
+            throw new JSONException("Truncated binary log record");
+        }
+        String value = new String(mData, mPosition, (int) length, UTF_8);
+        mPosition += length;
+        return value;
+    }
+
+    /**
+     * Read an unsigned variable length number.
+     */
+    private long readVarLong() throws JSONException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new JSONException("Invalid number in binary log record");
+    }
+
+    /**
+     * Read a single byte.
+     */
+    private byte readByte() throws JSONException {
+        if (mPosition >= mData.length) {
+            throw new JSONException("Truncated binary log record");
+        }
+        return mData[mPosition++];
+    }
+}
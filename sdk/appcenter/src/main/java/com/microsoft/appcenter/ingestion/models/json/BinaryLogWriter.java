@@ -0,0 +1,357 @@
+package com.microsoft.appcenter.ingestion.models.json;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writer producing the binary storage format of logs instead of JSON text.
+ * <p>
+ * It plugs into the {@link com.microsoft.appcenter.ingestion.models.Model#write(JSONStringer)} contract
+ * so that every model can be stored without a specific implementation.
+ * <p>
+ * The format is a version header followed by tag-length-value encoded values.
+ * Object keys are interned: a key is written once per record and then referenced by its index.
+ * It is only meant for local storage, the wire format is still JSON.
+ */
+public class BinaryLogWriter extends JSONStringer {
+
+    /**
+     * First byte of the header. It is not a valid first byte of UTF-8 text so that it cannot be confused with JSON.
+     */
+    static final byte MAGIC = (byte) 0xAC;
+
+    /**
+     * Current version of the format, second byte of the header.
+     */
+    static final byte VERSION = 1;
+
+    /**
+     * Null value tag.
+     */
+    static final byte TAG_NULL = 0;
+
+    /**
+     * False value tag.
+     */
+    static final byte TAG_FALSE = 1;
+
+    /**
+     * True value tag.
+     */
+    static final byte TAG_TRUE = 2;
+
+    /**
+     * Integer value tag, followed by a zigzag variable length encoded long.
+     */
+    static final byte TAG_LONG = 3;
+
+    /**
+     * Decimal value tag, followed by the 8 bytes of a double.
+     */
+    static final byte TAG_DOUBLE = 4;
+
+    /**
+     * String value tag, followed by the length and UTF-8 bytes.
+     */
+    static final byte TAG_STRING = 5;
+
+    /**
+     * Object start tag, followed by key references and values then {@link #KEY_END}.
+     */
+    static final byte TAG_OBJECT = 6;
+
+    /**
+     * Array start tag, followed by values then {@link #TAG_END}.
+     */
+    static final byte TAG_ARRAY = 7;
+
+    /**
+     * Array end tag.
+     */
+    static final byte TAG_END = 8;
+
+    /**
+     * Key reference closing an object.
+     */
+    static final int KEY_END = 0;
+
+    /**
+     * Key reference announcing a new key string, following references are the key index plus {@link #KEY_INDEX_OFFSET}.
+     */
+    static final int KEY_NEW = 1;
+
+    /**
+     * Offset of key indexes in key references.
+     */
+    static final int KEY_INDEX_OFFSET = 2;
+
+    /**
+     * Charset used for strings.
+     */
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Initial buffer size.
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Interned keys and their index.
+     */
+    private final Map<String, Integer> mKeys = new HashMap<>();
+
+    /**
+     * Nesting stack, true for objects and false for arrays.
+     */
+    private final List<Boolean> mStack = new ArrayList<>();
+
+    /**
+     * Output buffer.
+     */
+    private byte[] mBuffer = new byte[INITIAL_CAPACITY];
+
+    /**
+     * Number of bytes written in buffer.
+     */
+    private int mSize;
+
+    /**
+     * True when a key was written and its value is expected.
+     */
+    private boolean mKeyWritten;
+
+    /**
+     * True when the root value was started.
+     */
+    private boolean mRootWritten;
+
+    /**
+     * Init.
+     */
+    public BinaryLogWriter() {
+        writeByte(MAGIC);
+        writeByte(VERSION);
+    }
+
+    @Override
+    public JSONStringer object() throws JSONException {
+        beforeValue();
+        writeByte(TAG_OBJECT);
+        mStack.add(true);
+        return this;
+    }
+
+    @Override
+    public JSONStringer endObject() throws JSONException {
+        return end(true);
+    }
+
+    @Override
+    public JSONStringer array() throws JSONException {
+        beforeValue();
+        writeByte(TAG_ARRAY);
+        mStack.add(false);
+        return this;
+    }
+
+    @Override
+    public JSONStringer endArray() throws JSONException {
+        return end(false);
+    }
+
+    @Override
+    public JSONStringer key(String name) throws JSONException {
+        if (name == null) {
+            throw new JSONException("Names must be non-null");
+        }
+        if (mStack.isEmpty() || !mStack.get(mStack.size() - 1) || mKeyWritten) {
+            throw new JSONException("Nesting problem");
+        }
+        Integer index = mKeys.get(name);
+        if (index == null) {
+
+            /* The new key gets the next index. */
+            writeVarLong(KEY_NEW);
+            writeString(name);
+            mKeys.put(name, mKeys.size());
+        } else {
+            writeVarLong(index + KEY_INDEX_OFFSET);
+        }
+        mKeyWritten = true;
+        return this;
+    }
+
+    @Override
+    public JSONStringer value(boolean value) throws JSONException {
+        beforeValue();
+        writeByte(value ? TAG_TRUE : TAG_FALSE);
+        return this;
+    }
+
+    @Override
+    public JSONStringer value(double value) throws JSONException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new JSONException("Forbidden numeric value: " + value);
+        }
+        beforeValue();
+        writeByte(TAG_DOUBLE);
+        long bits = Double.doubleToLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            writeByte((byte) (bits >>> shift));
+        }
+        return this;
+    }
+
+    @Override
+    public JSONStringer value(long value) throws JSONException {
+        beforeValue();
+        writeByte(TAG_LONG);
+        writeVarLong((value << 1) ^ (value >> 63));
+        return this;
+    }
+
+    @Override
+    public JSONStringer value(Object value) throws JSONException {
+        if (value == null || value == JSONObject.NULL) {
+            beforeValue();
+            writeByte(TAG_NULL);
+        } else if (value instanceof Boolean) {
+            value((boolean) (Boolean) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            value(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            value(((Number) value).doubleValue());
+        } else if (value instanceof JSONObject) {
+            JSONObject jsonObject = (JSONObject) value;
+            object();
+            for (Iterator<String> keys = jsonObject.keys(); keys.hasNext(); ) {
+                String key = keys.next();
+                key(key).value(jsonObject.get(key));
+            }
+            endObject();
+        } else if (value instanceof JSONArray) {
+            JSONArray jsonArray = (JSONArray) value;
+            array();
+            for (int i = 0; i < jsonArray.length(); i++) {
+                value(jsonArray.get(i));
+            }
+            endArray();
+        } else {
+            beforeValue();
+            writeByte(TAG_STRING);
+            writeString(value.toString());
+        }
+        return this;
+    }
+
+    /**
+     * Get the encoded record.
+     *
+     * @return encoded bytes.
+     * @throws JSONException if an object or array is not closed.
+     */
+    @NonNull
+    public byte[] toByteArray() throws JSONException {
+        if (!mStack.isEmpty()) {
+            throw new JSONException("Nesting problem");
+        }
+        byte[] result = new byte[mSize];
+        System.arraycopy(mBuffer, 0, result, 0, mSize);
+        return result;
+    }
+
+    /**
+     * The binary format has no text representation.
+     *
+     * @return null like an incomplete JSON string.
+     */
+    @Override
+    public String toString() {
+        return null;
+    }
+
+    /**
+     * Check a value can be written at this position.
+     */
+    private void beforeValue() throws JSONException {
+        if (mStack.isEmpty()) {
+            if (mRootWritten) {
+                throw new JSONException("Nesting problem");
+            }
+            mRootWritten = true;
+        } else if (mStack.get(mStack.size() - 1)) {
+            if (!mKeyWritten) {
+                throw new JSONException("Nesting problem");
+            }
+            mKeyWritten = false;
+        }
+    }
+
+    /**
+     * Close an object or array.
+     */
+    private JSONStringer end(boolean object) throws JSONException {
+        if (mStack.isEmpty() || mStack.get(mStack.size() - 1) != object || mKeyWritten) {
+            throw new JSONException("Nesting problem");
+        }
+        mStack.remove(mStack.size() - 1);
+        if (object) {
+            writeVarLong(KEY_END);
+        } else {
+            writeByte(TAG_END);
+        }
+        return this;
+    }
+
+    /**
+     * Write a length prefixed UTF-8 string.
+     */
+    private void writeString(String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        writeVarLong(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, mBuffer, mSize, bytes.length);
+        mSize += bytes.length;
+    }
+
+    /**
+     * Write an unsigned variable length number, 7 bits per byte.
+     */
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((byte) value);
+    }
+
+    /**
+     * Write a single byte.
+     */
+    private void writeByte(byte value) {
+        ensureCapacity(1);
+        mBuffer[mSize++] = value;
+    }
+
+    /**
+     * Grow buffer if needed.
+     */
+    private void ensureCapacity(int length) {
+        if (mSize + length > mBuffer.length) {
+            byte[] buffer = new byte[Math.max(mBuffer.length * 2, mSize + length)];
+            System.arraycopy(mBuffer, 0, buffer, 0, mSize);
+            mBuffer = buffer;
+        }
+    }
+}
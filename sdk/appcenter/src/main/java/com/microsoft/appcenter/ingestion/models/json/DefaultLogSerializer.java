@@ -23,7 +23,15 @@ public class DefaultLogSerializer implements LogSerializer {
 
     private static final String LOGS = "logs";
 
-    private final Map<String, LogFactory> mLogFactories = new HashMap<>();
+    /**
+     * Type codes by log type, codes are indexes in {@link #mLogFactories}.
+     */
+    private final Map<String, Integer> mTypeCodes = new HashMap<>();
+
+    /**
+     * Log factories by type code.
+     */
+    private final List<LogFactory> mLogFactories = new ArrayList<>();
 
     @NonNull
     private JSONStringer writeLog(JSONStringer writer, Log log) throws JSONException {
@@ -38,11 +46,19 @@ public class DefaultLogSerializer implements LogSerializer {
         if (type == null) {
             type = object.getString(TYPE);
         }
-        LogFactory logFactory = mLogFactories.get(type);
-        if (logFactory == null) {
+        int typeCode = getTypeCode(type);
+        if (typeCode == UNKNOWN_TYPE_CODE) {
             throw new JSONException("Unknown log type: " + type);
         }
-        Log log = logFactory.create();
+        return readLog(object, typeCode);
+    }
+
+    @NonNull
+    private Log readLog(JSONObject object, int typeCode) throws JSONException {
+        if (typeCode < 0 || typeCode >= mLogFactories.size()) {
+            return readLog(object, null);
+        }
+        Log log = mLogFactories.get(typeCode).create();
         log.read(object);
         return log;
     }
@@ -59,9 +75,27 @@ public class DefaultLogSerializer implements LogSerializer {
         return readLog(new JSONObject(json), type);
     }
 
+    @NonNull
+    @Override
+    public byte[] serializeLogBinary(@NonNull Log log) throws JSONException {
+        BinaryLogWriter writer = new BinaryLogWriter();
+        writeLog(writer, log);
+        return writer.toByteArray();
+    }
+
+    @NonNull
+    @Override
+    public Log deserializeLogBinary(@NonNull byte[] data, int typeCode) throws JSONException {
+        return readLog(BinaryLogReader.read(data), typeCode);
+    }
+
     @Override
     public Collection<CommonSchemaLog> toCommonSchemaLog(@NonNull Log log) {
-        return mLogFactories.get(log.getType()).toCommonSchemaLogs(log);
+        Integer typeCode = mTypeCodes.get(log.getType());
+        if (typeCode == null) {
+            throw new IllegalArgumentException("Unknown log type: " + log.getType());
+        }
+        return mLogFactories.get(typeCode).toCommonSchemaLogs(log);
     }
 
     @NonNull
@@ -100,6 +134,18 @@ public class DefaultLogSerializer implements LogSerializer {
 
     @Override
     public void addLogFactory(@NonNull String logType, @NonNull LogFactory logFactory) {
-        mLogFactories.put(logType, logFactory);
+        Integer typeCode = mTypeCodes.get(logType);
+        if (typeCode == null) {
+            mTypeCodes.put(logType, mLogFactories.size());
+            mLogFactories.add(logFactory);
+        } else {
+            mLogFactories.set(typeCode, logFactory);
+        }
+    }
+
+    @Override
+    public int getTypeCode(@NonNull String logType) {
+        Integer typeCode = mTypeCodes.get(logType);
+        return typeCode == null ? UNKNOWN_TYPE_CODE : typeCode;
     }
 }
@@ -13,22 +13,82 @@ import java.util.TimeZone;
  * Utility to convert date to string and vice versa to use in JSON payloads.
  * The date format is using ISO 8601 and includes date and time to milliseconds accuracy.
  * It also always uses UTC timezone.
+ * <p>
+ * Dates between years 1970 and 9999 in the exact format are converted without {@link SimpleDateFormat}.
+ * Other dates and strings use the {@link SimpleDateFormat} implementation.
  */
 public final class JSONDateUtils {
 
     /**
-     * Date formatter.
+     * Date format pattern.
+     */
+    private static final String DATE_FORMAT_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+
+    /**
+     * Length of a formatted date.
+     */
+    private static final int DATE_LENGTH = 24;
+
+    /**
+     * Length of the day part of a formatted date.
+     */
+    private static final int DAY_LENGTH = 10;
+
+    /**
+     * Milliseconds in a day.
+     */
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+    /**
+     * Number of days from 1970-01-01 to 10000-01-01, the upper bound of the fast path.
+     */
+    private static final long MAX_EPOCH_DAY = 2932897;
+
+    /**
+     * Days between 0000-03-01 and 1970-01-01.
+     */
+    private static final long EPOCH_DAY_OFFSET = 719468;
+
+    /**
+     * Days in a 400 years cycle.
+     */
+    private static final int DAYS_PER_ERA = 146097;
+
+    /**
+     * Date formatter used outside of the fast path.
      */
     private static final ThreadLocal<DateFormat> DATE_FORMAT = new ThreadLocal<DateFormat>() {
 
         @Override
         protected DateFormat initialValue() {
-            DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+            DateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT_PATTERN, Locale.US);
             dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
             return dateFormat;
         }
     };
 
+    /**
+     * Buffer used to format dates.
+     */
+    private static final ThreadLocal<char[]> BUFFER = new ThreadLocal<char[]>() {
+
+        @Override
+        protected char[] initialValue() {
+            char[] buffer = new char[DATE_LENGTH];
+            buffer[10] = 'T';
+            buffer[13] = ':';
+            buffer[16] = ':';
+            buffer[19] = '.';
+            buffer[23] = 'Z';
+            return buffer;
+        }
+    };
+
+    /**
+     * Last formatted or parsed day, logs are usually generated and read on the same day.
+     */
+    private static volatile CachedDay sCachedDay = new CachedDay(0);
+
     /**
      * Check date parameter is null.
      *
@@ -50,7 +110,24 @@ public final class JSONDateUtils {
      */
     public static String toString(Date date) throws JSONException {
         checkNull(date);
-        return DATE_FORMAT.get().format(date);
+        long time = date.getTime();
+        long epochDay = time / MILLIS_PER_DAY;
+        if (time < 0 || epochDay >= MAX_EPOCH_DAY) {
+            return DATE_FORMAT.get().format(date);
+        }
+        CachedDay cachedDay = sCachedDay;
+        if (cachedDay.mEpochDay != epochDay) {
+            cachedDay = new CachedDay(epochDay);
+            sCachedDay = cachedDay;
+        }
+        char[] buffer = BUFFER.get();
+        System.arraycopy(cachedDay.mChars, 0, buffer, 0, DAY_LENGTH);
+        int millisOfDay = (int) (time - epochDay * MILLIS_PER_DAY);
+        writeDigits(buffer, 11, 2, millisOfDay / 3600000);
+        writeDigits(buffer, 14, 2, millisOfDay / 60000 % 60);
+        writeDigits(buffer, 17, 2, millisOfDay / 1000 % 60);
+        writeDigits(buffer, 20, 3, millisOfDay % 1000);
+        return new String(buffer);
     }
 
     /**
@@ -62,10 +139,149 @@ public final class JSONDateUtils {
      */
     public static Date toDate(String date) throws JSONException {
         checkNull(date);
+        long time = parse(date);
+        if (time >= 0) {
+            return new Date(time);
+        }
         try {
             return DATE_FORMAT.get().parse(date);
         } catch (ParseException e) {
             throw new JSONException(e.getMessage());
         }
     }
+
+    /**
+     * Parse a date in the exact format.
+     *
+     * @param date date string.
+     * @return time in milliseconds or -1 if the string is not in the exact format or out of the fast path range.
+     */
+    private static long parse(String date) {
+        if (date.length() != DATE_LENGTH
+                || date.charAt(4) != '-' || date.charAt(7) != '-' || date.charAt(10) != 'T'
+                || date.charAt(13) != ':' || date.charAt(16) != ':' || date.charAt(19) != '.'
+                || date.charAt(23) != 'Z') {
+            return -1;
+        }
+
+        /* Reuse cached day if the date part matches. */
+        long epochDay;
+        CachedDay cachedDay = sCachedDay;
+        if (date.regionMatches(0, cachedDay.mString, 0, DAY_LENGTH)) {
+            epochDay = cachedDay.mEpochDay;
+        } else {
+            int year = readDigits(date, 0, 4);
+            int month = readDigits(date, 5, 2);
+            int day = readDigits(date, 8, 2);
+            if (year < 1970 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+                return -1;
+            }
+            epochDay = toEpochDay(year, month, day);
+            sCachedDay = new CachedDay(epochDay);
+        }
+        int hours = readDigits(date, 11, 2);
+        int minutes = readDigits(date, 14, 2);
+        int seconds = readDigits(date, 17, 2);
+        int millis = readDigits(date, 20, 3);
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59 || millis < 0) {
+            return -1;
+        }
+        return epochDay * MILLIS_PER_DAY + ((hours * 60 + minutes) * 60 + seconds) * 1000 + millis;
+    }
+
+    /**
+     * Write a zero padded positive number.
+     */
+    private static void writeDigits(char[] buffer, int offset, int length, int value) {
+        for (int i = offset + length - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Read a positive number.
+     *
+     * @return number or -1 if a character is not a digit.
+     */
+    private static int readDigits(String string, int offset, int length) {
+        int value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int digit = string.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Get number of days in a month of the proleptic Gregorian calendar.
+     */
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+            return leap ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * Convert a date to days since 1970-01-01, for positive years.
+     */
+    private static long toEpochDay(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        int era = year / 400;
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return (long) era * DAYS_PER_ERA + dayOfEra - EPOCH_DAY_OFFSET;
+    }
+
+    /**
+     * Formatted date part of a day.
+     */
+    private static class CachedDay {
+
+        /**
+         * Days since 1970-01-01.
+         */
+        final long mEpochDay;
+
+        /**
+         * Formatted day.
+         */
+        final char[] mChars;
+
+        /**
+         * Formatted day as a string to compare with parsed dates.
+         */
+        final String mString;
+
+        /**
+         * Format the day, for positive epoch days.
+         *
+         * @param epochDay days since 1970-01-01.
+         */
+        CachedDay(long epochDay) {
+            mEpochDay = epochDay;
+            long shifted = epochDay + EPOCH_DAY_OFFSET;
+            long era = shifted / DAYS_PER_ERA;
+            int dayOfEra = (int) (shifted - era * DAYS_PER_ERA);
+            int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / (DAYS_PER_ERA - 1)) / 365;
+            int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            int monthIndex = (5 * dayOfYear + 2) / 153;
+            int day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+            int month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+            int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+            mChars = new char[DAY_LENGTH];
+            writeDigits(mChars, 0, 4, year);
+            mChars[4] = '-';
+            writeDigits(mChars, 5, 2, month);
+            mChars[7] = '-';
+            writeDigits(mChars, 8, 2, day);
+            mString = new String(mChars);
+        }
+    }
 }
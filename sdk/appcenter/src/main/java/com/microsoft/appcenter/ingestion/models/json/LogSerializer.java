@@ -12,12 +12,23 @@ import java.util.Collection;
 
 public interface LogSerializer {
 
+    /**
+     * Type code of log types without a registered factory.
+     */
+    int UNKNOWN_TYPE_CODE = -1;
+
     @NonNull
     String serializeLog(@NonNull Log log) throws JSONException;
 
     @NonNull
     Log deserializeLog(@NonNull String json, String type) throws JSONException;
 
+    @NonNull
+    byte[] serializeLogBinary(@NonNull Log log) throws JSONException;
+
+    @NonNull
+    Log deserializeLogBinary(@NonNull byte[] data, int typeCode) throws JSONException;
+
     Collection<CommonSchemaLog> toCommonSchemaLog(@NonNull Log log);
 
     @NonNull
@@ -27,4 +38,6 @@ public interface LogSerializer {
     LogContainer deserializeContainer(@NonNull String json, String type) throws JSONException;
 
     void addLogFactory(@NonNull String logType, @NonNull LogFactory logFactory);
+
+    int getTypeCode(@NonNull String logType);
 }
@@ -1,8 +1,11 @@
 package com.microsoft.appcenter.persistence;
 
+import android.content.ComponentCallbacks2;
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
 import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -10,10 +13,14 @@ import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.UUIDUtils;
 import com.microsoft.appcenter.utils.crypto.CryptoUtils;
+import com.microsoft.appcenter.utils.metrics.Gauge;
+import com.microsoft.appcenter.utils.metrics.Histogram;
+import com.microsoft.appcenter.utils.metrics.MetricsRegistry;
 import com.microsoft.appcenter.utils.storage.DatabaseManager;
 import com.microsoft.appcenter.utils.storage.StorageHelper;
 
@@ -22,6 +29,7 @@ import org.json.JSONException;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -29,8 +37,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.MEMORY_IN_FLIGHT_LOGS_BYTES;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.PERSISTENCE_GET_LATENCY_MICROS;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.PERSISTENCE_LOG_SIZE_BYTES;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.PERSISTENCE_PUT_LATENCY_MICROS;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.getGroupMetricName;
 import static com.microsoft.appcenter.utils.storage.StorageHelper.DatabaseStorage;
 
 public class DatabasePersistence extends Persistence {
@@ -38,7 +52,7 @@ public class DatabasePersistence extends Persistence {
     /**
      * Version of the schema.
      */
-    private static final int VERSION = 2;
+    private static final int VERSION = 3;
 
     /**
      * Name of group column in the table.
@@ -59,11 +73,35 @@ public class DatabasePersistence extends Persistence {
     static final String COLUMN_TARGET_TOKEN = "target_token";
 
     /**
-     * Name of target token column in the table.
+     * Name of log type column in the table, only set by previous versions.
      */
     @VisibleForTesting
     static final String COLUMN_DATA_TYPE = "type";
 
+    /**
+     * Name of log type code column in the table.
+     */
+    @VisibleForTesting
+    static final String COLUMN_DATA_TYPE_CODE = "type_code";
+
+    /**
+     * Name of the table giving the log type of each code, in the same database.
+     */
+    @VisibleForTesting
+    static final String TABLE_LOG_TYPES = "log_types";
+
+    /**
+     * Name of code column in the log types table.
+     */
+    @VisibleForTesting
+    static final String COLUMN_LOG_TYPES_CODE = "code";
+
+    /**
+     * Name of log type column in the log types table.
+     */
+    @VisibleForTesting
+    static final String COLUMN_LOG_TYPES_TYPE = "type";
+
     /**
      * Database name.
      */
@@ -78,9 +116,11 @@ public class DatabasePersistence extends Persistence {
 
     /**
      * Table schema for Persistence.
+     * The log column has no specimen value and is thus declared as TEXT: it holds legacy JSON logs
+     * while new logs are stored as BLOBs in the binary format.
      */
     @VisibleForTesting
-    static final ContentValues SCHEMA = getContentValues("", "", "", "");
+    static final ContentValues SCHEMA = getContentValues("", null, "", "", 0);
 
     /**
      * Size limit (in bytes) for a database row log payload.
@@ -98,6 +138,12 @@ public class DatabasePersistence extends Persistence {
      */
     private static final String PAYLOAD_FILE_EXTENSION = ".json";
 
+    /**
+     * Minimum time in milliseconds between 2 attempts to move logs back to the database after a database failure.
+     */
+    @VisibleForTesting
+    static final long DATABASE_RETRY_INTERVAL = 60000;
+
     /**
      * Application context.
      */
@@ -121,11 +167,73 @@ public class DatabasePersistence extends Persistence {
     @VisibleForTesting
     final Set<Long> mPendingDbIdentifiers;
 
+    /**
+     * Estimated heap bytes of the logs of each pending log group. Key is the same as {@link #mPendingDbIdentifiersGroups}.
+     */
+    private final Map<String, Long> mPendingBytesGroups = new HashMap<>();
+
+    /**
+     * Estimated heap bytes of pending logs, by log group.
+     */
+    private final Map<String, Gauge> mInFlightBytesGauges = new HashMap<>();
+
     /**
      * Base directory to store large payloads outside of SQLite.
      */
     private final File mLargePayloadDirectory;
 
+    /**
+     * Log types by code, loaded from the log types table. Only codes committed to that table are used in the logs table.
+     */
+    private final List<String> mLogTypes = new ArrayList<>();
+
+    /**
+     * Codes by log type.
+     */
+    private final Map<String, Integer> mLogTypeCodes = new HashMap<>();
+
+    /**
+     * True once the log types table is loaded.
+     */
+    private boolean mLogTypeCodesLoaded;
+
+    /**
+     * Log serializer type codes by database type code, resolved lazily.
+     */
+    private int[] mSerializerTypeCodes = new int[0];
+
+    /**
+     * Time to store a log, for metrics.
+     */
+    private final Histogram mPutLatency;
+
+    /**
+     * Time to read a batch of logs, for metrics.
+     */
+    private final Histogram mGetLatency;
+
+    /**
+     * Size of stored logs, for metrics.
+     */
+    private final Histogram mLogSize;
+
+    /**
+     * The maximum number of records allowed in the table.
+     */
+    private final int mMaxRecords;
+
+    /**
+     * Number of stored logs by group, loaded by a single query when first needed then maintained on each change.
+     * Null when not loaded yet or when the counts cannot be trusted anymore.
+     */
+    @VisibleForTesting
+    Map<String, Integer> mLogCounts;
+
+    /**
+     * Time of the next attempt to move logs back to the database, in {@link SystemClock#elapsedRealtime()} time base.
+     */
+    private long mNextDatabaseRetryTime;
+
     /**
      * Initializes variables.
      *
@@ -146,6 +254,11 @@ public class DatabasePersistence extends Persistence {
     @SuppressWarnings("SameParameterValue")
     DatabasePersistence(Context context, int version, ContentValues schema, int maxRecords) {
         mContext = context;
+        mMaxRecords = maxRecords;
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        mPutLatency = metrics.getHistogram(PERSISTENCE_PUT_LATENCY_MICROS);
+        mGetLatency = metrics.getHistogram(PERSISTENCE_GET_LATENCY_MICROS);
+        mLogSize = metrics.getHistogram(PERSISTENCE_LOG_SIZE_BYTES);
         mPendingDbIdentifiersGroups = new HashMap<>();
         mPendingDbIdentifiers = new HashSet<>();
         mDatabaseStorage = DatabaseStorage.getDatabaseStorage(DATABASE, TABLE, version, schema, maxRecords,
@@ -153,19 +266,24 @@ public class DatabasePersistence extends Persistence {
 
                     @Override
                     public boolean onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-
-                        /*
-                         * This is called only on upgrade and thus only if oldVersion is < 2.
-                         * Therefore we don't have to check anything to add the missing columns.
-                         */
-                        db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN `" + COLUMN_TARGET_TOKEN + "` TEXT");
-                        db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN `" + COLUMN_DATA_TYPE + "` TEXT");
+                        if (oldVersion < 2) {
+                            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN `" + COLUMN_TARGET_TOKEN + "` TEXT");
+                            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN `" + COLUMN_DATA_TYPE + "` TEXT");
+                        }
+                        db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN `" + COLUMN_DATA_TYPE_CODE + "` INTEGER");
+                        migrateLogTypes(db);
                         return true;
                     }
 
                     @Override
                     public void onError(String operation, RuntimeException e) {
                         AppCenterLog.error(LOG_TAG, "Cannot complete an operation (" + operation + ")", e);
+
+                        /* Logs stored in SQLite are not visible anymore after switching to the fallback storage. */
+                        mLogCounts = null;
+
+                        /* Don't retry SQLite right after it failed. */
+                        mNextDatabaseRetryTime = SystemClock.elapsedRealtime() + DATABASE_RETRY_INTERVAL;
                     }
                 });
         mLargePayloadDirectory = new File(Constants.FILES_PATH + PAYLOAD_LARGE_DIRECTORY);
@@ -178,28 +296,194 @@ public class DatabasePersistence extends Persistence {
      * Instantiates {@link ContentValues} with the give values.
      *
      * @param group       The group of the storage for the log.
-     * @param logJ        The JSON string for a log.
+     * @param logB        The binary record for a log.
      * @param targetToken target token if the log is common schema.
+     * @param type        log type, only used for schema as codes are stored instead.
+     * @param typeCode    log type code.
      * @return A {@link ContentValues} instance.
      */
-    private static ContentValues getContentValues(@Nullable String group, @Nullable String logJ, String targetToken, String type) {
+    private static ContentValues getContentValues(@Nullable String group, @Nullable byte[] logB, String targetToken, String type, Integer typeCode) {
         ContentValues values = new ContentValues();
         values.put(COLUMN_GROUP, group);
-        values.put(COLUMN_LOG, logJ);
+        values.put(COLUMN_LOG, logB);
         values.put(COLUMN_TARGET_TOKEN, targetToken);
         values.put(COLUMN_DATA_TYPE, type);
+        values.put(COLUMN_DATA_TYPE_CODE, typeCode);
         return values;
     }
 
+    /**
+     * Create the log types table if needed.
+     *
+     * @param db database.
+     */
+    private static void createLogTypesTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS `" + TABLE_LOG_TYPES + "` (`" + COLUMN_LOG_TYPES_CODE + "` INTEGER PRIMARY KEY, `"
+                + COLUMN_LOG_TYPES_TYPE + "` TEXT NOT NULL UNIQUE)");
+    }
+
+    /**
+     * Load the codes of log types from the database, unless already loaded or using the fallback storage.
+     */
+    private void loadLogTypeCodes() {
+        if (mLogTypeCodesLoaded) {
+            return;
+        }
+        mLogTypeCodesLoaded = mDatabaseStorage.runTransaction(new DatabaseManager.Transaction() {
+
+            @Override
+            public void run(@NonNull SQLiteDatabase db, ContentValues values) {
+                createLogTypesTable(db);
+                Cursor cursor = db.query(TABLE_LOG_TYPES, new String[]{COLUMN_LOG_TYPES_CODE, COLUMN_LOG_TYPES_TYPE}, null, null, null, null, null);
+                try {
+                    while (cursor.moveToNext()) {
+                        addLogTypeCode(cursor.getString(1), cursor.getInt(0));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Add a code committed to the log types table.
+     *
+     * @param logType log type.
+     * @param code    code.
+     */
+    private void addLogTypeCode(String logType, int code) {
+        while (mLogTypes.size() <= code) {
+            mLogTypes.add(null);
+        }
+        mLogTypes.set(code, logType);
+        mLogTypeCodes.put(logType, code);
+    }
+
+    /**
+     * Statements saving the code of a new log type in the transaction inserting a log of that type.
+     */
+    private class LogTypeCodeTransaction implements DatabaseManager.Transaction {
+
+        private final String mLogType;
+
+        /**
+         * Code set on the log, only valid if the transaction is committed.
+         */
+        private Integer mCode;
+
+        LogTypeCodeTransaction(String logType) {
+            mLogType = logType;
+        }
+
+        @Override
+        public void run(@NonNull SQLiteDatabase db, ContentValues values) {
+            createLogTypesTable(db);
+            Integer code = null;
+            Cursor cursor = db.query(TABLE_LOG_TYPES, new String[]{COLUMN_LOG_TYPES_CODE}, COLUMN_LOG_TYPES_TYPE + " = ?", new String[]{mLogType}, null, null, null);
+            try {
+                if (cursor.moveToFirst()) {
+                    code = cursor.getInt(0);
+                }
+            } finally {
+                cursor.close();
+            }
+            if (code == null) {
+
+                /* Codes still used in memory are not reallocated if the database was recreated. */
+                cursor = db.query(TABLE_LOG_TYPES, new String[]{"MAX(`" + COLUMN_LOG_TYPES_CODE + "`)"}, null, null, null, null, null);
+                try {
+                    code = cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getInt(0) + 1 : 1;
+                } finally {
+                    cursor.close();
+                }
+                code = Math.max(code, mLogTypes.size());
+                ContentValues logTypeValues = new ContentValues();
+                logTypeValues.put(COLUMN_LOG_TYPES_CODE, code);
+                logTypeValues.put(COLUMN_LOG_TYPES_TYPE, mLogType);
+                db.insertOrThrow(TABLE_LOG_TYPES, null, logTypeValues);
+            }
+            if (values != null) {
+                values.put(COLUMN_DATA_TYPE_CODE, code);
+            }
+            mCode = code;
+        }
+    }
+
+    /**
+     * Get the log type matching a type code stored in the database.
+     *
+     * @param code type code stored in the database, can be null.
+     * @return log type or null if unknown.
+     */
+    @Nullable
+    private String getLogType(Integer code) {
+        if (code != null) {
+            loadLogTypeCodes();
+        }
+        return code == null || code < 0 || code >= mLogTypes.size() ? null : mLogTypes.get(code);
+    }
+
+    /**
+     * Get the log serializer type code matching a type code stored in the database.
+     *
+     * @param code type code stored in the database, can be null.
+     * @return log serializer type code or {@link LogSerializer#UNKNOWN_TYPE_CODE} to read the log type from the payload.
+     */
+    private int getSerializerTypeCode(Integer code) {
+        String logType = getLogType(code);
+        if (logType == null) {
+            return LogSerializer.UNKNOWN_TYPE_CODE;
+        }
+        if (code >= mSerializerTypeCodes.length) {
+            int oldLength = mSerializerTypeCodes.length;
+            mSerializerTypeCodes = Arrays.copyOf(mSerializerTypeCodes, mLogTypes.size());
+            Arrays.fill(mSerializerTypeCodes, oldLength, mSerializerTypeCodes.length, LogSerializer.UNKNOWN_TYPE_CODE);
+        }
+
+        /* Unknown types are resolved again as factories can be registered later. */
+        int serializerTypeCode = mSerializerTypeCodes[code];
+        if (serializerTypeCode == LogSerializer.UNKNOWN_TYPE_CODE) {
+            serializerTypeCode = getLogSerializer().getTypeCode(logType);
+            mSerializerTypeCodes[code] = serializerTypeCode;
+        }
+        return serializerTypeCode;
+    }
+
+    /**
+     * Replace log types by codes in rows stored by previous versions.
+     *
+     * @param db database being upgraded.
+     */
+    private static void migrateLogTypes(SQLiteDatabase db) {
+        createLogTypesTable(db);
+        db.execSQL("INSERT OR IGNORE INTO `" + TABLE_LOG_TYPES + "` (`" + COLUMN_LOG_TYPES_TYPE + "`) SELECT DISTINCT `" + COLUMN_DATA_TYPE
+                + "` FROM `" + TABLE + "` WHERE `" + COLUMN_DATA_TYPE + "` IS NOT NULL");
+        db.execSQL("UPDATE `" + TABLE + "` SET `" + COLUMN_DATA_TYPE_CODE + "` = (SELECT `" + COLUMN_LOG_TYPES_CODE + "` FROM `" + TABLE_LOG_TYPES
+                + "` WHERE `" + TABLE_LOG_TYPES + "`.`" + COLUMN_LOG_TYPES_TYPE + "` = `" + TABLE + "`.`" + COLUMN_DATA_TYPE + "`), `"
+                + COLUMN_DATA_TYPE + "` = NULL WHERE `" + COLUMN_DATA_TYPE + "` IS NOT NULL");
+    }
+
+    @Override
+    public void setLogSerializer(@NonNull LogSerializer logSerializer) {
+        super.setLogSerializer(logSerializer);
+        Arrays.fill(mSerializerTypeCodes, LogSerializer.UNKNOWN_TYPE_CODE);
+    }
+
     @Override
     public long putLog(@NonNull String group, @NonNull Log log) throws PersistenceException {
+        retryDatabase();
 
-        /* Convert log to JSON string and put in the database. */
+        /* Convert log to binary record and put in the database. */
+        long startTime = System.nanoTime();
         try {
-            AppCenterLog.debug(LOG_TAG, "Storing a log to the Persistence database for log type " + log.getType() + " with sid=" + log.getSid());
-            String payload = getLogSerializer().serializeLog(log);
+            if (AppCenterLog.isDebugEnabled()) {
+                AppCenterLog.debug(LOG_TAG, "Storing a log to the Persistence database for log type " + log.getType() + " with sid=" + log.getSid());
+            }
+            byte[] payload = getLogSerializer().serializeLogBinary(log);
+            mLogSize.record(payload.length);
             ContentValues contentValues;
-            boolean isLargePayload = payload.getBytes("UTF-8").length >= PAYLOAD_MAX_SIZE;
+            boolean isLargePayload = payload.length >= PAYLOAD_MAX_SIZE;
             String targetToken;
             if (log instanceof CommonSchemaLog) {
                 targetToken = log.getTransmissionTargetTokens().iterator().next();
@@ -207,13 +491,30 @@ public class DatabasePersistence extends Persistence {
             } else {
                 targetToken = null;
             }
+            loadLogTypeCodes();
+            String logType = log.getType();
+            Integer typeCode = mLogTypeCodes.get(logType);
             if (isLargePayload) {
-                contentValues = getContentValues(group, null, targetToken, log.getType());
+                contentValues = getContentValues(group, null, targetToken, null, typeCode);
+            } else {
+                contentValues = getContentValues(group, payload, targetToken, null, typeCode);
+            }
+            long databaseId;
+            if (typeCode != null) {
+                databaseId = mDatabaseStorage.put(contentValues);
             } else {
-                contentValues = getContentValues(group, payload, targetToken, log.getType());
+
+                /* A new log type gets its code in the transaction inserting the log, the fallback storage keeps no code. */
+                LogTypeCodeTransaction transaction = new LogTypeCodeTransaction(logType);
+                databaseId = mDatabaseStorage.put(contentValues, transaction);
+                if (transaction.mCode != null && !mDatabaseStorage.isUsingFallback()) {
+                    addLogTypeCode(logType, transaction.mCode);
+                }
+            }
+            updateLogCount(group, 1);
+            if (AppCenterLog.isDebugEnabled()) {
+                AppCenterLog.debug(LOG_TAG, "Stored a log to the Persistence database for log type " + log.getType() + " with databaseId=" + databaseId);
             }
-            long databaseId = mDatabaseStorage.put(contentValues);
-            AppCenterLog.debug(LOG_TAG, "Stored a log to the Persistence database for log type " + log.getType() + " with databaseId=" + databaseId);
             if (isLargePayload) {
                 AppCenterLog.debug(LOG_TAG, "Payload is larger than what SQLite supports, storing payload in a separate file.");
                 File directory = getLargePayloadGroupDirectory(group);
@@ -222,18 +523,24 @@ public class DatabasePersistence extends Persistence {
                 directory.mkdir();
                 File payloadFile = getLargePayloadFile(directory, databaseId);
                 try {
-                    StorageHelper.InternalStorage.write(payloadFile, payload);
+
+                    /* Large payload files are kept in JSON. */
+                    StorageHelper.InternalStorage.write(payloadFile, getLogSerializer().serializeLog(log));
                 } catch (IOException e) {
 
                     /* Remove database entry if we cannot save payload as a file. */
                     mDatabaseStorage.delete(databaseId);
+                    updateLogCount(group, -1);
                     throw e;
                 }
-                AppCenterLog.debug(LOG_TAG, "Payload written to " + payloadFile);
+                if (AppCenterLog.isDebugEnabled()) {
+                    AppCenterLog.debug(LOG_TAG, "Payload written to " + payloadFile);
+                }
             }
+            mPutLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
             return databaseId;
         } catch (JSONException e) {
-            throw new PersistenceException("Cannot convert to JSON string", e);
+            throw new PersistenceException("Cannot serialize log", e);
         } catch (IOException e) {
             throw new PersistenceException("Cannot save large payload in a file", e);
         }
@@ -261,17 +568,28 @@ public class DatabasePersistence extends Persistence {
     public void deleteLogs(@NonNull String group, @NonNull String id) {
 
         /* Log. */
-        AppCenterLog.debug(LOG_TAG, "Deleting logs from the Persistence database for " + group + " with " + id);
-        AppCenterLog.debug(LOG_TAG, "The IDs for deleting log(s) is/are:");
+        boolean debugEnabled = AppCenterLog.isDebugEnabled();
+        if (debugEnabled) {
+            AppCenterLog.debug(LOG_TAG, "Deleting logs from the Persistence database for " + group + " with " + id);
+            AppCenterLog.debug(LOG_TAG, "The IDs for deleting log(s) is/are:");
+        }
 
         List<Long> dbIdentifiers = mPendingDbIdentifiersGroups.remove(group + id);
         File directory = getLargePayloadGroupDirectory(group);
         if (dbIdentifiers != null) {
             for (Long dbIdentifier : dbIdentifiers) {
-                AppCenterLog.debug(LOG_TAG, "\t" + dbIdentifier);
+                if (debugEnabled) {
+                    AppCenterLog.debug(LOG_TAG, "\t" + dbIdentifier);
+                }
                 deleteLog(directory, dbIdentifier);
                 mPendingDbIdentifiers.remove(dbIdentifier);
             }
+            updateLogCount(group, -dbIdentifiers.size());
+        }
+        Long pendingBytes = mPendingBytesGroups.remove(group + id);
+        if (pendingBytes != null) {
+            Gauge inFlightBytes = getInFlightBytesGauge(group);
+            inFlightBytes.set(inFlightBytes.get() - pendingBytes);
         }
     }
 
@@ -297,38 +615,81 @@ public class DatabasePersistence extends Persistence {
 
         /* Delete from database. */
         mDatabaseStorage.delete(COLUMN_GROUP, group);
+        if (mLogCounts != null) {
+            mLogCounts.remove(group);
+        }
 
         /* Delete from pending state. */
         for (Iterator<String> iterator = mPendingDbIdentifiersGroups.keySet().iterator(); iterator.hasNext(); ) {
             String key = iterator.next();
             if (key.startsWith(group)) {
                 iterator.remove();
+                mPendingBytesGroups.remove(key);
             }
         }
+        getInFlightBytesGauge(group).set(0);
     }
 
     @Override
     public int countLogs(@NonNull String group) {
 
-        /* Query database and get scanner. */
-        DatabaseStorage.DatabaseScanner scanner = mDatabaseStorage.getScanner(COLUMN_GROUP, group, true);
-        int count = scanner.getCount();
-        scanner.close();
-        return count;
+        /* Count all groups at once, then counts are kept up to date without querying the database. */
+        if (mLogCounts == null) {
+            mLogCounts = mDatabaseStorage.countGroupedBy(COLUMN_GROUP);
+        }
+        Integer count = mLogCounts.get(group);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Update the number of logs of a group after storing or deleting some.
+     *
+     * @param group group of the logs.
+     * @param delta number of logs added, negative if deleted.
+     */
+    private void updateLogCount(String group, int delta) {
+        if (mLogCounts == null) {
+            return;
+        }
+
+        /* When the table is full, storing a log purges the oldest one, which can belong to any group. */
+        if (delta > 0 && mMaxRecords > 0) {
+            int total = 0;
+            for (Integer count : mLogCounts.values()) {
+                total += count;
+            }
+            if (total + delta > mMaxRecords) {
+                mLogCounts = null;
+                return;
+            }
+        }
+        Integer count = mLogCounts.get(group);
+        int newCount = Math.max(0, (count == null ? 0 : count) + delta);
+        if (newCount > 0) {
+            mLogCounts.put(group, newCount);
+        } else {
+            mLogCounts.remove(group);
+        }
     }
 
     @Override
     @Nullable
     public String getLogs(@NonNull String group, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs) {
+        retryDatabase();
 
-        /* Log. */
-        AppCenterLog.debug(LOG_TAG, "Trying to get " + limit + " logs from the Persistence database for " + group);
+        /* Log, messages are only built if debug logs are enabled as this runs for every batch. */
+        boolean debugEnabled = AppCenterLog.isDebugEnabled();
+        if (debugEnabled) {
+            AppCenterLog.debug(LOG_TAG, "Trying to get " + limit + " logs from the Persistence database for " + group);
+        }
+        long startTime = System.nanoTime();
 
         /* Query database and get scanner. */
         DatabaseStorage.DatabaseScanner scanner = mDatabaseStorage.getScanner(COLUMN_GROUP, group);
 
         /* Add logs to output parameter after deserialization if logs are not already sent. */
         int count = 0;
+        long pendingBytes = 0;
         Map<Long, Log> candidates = new TreeMap<>();
         List<Long> failedDbIdentifiers = new ArrayList<>();
         File largePayloadGroupDirectory = getLargePayloadGroupDirectory(group);
@@ -351,6 +712,7 @@ public class DatabasePersistence extends Persistence {
 
                         /* Found the record to delete that we could not read when selecting all fields. */
                         deleteLog(largePayloadGroupDirectory, invalidId);
+                        updateLogCount(group, -1);
                         AppCenterLog.error(LOG_TAG, "Empty database corrupted empty record deleted, id=" + invalidId);
                         break;
                     }
@@ -363,21 +725,36 @@ public class DatabasePersistence extends Persistence {
             if (!mPendingDbIdentifiers.contains(dbIdentifier)) {
                 try {
 
-                    /* Deserialize JSON to Log. */
-                    String logPayload;
-                    String databasePayload = values.getAsString(COLUMN_LOG);
-                    if (databasePayload == null) {
-                        File file = getLargePayloadFile(largePayloadGroupDirectory, dbIdentifier);
-                        AppCenterLog.debug(LOG_TAG, "Read payload file " + file);
-                        logPayload = StorageHelper.InternalStorage.read(file);
-                        if (logPayload == null) {
-                            throw new JSONException("Log payload is null and not stored as a file.");
-                        }
+                    /* Deserialize binary record, or JSON for large payloads and logs stored by previous versions. */
+                    Log log;
+                    int payloadLength;
+                    Integer databasePayloadTypeCode = values.getAsInteger(COLUMN_DATA_TYPE_CODE);
+                    byte[] binaryPayload = values.getAsByteArray(COLUMN_LOG);
+                    if (binaryPayload != null) {
+                        log = getLogSerializer().deserializeLogBinary(binaryPayload, getSerializerTypeCode(databasePayloadTypeCode));
+                        payloadLength = binaryPayload.length;
                     } else {
-                        logPayload = databasePayload;
+                        String logPayload;
+                        String databasePayload = values.getAsString(COLUMN_LOG);
+                        if (databasePayload == null) {
+                            File file = getLargePayloadFile(largePayloadGroupDirectory, dbIdentifier);
+                            if (debugEnabled) {
+                                AppCenterLog.debug(LOG_TAG, "Read payload file " + file);
+                            }
+                            logPayload = StorageHelper.InternalStorage.read(file);
+                            if (logPayload == null) {
+                                throw new JSONException("Log payload is null and not stored as a file.");
+                            }
+                        } else {
+                            logPayload = databasePayload;
+                        }
+                        String databasePayloadType = getLogType(databasePayloadTypeCode);
+                        if (databasePayloadType == null) {
+                            databasePayloadType = values.getAsString(COLUMN_DATA_TYPE);
+                        }
+                        log = getLogSerializer().deserializeLog(logPayload, databasePayloadType);
+                        payloadLength = logPayload.length();
                     }
-                    String databasePayloadType = values.getAsString(COLUMN_DATA_TYPE);
-                    Log log = getLogSerializer().deserializeLog(logPayload, databasePayloadType);
 
                     /* Restore target token. */
                     String targetToken = values.getAsString(COLUMN_TARGET_TOKEN);
@@ -389,6 +766,9 @@ public class DatabasePersistence extends Persistence {
                     /* Add log to list and count. */
                     candidates.put(dbIdentifier, log);
                     count++;
+
+                    /* Logs are mostly made of strings, using 2 bytes per character of their payload. */
+                    pendingBytes += 2L * payloadLength;
                 } catch (JSONException e) {
 
                     /* If it is not able to deserialize, delete and get another log. */
@@ -400,12 +780,14 @@ public class DatabasePersistence extends Persistence {
             }
         }
         scanner.close();
+        mGetLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
 
         /* Delete any logs that cannot be de-serialized. */
         if (failedDbIdentifiers.size() > 0) {
             for (long id : failedDbIdentifiers) {
                 deleteLog(largePayloadGroupDirectory, id);
             }
+            updateLogCount(group, -failedDbIdentifiers.size());
             AppCenterLog.warn(LOG_TAG, "Deleted logs that cannot be deserialized");
         }
 
@@ -419,8 +801,10 @@ public class DatabasePersistence extends Persistence {
         String id = UUIDUtils.randomUUID().toString();
 
         /* Log. */
-        AppCenterLog.debug(LOG_TAG, "Returning " + candidates.size() + " log(s) with an ID, " + id);
-        AppCenterLog.debug(LOG_TAG, "The SID/ID pairs for returning log(s) is/are:");
+        if (debugEnabled) {
+            AppCenterLog.debug(LOG_TAG, "Returning " + candidates.size() + " log(s) with an ID, " + id);
+            AppCenterLog.debug(LOG_TAG, "The SID/ID pairs for returning log(s) is/are:");
+        }
 
         List<Long> pendingDbIdentifiersGroup = new ArrayList<>();
         for (Map.Entry<Long, Log> entry : candidates.entrySet()) {
@@ -436,21 +820,116 @@ public class DatabasePersistence extends Persistence {
             outLogs.add(entry.getValue());
 
             /* Log. */
-            AppCenterLog.debug(LOG_TAG, "\t" + entry.getValue().getSid() + " / " + dbIdentifier);
+            if (debugEnabled) {
+                AppCenterLog.debug(LOG_TAG, "\t" + entry.getValue().getSid() + " / " + dbIdentifier);
+            }
         }
 
         /* Update pending IDs. */
         mPendingDbIdentifiersGroups.put(group + id, pendingDbIdentifiersGroup);
+        mPendingBytesGroups.put(group + id, pendingBytes);
+        Gauge inFlightBytes = getInFlightBytesGauge(group);
+        inFlightBytes.set(inFlightBytes.get() + pendingBytes);
         return id;
     }
 
+    @Override
+    @Nullable
+    public List<Long> getLogIds(@NonNull String group, @NonNull String id) {
+        return mPendingDbIdentifiersGroups.get(group + id);
+    }
+
     @Override
     public void clearPendingLogState() {
         mPendingDbIdentifiers.clear();
         mPendingDbIdentifiersGroups.clear();
+        mPendingBytesGroups.clear();
+        for (Gauge inFlightBytes : mInFlightBytesGauges.values()) {
+            inFlightBytes.set(0);
+        }
         AppCenterLog.debug(LOG_TAG, "Cleared pending log states");
     }
 
+    /**
+     * Get the gauge of estimated heap bytes of pending logs of a group.
+     *
+     * @param group log group.
+     * @return gauge.
+     */
+    private Gauge getInFlightBytesGauge(String group) {
+        Gauge gauge = mInFlightBytesGauges.get(group);
+        if (gauge == null) {
+            gauge = MetricsRegistry.getInstance().getGauge(getGroupMetricName(MEMORY_IN_FLIGHT_LOGS_BYTES, group));
+            mInFlightBytesGauges.put(group, gauge);
+        }
+        return gauge;
+    }
+
+    @Override
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW && mDatabaseStorage.isUsingFallback()) {
+            moveLogsToDatabase();
+        }
+    }
+
+    /**
+     * Periodically try moving logs back to the database while using the fallback storage.
+     */
+    private void retryDatabase() {
+        if (!mDatabaseStorage.isUsingFallback()) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (now >= mNextDatabaseRetryTime) {
+            mNextDatabaseRetryTime = now + DATABASE_RETRY_INTERVAL;
+            moveLogsToDatabase();
+        }
+    }
+
+    /**
+     * Move logs stored in the fallback storage since a database failure back to SQLite, if it works again.
+     * Database identifiers change, so pending identifiers and large payload files are updated.
+     */
+    private void moveLogsToDatabase() {
+
+        /* Large payload files are named after database identifiers, find their groups before identifiers change. */
+        Map<Long, String> largePayloadGroups = new HashMap<>();
+        DatabaseStorage.DatabaseScanner scanner = mDatabaseStorage.getScanner(COLUMN_LOG, null);
+        for (ContentValues values : scanner) {
+            largePayloadGroups.put(values.getAsLong(DatabaseManager.PRIMARY_KEY), values.getAsString(COLUMN_GROUP));
+        }
+        scanner.close();
+
+        Map<Long, Long> identifiers = mDatabaseStorage.moveToDatabase();
+        if (identifiers == null) {
+            return;
+        }
+
+        /* Logs stored in SQLite before the failure are visible again. */
+        mLogCounts = null;
+
+        /* Update identifiers of pending logs, fallback identifiers never collide with SQLite ones. */
+        mPendingDbIdentifiers.clear();
+        for (List<Long> pendingDbIdentifiersGroup : mPendingDbIdentifiersGroups.values()) {
+            for (int i = 0; i < pendingDbIdentifiersGroup.size(); i++) {
+                Long newIdentifier = identifiers.get(pendingDbIdentifiersGroup.get(i));
+                if (newIdentifier != null) {
+                    pendingDbIdentifiersGroup.set(i, newIdentifier);
+                }
+                mPendingDbIdentifiers.add(pendingDbIdentifiersGroup.get(i));
+            }
+        }
+
+        /* Rename large payload files. */
+        for (Map.Entry<Long, String> entry : largePayloadGroups.entrySet()) {
+            File directory = getLargePayloadGroupDirectory(entry.getValue());
+
+            //noinspection ResultOfMethodCallIgnored missing files are handled at read time.
+            getLargePayloadFile(directory, entry.getKey()).renameTo(getLargePayloadFile(directory, identifiers.get(entry.getKey())));
+        }
+        notifyLogIdsChanged(identifiers);
+    }
+
     @Override
     public void close() {
         mDatabaseStorage.close();
@@ -9,6 +9,7 @@ import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 
 import java.io.Closeable;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Abstract class for Persistence service.
@@ -25,6 +26,11 @@ public abstract class Persistence implements Closeable {
      */
     private LogSerializer mLogSerializer;
 
+    /**
+     * Listener for identifier changes.
+     */
+    private LogIdsListener mLogIdsListener;
+
     /**
      * Writes a log to the storage with the given {@code group}.
      *
@@ -69,11 +75,32 @@ public abstract class Persistence implements Closeable {
     @Nullable
     public abstract String getLogs(@NonNull String group, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs);
 
+    /**
+     * Gets the identifiers returned by {@link #putLog(String, Log)} of the logs returned by {@link #getLogs(String, int, List)}.
+     *
+     * @param group The group of the storage for logs.
+     * @param id    The ID returned by {@link #getLogs(String, int, List)}.
+     * @return The identifiers in the same order as the logs, {@code null} if not known.
+     */
+    @Nullable
+    public List<Long> getLogIds(@NonNull String group, @NonNull String id) {
+        return null;
+    }
+
     /**
      * Clears all associations between logs of the {@code group} and ids returned by {@link #getLogs(String, int, List)}}.
      */
     public abstract void clearPendingLogState();
 
+    /**
+     * Releases memory when the system is running low on memory.
+     * Identifiers returned by {@link #putLog(String, Log)} may change, see {@link #setLogIdsListener(LogIdsListener)}.
+     *
+     * @param level trim level, as in {@link android.content.ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public void trimMemory(int level) {
+    }
+
     /**
      * Gets a {@link LogSerializer}.
      *
@@ -95,6 +122,39 @@ public abstract class Persistence implements Closeable {
         mLogSerializer = logSerializer;
     }
 
+    /**
+     * Sets a listener notified when identifiers returned by {@link #putLog(String, Log)} change.
+     *
+     * @param logIdsListener The listener, null to remove it.
+     */
+    public void setLogIdsListener(@Nullable LogIdsListener logIdsListener) {
+        mLogIdsListener = logIdsListener;
+    }
+
+    /**
+     * Notifies the listener that logs got new identifiers.
+     *
+     * @param identifiers New identifiers by previous identifier.
+     */
+    void notifyLogIdsChanged(@NonNull Map<Long, Long> identifiers) {
+        if (mLogIdsListener != null && !identifiers.isEmpty()) {
+            mLogIdsListener.onLogIdsChanged(identifiers);
+        }
+    }
+
+    /**
+     * Listener for identifier changes.
+     */
+    public interface LogIdsListener {
+
+        /**
+         * Called when logs got new identifiers, on the thread using the persistence.
+         *
+         * @param identifiers New identifiers by previous identifier.
+         */
+        void onLogIdsChanged(@NonNull Map<Long, Long> identifiers);
+    }
+
     /**
      * Thrown when {@link Persistence} cannot write a log to the storage.
      */
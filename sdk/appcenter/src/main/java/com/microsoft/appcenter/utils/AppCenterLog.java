@@ -3,6 +3,8 @@ package com.microsoft.appcenter.utils;
 import android.support.annotation.IntRange;
 import android.util.Log;
 
+import java.util.Locale;
+
 import static android.util.Log.VERBOSE;
 
 /**
@@ -51,6 +53,34 @@ public class AppCenterLog {
         sLogLevel = logLevel;
     }
 
+    /**
+     * Check whether messages of a level are logged. Use it to avoid building messages that would be discarded.
+     *
+     * @param logLevel the log level to check
+     * @return true if messages of this level are logged
+     */
+    public static boolean isLoggable(int logLevel) {
+        return sLogLevel <= logLevel;
+    }
+
+    /**
+     * Check whether messages with level VERBOSE are logged.
+     *
+     * @return true if messages with level VERBOSE are logged
+     */
+    public static boolean isVerboseEnabled() {
+        return sLogLevel <= Log.VERBOSE;
+    }
+
+    /**
+     * Check whether messages with level DEBUG are logged.
+     *
+     * @return true if messages with level DEBUG are logged
+     */
+    public static boolean isDebugEnabled() {
+        return sLogLevel <= Log.DEBUG;
+    }
+
     /**
      * Log a message with level VERBOSE
      *
@@ -77,6 +107,20 @@ public class AppCenterLog {
         }
     }
 
+    /**
+     * Log a formatted message with level VERBOSE, the message is formatted only if logged.
+     * On hot paths, check {@link #isVerboseEnabled()} first to avoid allocating the arguments as well.
+     *
+     * @param tag    the log tag for your message
+     * @param format the message format, see {@link String#format(String, Object...)}
+     * @param args   the format arguments
+     */
+    public static void verbose(String tag, String format, Object... args) {
+        if (sLogLevel <= Log.VERBOSE) {
+            Log.v(tag, format(format, args));
+        }
+    }
+
     /**
      * Log a message with level DEBUG
      *
@@ -102,6 +146,20 @@ public class AppCenterLog {
         }
     }
 
+    /**
+     * Log a formatted message with level DEBUG, the message is formatted only if logged.
+     * On hot paths, check {@link #isDebugEnabled()} first to avoid allocating the arguments as well.
+     *
+     * @param tag    the log tag for your message
+     * @param format the message format, see {@link String#format(String, Object...)}
+     * @param args   the format arguments
+     */
+    public static void debug(String tag, String format, Object... args) {
+        if (sLogLevel <= Log.DEBUG) {
+            Log.d(tag, format(format, args));
+        }
+    }
+
     /**
      * Log a message with level INFO
      *
@@ -204,4 +262,15 @@ public class AppCenterLog {
             Log.println(Log.ASSERT, tag, message + "\n" + Log.getStackTraceString(throwable));
         }
     }
+
+    /**
+     * Format a message independently of the device locale.
+     *
+     * @param format the message format
+     * @param args   the format arguments
+     * @return the formatted message
+     */
+    private static String format(String format, Object... args) {
+        return String.format(Locale.US, format, args);
+    }
 }
@@ -15,6 +15,11 @@ public class HandlerUtils {
     @VisibleForTesting
     static final Handler sMainHandler = new Handler(Looper.getMainLooper());
 
+    /**
+     * App Center background thread Handler, null until App Center is configured.
+     */
+    private static Handler sSdkHandler;
+
     /**
      * Runs the specified runnable on the UI thread.
      *
@@ -36,4 +41,22 @@ public class HandlerUtils {
     public static Handler getMainHandler() {
         return sMainHandler;
     }
+
+    /**
+     * Set the App Center background thread handler.
+     *
+     * @param handler App Center background thread handler.
+     */
+    public static synchronized void setSdkHandler(Handler handler) {
+        sSdkHandler = handler;
+    }
+
+    /**
+     * App Center background thread handler.
+     *
+     * @return App Center background thread handler, or main thread handler if App Center is not configured yet.
+     */
+    public static synchronized Handler getSdkHandler() {
+        return sSdkHandler != null ? sSdkHandler : sMainHandler;
+    }
 }
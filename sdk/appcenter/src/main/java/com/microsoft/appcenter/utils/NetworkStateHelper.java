@@ -50,11 +50,21 @@ public class NetworkStateHelper implements Closeable {
      */
     private final Set<Listener> mListeners = new HashSet<>();
 
+    /**
+     * Network metering state listeners.
+     */
+    private final Set<UnmeteredListener> mUnmeteredListeners = new HashSet<>();
+
     /**
      * Currently available networks, always empty on API level < 21.
      */
     private final Set<Network> mAvailableNetworks = new HashSet<>();
 
+    /**
+     * Currently available networks that are neither metered nor roaming, always empty on API level < 21.
+     */
+    private final Set<Network> mUnmeteredNetworks = new HashSet<>();
+
     /**
      * Network callback, null on API level < 21.
      */
@@ -65,6 +75,11 @@ public class NetworkStateHelper implements Closeable {
      */
     private String mNetworkType;
 
+    /**
+     * Whether the current network is neither metered nor roaming, always false on API level >= 21.
+     */
+    private boolean mUnmeteredNetworkType;
+
     /**
      * Our connectivity event receiver, null on API level >= 21.
      */
@@ -119,6 +134,11 @@ public class NetworkStateHelper implements Closeable {
                     public void onLost(Network network) {
                         onNetworkLost(network);
                     }
+
+                    @Override
+                    public void onCapabilitiesChanged(Network network, NetworkCapabilities networkCapabilities) {
+                        onNetworkCapabilitiesChanged(network, networkCapabilities);
+                    }
                 };
 
                 //noinspection ConstantConditions
@@ -147,6 +167,18 @@ public class NetworkStateHelper implements Closeable {
         return mNetworkType != null || !mAvailableNetworks.isEmpty();
     }
 
+    /**
+     * Check whether the network is currently connected, not metered and not roaming.
+     *
+     * @return true if an unmetered network is connected, false otherwise.
+     */
+    public synchronized boolean isNetworkUnmetered() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return !mUnmeteredNetworks.isEmpty();
+        }
+        return mUnmeteredNetworkType;
+    }
+
     /**
      * Handle network available update on API level >= 21.
      */
@@ -184,6 +216,27 @@ public class NetworkStateHelper implements Closeable {
         if (!mAvailableNetworks.isEmpty()) {
             notifyNetworkStateUpdated(true);
         }
+        boolean wasUnmetered = isNetworkUnmetered();
+        mUnmeteredNetworks.remove(network);
+        notifyUnmeteredStateIfChanged(wasUnmetered);
+    }
+
+    /**
+     * Handle network capabilities update on API level >= 21.
+     */
+    @SuppressLint("InlinedApi")
+    private synchronized void onNetworkCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+        boolean wasUnmetered = isNetworkUnmetered();
+        boolean unmetered = capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            unmetered &= capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_ROAMING);
+        }
+        if (unmetered) {
+            mUnmeteredNetworks.add(network);
+        } else {
+            mUnmeteredNetworks.remove(network);
+        }
+        notifyUnmeteredStateIfChanged(wasUnmetered);
     }
 
     /**
@@ -198,8 +251,10 @@ public class NetworkStateHelper implements Closeable {
         /* Update network type. null for not connected. */
         if (networkInfo != null && networkInfo.isConnected()) {
             mNetworkType = networkInfo.getTypeName() + networkInfo.getSubtypeName();
+            mUnmeteredNetworkType = !networkInfo.isRoaming() && !mConnectivityManager.isActiveNetworkMetered();
         } else {
             mNetworkType = null;
+            mUnmeteredNetworkType = false;
         }
     }
 
@@ -218,7 +273,9 @@ public class NetworkStateHelper implements Closeable {
          * We'll simulate a network state down event to the listeners to help with that scenario.
          */
         String previousNetworkType = mNetworkType;
+        boolean wasUnmetered = mUnmeteredNetworkType;
         updateNetworkType();
+        notifyUnmeteredStateIfChanged(wasUnmetered);
         boolean networkTypeChanged = previousNetworkType == null ? mNetworkType != null : !previousNetworkType.equals(mNetworkType);
         if (networkTypeChanged) {
             boolean connected = isNetworkConnected();
@@ -240,14 +297,30 @@ public class NetworkStateHelper implements Closeable {
         }
     }
 
+    /**
+     * Notify listeners if the network metering state changed.
+     *
+     * @param wasUnmetered previous state.
+     */
+    private void notifyUnmeteredStateIfChanged(boolean wasUnmetered) {
+        boolean unmetered = isNetworkUnmetered();
+        if (unmetered != wasUnmetered) {
+            for (UnmeteredListener listener : mUnmeteredListeners) {
+                listener.onNetworkUnmeteredUpdated(unmetered);
+            }
+        }
+    }
+
     @Override
     public synchronized void close() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             mConnectivityManager.unregisterNetworkCallback(mNetworkCallback);
             mAvailableNetworks.clear();
+            mUnmeteredNetworks.clear();
         } else {
             mContext.unregisterReceiver(mConnectivityReceiver);
             mNetworkType = null;
+            mUnmeteredNetworkType = false;
         }
     }
 
@@ -269,6 +342,24 @@ public class NetworkStateHelper implements Closeable {
         mListeners.remove(listener);
     }
 
+    /**
+     * Add a network metering state listener.
+     *
+     * @param listener listener to add.
+     */
+    public synchronized void addUnmeteredListener(UnmeteredListener listener) {
+        mUnmeteredListeners.add(listener);
+    }
+
+    /**
+     * Remove a network metering state listener.
+     *
+     * @param listener listener to remove.
+     */
+    public synchronized void removeUnmeteredListener(UnmeteredListener listener) {
+        mUnmeteredListeners.remove(listener);
+    }
+
     /**
      * Network state listener specification.
      */
@@ -282,6 +373,19 @@ public class NetworkStateHelper implements Closeable {
         void onNetworkStateUpdated(boolean connected);
     }
 
+    /**
+     * Network metering state listener specification.
+     */
+    public interface UnmeteredListener {
+
+        /**
+         * Called whenever an unmetered and not roaming network becomes available or is lost.
+         *
+         * @param unmetered true if an unmetered network is connected, false otherwise.
+         */
+        void onNetworkUnmeteredUpdated(boolean unmetered);
+    }
+
     /**
      * Class receiving connectivity changes.
      */
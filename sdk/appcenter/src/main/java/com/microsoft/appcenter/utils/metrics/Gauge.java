@@ -0,0 +1,32 @@
+package com.microsoft.appcenter.utils.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free value that is set rather than accumulated, like a queue size or a state.
+ */
+public class Gauge {
+
+    /**
+     * Current value.
+     */
+    private final AtomicLong mValue = new AtomicLong();
+
+    /**
+     * Set the value.
+     *
+     * @param value new value.
+     */
+    public void set(long value) {
+        mValue.set(value);
+    }
+
+    /**
+     * Get the value.
+     *
+     * @return current value.
+     */
+    public long get() {
+        return mValue.get();
+    }
+}
@@ -0,0 +1,68 @@
+package com.microsoft.appcenter.utils.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free distribution of values, like latencies or sizes, in buckets growing by powers of 2.
+ * Bucket 0 counts values up to 0 and bucket {@code i} counts values from {@code 2^(i-1)} to {@code 2^i - 1}.
+ */
+public class Histogram {
+
+    /**
+     * Number of buckets, enough for any positive long value.
+     */
+    public static final int BUCKET_COUNT = 64;
+
+    /**
+     * Count by bucket.
+     */
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Sum of values.
+     */
+    private final StripedCounter mSum = new StripedCounter();
+
+    /**
+     * Get the bucket a value is counted in.
+     *
+     * @param value value.
+     * @return bucket index.
+     */
+    static int getBucket(long value) {
+        return value <= 0 ? 0 : Math.min(BUCKET_COUNT - 1, Long.SIZE - Long.numberOfLeadingZeros(value));
+    }
+
+    /**
+     * Get the greatest value counted in a bucket.
+     *
+     * @param bucket bucket index.
+     * @return upper bound, inclusive.
+     */
+    public static long getBucketUpperBound(int bucket) {
+        return bucket >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    /**
+     * Record a value.
+     *
+     * @param value value.
+     */
+    public void record(long value) {
+        mBuckets.getAndIncrement(getBucket(value));
+        mSum.add(value);
+    }
+
+    /**
+     * Get a snapshot of the distribution.
+     *
+     * @return snapshot.
+     */
+    public MetricsSnapshot.Distribution snapshot() {
+        long[] buckets = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = mBuckets.get(i);
+        }
+        return new MetricsSnapshot.Distribution(buckets, mSum.sum());
+    }
+}
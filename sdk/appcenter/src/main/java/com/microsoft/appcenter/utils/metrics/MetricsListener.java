@@ -0,0 +1,18 @@
+package com.microsoft.appcenter.utils.metrics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+/**
+ * Listener receiving SDK metrics periodically.
+ */
+public interface MetricsListener {
+
+    /**
+     * Called on App Center background thread with the current metrics.
+     *
+     * @param metrics metrics snapshot.
+     */
+    @WorkerThread
+    void onMetrics(@NonNull MetricsSnapshot metrics);
+}
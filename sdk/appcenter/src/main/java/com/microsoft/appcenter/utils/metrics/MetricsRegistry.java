@@ -0,0 +1,135 @@
+package com.microsoft.appcenter.utils.metrics;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the SDK metrics: counters, gauges and histograms by name.
+ * <p>
+ * Looking up a metric is meant to be done once, components keep the instances to update them lock-free.
+ * Names are listed in {@link MetricsSnapshot}.
+ */
+public class MetricsRegistry {
+
+    /**
+     * Unique instance.
+     */
+    private static MetricsRegistry sInstance;
+
+    /**
+     * Counters by name.
+     */
+    private final ConcurrentMap<String, StripedCounter> mCounters = new ConcurrentHashMap<>();
+
+    /**
+     * Gauges by name.
+     */
+    private final ConcurrentMap<String, Gauge> mGauges = new ConcurrentHashMap<>();
+
+    /**
+     * Histograms by name.
+     */
+    private final ConcurrentMap<String, Histogram> mHistograms = new ConcurrentHashMap<>();
+
+    /**
+     * Get unique instance.
+     *
+     * @return unique instance.
+     */
+    public static synchronized MetricsRegistry getInstance() {
+        if (sInstance == null) {
+            sInstance = new MetricsRegistry();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    public static synchronized void unsetInstance() {
+        sInstance = null;
+    }
+
+    /**
+     * Get or create a counter.
+     *
+     * @param name counter name.
+     * @return counter.
+     */
+    @NonNull
+    public StripedCounter getCounter(@NonNull String name) {
+        StripedCounter counter = mCounters.get(name);
+        if (counter == null) {
+            counter = new StripedCounter();
+            StripedCounter existingCounter = mCounters.putIfAbsent(name, counter);
+            if (existingCounter != null) {
+                counter = existingCounter;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Get or create a gauge.
+     *
+     * @param name gauge name.
+     * @return gauge.
+     */
+    @NonNull
+    public Gauge getGauge(@NonNull String name) {
+        Gauge gauge = mGauges.get(name);
+        if (gauge == null) {
+            gauge = new Gauge();
+            Gauge existingGauge = mGauges.putIfAbsent(name, gauge);
+            if (existingGauge != null) {
+                gauge = existingGauge;
+            }
+        }
+        return gauge;
+    }
+
+    /**
+     * Get or create a histogram.
+     *
+     * @param name histogram name.
+     * @return histogram.
+     */
+    @NonNull
+    public Histogram getHistogram(@NonNull String name) {
+        Histogram histogram = mHistograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            Histogram existingHistogram = mHistograms.putIfAbsent(name, histogram);
+            if (existingHistogram != null) {
+                histogram = existingHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Read all metrics.
+     *
+     * @return snapshot of all metrics.
+     */
+    @NonNull
+    public MetricsSnapshot snapshot() {
+        Map<String, Long> counters = new HashMap<>();
+        for (Map.Entry<String, StripedCounter> entry : mCounters.entrySet()) {
+            counters.put(entry.getKey(), entry.getValue().sum());
+        }
+        Map<String, Long> gauges = new HashMap<>();
+        for (Map.Entry<String, Gauge> entry : mGauges.entrySet()) {
+            gauges.put(entry.getKey(), entry.getValue().get());
+        }
+        Map<String, MetricsSnapshot.Distribution> histograms = new HashMap<>();
+        for (Map.Entry<String, Histogram> entry : mHistograms.entrySet()) {
+            histograms.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return new MetricsSnapshot(SystemClock.uptimeMillis(), counters, gauges, histograms);
+    }
+}
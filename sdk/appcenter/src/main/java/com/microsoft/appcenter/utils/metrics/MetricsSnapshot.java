@@ -0,0 +1,331 @@
+package com.microsoft.appcenter.utils.metrics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Values of the SDK metrics at a point in time.
+ * <p>
+ * Counters only grow: rates are computed from the difference between two snapshots and their uptimes.
+ * Metrics of a channel group are named after the metric and the group, see {@link #getGroupMetricName(String, String)}.
+ *
+ * @see MetricsRegistry
+ */
+public class MetricsSnapshot {
+
+    /**
+     * Counter of logs enqueued in a channel group.
+     */
+    public static final String CHANNEL_ENQUEUED_LOGS = "channel.enqueuedLogs";
+
+    /**
+     * Gauge of logs of a channel group waiting in storage to be sent.
+     */
+    public static final String CHANNEL_PENDING_LOGS = "channel.pendingLogs";
+
+    /**
+     * Gauge of batches of a channel group being sent.
+     */
+    public static final String CHANNEL_BATCHES_IN_FLIGHT = "channel.batchesInFlight";
+
+    /**
+     * Histogram of the time in milliseconds to send a batch of a channel group, until success or failure.
+     */
+    public static final String CHANNEL_BATCH_LATENCY_MILLIS = "channel.batchLatencyMillis";
+
+    /**
+     * Histogram of the time in milliseconds logs of a channel group wait before being part of a batch.
+     */
+    public static final String CHANNEL_QUEUE_DELAY_MILLIS = "channel.queueDelayMillis";
+
+    /**
+     * Histogram of the time in milliseconds from enqueuing logs of a channel group to their acknowledgement by ingestion.
+     */
+    public static final String CHANNEL_DELIVERY_LATENCY_MILLIS = "channel.deliveryLatencyMillis";
+
+    /**
+     * Histogram of the time in microseconds to store a log.
+     */
+    public static final String PERSISTENCE_PUT_LATENCY_MICROS = "persistence.putLatencyMicros";
+
+    /**
+     * Histogram of the time in microseconds to read a batch of logs from storage.
+     */
+    public static final String PERSISTENCE_GET_LATENCY_MICROS = "persistence.getLatencyMicros";
+
+    /**
+     * Histogram of the size in bytes of stored logs.
+     */
+    public static final String PERSISTENCE_LOG_SIZE_BYTES = "persistence.logSizeBytes";
+
+    /**
+     * Gauge of rows in a table, updated when an entry is stored.
+     * The name is followed by ":" and the table name, "logs" for the logs waiting to be sent.
+     */
+    public static final String PERSISTENCE_ROWS = "persistence.rows";
+
+    /**
+     * Counter of entries purged from a table because it was full.
+     * The name is followed by ":" and the table name, "logs" for the logs waiting to be sent.
+     */
+    public static final String PERSISTENCE_EVICTIONS = "persistence.evictions";
+
+    /**
+     * Gauge of the size in bytes of the journal file storing a table after a database failure.
+     * The name is followed by ":" and the table name, "logs" for the logs waiting to be sent.
+     */
+    public static final String PERSISTENCE_JOURNAL_BYTES = "persistence.journalBytes";
+
+    /**
+     * Counter of HTTP calls retried.
+     */
+    public static final String HTTP_RETRIES = "http.retries";
+
+    /**
+     * Counter of circuit breaker openings, each opening pauses calls to an endpoint.
+     */
+    public static final String HTTP_CIRCUIT_OPENINGS = "http.circuitOpenings";
+
+    /**
+     * Gauge of the circuit breaker state of an endpoint: 0 for closed, 1 for open and 2 for half-open.
+     * The name is followed by ":" and the endpoint.
+     */
+    public static final String HTTP_CIRCUIT_STATE = "http.circuitState";
+
+    /**
+     * Counter of request payload bytes before compression.
+     */
+    public static final String HTTP_PAYLOAD_BYTES = "http.payloadBytes";
+
+    /**
+     * Counter of request payload bytes sent, after compression.
+     */
+    public static final String HTTP_WIRE_BYTES = "http.wireBytes";
+
+    /**
+     * Counter of Analytics logs discarded by validation.
+     */
+    public static final String ANALYTICS_FILTERED_LOGS = "analytics.filteredLogs";
+
+    /**
+     * Counter of Analytics events dropped by install or event sampling.
+     */
+    public static final String ANALYTICS_SAMPLED_OUT_EVENTS = "analytics.sampledOutEvents";
+
+    /**
+     * Counter of Analytics events dropped by rate limiting.
+     */
+    public static final String ANALYTICS_RATE_LIMITED_EVENTS = "analytics.rateLimitedEvents";
+
+    /**
+     * Counter of memory pressure signals the SDK released memory for.
+     */
+    public static final String MEMORY_TRIMS = "memory.trims";
+
+    /**
+     * Gauge of the estimated heap bytes retained by logs of a channel group read from storage to be sent.
+     */
+    public static final String MEMORY_IN_FLIGHT_LOGS_BYTES = "memory.inFlightLogsBytes";
+
+    /**
+     * Gauge of the estimated heap bytes retained by a table after a database failure.
+     * The name is followed by ":" and the table name, "logs" for the logs waiting to be sent.
+     */
+    public static final String MEMORY_IN_MEMORY_STORAGE_BYTES = "memory.inMemoryStorageBytes";
+
+    /**
+     * Gauge of the estimated heap bytes retained by the cache of crash reports.
+     */
+    public static final String MEMORY_ERROR_REPORT_CACHE_BYTES = "memory.errorReportCacheBytes";
+
+    /**
+     * Uptime in milliseconds when the snapshot was taken.
+     */
+    private final long mUptimeMillis;
+
+    private final Map<String, Long> mCounters;
+
+    private final Map<String, Long> mGauges;
+
+    private final Map<String, Distribution> mHistograms;
+
+    MetricsSnapshot(long uptimeMillis, Map<String, Long> counters, Map<String, Long> gauges, Map<String, Distribution> histograms) {
+        mUptimeMillis = uptimeMillis;
+        mCounters = Collections.unmodifiableMap(counters);
+        mGauges = Collections.unmodifiableMap(gauges);
+        mHistograms = Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * Get the name of a metric for a channel group or an endpoint.
+     *
+     * @param metric metric name, like {@link #CHANNEL_PENDING_LOGS}.
+     * @param group  group name or endpoint.
+     * @return metric name.
+     */
+    @NonNull
+    public static String getGroupMetricName(@NonNull String metric, @NonNull String group) {
+        return metric + ":" + group;
+    }
+
+    /**
+     * Get the uptime when the snapshot was taken.
+     *
+     * @return uptime in milliseconds.
+     */
+    public long getUptimeMillis() {
+        return mUptimeMillis;
+    }
+
+    /**
+     * Get all counters.
+     *
+     * @return counter values by name.
+     */
+    @NonNull
+    public Map<String, Long> getCounters() {
+        return mCounters;
+    }
+
+    /**
+     * Get all gauges.
+     *
+     * @return gauge values by name.
+     */
+    @NonNull
+    public Map<String, Long> getGauges() {
+        return mGauges;
+    }
+
+    /**
+     * Get all histograms.
+     *
+     * @return distributions by name.
+     */
+    @NonNull
+    public Map<String, Distribution> getHistograms() {
+        return mHistograms;
+    }
+
+    /**
+     * Get a counter.
+     *
+     * @param name counter name.
+     * @return value, 0 if nothing was counted yet.
+     */
+    public long getCounter(@NonNull String name) {
+        Long value = mCounters.get(name);
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * Get a gauge.
+     *
+     * @param name gauge name.
+     * @return value, 0 if never set.
+     */
+    public long getGauge(@NonNull String name) {
+        Long value = mGauges.get(name);
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * Get a histogram.
+     *
+     * @param name histogram name.
+     * @return distribution or null if nothing was recorded yet.
+     */
+    @Nullable
+    public Distribution getHistogram(@NonNull String name) {
+        return mHistograms.get(name);
+    }
+
+    /**
+     * Distribution of values recorded by a histogram.
+     */
+    public static class Distribution {
+
+        /**
+         * Count by bucket, see {@link Histogram}.
+         */
+        private final long[] mBuckets;
+
+        /**
+         * Number of values.
+         */
+        private final long mCount;
+
+        /**
+         * Sum of values.
+         */
+        private final long mSum;
+
+        Distribution(long[] buckets, long sum) {
+            mBuckets = buckets;
+            long count = 0;
+            for (long bucket : buckets) {
+                count += bucket;
+            }
+            mCount = count;
+            mSum = sum;
+        }
+
+        /**
+         * Get the number of recorded values.
+         *
+         * @return number of values.
+         */
+        public long getCount() {
+            return mCount;
+        }
+
+        /**
+         * Get the sum of recorded values.
+         *
+         * @return sum.
+         */
+        public long getSum() {
+            return mSum;
+        }
+
+        /**
+         * Get the mean of recorded values.
+         *
+         * @return mean, 0 if no value.
+         */
+        public double getMean() {
+            return mCount == 0 ? 0 : (double) mSum / mCount;
+        }
+
+        /**
+         * Get the count of a bucket, see {@link Histogram#getBucketUpperBound(int)} for its range.
+         *
+         * @param bucket bucket index, from 0 to {@link Histogram#BUCKET_COUNT} excluded.
+         * @return number of values in the bucket.
+         */
+        public long getBucketCount(int bucket) {
+            return mBuckets[bucket];
+        }
+
+        /**
+         * Get an upper bound of a percentile: the greatest value of the bucket containing it.
+         *
+         * @param percentile percentile, from 0 to 100.
+         * @return percentile upper bound, 0 if no value.
+         */
+        public long getPercentile(double percentile) {
+            long rank = (long) Math.ceil(mCount * percentile / 100);
+            long count = 0;
+            for (int i = 0; i < mBuckets.length; i++) {
+                count += mBuckets[i];
+                if (count > 0 && count >= rank) {
+                    return Histogram.getBucketUpperBound(i);
+                }
+            }
+            return 0;
+        }
+    }
+}
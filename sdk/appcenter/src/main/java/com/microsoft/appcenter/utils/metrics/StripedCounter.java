@@ -0,0 +1,75 @@
+package com.microsoft.appcenter.utils.metrics;
+
+import android.support.annotation.VisibleForTesting;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free counter spreading updates over several cells by thread, so that threads counting concurrently
+ * don't contend on the same value. Reading sums the cells.
+ */
+public class StripedCounter {
+
+    /**
+     * Maximum number of cells.
+     */
+    @VisibleForTesting
+    static final int MAX_STRIPES = 16;
+
+    /**
+     * Distance between cells in the array, so that each cell is on its own cache line.
+     */
+    private static final int PADDING = 8;
+
+    /**
+     * Cells, each using {@link #PADDING} slots.
+     */
+    private final AtomicLongArray mCells;
+
+    /**
+     * Mask to select a cell from a thread identifier, the number of cells is a power of 2.
+     */
+    private final int mMask;
+
+    /**
+     * Init.
+     */
+    public StripedCounter() {
+        int stripes = 1;
+        int processors = Runtime.getRuntime().availableProcessors();
+        while (stripes < processors * 2 && stripes < MAX_STRIPES) {
+            stripes <<= 1;
+        }
+        mMask = stripes - 1;
+        mCells = new AtomicLongArray(stripes * PADDING);
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param value value to add, can be negative.
+     */
+    public void add(long value) {
+        mCells.getAndAdd((int) (Thread.currentThread().getId() & mMask) * PADDING, value);
+    }
+
+    /**
+     * Add 1.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Get the sum of all values added so far. It's not an atomic snapshot if values are added concurrently.
+     *
+     * @return sum.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < mCells.length(); i += PADDING) {
+            sum += mCells.get(i);
+        }
+        return sum;
+    }
+}
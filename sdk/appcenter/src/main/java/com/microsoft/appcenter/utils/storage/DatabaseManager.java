@@ -5,9 +5,11 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
-import android.support.annotation.IntRange;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
@@ -15,16 +17,30 @@ import android.text.TextUtils;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.metrics.Gauge;
+import com.microsoft.appcenter.utils.metrics.MetricsRegistry;
+import com.microsoft.appcenter.utils.metrics.StripedCounter;
 
 import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.MEMORY_IN_MEMORY_STORAGE_BYTES;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.PERSISTENCE_EVICTIONS;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.PERSISTENCE_JOURNAL_BYTES;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.PERSISTENCE_ROWS;
+import static com.microsoft.appcenter.utils.metrics.MetricsSnapshot.getGroupMetricName;
+
 /**
- * Database manager for SQLite with fail-over to in-memory.
+ * Database manager for SQLite with fail-over to an append-only journal file,
+ * or to memory if the journal file cannot be written either.
  */
 public class DatabaseManager implements Closeable {
 
@@ -38,6 +54,49 @@ public class DatabaseManager implements Closeable {
      */
     private static final String PRIMARY_KEY_SELECTION = "oid = ?";
 
+    /**
+     * Page size in bytes of new databases.
+     */
+    private static final int PAGE_SIZE = 4096;
+
+    /**
+     * Number of pages SQLite caches per connection, smaller than the SQLite default as SDK tables are small.
+     */
+    private static final int CACHE_SIZE_PAGES = 128;
+
+    /**
+     * Estimated heap bytes of an in-memory entry, without its values.
+     */
+    private static final long ENTRY_OVERHEAD_BYTES = 64;
+
+    /**
+     * Estimated heap bytes of a value in an in-memory entry, without its content.
+     */
+    private static final long VALUE_OVERHEAD_BYTES = 48;
+
+    /**
+     * Journal file name extension.
+     */
+    private static final String JOURNAL_FILE_EXTENSION = ".journal";
+
+    /**
+     * Maximum size of the journal file, oldest entries are purged beyond that.
+     */
+    @VisibleForTesting
+    static final long MAX_JOURNAL_BYTES = 10 * 1024 * 1024;
+
+    /**
+     * Maximum estimated heap bytes of entries kept in memory after a database failure, oldest entries are purged beyond that.
+     */
+    @VisibleForTesting
+    static final long MAX_FALLBACK_MEMORY_BYTES = 1024 * 1024;
+
+    /**
+     * Values larger than this are read from the journal file when needed instead of being kept in memory.
+     */
+    @VisibleForTesting
+    static final int MAX_INDEXED_VALUE_BYTES = 256;
+
     /**
      * Application context instance.
      */
@@ -68,21 +127,88 @@ public class DatabaseManager implements Closeable {
      */
     private final Listener mListener;
 
+    /**
+     * Number of rows, updated when storing an entry.
+     */
+    private final Gauge mRowsGauge;
+
+    /**
+     * Number of entries purged because the table was full.
+     */
+    private final StripedCounter mEvictions;
+
+    /**
+     * Estimated heap bytes of the in-memory database.
+     */
+    private final Gauge mInMemoryBytesGauge;
+
+    /**
+     * Size of the journal file.
+     */
+    private final Gauge mJournalBytesGauge;
+
     /**
      * SQLite helper instance.
      */
     private SQLiteOpenHelper mSQLiteOpenHelper;
 
     /**
-     * In-memory database if SQLite cannot be used.
+     * Columns of {@link #mSchema} bound by {@link #mInsertStatement}, null if there is no schema.
+     */
+    private final String[] mInsertColumns;
+
+    /**
+     * Whether to reuse compiled statements for inserting, deleting by identifier and counting.
+     */
+    private boolean mCompiledStatementsEnabled = true;
+
+    /**
+     * Database the compiled statements belong to.
+     */
+    private SQLiteDatabase mStatementsDatabase;
+
+    /**
+     * Compiled statement inserting all {@link #mInsertColumns}.
+     */
+    private SQLiteStatement mInsertStatement;
+
+    /**
+     * Compiled statement deleting an entry by identifier.
+     */
+    private SQLiteStatement mDeleteStatement;
+
+    /**
+     * Compiled statement counting entries.
+     */
+    private SQLiteStatement mCountStatement;
+
+    /**
+     * In-memory database if SQLite cannot be used, in insertion order.
+     * Values larger than {@link #MAX_INDEXED_VALUE_BYTES} are left out of entries stored in the journal.
      */
     @SuppressWarnings("SpellCheckingInspection")
     private Map<Long, ContentValues> mIMDB;
 
     /**
      * In-memory auto increment.
+     * Identifiers start from the smallest long so that they never collide with SQLite identifiers callers may still hold.
+     */
+    private long mIMDBAutoInc = Long.MIN_VALUE;
+
+    /**
+     * Whether a journal left by a previous process must be moved to SQLite when the database is opened.
+     */
+    private boolean mRecoverJournal;
+
+    /**
+     * Journal storing the in-memory database entries, null if it cannot be written.
+     */
+    private Journal mJournal;
+
+    /**
+     * Journal record of each in-memory database entry stored in the journal.
      */
-    private long mIMDBAutoInc;
+    private Map<Long, Journal.Position> mJournalPositions;
 
     /**
      * Initializes the table in the database.
@@ -119,8 +245,32 @@ public class DatabaseManager implements Closeable {
         mSchema = schema;
         mMaxNumberOfRecords = maxRecords;
         mListener = listener;
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        mRowsGauge = metrics.getGauge(getGroupMetricName(PERSISTENCE_ROWS, table));
+        mEvictions = metrics.getCounter(getGroupMetricName(PERSISTENCE_EVICTIONS, table));
+        mInMemoryBytesGauge = metrics.getGauge(getGroupMetricName(MEMORY_IN_MEMORY_STORAGE_BYTES, table));
+        mJournalBytesGauge = metrics.getGauge(getGroupMetricName(PERSISTENCE_JOURNAL_BYTES, table));
+        if (schema != null) {
+            mInsertColumns = schema.keySet().toArray(new String[0]);
+        } else {
+            mInsertColumns = null;
+        }
         mSQLiteOpenHelper = new SQLiteOpenHelper(context, database, null, version) {
 
+            @Override
+            public void onConfigure(SQLiteDatabase db) {
+                configureDatabase(db);
+            }
+
+            @Override
+            public void onOpen(SQLiteDatabase db) {
+
+                /* onConfigure is not called before Jelly Bean. */
+                if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+                    configureDatabase(db);
+                }
+            }
+
             @Override
             public void onCreate(SQLiteDatabase db) {
 
@@ -155,6 +305,13 @@ public class DatabaseManager implements Closeable {
                 }
             }
         };
+
+        /* Entries journaled by a previous process are moved to SQLite when it's opened, or loaded if it still fails. */
+        File journalFile = getJournalFile();
+        if (journalFile != null && journalFile.length() > 0) {
+            AppCenterLog.info(AppCenter.LOG_TAG, "Found journal of a previous database failure: " + journalFile);
+            mRecoverJournal = true;
+        }
     }
 
     /**
@@ -174,7 +331,9 @@ public class DatabaseManager implements Closeable {
                 values.put(key, cursor.getLong(i));
             } else {
                 Object specimen = schema.get(key);
-                if (specimen instanceof byte[]) {
+
+                /* Blobs can also be stored in columns declared with another type. */
+                if (specimen instanceof byte[] || cursor.getType(i) == Cursor.FIELD_TYPE_BLOB) {
                     values.put(key, cursor.getBlob(i));
                 } else if (specimen instanceof Double) {
                     values.put(key, cursor.getDouble(i));
@@ -203,31 +362,90 @@ public class DatabaseManager implements Closeable {
      * @return A database identifier
      */
     public long put(@NonNull ContentValues values) {
+        return put(values, null);
+    }
+
+    /**
+     * Stores the entry to the table, in the same SQLite transaction as other statements.
+     *
+     * @param values      The entry to be stored.
+     * @param transaction Statements to run before inserting the entry, not run when using the fallback storage.
+     * @return A database identifier
+     */
+    public long put(@NonNull ContentValues values, @Nullable Transaction transaction) {
 
         /* Try SQLite. */
         if (mIMDB == null) {
             try {
 
                 /* Insert data. */
-                long id = getDatabase().insertOrThrow(mTable, null, values);
+                SQLiteDatabase database = getDatabase();
+                long id;
+                if (transaction == null) {
+                    id = insert(database, values);
+                } else {
+
+                    /* The fallback storage gets the original values if the transaction fails. */
+                    ContentValues transactionValues = new ContentValues(values);
+                    database.beginTransaction();
+                    try {
+                        transaction.run(database, transactionValues);
+                        id = insert(database, transactionValues);
+                        database.setTransactionSuccessful();
+                    } finally {
+                        database.endTransaction();
+                    }
+                }
 
                 /* Purge oldest entry if it hits the limit. */
-                if (mMaxNumberOfRecords < getRowCount() && mMaxNumberOfRecords > 0) {
+                long rowCount = getRowCount();
+                if (mMaxNumberOfRecords < rowCount && mMaxNumberOfRecords > 0) {
                     Cursor cursor = getCursor(null, null, true);
                     cursor.moveToNext();
                     delete(cursor.getLong(0));
                     cursor.close();
+                    mEvictions.increment();
+                    rowCount--;
                 }
+                mRowsGauge.set(rowCount);
                 return id;
             } catch (RuntimeException e) {
-                switchToInMemory("put", e);
+                switchToFallback("put", e);
             }
         }
 
-        /* Store the values to in-memory database. */
-        values.put(PRIMARY_KEY, mIMDBAutoInc);
-        mIMDB.put(mIMDBAutoInc, values);
-        return mIMDBAutoInc++;
+        /* Store the values to in-memory database, and to the journal if possible. */
+        long id = mIMDBAutoInc++;
+        values.put(PRIMARY_KEY, id);
+        storeFallbackEntry(id, values);
+        purgeFallbackEntries();
+        mRowsGauge.set(mIMDB.size());
+        return id;
+    }
+
+    /**
+     * Runs statements in a SQLite transaction.
+     *
+     * @param transaction The statements.
+     * @return true if the transaction was committed, false if using the fallback storage or if SQLite failed.
+     */
+    public boolean runTransaction(@NonNull Transaction transaction) {
+        if (mIMDB == null) {
+            try {
+                SQLiteDatabase database = getDatabase();
+                database.beginTransaction();
+                try {
+                    transaction.run(database, null);
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+                return true;
+            } catch (RuntimeException e) {
+                switchToFallback("transaction", e);
+            }
+        }
+        return false;
     }
 
     /**
@@ -237,14 +455,14 @@ public class DatabaseManager implements Closeable {
      * @param values The entry to be updated.
      * @return true if the values updated successfully, false otherwise.
      */
-    public boolean update(@IntRange(from = 0) long id, @NonNull ContentValues values) {
+    public boolean update(long id, @NonNull ContentValues values) {
 
         /* Try SQLite. */
         if (mIMDB == null) {
             try {
                 return 0 < getDatabase().update(mTable, values, PRIMARY_KEY_SELECTION, new String[]{String.valueOf(id)});
             } catch (RuntimeException e) {
-                switchToInMemory("update", e);
+                switchToFallback("update", e);
             }
         }
 
@@ -253,7 +471,11 @@ public class DatabaseManager implements Closeable {
         if (existValues == null) {
             return false;
         }
-        existValues.putAll(values);
+        ContentValues newValues = readFallbackEntry(id, existValues);
+        newValues.putAll(values);
+        storeFallbackEntry(id, newValues);
+        updateInMemoryBytes();
+        purgeFallbackEntries();
         return true;
     }
 
@@ -262,7 +484,19 @@ public class DatabaseManager implements Closeable {
      *
      * @param id The database identifier.
      */
-    public void delete(@IntRange(from = 0) long id) {
+    public void delete(long id) {
+
+        /* Try SQLite with the compiled statement. */
+        if (mIMDB == null && mCompiledStatementsEnabled) {
+            try {
+                compileStatements(getDatabase());
+                mDeleteStatement.bindLong(1, id);
+                mDeleteStatement.executeUpdateDelete();
+                return;
+            } catch (RuntimeException e) {
+                switchToFallback("delete", e);
+            }
+        }
         delete(PRIMARY_KEY, id);
     }
 
@@ -281,14 +515,14 @@ public class DatabaseManager implements Closeable {
             try {
                 getDatabase().execSQL(String.format("DELETE FROM " + mTable + " WHERE " + PRIMARY_KEY + " IN (%s);", TextUtils.join(", ", idList)));
             } catch (RuntimeException e) {
-                switchToInMemory("delete", e);
+                switchToFallback("delete", e);
             }
         }
 
         /* Deletes the values from in-memory database. */
         else {
             for (Long id : idList) {
-                mIMDB.remove(id);
+                removeFallbackEntry(id);
             }
         }
     }
@@ -306,7 +540,7 @@ public class DatabaseManager implements Closeable {
             try {
                 getDatabase().delete(mTable, key + " = ?", new String[]{String.valueOf(value)});
             } catch (RuntimeException e) {
-                switchToInMemory("delete", e);
+                switchToFallback("delete", e);
             }
         }
 
@@ -315,15 +549,18 @@ public class DatabaseManager implements Closeable {
             if (value == null || !(value instanceof Number)) {
                 throw new IllegalArgumentException("Primary key should be a number type and cannot be null");
             }
-            mIMDB.remove(((Number) value).longValue());
+            removeFallbackEntry(((Number) value).longValue());
         } else {
-            for (Iterator<Map.Entry<Long, ContentValues>> iterator = mIMDB.entrySet().iterator(); iterator.hasNext(); ) {
-                Map.Entry<Long, ContentValues> entry = iterator.next();
-                Object object = entry.getValue().get(key);
+            List<Long> ids = new ArrayList<>();
+            for (Map.Entry<Long, ContentValues> entry : mIMDB.entrySet()) {
+                Object object = getFallbackValue(entry.getKey(), entry.getValue(), key);
                 if (object != null && object.equals(value)) {
-                    iterator.remove();
+                    ids.add(entry.getKey());
                 }
             }
+            for (Long id : ids) {
+                removeFallbackEntry(id);
+            }
         }
     }
 
@@ -333,7 +570,7 @@ public class DatabaseManager implements Closeable {
      * @param id The database identifier.
      * @return An entry for the identifier or null if not found.
      */
-    public ContentValues get(@IntRange(from = 0) long id) {
+    public ContentValues get(long id) {
         return get(PRIMARY_KEY, id);
     }
 
@@ -354,7 +591,7 @@ public class DatabaseManager implements Closeable {
                 cursor.close();
                 return values;
             } catch (RuntimeException e) {
-                switchToInMemory("get", e);
+                switchToFallback("get", e);
             }
         }
 
@@ -363,12 +600,14 @@ public class DatabaseManager implements Closeable {
             if (value == null || !(value instanceof Number)) {
                 throw new IllegalArgumentException("Primary key should be a number type and cannot be null");
             }
-            return mIMDB.get(((Number) value).longValue());
+            long id = ((Number) value).longValue();
+            ContentValues values = mIMDB.get(id);
+            return values == null ? null : readFallbackEntry(id, values);
         } else {
-            for (ContentValues values : mIMDB.values()) {
-                Object object = values.get(key);
+            for (Map.Entry<Long, ContentValues> entry : mIMDB.entrySet()) {
+                Object object = getFallbackValue(entry.getKey(), entry.getValue(), key);
                 if (object != null && object.equals(value)) {
-                    return values;
+                    return readFallbackEntry(entry.getKey(), entry.getValue());
                 }
             }
         }
@@ -382,7 +621,7 @@ public class DatabaseManager implements Closeable {
      * @param key    The optional key for query.
      * @param value  The optional value for query.
      * @param idOnly true to return only identifier, false to return all fields.
-     *               This flag is ignored if using in memory database.
+     *               If using in memory database, values kept in memory are returned with the identifier.
      * @return A scanner to iterate all values.
      */
     Scanner getScanner(String key, Object value, boolean idOnly) {
@@ -399,13 +638,23 @@ public class DatabaseManager implements Closeable {
             try {
                 getDatabase().delete(mTable, null, null);
             } catch (RuntimeException e) {
-                switchToInMemory("clear", e);
+                switchToFallback("clear", e);
             }
         }
 
         /* Clear in-memory database. */
         else {
             mIMDB.clear();
+            mInMemoryBytesGauge.set(0);
+            if (mJournal != null) {
+                mJournalPositions.clear();
+                try {
+                    mJournal.clear();
+                    mJournalBytesGauge.set(0);
+                } catch (IOException e) {
+                    switchToMemoryOnly(e);
+                }
+            }
         }
     }
 
@@ -418,16 +667,27 @@ public class DatabaseManager implements Closeable {
         /* Try SQLite. */
         if (mIMDB == null) {
             try {
+                closeCompiledStatements();
                 getDatabase().close();
             } catch (RuntimeException e) {
-                switchToInMemory("close", e);
+                switchToFallback("close", e);
             }
         }
 
-        /* Close in-memory database. */
+        /* Close in-memory database, the journal is kept to be loaded again. */
         else {
+            if (mJournal != null) {
+                try {
+                    mJournal.close();
+                } catch (IOException e) {
+                    AppCenterLog.warn(AppCenter.LOG_TAG, "Cannot close journal file.", e);
+                }
+                mJournal = null;
+            }
             mIMDB.clear();
             mIMDB = null;
+            mJournalPositions = null;
+            mInMemoryBytesGauge.set(0);
         }
     }
 
@@ -441,9 +701,14 @@ public class DatabaseManager implements Closeable {
         /* Try SQLite. */
         if (mIMDB == null) {
             try {
-                return DatabaseUtils.queryNumEntries(getDatabase(), mTable);
+                SQLiteDatabase database = getDatabase();
+                if (mCompiledStatementsEnabled) {
+                    compileStatements(database);
+                    return mCountStatement.simpleQueryForLong();
+                }
+                return DatabaseUtils.queryNumEntries(database, mTable);
             } catch (RuntimeException e) {
-                switchToInMemory("count", e);
+                switchToFallback("count", e);
             }
         }
 
@@ -451,6 +716,44 @@ public class DatabaseManager implements Closeable {
         return mIMDB.size();
     }
 
+    /**
+     * Gets the count of records in the table for each value of a column, using a single query.
+     *
+     * @param column The column to group records by.
+     * @return The number of records by column value, values are read as strings.
+     */
+    @NonNull
+    Map<String, Integer> countGroupedBy(@NonNull String column) {
+        Map<String, Integer> counts = new HashMap<>();
+
+        /* Try SQLite. */
+        if (mIMDB == null) {
+            try {
+                Cursor cursor = getDatabase().query(mTable, new String[]{column, "COUNT(*)"}, null, null, column, null, null);
+                try {
+                    while (cursor.moveToNext()) {
+                        counts.put(cursor.getString(0), cursor.getInt(1));
+                    }
+                } finally {
+                    cursor.close();
+                }
+                return counts;
+            } catch (RuntimeException e) {
+                counts.clear();
+                switchToFallback("count", e);
+            }
+        }
+
+        /* Count values of in-memory database. */
+        for (Map.Entry<Long, ContentValues> entry : mIMDB.entrySet()) {
+            Object object = getFallbackValue(entry.getKey(), entry.getValue(), column);
+            String value = object == null ? null : object.toString();
+            Integer count = counts.get(value);
+            counts.put(value, count == null ? 1 : count + 1);
+        }
+        return counts;
+    }
+
     /**
      * Gets a cursor for all rows in the table, all rows where key matches value if specified.
      *
@@ -491,34 +794,209 @@ public class DatabaseManager implements Closeable {
     SQLiteDatabase getDatabase() throws RuntimeException {
 
         /* Try opening database. */
+        SQLiteDatabase database;
         try {
-            return mSQLiteOpenHelper.getWritableDatabase();
+            database = mSQLiteOpenHelper.getWritableDatabase();
         } catch (RuntimeException e) {
 
             /* First error, try to delete database (may be corrupted). */
             mContext.deleteDatabase(mDatabase);
 
             /* Retry, let exception thrown if it fails this time. */
-            return mSQLiteOpenHelper.getWritableDatabase();
+            database = mSQLiteOpenHelper.getWritableDatabase();
+        }
+        if (mRecoverJournal) {
+            mRecoverJournal = false;
+            recoverJournal(database);
+        }
+        return database;
+    }
+
+    /**
+     * Moves the entries of a journal left by a previous process to SQLite.
+     * Nobody holds their identifiers yet, so they simply get new ones.
+     * If SQLite fails, the journal is kept and loaded by the fallback storage.
+     *
+     * @param database The database.
+     * @throws RuntimeException if an error occurs.
+     */
+    private void recoverJournal(SQLiteDatabase database) throws RuntimeException {
+        File journalFile = getJournalFile();
+        if (journalFile == null) {
+            return;
+        }
+        Journal journal;
+        try {
+            journal = new Journal(journalFile);
+        } catch (IOException e) {
+            AppCenterLog.warn(AppCenter.LOG_TAG, "Cannot open journal file.", e);
+            return;
+        }
+        try {
+
+            /* Only positions are kept in memory, entries are read one at a time. */
+            Map<Long, Journal.Position> positions = journal.load(null, 0);
+            database.beginTransaction();
+            try {
+                for (Journal.Position position : positions.values()) {
+                    ContentValues values = journal.read(position);
+                    values.remove(PRIMARY_KEY);
+                    database.insertOrThrow(mTable, null, values);
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+            journal.delete();
+            AppCenterLog.info(AppCenter.LOG_TAG, "Moved " + positions.size() + " journaled entries to the database.");
+        } catch (IOException e) {
+            AppCenterLog.warn(AppCenter.LOG_TAG, "Cannot read journal file.", e);
+        } finally {
+            closeQuietly(journal);
+        }
+    }
+
+    /**
+     * Configures a database connection before it is used.
+     * Write-ahead logging avoids rewriting pages and syncing on every small transaction,
+     * and lets the application read its own databases while the SDK writes.
+     *
+     * @param db database being opened.
+     */
+    private static void configureDatabase(SQLiteDatabase db) {
+        try {
+            db.enableWriteAheadLogging();
+
+            /* Only applies to new databases. */
+            db.setPageSize(PAGE_SIZE);
+
+            /* Durable across application crashes, only a power loss can lose the last transactions in WAL mode. */
+            db.execSQL("PRAGMA synchronous = NORMAL");
+            db.execSQL("PRAGMA cache_size = " + CACHE_SIZE_PAGES);
+        } catch (RuntimeException e) {
+
+            /* The database works without tuning. */
+            AppCenterLog.warn(AppCenter.LOG_TAG, "Cannot configure database.", e);
+        }
+    }
+
+    /**
+     * Inserts an entry in SQLite, using the compiled insert statement if the entry only has schema columns.
+     *
+     * @param database The database.
+     * @param values   The entry to insert.
+     * @return The database identifier.
+     * @throws RuntimeException if an error occurs.
+     */
+    private long insert(SQLiteDatabase database, ContentValues values) throws RuntimeException {
+        if (!mCompiledStatementsEnabled || mInsertColumns == null || !mSchema.keySet().containsAll(values.keySet())) {
+            return database.insertOrThrow(mTable, null, values);
+        }
+        compileStatements(database);
+        for (int i = 0; i < mInsertColumns.length; i++) {
+            bindValue(mInsertStatement, i + 1, values.get(mInsertColumns[i]));
+        }
+        long id = mInsertStatement.executeInsert();
+        if (id < 0) {
+            throw new SQLiteException("Failed to insert into " + mTable);
+        }
+        return id;
+    }
+
+    /**
+     * Binds a value of a {@link ContentValues} to a statement parameter.
+     *
+     * @param statement The statement.
+     * @param index     The 1-based parameter index.
+     * @param value     The value.
+     */
+    private static void bindValue(SQLiteStatement statement, int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof String) {
+            statement.bindString(index, (String) value);
+        } else if (value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            statement.bindLong(index, (Boolean) value ? 1 : 0);
+        } else {
+            statement.bindString(index, value.toString());
         }
     }
 
     /**
-     * Switches to in-memory management, triggers error listener.
+     * Compiles the statements for a database, unless they are already compiled for it.
+     *
+     * @param database The database.
+     * @throws RuntimeException if an error occurs.
+     */
+    private void compileStatements(SQLiteDatabase database) throws RuntimeException {
+        if (database != mStatementsDatabase) {
+            closeCompiledStatements();
+            String table = "`" + mTable + "`";
+            if (mInsertColumns != null) {
+                StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+                StringBuilder parameters = new StringBuilder();
+                for (int i = 0; i < mInsertColumns.length; i++) {
+                    String separator = i == 0 ? "" : ", ";
+                    sql.append(separator).append('`').append(mInsertColumns[i]).append('`');
+                    parameters.append(separator).append('?');
+                }
+                sql.append(") VALUES (").append(parameters).append(")");
+                mInsertStatement = database.compileStatement(sql.toString());
+            }
+            mDeleteStatement = database.compileStatement("DELETE FROM " + table + " WHERE " + PRIMARY_KEY_SELECTION);
+            mCountStatement = database.compileStatement("SELECT COUNT(*) FROM " + table);
+            mStatementsDatabase = database;
+        }
+    }
+
+    /**
+     * Closes the compiled statements, ignoring errors.
+     */
+    private void closeCompiledStatements() {
+        for (SQLiteStatement statement : new SQLiteStatement[]{mInsertStatement, mDeleteStatement, mCountStatement}) {
+            if (statement != null) {
+                try {
+                    statement.close();
+                } catch (RuntimeException e) {
+                    AppCenterLog.warn(AppCenter.LOG_TAG, "Cannot close statement.", e);
+                }
+            }
+        }
+        mInsertStatement = null;
+        mDeleteStatement = null;
+        mCountStatement = null;
+        mStatementsDatabase = null;
+    }
+
+    /**
+     * Enables or disables reusing compiled statements, to compare both paths in tests.
+     *
+     * @param enabled true to reuse compiled statements, false to build statements on each call.
+     */
+    @VisibleForTesting
+    void setCompiledStatementsEnabled(boolean enabled) {
+        closeCompiledStatements();
+        mCompiledStatementsEnabled = enabled;
+    }
+
+    /**
+     * Switches to the journal file, or to memory if the journal cannot be written, and triggers error listener.
      *
      * @param operation The operation that triggered the error.
      * @param exception The exception that triggered the switch.
      */
     @VisibleForTesting
-    void switchToInMemory(String operation, RuntimeException exception) {
-
-        /* Create an in-memory database. */
-        mIMDB = new LinkedHashMap<Long, ContentValues>() {
-            @Override
-            protected boolean removeEldestEntry(Entry<Long, ContentValues> eldest) {
-                return mMaxNumberOfRecords < size() && mMaxNumberOfRecords > 0;
-            }
-        };
+    void switchToFallback(String operation, RuntimeException exception) {
+        if (mIMDB == null) {
+            closeCompiledStatements();
+            openFallback();
+        }
 
         /* Trigger error listener. */
         if (mListener != null) {
@@ -526,6 +1004,347 @@ public class DatabaseManager implements Closeable {
         }
     }
 
+    /**
+     * Create the in-memory database and load the journal file into it.
+     */
+    private void openFallback() {
+        mRecoverJournal = false;
+        mIMDB = new LinkedHashMap<>();
+        mJournalPositions = new HashMap<>();
+        File journalFile = getJournalFile();
+        if (journalFile != null) {
+            try {
+                mJournal = new Journal(journalFile);
+                Map<Long, ContentValues> entries = new LinkedHashMap<>();
+                mJournalPositions.putAll(mJournal.load(entries, MAX_INDEXED_VALUE_BYTES));
+                for (Map.Entry<Long, ContentValues> entry : entries.entrySet()) {
+                    mIMDB.put(entry.getKey(), getIndexedValues(entry.getValue()));
+                    mIMDBAutoInc = Math.max(mIMDBAutoInc, entry.getKey() + 1);
+                }
+                mJournalBytesGauge.set(mJournal.length());
+            } catch (IOException e) {
+                AppCenterLog.warn(AppCenter.LOG_TAG, "Cannot open journal file, keeping entries in memory.", e);
+                mIMDB.clear();
+                mJournalPositions.clear();
+                closeJournal();
+            }
+        }
+        updateInMemoryBytes();
+        purgeFallbackEntries();
+        mRowsGauge.set(mIMDB.size());
+    }
+
+    /**
+     * Get the journal file path.
+     *
+     * @return journal file, null if there is no storage for files.
+     */
+    @Nullable
+    private File getJournalFile() {
+        File directory = mContext == null ? null : mContext.getFilesDir();
+        return directory == null ? null : new File(directory, mDatabase + "." + mTable + JOURNAL_FILE_EXTENSION);
+    }
+
+    /**
+     * Stores the entry in the in-memory database, and in the journal if possible.
+     *
+     * @param id     The database identifier.
+     * @param values All values of the entry.
+     */
+    private void storeFallbackEntry(long id, ContentValues values) {
+        ContentValues indexedValues = values;
+        if (mJournal != null) {
+            try {
+                mJournalPositions.put(id, mJournal.appendPut(id, values));
+                mJournalBytesGauge.set(mJournal.length());
+                indexedValues = getIndexedValues(values);
+            } catch (IOException e) {
+                switchToMemoryOnly(e);
+            }
+        }
+        ContentValues previousValues = mIMDB.put(id, indexedValues);
+        long bytes = mInMemoryBytesGauge.get() + estimateSize(indexedValues);
+        if (previousValues != null) {
+            bytes -= estimateSize(previousValues);
+        }
+        mInMemoryBytesGauge.set(bytes);
+    }
+
+    /**
+     * Removes an entry from the in-memory database and from the journal.
+     *
+     * @param id The database identifier.
+     */
+    private void removeFallbackEntry(long id) {
+        ContentValues values = mIMDB.remove(id);
+        if (values == null) {
+            return;
+        }
+        mInMemoryBytesGauge.set(mInMemoryBytesGauge.get() - estimateSize(values));
+        if (mJournal != null && mJournalPositions.remove(id) != null) {
+            try {
+                mJournal.appendDelete(id);
+                mJournalBytesGauge.set(mJournal.length());
+            } catch (IOException e) {
+                switchToMemoryOnly(e);
+            }
+        }
+    }
+
+    /**
+     * Purges the oldest entries while the in-memory database or the journal exceed their limits.
+     */
+    private void purgeFallbackEntries() {
+        while (mIMDB.size() > 1 && ((mMaxNumberOfRecords > 0 && mIMDB.size() > mMaxNumberOfRecords) || mInMemoryBytesGauge.get() > MAX_FALLBACK_MEMORY_BYTES)) {
+            purgeOldestFallbackEntry();
+        }
+        if (mJournal == null || mJournalBytesGauge.get() <= MAX_JOURNAL_BYTES) {
+            return;
+        }
+
+        /* Drop deleted and overwritten records first, then purge entries if still too large. */
+        long liveBytes = 0;
+        for (Journal.Position position : mJournalPositions.values()) {
+            liveBytes += position.length;
+        }
+        Iterator<Long> ids = new ArrayList<>(mIMDB.keySet()).iterator();
+        while (liveBytes > MAX_JOURNAL_BYTES && mIMDB.size() > 1) {
+            long id = ids.next();
+            Journal.Position position = mJournalPositions.remove(id);
+            if (position != null) {
+                liveBytes -= position.length;
+            }
+            ContentValues values = mIMDB.remove(id);
+            mInMemoryBytesGauge.set(mInMemoryBytesGauge.get() - estimateSize(values));
+            mEvictions.increment();
+        }
+        try {
+            mJournal.compact(getOrderedJournalPositions());
+            mJournalBytesGauge.set(mJournal.length());
+        } catch (IOException e) {
+            switchToMemoryOnly(e);
+        }
+    }
+
+    /**
+     * Purges the oldest entry of the in-memory database.
+     */
+    private void purgeOldestFallbackEntry() {
+        removeFallbackEntry(mIMDB.keySet().iterator().next());
+        mEvictions.increment();
+    }
+
+    /**
+     * Gets the journal records of entries in insertion order, so that compaction keeps the order.
+     *
+     * @return journal records by database identifier.
+     */
+    private Map<Long, Journal.Position> getOrderedJournalPositions() {
+        Map<Long, Journal.Position> positions = new LinkedHashMap<>();
+        for (Long id : mIMDB.keySet()) {
+            Journal.Position position = mJournalPositions.get(id);
+            if (position != null) {
+                positions.put(id, position);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Gets all values of an in-memory database entry, reading the journal if needed.
+     *
+     * @param id            The database identifier.
+     * @param indexedValues The values kept in memory.
+     * @return All values, or the values kept in memory if the journal cannot be read.
+     */
+    private ContentValues readFallbackEntry(long id, ContentValues indexedValues) {
+        Journal.Position position = mJournal == null ? null : mJournalPositions.get(id);
+        if (position == null) {
+            return indexedValues;
+        }
+        try {
+            return mJournal.read(position);
+        } catch (IOException e) {
+            AppCenterLog.warn(AppCenter.LOG_TAG, "Cannot read journal entry " + id, e);
+            return indexedValues;
+        }
+    }
+
+    /**
+     * Gets a value of an in-memory database entry, reading the journal only if the value is not kept in memory.
+     *
+     * @param id            The database identifier.
+     * @param indexedValues The values kept in memory.
+     * @param key           The value key.
+     * @return The value.
+     */
+    private Object getFallbackValue(long id, ContentValues indexedValues, String key) {
+        if (indexedValues.containsKey(key)) {
+            return indexedValues.get(key);
+        }
+        return readFallbackEntry(id, indexedValues).get(key);
+    }
+
+    /**
+     * Gets the values to keep in memory for an entry stored in the journal.
+     *
+     * @param values All values of the entry.
+     * @return A copy without the large values.
+     */
+    private static ContentValues getIndexedValues(ContentValues values) {
+        ContentValues indexedValues = new ContentValues(values);
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            Object value = entry.getValue();
+            if ((value instanceof String && 2 * ((String) value).length() > MAX_INDEXED_VALUE_BYTES)
+                    || (value instanceof byte[] && ((byte[]) value).length > MAX_INDEXED_VALUE_BYTES)) {
+                indexedValues.remove(entry.getKey());
+            }
+        }
+        return indexedValues;
+    }
+
+    /**
+     * Keeps all values in memory after the journal failed, entries that cannot be read anymore are lost.
+     *
+     * @param exception The journal error.
+     */
+    private void switchToMemoryOnly(IOException exception) {
+        AppCenterLog.warn(AppCenter.LOG_TAG, "Cannot write journal file, keeping entries in memory.", exception);
+        for (Iterator<Map.Entry<Long, ContentValues>> iterator = mIMDB.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Long, ContentValues> entry = iterator.next();
+            Journal.Position position = mJournalPositions.get(entry.getKey());
+            if (position != null) {
+                try {
+                    entry.setValue(mJournal.read(position));
+                } catch (IOException e) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        /* Entries are now only in memory, do not load stale records in another process. */
+        mJournal.delete();
+        mJournal = null;
+        mJournalPositions.clear();
+        mJournalBytesGauge.set(0);
+        updateInMemoryBytes();
+        purgeFallbackEntries();
+    }
+
+    /**
+     * Closes the journal after an error, ignoring errors.
+     */
+    private void closeJournal() {
+        if (mJournal != null) {
+            closeQuietly(mJournal);
+            mJournal = null;
+        }
+    }
+
+    /**
+     * Closes a journal, ignoring errors.
+     *
+     * @param journal The journal.
+     */
+    private static void closeQuietly(Journal journal) {
+        try {
+            journal.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Checks whether entries are kept in a journal file or in memory because SQLite failed.
+     *
+     * @return true if using the fallback storage.
+     */
+    public boolean isUsingFallback() {
+        return mIMDB != null;
+    }
+
+    /**
+     * Moves the entries of the fallback storage back to SQLite, if SQLite works again.
+     * Entries get new identifiers.
+     *
+     * @return new identifiers by fallback identifier, or null if not using the fallback storage or if SQLite still fails.
+     */
+    @Nullable
+    public Map<Long, Long> moveToDatabase() {
+        if (mIMDB == null) {
+            return null;
+        }
+        Map<Long, Long> identifiers = new HashMap<>();
+        try {
+            SQLiteDatabase database = getDatabase();
+            database.beginTransaction();
+            try {
+                for (Map.Entry<Long, ContentValues> entry : mIMDB.entrySet()) {
+                    ContentValues values = new ContentValues(readFallbackEntry(entry.getKey(), entry.getValue()));
+                    values.remove(PRIMARY_KEY);
+                    identifiers.put(entry.getKey(), database.insertOrThrow(mTable, null, values));
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.warn(AppCenter.LOG_TAG, "Cannot move entries back to the database.", e);
+            return null;
+        }
+        AppCenterLog.info(AppCenter.LOG_TAG, "Moved " + identifiers.size() + " entries back to the database.");
+        if (mJournal != null) {
+            mJournal.delete();
+            mJournal = null;
+        } else {
+
+            /* Remove a journal that could not be opened. */
+            File journalFile = getJournalFile();
+            if (journalFile != null) {
+
+                //noinspection ResultOfMethodCallIgnored the journal is also replaced when opened again.
+                journalFile.delete();
+            }
+        }
+        mIMDB = null;
+        mJournalPositions = null;
+        mInMemoryBytesGauge.set(0);
+        mJournalBytesGauge.set(0);
+        return identifiers;
+    }
+
+    /**
+     * Recompute the estimated heap bytes of the in-memory database.
+     */
+    private void updateInMemoryBytes() {
+        long bytes = 0;
+        for (ContentValues values : mIMDB.values()) {
+            bytes += estimateSize(values);
+        }
+        mInMemoryBytesGauge.set(bytes);
+    }
+
+    /**
+     * Roughly estimate the heap bytes retained by an in-memory entry.
+     *
+     * @param values entry.
+     * @return estimated size in bytes.
+     */
+    private static long estimateSize(ContentValues values) {
+        long size = ENTRY_OVERHEAD_BYTES;
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            size += VALUE_OVERHEAD_BYTES + 2L * entry.getKey().length();
+            Object value = entry.getValue();
+            if (value instanceof byte[]) {
+                size += ((byte[]) value).length;
+            } else if (value instanceof String) {
+
+                /* Java strings use 2 bytes per character. */
+                size += 2L * ((String) value).length();
+            }
+        }
+        return size;
+    }
+
     /**
      * Sets {@link SQLiteOpenHelper} instance.
      *
@@ -533,6 +1352,7 @@ public class DatabaseManager implements Closeable {
      */
     @VisibleForTesting
     void setSQLiteOpenHelper(@NonNull SQLiteOpenHelper helper) {
+        closeCompiledStatements();
         mSQLiteOpenHelper.close();
         mSQLiteOpenHelper = helper;
     }
@@ -565,6 +1385,21 @@ public class DatabaseManager implements Closeable {
         void onError(String operation, RuntimeException e);
     }
 
+    /**
+     * Statements run in a SQLite transaction, typically on other tables of the database.
+     */
+    public interface Transaction {
+
+        /**
+         * Runs the statements.
+         *
+         * @param db     database.
+         * @param values entry about to be inserted in the same transaction, can be modified. Null if not inserting.
+         * @throws RuntimeException to roll back the transaction.
+         */
+        void run(@NonNull SQLiteDatabase db, @Nullable ContentValues values);
+    }
+
     /**
      * Scanner specification.
      */
@@ -608,7 +1443,7 @@ public class DatabaseManager implements Closeable {
                     cursor.close();
                     cursor = null;
                 } catch (RuntimeException e) {
-                    switchToInMemory("scan.close", e);
+                    switchToFallback("scan.close", e);
                 }
             }
         }
@@ -651,7 +1486,7 @@ public class DatabaseManager implements Closeable {
                                     cursor = null;
 
                                     /* Switch to in-memory database. */
-                                    switchToInMemory("scan.hasNext", e);
+                                    switchToFallback("scan.hasNext", e);
                                 }
                             }
                             return hasNext;
@@ -676,7 +1511,7 @@ public class DatabaseManager implements Closeable {
                         }
                     };
                 } catch (RuntimeException e) {
-                    switchToInMemory("scan.iterator", e);
+                    switchToFallback("scan.iterator", e);
                 }
             }
 
@@ -684,7 +1519,7 @@ public class DatabaseManager implements Closeable {
             return new Iterator<ContentValues>() {
 
                 /** In memory map iterator that we wrap because of the filter logic. */
-                final Iterator<ContentValues> iterator = mIMDB.values().iterator();
+                final Iterator<Map.Entry<Long, ContentValues>> iterator = mIMDB.entrySet().iterator();
 
                 /** True if we moved the iterator but not retrieved the value. */
                 boolean advanced;
@@ -699,10 +1534,12 @@ public class DatabaseManager implements Closeable {
                     if (!advanced) {
                         next = null;
                         while (iterator.hasNext()) {
-                            ContentValues nextCandidate = iterator.next();
-                            Object candidateValue = nextCandidate.get(key);
+                            Map.Entry<Long, ContentValues> nextCandidate = iterator.next();
+                            Object candidateValue = key == null ? null : getFallbackValue(nextCandidate.getKey(), nextCandidate.getValue(), key);
                             if (key == null || (value != null && value.equals(candidateValue)) || (value == null && candidateValue == null)) {
-                                next = nextCandidate;
+
+                                /* Values left out of memory are read from the journal unless only identifiers are needed. */
+                                next = idOnly ? nextCandidate.getValue() : readFallbackEntry(nextCandidate.getKey(), nextCandidate.getValue());
                                 break;
                             }
                         }
@@ -735,7 +1572,7 @@ public class DatabaseManager implements Closeable {
                     }
                     return cursor.getCount();
                 } catch (RuntimeException e) {
-                    switchToInMemory("scan.count", e);
+                    switchToFallback("scan.count", e);
                 }
             }
             int count = 0;
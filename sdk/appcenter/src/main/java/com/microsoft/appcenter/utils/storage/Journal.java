@@ -0,0 +1,490 @@
+package com.microsoft.appcenter.utils.storage;
+
+import android.content.ContentValues;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Append-only file of database entries, used by {@link DatabaseManager} when SQLite fails.
+ * Each record either stores all the values of an entry or deletes an entry.
+ * The last record of an entry wins when loading the file.
+ */
+class Journal implements Closeable {
+
+    /**
+     * Record storing all the values of an entry.
+     */
+    private static final byte OPERATION_PUT = 1;
+
+    /**
+     * Record deleting an entry.
+     */
+    private static final byte OPERATION_DELETE = 2;
+
+    private static final byte TYPE_NULL = 0;
+
+    private static final byte TYPE_STRING = 1;
+
+    private static final byte TYPE_LONG = 2;
+
+    private static final byte TYPE_INTEGER = 3;
+
+    private static final byte TYPE_SHORT = 4;
+
+    private static final byte TYPE_BYTE = 5;
+
+    private static final byte TYPE_DOUBLE = 6;
+
+    private static final byte TYPE_FLOAT = 7;
+
+    private static final byte TYPE_BOOLEAN = 8;
+
+    private static final byte TYPE_BLOB = 9;
+
+    /**
+     * Journal file.
+     */
+    private final File mFile;
+
+    /**
+     * Opened journal file.
+     */
+    private RandomAccessFile mRandomAccessFile;
+
+    /**
+     * Open a journal file, creating it if needed.
+     *
+     * @param file journal file.
+     * @throws IOException if the file cannot be opened.
+     */
+    Journal(@NonNull File file) throws IOException {
+        mFile = file;
+        mRandomAccessFile = new RandomAccessFile(file, "rw");
+    }
+
+    /**
+     * Get the journal size.
+     *
+     * @return size in bytes.
+     * @throws IOException if an I/O error occurs.
+     */
+    long length() throws IOException {
+        return mRandomAccessFile.length();
+    }
+
+    /**
+     * Append a record storing all the values of an entry.
+     *
+     * @param id     entry identifier.
+     * @param values all the values of the entry.
+     * @return position of the record.
+     * @throws IOException if an I/O error occurs.
+     */
+    @NonNull
+    Position appendPut(long id, @NonNull ContentValues values) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(buffer);
+        output.writeByte(OPERATION_PUT);
+        output.writeLong(id);
+        output.writeInt(values.size());
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            output.writeUTF(entry.getKey());
+            writeValue(output, entry.getValue());
+        }
+        return append(buffer.toByteArray());
+    }
+
+    /**
+     * Append a record deleting an entry.
+     *
+     * @param id entry identifier.
+     * @throws IOException if an I/O error occurs.
+     */
+    void appendDelete(long id) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(buffer);
+        output.writeByte(OPERATION_DELETE);
+        output.writeLong(id);
+        append(buffer.toByteArray());
+    }
+
+    /**
+     * Read the values stored by a record.
+     *
+     * @param position position of the record.
+     * @return all the values of the entry.
+     * @throws IOException if an I/O error occurs.
+     */
+    @NonNull
+    ContentValues read(@NonNull Position position) throws IOException {
+        byte[] record = new byte[position.length];
+        mRandomAccessFile.seek(position.offset);
+        mRandomAccessFile.readFully(record);
+        RecordInputStream input = new RecordInputStream(new ByteArrayInputStream(record), record.length);
+        if (input.readByte() != OPERATION_PUT) {
+            throw new IOException("Not a put record at offset " + position.offset);
+        }
+        input.readLong();
+        return readValues(input, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Read all the records, truncating the file at the first record that was not fully written.
+     * Records are streamed from the file, only the values small enough are kept in memory.
+     *
+     * @param outValues     map receiving the values of each entry, in the order the entries were first stored,
+     *                      null to only get the positions.
+     * @param maxValueBytes strings and blobs larger than this are left out of the values.
+     * @return position of the last record of each entry.
+     * @throws IOException if an I/O error occurs.
+     */
+    @NonNull
+    Map<Long, Position> load(@Nullable Map<Long, ContentValues> outValues, int maxValueBytes) throws IOException {
+        Map<Long, Position> positions = new LinkedHashMap<>();
+        long length = mRandomAccessFile.length();
+        RecordInputStream input = new RecordInputStream(new BufferedInputStream(new FileInputStream(mFile)), length);
+        long offset = 0;
+        try {
+            while (offset < length) {
+                byte operation = input.readByte();
+                long id = input.readLong();
+                if (operation == OPERATION_PUT) {
+                    ContentValues values = readValues(input, outValues == null ? -1 : maxValueBytes);
+                    if (outValues != null) {
+                        outValues.put(id, values);
+                    }
+                    positions.put(id, new Position(offset, (int) (input.getPosition() - offset)));
+                } else if (operation == OPERATION_DELETE) {
+                    if (outValues != null) {
+                        outValues.remove(id);
+                    }
+                    positions.remove(id);
+                } else {
+                    throw new IOException("Unknown journal operation " + operation);
+                }
+                offset = input.getPosition();
+            }
+        } catch (IOException e) {
+
+            /* The process stopped while appending, drop the incomplete record and anything after it. */
+            mRandomAccessFile.setLength(offset);
+        } finally {
+            input.close();
+        }
+        return positions;
+    }
+
+    /**
+     * Rewrite the journal with only the last record of the given entries, dropping all other records.
+     *
+     * @param positions positions of the records to keep, updated with their new positions.
+     * @throws IOException if an I/O error occurs.
+     */
+    void compact(@NonNull Map<Long, Position> positions) throws IOException {
+        File compactedFile = new File(mFile.getPath() + ".tmp");
+        long[] offsets = new long[positions.size()];
+        RandomAccessFile compacted = new RandomAccessFile(compactedFile, "rw");
+        try {
+            compacted.setLength(0);
+            int i = 0;
+            for (Position position : positions.values()) {
+                byte[] record = new byte[position.length];
+                mRandomAccessFile.seek(position.offset);
+                mRandomAccessFile.readFully(record);
+                offsets[i++] = compacted.getFilePointer();
+                compacted.write(record);
+            }
+        } finally {
+            compacted.close();
+        }
+        mRandomAccessFile.close();
+        boolean replaced = compactedFile.renameTo(mFile);
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        if (!replaced) {
+            throw new IOException("Cannot replace journal " + mFile);
+        }
+
+        /* Only update positions once the compacted journal is in place. */
+        int i = 0;
+        for (Position position : positions.values()) {
+            position.offset = offsets[i++];
+        }
+    }
+
+    /**
+     * Remove all records.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void clear() throws IOException {
+        mRandomAccessFile.setLength(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mRandomAccessFile.close();
+    }
+
+    /**
+     * Close and delete the journal file.
+     */
+    void delete() {
+        try {
+            mRandomAccessFile.close();
+        } catch (IOException ignored) {
+        }
+
+        //noinspection ResultOfMethodCallIgnored an empty journal is harmless.
+        mFile.delete();
+    }
+
+    private Position append(byte[] record) throws IOException {
+        long offset = mRandomAccessFile.length();
+        mRandomAccessFile.seek(offset);
+        mRandomAccessFile.write(record);
+        return new Position(offset, record.length);
+    }
+
+    private static void writeValue(DataOutputStream output, Object value) throws IOException {
+        if (value == null) {
+            output.writeByte(TYPE_NULL);
+        } else if (value instanceof String) {
+
+            /* writeUTF is limited to 64KB. */
+            byte[] bytes = ((String) value).getBytes("UTF-8");
+            output.writeByte(TYPE_STRING);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        } else if (value instanceof Long) {
+            output.writeByte(TYPE_LONG);
+            output.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            output.writeByte(TYPE_INTEGER);
+            output.writeInt((Integer) value);
+        } else if (value instanceof Short) {
+            output.writeByte(TYPE_SHORT);
+            output.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            output.writeByte(TYPE_BYTE);
+            output.writeByte((Byte) value);
+        } else if (value instanceof Double) {
+            output.writeByte(TYPE_DOUBLE);
+            output.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            output.writeByte(TYPE_FLOAT);
+            output.writeFloat((Float) value);
+        } else if (value instanceof Boolean) {
+            output.writeByte(TYPE_BOOLEAN);
+            output.writeBoolean((Boolean) value);
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            output.writeByte(TYPE_BLOB);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        } else {
+            throw new IOException("Unsupported value type " + value.getClass());
+        }
+    }
+
+    private static ContentValues readValues(RecordInputStream input, int maxValueBytes) throws IOException {
+        ContentValues values = new ContentValues();
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            String key = input.readUTF();
+            byte type = input.readByte();
+            switch (type) {
+                case TYPE_NULL:
+                    values.putNull(key);
+                    break;
+
+                case TYPE_STRING: {
+                    byte[] bytes = readBytes(input, maxValueBytes);
+                    if (bytes != null) {
+                        values.put(key, new String(bytes, "UTF-8"));
+                    }
+                    break;
+                }
+
+                case TYPE_LONG:
+                    values.put(key, input.readLong());
+                    break;
+
+                case TYPE_INTEGER:
+                    values.put(key, input.readInt());
+                    break;
+
+                case TYPE_SHORT:
+                    values.put(key, input.readShort());
+                    break;
+
+                case TYPE_BYTE:
+                    values.put(key, input.readByte());
+                    break;
+
+                case TYPE_DOUBLE:
+                    values.put(key, input.readDouble());
+                    break;
+
+                case TYPE_FLOAT:
+                    values.put(key, input.readFloat());
+                    break;
+
+                case TYPE_BOOLEAN:
+                    values.put(key, input.readBoolean());
+                    break;
+
+                case TYPE_BLOB: {
+                    byte[] bytes = readBytes(input, maxValueBytes);
+                    if (bytes != null) {
+                        values.put(key, bytes);
+                    }
+                    break;
+                }
+
+                default:
+                    throw new IOException("Unknown value type " + type);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Read a string or blob value.
+     *
+     * @return the bytes, or null if skipped because larger than maxValueBytes.
+     */
+    private static byte[] readBytes(RecordInputStream input, int maxValueBytes) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > input.getRemaining()) {
+            throw new EOFException();
+        }
+        if (length > maxValueBytes) {
+            input.skipFully(length);
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Data input stream keeping track of its position, to bound lengths read from possibly incomplete records.
+     */
+    private static class RecordInputStream extends DataInputStream {
+
+        /**
+         * Stream counting the bytes read.
+         */
+        private final CountingInputStream mCountingInputStream;
+
+        RecordInputStream(InputStream input, long length) {
+            this(new CountingInputStream(input, length));
+        }
+
+        private RecordInputStream(CountingInputStream countingInputStream) {
+            super(countingInputStream);
+            mCountingInputStream = countingInputStream;
+        }
+
+        long getPosition() {
+            return mCountingInputStream.mPosition;
+        }
+
+        long getRemaining() {
+            return mCountingInputStream.mLength - mCountingInputStream.mPosition;
+        }
+
+        void skipFully(int count) throws IOException {
+            while (count > 0) {
+                int skipped = skipBytes(count);
+                if (skipped <= 0) {
+                    throw new EOFException();
+                }
+                count -= skipped;
+            }
+        }
+    }
+
+    /**
+     * Input stream counting the bytes read.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        /**
+         * Number of bytes of the underlying stream.
+         */
+        final long mLength;
+
+        /**
+         * Number of bytes read or skipped.
+         */
+        long mPosition;
+
+        CountingInputStream(InputStream input, long length) {
+            super(input);
+            mLength = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                mPosition++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mPosition += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = super.skip(count);
+            mPosition += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Position of a record in the journal.
+     */
+    static class Position {
+
+        /**
+         * Offset of the record in the file.
+         */
+        long offset;
+
+        /**
+         * Length of the record in bytes.
+         */
+        final int length;
+
+        Position(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
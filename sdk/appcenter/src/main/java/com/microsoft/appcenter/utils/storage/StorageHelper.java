@@ -29,6 +29,7 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -612,6 +613,27 @@ public class StorageHelper {
             return mDatabaseManager.put(values);
         }
 
+        /**
+         * Store an entry in a table, in the same transaction as other statements.
+         *
+         * @param values      The entry to be stored.
+         * @param transaction Statements to run before storing the entry, not run when using the fallback storage.
+         * @return The identifier of the created database entry.
+         */
+        public long put(@NonNull ContentValues values, @Nullable DatabaseManager.Transaction transaction) {
+            return mDatabaseManager.put(values, transaction);
+        }
+
+        /**
+         * Run statements in a database transaction.
+         *
+         * @param transaction The statements.
+         * @return {@code true} if the transaction was committed, {@code false} if using the fallback storage or if the database failed.
+         */
+        public boolean runTransaction(@NonNull DatabaseManager.Transaction transaction) {
+            return mDatabaseManager.runTransaction(transaction);
+        }
+
         /**
          * Update an entry in a table.
          *
@@ -619,7 +641,7 @@ public class StorageHelper {
          * @param values The value to update.
          * @return {@code true} if the values were updated successfully, {@code false} otherwise.
          */
-        public boolean update(@IntRange(from = 0) long id, @NonNull ContentValues values) {
+        public boolean update(long id, @NonNull ContentValues values) {
             return mDatabaseManager.update(id, values);
         }
 
@@ -628,7 +650,7 @@ public class StorageHelper {
          *
          * @param id The identifier for the entry to be deleted.
          */
-        public void delete(@IntRange(from = 0) long id) {
+        public void delete(long id) {
             mDatabaseManager.delete(id);
         }
 
@@ -657,7 +679,7 @@ public class StorageHelper {
          * @param id The database identifier.
          * @return An entry for the identifier or null if not found.
          */
-        public ContentValues get(@IntRange(from = 0) long id) {
+        public ContentValues get(long id) {
             return mDatabaseManager.get(id);
         }
 
@@ -731,6 +753,36 @@ public class StorageHelper {
             return mDatabaseManager.getRowCount();
         }
 
+        /**
+         * Gets the count of records in the table for each value of a column, using a single query.
+         *
+         * @param column The column to group records by.
+         * @return The number of records by column value.
+         */
+        @NonNull
+        public Map<String, Integer> countGroupedBy(@NonNull String column) {
+            return mDatabaseManager.countGroupedBy(column);
+        }
+
+        /**
+         * Checks whether entries are kept in a journal file or in memory because the database failed.
+         *
+         * @return true if entries are kept in the fallback storage.
+         */
+        public boolean isUsingFallback() {
+            return mDatabaseManager.isUsingFallback();
+        }
+
+        /**
+         * Moves entries of the fallback storage back to the database, if it works again.
+         *
+         * @return new identifiers by fallback identifier, or null if entries are still or were not in the fallback storage.
+         */
+        @Nullable
+        public Map<Long, Long> moveToDatabase() {
+            return mDatabaseManager.moveToDatabase();
+        }
+
         /**
          * Gets an array of column names in the table.
          *
@@ -3,6 +3,7 @@ package com.microsoft.appcenter;
 import android.content.Context;
 
 import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.channel.DefaultChannel;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.utils.storage.StorageHelper;
 
@@ -10,6 +11,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.api.mockito.PowerMockito;
@@ -27,6 +29,7 @@ import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -236,6 +239,32 @@ public class AbstractAppCenterServiceTest {
         verifyNoMoreInteractions(channel);
     }
 
+    @Test
+    public void setUploadConditions() {
+        AppCenterHandler appCenterHandler = mock(AppCenterHandler.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(appCenterHandler).post(any(Runnable.class), any(Runnable.class));
+
+        /* Conditions set before start are applied before adding the group. */
+        mService.setUploadConditions(Channel.UPLOAD_WHILE_CHARGING);
+        DefaultChannel channel = mock(DefaultChannel.class);
+        mService.onStarting(appCenterHandler);
+        mService.onStarted(mock(Context.class), channel, "", null, true);
+        InOrder inOrder = inOrder(channel);
+        inOrder.verify(channel).setUploadConditions(mService.getGroupName(), Channel.UPLOAD_WHILE_CHARGING);
+        inOrder.verify(channel).addGroup(eq(mService.getGroupName()), anyInt(), anyLong(), anyInt(), isNull(Ingestion.class), any(Channel.GroupListener.class));
+
+        /* Conditions can be changed after start. */
+        mService.setUploadConditions(Channel.UPLOAD_ANY_TIME);
+        verify(channel).setUploadConditions(mService.getGroupName(), Channel.UPLOAD_ANY_TIME);
+    }
+
     @Test
     public void isAppSecretRequired() {
         Assert.assertTrue(mService.isAppSecretRequired());
@@ -8,6 +8,8 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Process;
 
 import com.microsoft.appcenter.channel.DefaultChannel;
 import com.microsoft.appcenter.ingestion.models.StartServiceLog;
@@ -67,7 +69,10 @@ import static org.powermock.api.mockito.PowerMockito.whenNew;
         ShutdownHelper.class,
         CustomProperties.class,
         InstrumentationRegistryHelper.class,
-        NetworkStateHelper.class
+        NetworkStateHelper.class,
+        Looper.class,
+        MessageQueue.class,
+        Process.class
 })
 public class AbstractAppCenterTest {
 
@@ -97,6 +102,8 @@ public class AbstractAppCenterTest {
 
     ApplicationInfo mApplicationInfo;
 
+    Handler mHandler;
+
     static void addArgumentToRegistry(String key, String value) {
         Bundle mockBundle = mock(Bundle.class);
         when(mockBundle.getString(key)).thenReturn(value);
@@ -130,8 +137,8 @@ public class AbstractAppCenterTest {
         mockStatic(NetworkStateHelper.class);
 
         /* Mock handlers. */
-        Handler handler = mock(Handler.class);
-        whenNew(Handler.class).withAnyArguments().thenReturn(handler);
+        mHandler = mock(Handler.class);
+        whenNew(Handler.class).withAnyArguments().thenReturn(mHandler);
         doAnswer(new Answer<Void>() {
 
             @Override
@@ -139,7 +146,7 @@ public class AbstractAppCenterTest {
                 ((Runnable) invocation.getArguments()[0]).run();
                 return null;
             }
-        }).when(handler).post(any(Runnable.class));
+        }).when(mHandler).post(any(Runnable.class));
         HandlerThread handlerThread = mock(HandlerThread.class);
         whenNew(HandlerThread.class).withAnyArguments().thenReturn(handlerThread);
         when(handlerThread.getLooper()).thenReturn(mock(Looper.class));
@@ -0,0 +1,127 @@
+package com.microsoft.appcenter;
+
+import android.os.Build;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.test.TestUtils;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyNew;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+public class AppCenterBackgroundFlushTest extends AbstractAppCenterTest {
+
+    @After
+    public void resetApiLevel() throws Exception {
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", 0);
+    }
+
+    @Test
+    public void disabledByDefault() throws Exception {
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.LOLLIPOP);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verifyNew(HandlerThread.class).withArguments("AppCenter.Looper");
+        verify(mApplication, never()).registerActivityLifecycleCallbacks(any(BackgroundFlushScheduler.class));
+
+        /* Job cannot flush. */
+        Channel.FlushListener listener = mock(Channel.FlushListener.class);
+        assertFalse(AppCenter.getInstance().flushInBackground(listener));
+        verify(mChannel, never()).flush(any(Channel.FlushListener.class));
+    }
+
+    @Test
+    public void enableBackgroundFlush() throws Exception {
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.LOLLIPOP);
+        AppCenter.setBackgroundFlushEnabled(true);
+        AppCenter.setBackgroundFlushRequirements(AppCenter.BACKGROUND_FLUSH_REQUIRES_CHARGING);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verifyNew(HandlerThread.class).withArguments("AppCenter.Looper");
+        verify(mApplication).registerActivityLifecycleCallbacks(any(BackgroundFlushScheduler.class));
+
+        /* Job flushes the channel at a lower priority. */
+        mockStatic(Process.class);
+        Channel.FlushListener listener = mock(Channel.FlushListener.class);
+        assertTrue(AppCenter.getInstance().flushInBackground(listener));
+        verify(mChannel).flush(listener);
+        verifyStatic();
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        verifyStatic(never());
+        Process.setThreadPriority(Process.THREAD_PRIORITY_DEFAULT);
+
+        /* Priority is restored when the job is finished. */
+        AppCenter.getInstance().stopFlushInBackground();
+        verifyStatic();
+        Process.setThreadPriority(Process.THREAD_PRIORITY_DEFAULT);
+
+        /* Nothing to flush when disabled. */
+        AppCenter.setEnabled(false);
+        assertTrue(AppCenter.getInstance().flushInBackground(listener));
+        verify(mChannel).flush(listener);
+        verify(listener).onFlushCompleted(true);
+    }
+
+    @Test
+    public void otherChannelImplementation() throws Exception {
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.LOLLIPOP);
+        AppCenter.setBackgroundFlushEnabled(true);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        mockStatic(Process.class);
+        Channel channel = mock(Channel.class);
+        AppCenter.getInstance().setChannel(channel);
+
+        /* Nothing to flush on behalf of the job. */
+        Channel.FlushListener listener = mock(Channel.FlushListener.class);
+        assertTrue(AppCenter.getInstance().flushInBackground(listener));
+        verify(listener).onFlushCompleted(true);
+        verifyStatic(never());
+        Process.setThreadPriority(anyInt());
+    }
+
+    @Test
+    public void enableBeforeLollipop() throws Exception {
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.KITKAT);
+        AppCenter.setBackgroundFlushEnabled(true);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verify(mApplication, never()).registerActivityLifecycleCallbacks(any(BackgroundFlushScheduler.class));
+    }
+
+    @Test
+    public void cannotFlushBeforeConfigure() {
+        mockStatic(Process.class);
+        AppCenter.setBackgroundFlushEnabled(true);
+        assertFalse(AppCenter.getInstance().flushInBackground(mock(Channel.FlushListener.class)));
+        AppCenter.getInstance().stopFlushInBackground();
+        verifyStatic(never());
+        Process.setThreadPriority(anyInt());
+    }
+
+    @Test
+    public void enableAfterConfigure() {
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        AppCenter.setBackgroundFlushEnabled(true);
+        AppCenter.setBackgroundFlushRequirements(AppCenter.BACKGROUND_FLUSH_REQUIRES_DEVICE_IDLE);
+        verifyStatic(times(2));
+        AppCenterLog.error(eq(LOG_TAG), anyString());
+        Channel.FlushListener listener = mock(Channel.FlushListener.class);
+        assertFalse(AppCenter.getInstance().flushInBackground(listener));
+        verify(listener, never()).onFlushCompleted(anyBoolean());
+    }
+}
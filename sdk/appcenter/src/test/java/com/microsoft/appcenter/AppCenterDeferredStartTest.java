@@ -0,0 +1,111 @@
+package com.microsoft.appcenter;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.MessageQueue;
+
+import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.ingestion.Ingestion;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+public class AppCenterDeferredStartTest extends AbstractAppCenterTest {
+
+    private static final String ANOTHER_DUMMY_GROUP = "group_another_dummy";
+
+    private MessageQueue mMessageQueue;
+
+    @Before
+    public void setUpLooper() {
+        mockStatic(Looper.class);
+        mMessageQueue = mock(MessageQueue.class);
+        when(Looper.myQueue()).thenReturn(mMessageQueue);
+    }
+
+    private MessageQueue.IdleHandler getIdleHandler() {
+        ArgumentCaptor<MessageQueue.IdleHandler> idleHandler = ArgumentCaptor.forClass(MessageQueue.IdleHandler.class);
+        verify(mMessageQueue).addIdleHandler(idleHandler.capture());
+        return idleHandler.getValue();
+    }
+
+    private void verifyAnotherDummyGroupAdded() {
+        verify(mChannel).addGroup(eq(ANOTHER_DUMMY_GROUP), anyInt(), anyLong(), anyInt(), any(Ingestion.class), any(Channel.GroupListener.class));
+    }
+
+    @Test
+    public void startWhenIdle() {
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        AppCenter.start(StartMode.DEFERRED, AnotherDummyService.class);
+
+        /* Immediate service is started, deferred one only has its group. */
+        verify(DummyService.getInstance()).onStarted(mApplication, mChannel, DUMMY_APP_SECRET, null, true);
+        verify(AnotherDummyService.getInstance()).onStarting(any(AppCenterHandler.class));
+        verify(AnotherDummyService.getInstance(), never()).onStarted(any(Context.class), any(Channel.class), anyString(), anyString(), anyBoolean());
+        verifyAnotherDummyGroupAdded();
+
+        /* Start when idle, without registering the group again. */
+        MessageQueue.IdleHandler idleHandler = getIdleHandler();
+        assertFalse(idleHandler.queueIdle());
+        verify(AnotherDummyService.getInstance()).onStarted(mApplication, mChannel, DUMMY_APP_SECRET, null, true);
+        verify(mChannel, never()).removeGroup(ANOTHER_DUMMY_GROUP);
+        verifyAnotherDummyGroupAdded();
+
+        /* Starting again is a no-op. */
+        idleHandler.queueIdle();
+        AnotherDummyService.isEnabled();
+        verify(AnotherDummyService.getInstance()).onStarted(mApplication, mChannel, DUMMY_APP_SECRET, null, true);
+    }
+
+    @Test
+    public void startOnFirstUse() {
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        AppCenter.start(StartMode.DEFERRED, AnotherDummyService.class);
+        verify(AnotherDummyService.getInstance(), never()).onStarted(any(Context.class), any(Channel.class), anyString(), anyString(), anyBoolean());
+
+        /* Using the service starts it before running the command. */
+        AnotherDummyService.isEnabled();
+        verify(AnotherDummyService.getInstance()).onStarted(mApplication, mChannel, DUMMY_APP_SECRET, null, true);
+        verify(mChannel, never()).removeGroup(ANOTHER_DUMMY_GROUP);
+
+        /* Using another service does not start it again, neither does idle. */
+        DummyService.isEnabled();
+        getIdleHandler().queueIdle();
+        verify(AnotherDummyService.getInstance()).onStarted(mApplication, mChannel, DUMMY_APP_SECRET, null, true);
+    }
+
+    @Test
+    public void disableWhileDeferred() {
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        AppCenter.start(StartMode.DEFERRED, AnotherDummyService.class);
+        verifyAnotherDummyGroupAdded();
+
+        /* Disabling App Center removes the group of the deferred service. */
+        AppCenter.setEnabled(false);
+        verify(mChannel).clear(ANOTHER_DUMMY_GROUP);
+        verify(mChannel).removeGroup(ANOTHER_DUMMY_GROUP);
+        verify(AnotherDummyService.getInstance(), never()).applyEnabledState(anyBoolean());
+
+        /* Start when idle applies disabled state. */
+        getIdleHandler().queueIdle();
+        verify(AnotherDummyService.getInstance()).onStarted(mApplication, mChannel, DUMMY_APP_SECRET, null, true);
+        verify(AnotherDummyService.getInstance()).applyEnabledState(false);
+        verify(mChannel, times(2)).clear(ANOTHER_DUMMY_GROUP);
+        verifyAnotherDummyGroupAdded();
+    }
+}
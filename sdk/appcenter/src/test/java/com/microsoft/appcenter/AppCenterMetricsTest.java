@@ -0,0 +1,75 @@
+package com.microsoft.appcenter;
+
+import com.microsoft.appcenter.utils.metrics.MetricsListener;
+import com.microsoft.appcenter.utils.metrics.MetricsRegistry;
+import com.microsoft.appcenter.utils.metrics.MetricsSnapshot;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class AppCenterMetricsTest extends AbstractAppCenterTest {
+
+    @After
+    public void tearDown() {
+        super.tearDown();
+        MetricsRegistry.unsetInstance();
+    }
+
+    @Test
+    public void getMetrics() {
+        MetricsRegistry.getInstance().getCounter(MetricsSnapshot.HTTP_RETRIES).add(2);
+        assertEquals(2, AppCenter.getMetrics().getCounter(MetricsSnapshot.HTTP_RETRIES));
+    }
+
+    @Test
+    public void listenerSetBeforeStart() {
+        MetricsListener listener = mock(MetricsListener.class);
+        AppCenter.setMetricsListener(listener, 1000);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+
+        /* Reporter is scheduled once configured. */
+        ArgumentCaptor<Runnable> reporter = ArgumentCaptor.forClass(Runnable.class);
+        verify(mHandler).postDelayed(reporter.capture(), eq(1000L));
+        verify(listener, never()).onMetrics(any(MetricsSnapshot.class));
+
+        /* Each report schedules the next one. */
+        reporter.getValue().run();
+        verify(listener).onMetrics(any(MetricsSnapshot.class));
+        verify(mHandler, times(2)).postDelayed(reporter.getValue(), 1000L);
+
+        /* Stop reporting. */
+        AppCenter.setMetricsListener(null, 0);
+        verify(mHandler).removeCallbacks(reporter.getValue());
+        reporter.getValue().run();
+        verify(listener).onMetrics(any(MetricsSnapshot.class));
+        verify(mHandler, times(2)).postDelayed(any(Runnable.class), anyLong());
+    }
+
+    @Test
+    public void replaceListenerAfterStart() {
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        MetricsListener listener = mock(MetricsListener.class);
+        AppCenter.setMetricsListener(listener, 1000);
+        ArgumentCaptor<Runnable> reporter = ArgumentCaptor.forClass(Runnable.class);
+        verify(mHandler).postDelayed(reporter.capture(), eq(1000L));
+
+        /* Replacing the listener stops the previous reporter. */
+        AppCenter.setMetricsListener(mock(MetricsListener.class), 2000);
+        verify(mHandler).removeCallbacks(reporter.getValue());
+        verify(mHandler).postDelayed(any(Runnable.class), eq(2000L));
+
+        /* Invalid interval is ignored. */
+        AppCenter.setMetricsListener(listener, 0);
+        verify(mHandler, times(2)).postDelayed(any(Runnable.class), anyLong());
+    }
+}
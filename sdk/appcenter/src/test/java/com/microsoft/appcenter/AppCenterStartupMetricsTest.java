@@ -0,0 +1,67 @@
+package com.microsoft.appcenter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.microsoft.appcenter.StartupMetrics.PHASE_CONFIGURE;
+import static com.microsoft.appcenter.StartupMetrics.PHASE_CREATE_CHANNEL;
+import static com.microsoft.appcenter.StartupMetrics.PHASE_CREATE_ONE_COLLECTOR_CHANNEL;
+import static com.microsoft.appcenter.StartupMetrics.PHASE_FINISH_CONFIGURATION;
+import static com.microsoft.appcenter.StartupMetrics.PHASE_FINISH_START_SERVICES;
+import static com.microsoft.appcenter.StartupMetrics.PHASE_INITIALIZE_STORAGE;
+import static com.microsoft.appcenter.StartupMetrics.PHASE_LOAD_CONSTANTS;
+import static com.microsoft.appcenter.StartupMetrics.PHASE_LOAD_SESSIONS;
+import static com.microsoft.appcenter.StartupMetrics.PHASE_START_SERVICES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AppCenterStartupMetricsTest extends AbstractAppCenterTest {
+
+    private static List<String> getPhaseNames() {
+        List<String> names = new ArrayList<>();
+        for (StartupMetrics.Phase phase : AppCenter.getStartupMetrics().getPhases()) {
+            names.add(phase.getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void noPhaseBeforeStart() {
+        assertTrue(AppCenter.getStartupMetrics().getPhases().isEmpty());
+        assertNull(AppCenter.getStartupMetrics().getPhase(PHASE_CONFIGURE));
+    }
+
+    @Test
+    public void phasesInOrder() {
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class, AnotherDummyService.class);
+
+        /* Background thread runs synchronously in tests, so its phases are nested in the ones posting to it. */
+        assertEquals(Arrays.asList(
+                PHASE_CONFIGURE,
+                PHASE_FINISH_CONFIGURATION,
+                PHASE_LOAD_CONSTANTS,
+                PHASE_INITIALIZE_STORAGE,
+                PHASE_LOAD_SESSIONS,
+                PHASE_CREATE_CHANNEL,
+                PHASE_CREATE_ONE_COLLECTOR_CHANNEL,
+                PHASE_START_SERVICES,
+                PHASE_FINISH_START_SERVICES,
+                "Dummy.onStarted",
+                "AnotherDummy.onStarted"), getPhaseNames());
+        StartupMetrics.Phase phase = AppCenter.getStartupMetrics().getPhase(PHASE_CONFIGURE);
+        assertNotNull(phase);
+        assertEquals(0, phase.getStartOffsetNanos());
+        assertTrue(phase.getWallTimeNanos() >= 0);
+
+        /* Configuring again does not add phases, starting services does. */
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        AppCenter.start(AnotherDummyService.class);
+        assertEquals(13, getPhaseNames().size());
+        assertEquals(PHASE_FINISH_START_SERVICES, getPhaseNames().get(12));
+    }
+}
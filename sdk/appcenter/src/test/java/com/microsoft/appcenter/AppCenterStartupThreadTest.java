@@ -0,0 +1,125 @@
+package com.microsoft.appcenter;
+
+import android.os.Looper;
+
+import com.microsoft.appcenter.utils.HandlerUtils;
+import com.microsoft.appcenter.utils.UUIDUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.microsoft.appcenter.StartupMetrics.PHASE_CONFIGURE;
+import static com.microsoft.appcenter.StartupMetrics.PHASE_CREATE_CHANNEL;
+import static com.microsoft.appcenter.StartupMetrics.PHASE_CREATE_ONE_COLLECTOR_CHANNEL;
+import static com.microsoft.appcenter.StartupMetrics.PHASE_FINISH_CONFIGURATION;
+import static com.microsoft.appcenter.StartupMetrics.PHASE_FINISH_START_SERVICES;
+import static com.microsoft.appcenter.StartupMetrics.PHASE_INITIALIZE_STORAGE;
+import static com.microsoft.appcenter.StartupMetrics.PHASE_LOAD_CONSTANTS;
+import static com.microsoft.appcenter.StartupMetrics.PHASE_LOAD_SESSIONS;
+import static com.microsoft.appcenter.StartupMetrics.PHASE_ON_STARTED_SUFFIX;
+import static com.microsoft.appcenter.StartupMetrics.PHASE_START_SERVICES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Start App Center with a real background looper, whose tasks only run when the test drains them.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class AppCenterStartupThreadTest {
+
+    private static List<String> getPhaseNames() {
+        List<String> names = new ArrayList<>();
+        for (StartupMetrics.Phase phase : AppCenter.getStartupMetrics().getPhases()) {
+            names.add(phase.getName());
+        }
+        return names;
+    }
+
+    @Before
+    public void setUp() {
+        AppCenter.unsetInstance();
+        Constants.APPLICATION_DEBUGGABLE = false;
+        ShadowLooper.pauseMainLooper();
+    }
+
+    @After
+    public void tearDown() {
+        Looper looper = HandlerUtils.getSdkHandler().getLooper();
+        if (looper != Looper.getMainLooper()) {
+            looper.quit();
+        }
+        HandlerUtils.setSdkHandler(null);
+        AppCenter.unsetInstance();
+    }
+
+    @Test
+    public void startupPhasesRunInBackground() {
+        assertSame(Looper.getMainLooper(), Looper.myLooper());
+        AppCenter.start(RuntimeEnvironment.application, UUIDUtils.randomUUID().toString(), DummyService.class);
+
+        /* Only posting to the background thread is done on the main thread. */
+        assertEquals(Arrays.asList(PHASE_CONFIGURE, PHASE_START_SERVICES), getPhaseNames());
+        for (StartupMetrics.Phase phase : AppCenter.getStartupMetrics().getPhases()) {
+            assertTrue(phase.isMainThread());
+        }
+
+        /* Everything else is queued on the App Center looper. */
+        Looper looper = HandlerUtils.getSdkHandler().getLooper();
+        assertNotSame(Looper.getMainLooper(), looper);
+        assertEquals("AppCenter.Looper", looper.getThread().getName());
+        ShadowLooper backgroundLooper = shadowOf(looper);
+        assertTrue(backgroundLooper.getScheduler().areAnyRunnable());
+
+        /* Run the background tasks, phases keep their order. */
+        backgroundLooper.runToEndOfTasks();
+        assertEquals(Arrays.asList(
+                PHASE_CONFIGURE,
+                PHASE_START_SERVICES,
+                PHASE_FINISH_CONFIGURATION,
+                PHASE_LOAD_CONSTANTS,
+                PHASE_INITIALIZE_STORAGE,
+                PHASE_LOAD_SESSIONS,
+                PHASE_CREATE_CHANNEL,
+                PHASE_CREATE_ONE_COLLECTOR_CHANNEL,
+                PHASE_FINISH_START_SERVICES,
+                "Dummy" + PHASE_ON_STARTED_SUFFIX), getPhaseNames());
+    }
+
+    private static class DummyService extends AbstractAppCenterService {
+
+        private static final DummyService sInstance = new DummyService();
+
+        public static DummyService getInstance() {
+            return sInstance;
+        }
+
+        @Override
+        public String getServiceName() {
+            return "Dummy";
+        }
+
+        @Override
+        protected String getGroupName() {
+            return null;
+        }
+
+        @Override
+        protected String getLoggerTag() {
+            return null;
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package com.microsoft.appcenter;
 
+import android.content.ComponentCallbacks;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 
 import com.microsoft.appcenter.channel.Channel;
 import com.microsoft.appcenter.channel.OneCollectorChannelListener;
+import com.microsoft.appcenter.http.DefaultHttpClient;
+import com.microsoft.appcenter.http.HttpClient;
+import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.ingestion.models.CustomPropertiesLog;
 import com.microsoft.appcenter.ingestion.models.StartServiceLog;
 import com.microsoft.appcenter.ingestion.models.WrapperSdk;
@@ -46,6 +52,7 @@ import static org.mockito.Matchers.isNull;
 import static org.mockito.Matchers.notNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -848,6 +855,27 @@ public class AppCenterTest extends AbstractAppCenterTest {
         verify(mChannel).setLogUrl(logUrl);
     }
 
+    @Test
+    public void setHttpClient() {
+
+        /* Set HTTP client before start. */
+        HttpClient httpClient = mock(HttpClient.class);
+        AppCenter.setHttpClient(httpClient);
+        try {
+            assertSame(httpClient, HttpUtils.getBaseHttpClient());
+
+            /* Changing it after start has no effect. */
+            AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+            AppCenter.setHttpClient(mock(HttpClient.class));
+            assertSame(httpClient, HttpUtils.getBaseHttpClient());
+            verifyStatic();
+            AppCenterLog.error(eq(LOG_TAG), anyString());
+        } finally {
+            HttpUtils.setBaseHttpClient(null);
+        }
+        assertTrue(HttpUtils.getBaseHttpClient() instanceof DefaultHttpClient);
+    }
+
     @Test
     public void getSdkVersionTest() {
         assertEquals(BuildConfig.VERSION_NAME, AppCenter.getSdkVersion());
@@ -1029,4 +1057,57 @@ public class AppCenterTest extends AbstractAppCenterTest {
             }
         }));
     }
+
+    @Test
+    public void registerComponentCallbacksOnlyIfImplemented() {
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class, MemoryAwareService.class);
+        verify(mApplication).registerComponentCallbacks(MemoryAwareService.getInstance());
+        verify(mApplication, never()).registerComponentCallbacks(argThat(new ArgumentMatcher<ComponentCallbacks>() {
+
+            @Override
+            public boolean matches(Object argument) {
+                return argument instanceof DummyService;
+            }
+        }));
+    }
+
+    static class MemoryAwareService extends AbstractAppCenterService implements ComponentCallbacks2 {
+
+        private static MemoryAwareService sharedInstance;
+
+        @SuppressWarnings("WeakerAccess")
+        public static MemoryAwareService getInstance() {
+            if (sharedInstance == null) {
+                sharedInstance = spy(new MemoryAwareService());
+            }
+            return sharedInstance;
+        }
+
+        @Override
+        protected String getGroupName() {
+            return "group_memory_aware";
+        }
+
+        @Override
+        public String getServiceName() {
+            return "MemoryAware";
+        }
+
+        @Override
+        protected String getLoggerTag() {
+            return "MemoryAwareLog";
+        }
+
+        @Override
+        public void onTrimMemory(int level) {
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+
+        @Override
+        public void onLowMemory() {
+        }
+    }
 }
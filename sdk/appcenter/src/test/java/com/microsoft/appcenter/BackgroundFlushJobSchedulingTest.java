@@ -0,0 +1,88 @@
+package com.microsoft.appcenter;
+
+import android.app.Activity;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.List;
+
+import static com.microsoft.appcenter.AppCenter.BACKGROUND_FLUSH_REQUIRES_CHARGING;
+import static com.microsoft.appcenter.AppCenter.BACKGROUND_FLUSH_REQUIRES_UNMETERED_NETWORK;
+import static com.microsoft.appcenter.BackgroundFlushScheduler.JOB_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Schedule jobs through the framework job scheduler shadow rather than a mock.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class BackgroundFlushJobSchedulingTest {
+
+    private JobScheduler mJobScheduler;
+
+    @Before
+    public void setUp() {
+        mJobScheduler = (JobScheduler) RuntimeEnvironment.application.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        mJobScheduler.cancelAll();
+        ShadowLooper.pauseMainLooper();
+    }
+
+    private BackgroundFlushScheduler newScheduler(int requirements) {
+        return new BackgroundFlushScheduler(RuntimeEnvironment.application, requirements, new Handler(Looper.getMainLooper()));
+    }
+
+    @Test
+    public void scheduleWhenLastActivityStops() {
+        BackgroundFlushScheduler scheduler = newScheduler(BACKGROUND_FLUSH_REQUIRES_UNMETERED_NETWORK | BACKGROUND_FLUSH_REQUIRES_CHARGING);
+        Activity firstActivity = mock(Activity.class);
+        Activity secondActivity = mock(Activity.class);
+        scheduler.onActivityStarted(firstActivity);
+        scheduler.onActivityStarted(secondActivity);
+        scheduler.onActivityStopped(firstActivity);
+        ShadowLooper.runUiThreadTasks();
+        assertTrue(mJobScheduler.getAllPendingJobs().isEmpty());
+
+        /* Application goes to background. */
+        scheduler.onActivityStopped(secondActivity);
+        assertTrue(mJobScheduler.getAllPendingJobs().isEmpty());
+        ShadowLooper.runUiThreadTasks();
+        List<JobInfo> jobs = mJobScheduler.getAllPendingJobs();
+        assertEquals(1, jobs.size());
+        JobInfo job = jobs.get(0);
+        assertEquals(JOB_ID, job.getId());
+        assertEquals(BackgroundFlushJobService.class.getName(), job.getService().getClassName());
+        assertEquals(JobInfo.NETWORK_TYPE_UNMETERED, job.getNetworkType());
+        assertTrue(job.isRequireCharging());
+        assertFalse(job.isRequireDeviceIdle());
+    }
+
+    @Test
+    public void replacePendingJob() {
+        BackgroundFlushScheduler scheduler = newScheduler(0);
+        Activity activity = mock(Activity.class);
+        for (int i = 0; i < 2; i++) {
+            scheduler.onActivityStarted(activity);
+            scheduler.onActivityStopped(activity);
+            ShadowLooper.runUiThreadTasks();
+        }
+        List<JobInfo> jobs = mJobScheduler.getAllPendingJobs();
+        assertEquals(1, jobs.size());
+        assertEquals(JobInfo.NETWORK_TYPE_ANY, jobs.get(0).getNetworkType());
+        assertFalse(jobs.get(0).isRequireCharging());
+    }
+}
@@ -0,0 +1,124 @@
+package com.microsoft.appcenter;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Handler;
+
+import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import static com.microsoft.appcenter.BackgroundFlushJobService.TIME_BUDGET;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@SuppressWarnings("unused")
+@PrepareForTest({AppCenter.class, AppCenterLog.class, HandlerUtils.class, JobService.class})
+public class BackgroundFlushJobServiceTest {
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    private AppCenter mAppCenter;
+
+    private Handler mHandler;
+
+    private JobParameters mParams;
+
+    private BackgroundFlushJobService mService;
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+        mockStatic(AppCenter.class);
+        mAppCenter = mock(AppCenter.class);
+        when(AppCenter.getInstance()).thenReturn(mAppCenter);
+        mockStatic(HandlerUtils.class);
+        mHandler = mock(Handler.class);
+        when(HandlerUtils.getMainHandler()).thenReturn(mHandler);
+        mParams = mock(JobParameters.class);
+        mService = spy(new BackgroundFlushJobService());
+        doNothing().when(mService).jobFinished(any(JobParameters.class), anyBoolean());
+    }
+
+    private Channel.FlushListener startJob() {
+        when(mAppCenter.flushInBackground(any(Channel.FlushListener.class))).thenReturn(true);
+        assertTrue(mService.onStartJob(mParams));
+        ArgumentCaptor<Channel.FlushListener> listener = ArgumentCaptor.forClass(Channel.FlushListener.class);
+        verify(mAppCenter).flushInBackground(listener.capture());
+        return listener.getValue();
+    }
+
+    private Runnable captureTimeout() {
+        ArgumentCaptor<Runnable> timeout = ArgumentCaptor.forClass(Runnable.class);
+        verify(mHandler).postDelayed(timeout.capture(), eq(TIME_BUDGET));
+        return timeout.getValue();
+    }
+
+    @Test
+    public void cannotFlush() {
+        assertFalse(mService.onStartJob(mParams));
+        verify(mHandler).removeCallbacks(captureTimeout());
+        verify(mService, never()).jobFinished(any(JobParameters.class), anyBoolean());
+    }
+
+    @Test
+    public void drained() {
+        Channel.FlushListener listener = startJob();
+        Runnable timeout = captureTimeout();
+        listener.onFlushCompleted(true);
+        verify(mService).jobFinished(mParams, false);
+        verify(mHandler).removeCallbacks(timeout);
+        verify(mAppCenter).stopFlushInBackground();
+
+        /* Finishing twice has no effect. */
+        timeout.run();
+        listener.onFlushCompleted(false);
+        verify(mService).jobFinished(any(JobParameters.class), anyBoolean());
+    }
+
+    @Test
+    public void rescheduleWhenLogsAreLeft() {
+        startJob().onFlushCompleted(false);
+        verify(mService).jobFinished(mParams, true);
+    }
+
+    @Test
+    public void rescheduleWhenTimeBudgetElapses() {
+        Channel.FlushListener listener = startJob();
+        captureTimeout().run();
+        verify(mService).jobFinished(mParams, true);
+        verify(mAppCenter).stopFlushInBackground();
+        listener.onFlushCompleted(true);
+        verify(mService, never()).jobFinished(mParams, false);
+    }
+
+    @Test
+    public void stoppedBySystem() {
+        assertTrue(mService.onStopJob(mParams));
+        Channel.FlushListener listener = startJob();
+        Runnable timeout = captureTimeout();
+        assertTrue(mService.onStopJob(mParams));
+        verify(mHandler).removeCallbacks(timeout);
+        verify(mAppCenter).stopFlushInBackground();
+        listener.onFlushCompleted(true);
+        verify(mService, never()).jobFinished(any(JobParameters.class), anyBoolean());
+    }
+}
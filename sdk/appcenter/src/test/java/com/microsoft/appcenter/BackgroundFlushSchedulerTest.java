@@ -0,0 +1,131 @@
+package com.microsoft.appcenter;
+
+import android.app.Activity;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Handler;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import static com.microsoft.appcenter.AppCenter.BACKGROUND_FLUSH_REQUIRES_CHARGING;
+import static com.microsoft.appcenter.AppCenter.BACKGROUND_FLUSH_REQUIRES_DEVICE_IDLE;
+import static com.microsoft.appcenter.AppCenter.BACKGROUND_FLUSH_REQUIRES_UNMETERED_NETWORK;
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+import static com.microsoft.appcenter.BackgroundFlushScheduler.JOB_ID;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyNew;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
+
+@SuppressWarnings("unused")
+@PrepareForTest({BackgroundFlushScheduler.class, AppCenterLog.class})
+public class BackgroundFlushSchedulerTest {
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    private Context mContext;
+
+    private JobScheduler mJobScheduler;
+
+    private JobInfo.Builder mBuilder;
+
+    private JobInfo mJobInfo;
+
+    private Handler mHandler;
+
+    @Before
+    public void setUp() throws Exception {
+        mockStatic(AppCenterLog.class);
+        mContext = mock(Context.class);
+        mJobScheduler = mock(JobScheduler.class);
+        when(mContext.getSystemService(Context.JOB_SCHEDULER_SERVICE)).thenReturn(mJobScheduler);
+        whenNew(ComponentName.class).withAnyArguments().thenReturn(mock(ComponentName.class));
+        mBuilder = mock(JobInfo.Builder.class);
+        whenNew(JobInfo.Builder.class).withAnyArguments().thenReturn(mBuilder);
+        when(mBuilder.setRequiredNetworkType(anyInt())).thenReturn(mBuilder);
+        when(mBuilder.setRequiresCharging(anyBoolean())).thenReturn(mBuilder);
+        when(mBuilder.setRequiresDeviceIdle(anyBoolean())).thenReturn(mBuilder);
+        mJobInfo = mock(JobInfo.class);
+        when(mBuilder.build()).thenReturn(mJobInfo);
+        when(mJobScheduler.schedule(mJobInfo)).thenReturn(JobScheduler.RESULT_SUCCESS);
+        mHandler = mock(Handler.class);
+        when(mHandler.post(any(Runnable.class))).then(new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return true;
+            }
+        });
+    }
+
+    @Test
+    public void scheduleWhenLastActivityStops() throws Exception {
+        BackgroundFlushScheduler scheduler = new BackgroundFlushScheduler(mContext, 0, mHandler);
+        scheduler.onActivityStarted(mock(Activity.class));
+        scheduler.onActivityStarted(mock(Activity.class));
+        scheduler.onActivityStopped(mock(Activity.class));
+        verify(mJobScheduler, never()).schedule(any(JobInfo.class));
+        scheduler.onActivityStopped(mock(Activity.class));
+        verify(mJobScheduler).schedule(mJobInfo);
+        verifyNew(JobInfo.Builder.class).withArguments(eq(JOB_ID), any(ComponentName.class));
+        verify(mBuilder).setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY);
+        verify(mBuilder).setRequiresCharging(false);
+        verify(mBuilder).setRequiresDeviceIdle(false);
+    }
+
+    @Test
+    public void scheduleWithRequirements() {
+        new BackgroundFlushScheduler(mContext, BACKGROUND_FLUSH_REQUIRES_UNMETERED_NETWORK | BACKGROUND_FLUSH_REQUIRES_CHARGING | BACKGROUND_FLUSH_REQUIRES_DEVICE_IDLE, mHandler).schedule();
+        verify(mBuilder).setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED);
+        verify(mBuilder).setRequiresCharging(true);
+        verify(mBuilder).setRequiresDeviceIdle(true);
+        verify(mJobScheduler).schedule(mJobInfo);
+    }
+
+    @Test
+    public void scheduleRejected() {
+        when(mJobScheduler.schedule(mJobInfo)).thenReturn(JobScheduler.RESULT_FAILURE);
+        new BackgroundFlushScheduler(mContext, 0, mHandler).schedule();
+        verifyStatic();
+        AppCenterLog.warn(eq(LOG_TAG), anyString());
+    }
+
+    @Test
+    public void scheduleFails() {
+        IllegalArgumentException exception = new IllegalArgumentException("No such service");
+        when(mJobScheduler.schedule(mJobInfo)).thenThrow(exception);
+        new BackgroundFlushScheduler(mContext, 0, mHandler).schedule();
+        verifyStatic();
+        AppCenterLog.error(eq(LOG_TAG), anyString(), eq(exception));
+    }
+
+    @Test
+    public void noJobScheduler() {
+        when(mContext.getSystemService(Context.JOB_SCHEDULER_SERVICE)).thenReturn(null);
+        new BackgroundFlushScheduler(mContext, 0, mHandler).schedule();
+        verify(mBuilder, never()).build();
+        verifyStatic();
+        AppCenterLog.warn(eq(LOG_TAG), anyString());
+    }
+}
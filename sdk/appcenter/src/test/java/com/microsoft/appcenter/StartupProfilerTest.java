@@ -0,0 +1,103 @@
+package com.microsoft.appcenter;
+
+import android.os.Build;
+import android.os.Debug;
+import android.os.Looper;
+import android.os.Trace;
+
+import com.microsoft.appcenter.test.TestUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+@SuppressWarnings("unused")
+@PrepareForTest({Trace.class, Debug.class, Looper.class})
+public class StartupProfilerTest {
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    @Before
+    public void setUp() throws Exception {
+        mockStatic(Trace.class);
+        mockStatic(Debug.class);
+        mockStatic(Looper.class);
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.JELLY_BEAN_MR2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", 0);
+    }
+
+    @Test
+    public void nestedPhases() {
+        Looper mainLooper = mock(Looper.class);
+        when(Looper.getMainLooper()).thenReturn(mainLooper);
+        when(Looper.myLooper()).thenReturn(mainLooper);
+        when(Debug.threadCpuTimeNanos()).thenReturn(1000L, 3000L, 7000L, 8000L);
+        StartupProfiler profiler = new StartupProfiler();
+        StartupProfiler.Section parent = profiler.begin("parent");
+        StartupProfiler.Section child = profiler.begin("child");
+
+        /* Phases in progress are not reported. */
+        assertTrue(profiler.getMetrics().getPhases().isEmpty());
+        child.end();
+        assertEquals(1, profiler.getMetrics().getPhases().size());
+        parent.end();
+
+        /* Parent is listed first. */
+        List<StartupMetrics.Phase> phases = profiler.getMetrics().getPhases();
+        assertEquals(2, phases.size());
+        StartupMetrics.Phase parentPhase = phases.get(0);
+        StartupMetrics.Phase childPhase = phases.get(1);
+        assertEquals("parent", parentPhase.getName());
+        assertEquals("child", childPhase.getName());
+        assertEquals(0, parentPhase.getStartOffsetNanos());
+        assertTrue(childPhase.getStartOffsetNanos() >= 0);
+        assertTrue(parentPhase.getWallTimeNanos() >= childPhase.getWallTimeNanos());
+        assertEquals(7000, parentPhase.getCpuTimeNanos());
+        assertEquals(4000, childPhase.getCpuTimeNanos());
+        assertTrue(parentPhase.isMainThread());
+        assertEquals(Thread.currentThread().getName(), parentPhase.getThreadName());
+
+        /* Trace sections are balanced. */
+        verifyStatic();
+        Trace.beginSection("parent");
+        verifyStatic();
+        Trace.beginSection("child");
+        verifyStatic(times(2));
+        Trace.endSection();
+    }
+
+    @Test
+    public void backgroundThreadWithoutTrace() throws Exception {
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.JELLY_BEAN_MR1);
+        when(Looper.getMainLooper()).thenReturn(mock(Looper.class));
+        when(Looper.myLooper()).thenReturn(mock(Looper.class));
+        StartupProfiler profiler = new StartupProfiler();
+        profiler.begin("phase").end();
+        StartupMetrics metrics = profiler.getMetrics();
+        assertFalse(metrics.getPhase("phase").isMainThread());
+        assertTrue(metrics.toString().contains("phase{"));
+        verifyStatic(never());
+        Trace.beginSection(anyString());
+    }
+}
@@ -0,0 +1,241 @@
+package com.microsoft.appcenter.channel;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import com.microsoft.appcenter.http.ServiceCall;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.Ingestion;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.LogWithProperties;
+import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.LogFactory;
+import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
+import com.microsoft.appcenter.persistence.DatabasePersistence;
+import com.microsoft.appcenter.utils.metrics.MetricsRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Soak test of the channel with real storage and a stand-in ingestion, on the JVM.
+ * <p>
+ * Skipped unless run with a duration, for example:
+ * {@code ./gradlew :sdk:appcenter:testDebugUnitTest --tests '*ChannelSoakTest' -PsoakDurationSeconds=600}.
+ * Time is simulated: a duration of 10 minutes enqueues 10 minutes worth of logs as fast as possible.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ChannelSoakTest {
+
+    private static final String DURATION_PROPERTY = "soakDurationSeconds";
+
+    private static final String MIN_THROUGHPUT_PROPERTY = "soakMinLogsPerSecond";
+
+    private static final String MAX_HEAP_GROWTH_PROPERTY = "soakMaxHeapGrowthBytes";
+
+    private static final String TEST_GROUP = "group_soak";
+
+    private static final String LOG_TYPE = "soak";
+
+    /**
+     * Simulated time between 2 rounds of enqueuing logs.
+     */
+    private static final long TICK = 100;
+
+    /**
+     * Simulated logs enqueued per second.
+     */
+    private static final int LOGS_PER_SECOND = 200;
+
+    /**
+     * Simulated ingestion response time.
+     */
+    private static final long INGESTION_LATENCY = 200;
+
+    private static final int PROPERTY_COUNT = 5;
+
+    private final Map<String, String> mProperties = new HashMap<>();
+
+    private DatabasePersistence mPersistence;
+
+    private DefaultChannel mChannel;
+
+    private long mDeliveredLogCount;
+
+    @Before
+    public void setUp() {
+        assumeTrue(System.getProperty(DURATION_PROPERTY) != null);
+        for (int i = 0; i < PROPERTY_COUNT; i++) {
+            mProperties.put("property" + i, "value" + i);
+        }
+        Context context = RuntimeEnvironment.application;
+        DefaultLogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(LOG_TYPE, new SoakLogFactory());
+        mPersistence = new DatabasePersistence(context);
+        mPersistence.setLogSerializer(logSerializer);
+        Handler handler = new Handler(Looper.getMainLooper());
+        mChannel = new DefaultChannel(context, UUID.randomUUID().toString(), mPersistence, new StandInIngestion(handler), handler);
+        mChannel.addListener(new DeliveryCounter());
+        mChannel.addGroup(TEST_GROUP, 50, 3000, 3, null, null);
+    }
+
+    @After
+    public void tearDown() {
+        if (mChannel != null) {
+            mChannel.shutdown();
+            mPersistence.close();
+        }
+        MetricsRegistry.unsetInstance();
+    }
+
+    private void advance(long millis) {
+        Robolectric.getForegroundThreadScheduler().advanceBy(millis, TimeUnit.MILLISECONDS);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            System.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    public void soak() {
+        long duration = TimeUnit.SECONDS.toMillis(Long.parseLong(System.getProperty(DURATION_PROPERTY)));
+        double minThroughput = Double.parseDouble(System.getProperty(MIN_THROUGHPUT_PROPERTY, "100"));
+        long maxHeapGrowth = Long.parseLong(System.getProperty(MAX_HEAP_GROWTH_PROPERTY, String.valueOf(16 * 1024 * 1024)));
+        int logsPerTick = (int) (LOGS_PER_SECOND * TICK / 1000);
+
+        /* Warm up for a tenth of the run before measuring heap usage. */
+        long warmUp = duration / 10;
+        long baselineHeap = 0;
+        long enqueuedLogCount = 0;
+        long startTime = System.nanoTime();
+        for (long time = 0; time < duration; time += TICK) {
+            if (time == warmUp - warmUp % TICK) {
+                baselineHeap = usedHeap();
+            }
+            for (int i = 0; i < logsPerTick; i++) {
+                SoakLog log = new SoakLog();
+                log.setTimestamp(new Date());
+                log.setProperties(mProperties);
+                mChannel.enqueue(log, TEST_GROUP);
+                enqueuedLogCount++;
+            }
+            advance(TICK);
+        }
+
+        /* Let pending batches be sent. */
+        for (int i = 0; i < 100 && mDeliveredLogCount < enqueuedLogCount; i++) {
+            advance(3000);
+        }
+        double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+        long heapGrowth = usedHeap() - baselineHeap;
+        double throughput = mDeliveredLogCount / elapsedSeconds;
+        assertEquals(enqueuedLogCount, mDeliveredLogCount);
+        assertEquals(0, mPersistence.countLogs(TEST_GROUP));
+        assertTrue("Throughput " + throughput + " logs/s is below " + minThroughput, throughput >= minThroughput);
+        assertTrue("Heap grew by " + heapGrowth + " bytes, more than " + maxHeapGrowth, heapGrowth <= maxHeapGrowth);
+    }
+
+    /**
+     * Count logs acknowledged by the stand-in ingestion.
+     */
+    private class DeliveryCounter extends AbstractChannelListener implements Channel.DeliveryListener {
+
+        @Override
+        public void onLogsDelivered(@NonNull String groupName, @NonNull DeliveryTrace trace) {
+            mDeliveredLogCount += trace.getLogCount();
+        }
+    }
+
+    /**
+     * Log type of the soak test.
+     */
+    private static class SoakLog extends LogWithProperties {
+
+        @Override
+        public String getType() {
+            return LOG_TYPE;
+        }
+    }
+
+    private static class SoakLogFactory implements LogFactory {
+
+        @Override
+        public Log create() {
+            return new SoakLog();
+        }
+
+        @Override
+        public Collection<CommonSchemaLog> toCommonSchemaLogs(Log log) {
+            return null;
+        }
+    }
+
+    /**
+     * Ingestion acknowledging every batch after a simulated latency.
+     */
+    private static class StandInIngestion implements Ingestion {
+
+        private final Handler mHandler;
+
+        StandInIngestion(Handler handler) {
+            mHandler = handler;
+        }
+
+        @Override
+        public ServiceCall sendAsync(String appSecret, UUID installId, LogContainer logContainer, final ServiceCallback serviceCallback) {
+            final Runnable acknowledgement = new Runnable() {
+
+                @Override
+                public void run() {
+                    serviceCallback.onCallSucceeded("");
+                }
+            };
+            mHandler.postDelayed(acknowledgement, INGESTION_LATENCY);
+            return new ServiceCall() {
+
+                @Override
+                public void cancel() {
+                    mHandler.removeCallbacks(acknowledgement);
+                }
+            };
+        }
+
+        @Override
+        public void setLogUrl(String logUrl) {
+        }
+
+        @Override
+        public void reopen() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.microsoft.appcenter.channel;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.microsoft.appcenter.http.HttpException;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.Ingestion;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.persistence.Persistence;
+import com.microsoft.appcenter.utils.UUIDUtils;
+import com.microsoft.appcenter.utils.metrics.MetricsRegistry;
+import com.microsoft.appcenter.utils.metrics.MetricsSnapshot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest(SystemClock.class)
+public class DefaultChannelDeliveryTraceTest extends AbstractDefaultChannelTest {
+
+    private static final String BATCH_ID = "batch";
+
+    private long mNow;
+
+    private Persistence mPersistence;
+
+    private Ingestion mIngestion;
+
+    private Channel.DeliveryListener mListener;
+
+    private DefaultChannel mChannel;
+
+    @Before
+    public void setUpChannel() throws Exception {
+        mockStatic(SystemClock.class);
+        when(SystemClock.elapsedRealtime()).thenAnswer(new Answer<Long>() {
+
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                return mNow;
+            }
+        });
+        mPersistence = mock(Persistence.class);
+        when(mPersistence.putLog(eq(TEST_GROUP), any(Log.class))).thenReturn(1L, 2L);
+        when(mPersistence.getLogs(anyString(), anyInt(), anyListOf(Log.class))).then(new Answer<String>() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public String answer(InvocationOnMock invocation) {
+                List<Log> logs = (List<Log>) invocation.getArguments()[2];
+                logs.add(mock(Log.class));
+                logs.add(mock(Log.class));
+                return BATCH_ID;
+            }
+        });
+        when(mPersistence.getLogIds(TEST_GROUP, BATCH_ID)).thenReturn(Arrays.asList(1L, 2L));
+        mIngestion = mock(Ingestion.class);
+        mListener = mock(Channel.DeliveryListener.class);
+        mChannel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), mPersistence, mIngestion, mAppCenterHandler);
+        mChannel.addListener(mListener);
+        mChannel.addGroup(TEST_GROUP, 2, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+    }
+
+    @After
+    public void tearDown() {
+        MetricsRegistry.unsetInstance();
+    }
+
+    /**
+     * Enqueue 2 logs at 100 and 150 milliseconds, the second one triggers sending the batch.
+     *
+     * @return callback of the batch.
+     */
+    private ServiceCallback enqueueBatch() {
+        mNow = 100;
+        mChannel.enqueue(mock(Log.class), TEST_GROUP);
+        mNow = 150;
+        mChannel.enqueue(mock(Log.class), TEST_GROUP);
+        ArgumentCaptor<ServiceCallback> callback = ArgumentCaptor.forClass(ServiceCallback.class);
+        verify(mIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), callback.capture());
+        return callback.getValue();
+    }
+
+    @Test
+    public void traceDeliveredLogs() {
+
+        /* Listeners without the optional callback are skipped. */
+        mChannel.addListener(mock(Channel.Listener.class));
+        ServiceCallback callback = enqueueBatch();
+        mNow = 400;
+        callback.onCallSucceeded("");
+
+        /* Check trace. */
+        ArgumentCaptor<DeliveryTrace> captor = ArgumentCaptor.forClass(DeliveryTrace.class);
+        verify(mListener).onLogsDelivered(eq(TEST_GROUP), captor.capture());
+        DeliveryTrace trace = captor.getValue();
+        assertEquals(2, trace.getLogCount());
+        assertEquals(100, trace.getEnqueueTime(0));
+        assertEquals(100, trace.getPersistTime(0));
+        assertEquals(150, trace.getEnqueueTime(1));
+        assertEquals(150, trace.getPickupTime());
+        assertEquals(150, trace.getSendTime());
+        assertEquals(400, trace.getAcknowledgementTime());
+        assertEquals(50, trace.getQueueDelay(0));
+        assertEquals(0, trace.getQueueDelay(1));
+        assertEquals(300, trace.getDeliveryLatency(0));
+        assertEquals(250, trace.getDeliveryLatency(1));
+
+        /* Check metrics. */
+        MetricsSnapshot snapshot = MetricsRegistry.getInstance().snapshot();
+        MetricsSnapshot.Distribution queueDelay = snapshot.getHistogram(MetricsSnapshot.getGroupMetricName(MetricsSnapshot.CHANNEL_QUEUE_DELAY_MILLIS, TEST_GROUP));
+        assertNotNull(queueDelay);
+        assertEquals(2, queueDelay.getCount());
+        assertEquals(50, queueDelay.getSum());
+        MetricsSnapshot.Distribution deliveryLatency = snapshot.getHistogram(MetricsSnapshot.getGroupMetricName(MetricsSnapshot.CHANNEL_DELIVERY_LATENCY_MILLIS, TEST_GROUP));
+        assertNotNull(deliveryLatency);
+        assertEquals(2, deliveryLatency.getCount());
+        assertEquals(550, deliveryLatency.getSum());
+    }
+
+    @Test
+    public void keepTracingAfterRecoverableFailure() {
+        ServiceCallback callback = enqueueBatch();
+        mNow = 200;
+        callback.onCallFailed(new HttpException(503));
+        verify(mListener, never()).onLogsDelivered(anyString(), any(DeliveryTrace.class));
+
+        /* Logs are read again from storage once enabled, and keep their original enqueue times. */
+        mNow = 1000;
+        mChannel.setEnabled(true);
+        ArgumentCaptor<ServiceCallback> captor = ArgumentCaptor.forClass(ServiceCallback.class);
+        verify(mIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), captor.capture());
+        mNow = 1100;
+        captor.getValue().onCallSucceeded("");
+        ArgumentCaptor<DeliveryTrace> trace = ArgumentCaptor.forClass(DeliveryTrace.class);
+        verify(mListener).onLogsDelivered(eq(TEST_GROUP), trace.capture());
+        assertEquals(1000, trace.getValue().getPickupTime());
+        assertEquals(900, trace.getValue().getQueueDelay(0));
+        assertEquals(1000, trace.getValue().getDeliveryLatency(0));
+        assertEquals(950, trace.getValue().getDeliveryLatency(1));
+    }
+
+    @Test
+    public void unknownLogTimes() {
+        when(mPersistence.getLogIds(TEST_GROUP, BATCH_ID)).thenReturn(null);
+        ServiceCallback callback = enqueueBatch();
+        mNow = 400;
+        callback.onCallSucceeded("");
+        ArgumentCaptor<DeliveryTrace> captor = ArgumentCaptor.forClass(DeliveryTrace.class);
+        verify(mListener).onLogsDelivered(eq(TEST_GROUP), captor.capture());
+        DeliveryTrace trace = captor.getValue();
+        assertEquals(DeliveryTrace.UNKNOWN, trace.getEnqueueTime(0));
+        assertEquals(DeliveryTrace.UNKNOWN, trace.getPersistTime(1));
+        assertEquals(DeliveryTrace.UNKNOWN, trace.getQueueDelay(0));
+        assertEquals(DeliveryTrace.UNKNOWN, trace.getDeliveryLatency(1));
+        assertEquals(400, trace.getAcknowledgementTime());
+    }
+
+    @Test
+    public void keepTracingAfterLogIdsChanged() throws Exception {
+        ArgumentCaptor<Persistence.LogIdsListener> logIdsListener = ArgumentCaptor.forClass(Persistence.LogIdsListener.class);
+        verify(mPersistence).setLogIdsListener(logIdsListener.capture());
+
+        /* Logs are moved before being read, batch is read with new identifiers. */
+        when(mPersistence.putLog(eq(TEST_GROUP), any(Log.class))).thenReturn(Long.MIN_VALUE, Long.MIN_VALUE + 1);
+        mNow = 100;
+        mChannel.enqueue(mock(Log.class), TEST_GROUP);
+        logIdsListener.getValue().onLogIdsChanged(Collections.singletonMap(Long.MIN_VALUE, 1L));
+        mNow = 150;
+        when(mPersistence.getLogIds(TEST_GROUP, BATCH_ID)).thenReturn(Arrays.asList(1L, Long.MIN_VALUE + 1));
+        mChannel.enqueue(mock(Log.class), TEST_GROUP);
+        ArgumentCaptor<ServiceCallback> callback = ArgumentCaptor.forClass(ServiceCallback.class);
+        verify(mIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), callback.capture());
+
+        /* Logs of the batch being sent are moved too. */
+        logIdsListener.getValue().onLogIdsChanged(Collections.singletonMap(Long.MIN_VALUE + 1, 2L));
+        mNow = 200;
+        callback.getValue().onCallFailed(new HttpException(503));
+        mNow = 1000;
+        when(mPersistence.getLogIds(TEST_GROUP, BATCH_ID)).thenReturn(Arrays.asList(1L, 2L));
+        mChannel.setEnabled(true);
+        verify(mIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), callback.capture());
+        callback.getValue().onCallSucceeded("");
+        ArgumentCaptor<DeliveryTrace> trace = ArgumentCaptor.forClass(DeliveryTrace.class);
+        verify(mListener).onLogsDelivered(eq(TEST_GROUP), trace.capture());
+        assertEquals(100, trace.getValue().getEnqueueTime(0));
+        assertEquals(150, trace.getValue().getEnqueueTime(1));
+    }
+}
@@ -0,0 +1,135 @@
+package com.microsoft.appcenter.channel;
+
+import android.content.Context;
+
+import com.microsoft.appcenter.http.HttpException;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.Ingestion;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.persistence.Persistence;
+import com.microsoft.appcenter.utils.UUIDUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.UUID;
+
+import static com.microsoft.appcenter.channel.Channel.UPLOAD_WHILE_CHARGING;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
+
+public class DefaultChannelFlushTest extends AbstractDefaultChannelTest {
+
+    private Persistence mPersistence;
+
+    private Ingestion mIngestion;
+
+    private Channel.FlushListener mFlushListener;
+
+    @Before
+    public void setUpFlush() {
+        mPersistence = mock(Persistence.class);
+        when(mPersistence.getLogs(anyString(), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        mIngestion = mock(Ingestion.class);
+        mFlushListener = mock(Channel.FlushListener.class);
+    }
+
+    @Test
+    public void flushWithoutWaitingForTimer() {
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), mPersistence, mIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP);
+        channel.enqueue(mock(Log.class), TEST_GROUP);
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
+
+        /* Pending logs are sent at once and the timer is canceled. */
+        channel.flush(mFlushListener);
+        verify(mAppCenterHandler).removeCallbacks(any(Runnable.class));
+        ArgumentCaptor<LogContainer> logContainer = ArgumentCaptor.forClass(LogContainer.class);
+        ArgumentCaptor<ServiceCallback> callback = ArgumentCaptor.forClass(ServiceCallback.class);
+        verify(mIngestion).sendAsync(anyString(), any(UUID.class), logContainer.capture(), callback.capture());
+        assertEquals(2, logContainer.getValue().getLogs().size());
+        verify(mFlushListener, never()).onFlushCompleted(anyBoolean());
+
+        /* Listener is called once the batch is sent. */
+        callback.getValue().onCallSucceeded("");
+        verify(mFlushListener).onFlushCompleted(true);
+    }
+
+    @Test
+    public void flushWhenNothingToSend() {
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), mPersistence, mIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.flush(mFlushListener);
+        verify(mFlushListener).onFlushCompleted(true);
+        verify(mIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void flushWithoutAppSecret() {
+        when(mPersistence.countLogs(TEST_GROUP)).thenReturn(3);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), null, mPersistence, mIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.flush(mFlushListener);
+        verify(mFlushListener).onFlushCompleted(true);
+        verify(mIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void flushWhileDisabled() {
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), mPersistence, mIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.setEnabled(false);
+        channel.flush(mFlushListener);
+        verify(mFlushListener).onFlushCompleted(false);
+    }
+
+    @Test
+    public void flushFailure() {
+        when(mPersistence.countLogs(TEST_GROUP)).thenReturn(3);
+        when(mIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer(new HttpException(503)));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), mPersistence, mIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Channel is suspended and logs are kept. */
+        channel.flush(mFlushListener);
+        verify(mFlushListener).onFlushCompleted(false);
+        verify(mPersistence, never()).deleteLogs(anyString(), anyString());
+    }
+
+    @Test
+    public void flushKeepsDeferredLogs() throws Exception {
+        UploadConditionsMonitor monitor = mock(UploadConditionsMonitor.class);
+        whenNew(UploadConditionsMonitor.class).withAnyArguments().thenReturn(monitor);
+        when(mPersistence.countLogs(TEST_GROUP)).thenReturn(3);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), mPersistence, mIngestion, mAppCenterHandler);
+        channel.setUploadConditions(TEST_GROUP, UPLOAD_WHILE_CHARGING);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.flush(mFlushListener);
+        verify(mFlushListener).onFlushCompleted(true);
+        verify(mIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void removeGroupCompletesFlush() {
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), mPersistence, mIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP);
+        channel.flush(mFlushListener);
+        verify(mFlushListener, never()).onFlushCompleted(anyBoolean());
+        channel.removeGroup(TEST_GROUP);
+        verify(mFlushListener).onFlushCompleted(true);
+    }
+}
@@ -91,12 +91,18 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
                 .then(getGetLogsAnswer(1));
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
         channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
+        Channel.Listener listener = mock(Channel.Listener.class);
+        channel.addListener(listener);
+        Channel.ShutdownListener shutdownListener = mock(Channel.ShutdownListener.class);
+        channel.addListener(shutdownListener);
 
         /* Enqueuing 1 event. */
         channel.enqueue(mock(Log.class), TEST_GROUP);
         verify(mockListener).onBeforeSending(notNull(Log.class));
 
+        /* Only listeners implementing the optional interface are notified. */
         channel.shutdown();
+        verify(shutdownListener).onShutdown();
         verify(mockListener, never()).onFailure(any(Log.class), any(Exception.class));
         verify(mockPersistence).clearPendingLogState();
     }
@@ -0,0 +1,106 @@
+package com.microsoft.appcenter.channel;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.Ingestion;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.persistence.Persistence;
+import com.microsoft.appcenter.utils.UUIDUtils;
+import com.microsoft.appcenter.utils.metrics.MetricsRegistry;
+import com.microsoft.appcenter.utils.metrics.MetricsSnapshot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest(SystemClock.class)
+public class DefaultChannelTrimMemoryTest extends AbstractDefaultChannelTest {
+
+    private long mNow;
+
+    private Persistence mPersistence;
+
+    private Ingestion mIngestion;
+
+    private DefaultChannel mChannel;
+
+    @Before
+    public void setUpChannel() {
+        mockStatic(SystemClock.class);
+        when(SystemClock.elapsedRealtime()).thenAnswer(new Answer<Long>() {
+
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                return mNow;
+            }
+        });
+        mPersistence = mock(Persistence.class);
+        when(mPersistence.getLogs(anyString(), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer(1));
+
+        /* Ingestion never answers, batches stay in flight. */
+        mIngestion = mock(Ingestion.class);
+        mChannel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), mPersistence, mIngestion, mAppCenterHandler);
+        mChannel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+    }
+
+    @After
+    public void tearDown() {
+        MetricsRegistry.unsetInstance();
+    }
+
+    private void enqueueLogs(int count) {
+        for (int i = 0; i < count; i++) {
+            mChannel.enqueue(mock(Log.class), TEST_GROUP);
+        }
+    }
+
+    @Test
+    public void sendOneBatchAtATimeUnderMemoryPressure() {
+        mNow = 1000;
+        mChannel.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        verify(mPersistence).trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(1, MetricsRegistry.getInstance().snapshot().getCounter(MetricsSnapshot.MEMORY_TRIMS));
+
+        /* Only one batch is sent while under memory pressure. */
+        enqueueLogs(MAX_PARALLEL_BATCHES);
+        verify(mIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* Parallel batches are allowed again once memory pressure is over. */
+        mNow += DefaultChannel.MEMORY_PRESSURE_DURATION;
+        enqueueLogs(1);
+        verify(mIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void ignoreModerateTrimLevel() {
+        mNow = 1000;
+        mChannel.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        verify(mPersistence, never()).trimMemory(anyInt());
+        assertEquals(0, MetricsRegistry.getInstance().snapshot().getCounter(MetricsSnapshot.MEMORY_TRIMS));
+
+        /* Parallel batches are still allowed. */
+        enqueueLogs(MAX_PARALLEL_BATCHES);
+        verify(mIngestion, times(MAX_PARALLEL_BATCHES)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+}
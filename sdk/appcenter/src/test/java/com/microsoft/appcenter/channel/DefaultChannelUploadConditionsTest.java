@@ -0,0 +1,178 @@
+package com.microsoft.appcenter.channel;
+
+import android.content.Context;
+
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.Ingestion;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.persistence.Persistence;
+import com.microsoft.appcenter.utils.UUIDUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.microsoft.appcenter.channel.Channel.UPLOAD_ANY_TIME;
+import static com.microsoft.appcenter.channel.Channel.UPLOAD_IN_BACKGROUND;
+import static com.microsoft.appcenter.channel.Channel.UPLOAD_ON_UNMETERED_NETWORK;
+import static com.microsoft.appcenter.channel.Channel.UPLOAD_WHILE_CHARGING;
+import static com.microsoft.appcenter.channel.OneCollectorChannelListener.ONE_COLLECTOR_GROUP_NAME_SUFFIX;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.verifyNew;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
+
+public class DefaultChannelUploadConditionsTest extends AbstractDefaultChannelTest {
+
+    private UploadConditionsMonitor mMonitor;
+
+    private AtomicReference<UploadConditionsMonitor.Listener> mMonitorListener;
+
+    private Persistence mPersistence;
+
+    private Ingestion mIngestion;
+
+    private DefaultChannel mChannel;
+
+    @Before
+    public void setUpMonitor() throws Exception {
+        mMonitor = mock(UploadConditionsMonitor.class);
+        mMonitorListener = new AtomicReference<>();
+        whenNew(UploadConditionsMonitor.class).withAnyArguments().thenAnswer(new Answer<UploadConditionsMonitor>() {
+
+            @Override
+            public UploadConditionsMonitor answer(InvocationOnMock invocation) {
+                mMonitorListener.set((UploadConditionsMonitor.Listener) invocation.getArguments()[1]);
+                return mMonitor;
+            }
+        });
+        mPersistence = mock(Persistence.class);
+        when(mPersistence.getLogs(anyString(), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        mIngestion = mock(Ingestion.class);
+        mChannel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), mPersistence, mIngestion, mAppCenterHandler);
+    }
+
+    @Test
+    public void noMonitorWithoutConditions() throws Exception {
+        mChannel.setUploadConditions(TEST_GROUP, UPLOAD_ANY_TIME);
+        mChannel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        mChannel.enqueue(mock(Log.class), TEST_GROUP);
+        verify(mIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verifyNew(UploadConditionsMonitor.class, never()).withArguments(any(Context.class), any(UploadConditionsMonitor.Listener.class));
+    }
+
+    @Test
+    public void deferUntilConditionsMet() throws Exception {
+        mChannel.setUploadConditions(TEST_GROUP, UPLOAD_ON_UNMETERED_NETWORK | UPLOAD_IN_BACKGROUND);
+        mChannel.setUploadConditions(TEST_GROUP + "2", UPLOAD_IN_BACKGROUND);
+        mChannel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        mChannel.addGroup(TEST_GROUP + "2", 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        verifyNew(UploadConditionsMonitor.class).withArguments(any(Context.class), any(UploadConditionsMonitor.Listener.class));
+
+        /* Log is persisted but not sent. */
+        Log log = mock(Log.class);
+        mChannel.enqueue(log, TEST_GROUP);
+        verify(mPersistence).putLog(TEST_GROUP, log);
+        verify(mMonitor).areConditionsMet(UPLOAD_ON_UNMETERED_NETWORK | UPLOAD_IN_BACKGROUND);
+        verify(mIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mAppCenterHandler, never()).postDelayed(any(Runnable.class), anyLong());
+
+        /* Log is sent when a condition is met, other group has nothing to send. */
+        when(mMonitor.areConditionsMet(anyInt())).thenReturn(true);
+        mMonitorListener.get().onUploadConditionsUpdated();
+        verify(mIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mPersistence, never()).getLogs(eq(TEST_GROUP + "2"), anyInt(), anyListOf(Log.class));
+    }
+
+    @Test
+    public void ignoreConditionsWhenDisabled() throws Exception {
+        mChannel.setUploadConditions(TEST_GROUP, UPLOAD_WHILE_CHARGING);
+        mChannel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        mChannel.setEnabled(false);
+        when(mMonitor.areConditionsMet(anyInt())).thenReturn(true);
+        mMonitorListener.get().onUploadConditionsUpdated();
+        verify(mPersistence, never()).getLogs(anyString(), anyInt(), anyListOf(Log.class));
+        verify(mIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void resumeWhenConditionMet() throws Exception {
+        mChannel.setUploadConditions(TEST_GROUP, UPLOAD_ON_UNMETERED_NETWORK);
+        mChannel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        mChannel.enqueue(mock(Log.class), TEST_GROUP);
+        verify(mIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        when(mMonitor.areConditionsMet(UPLOAD_ON_UNMETERED_NETWORK)).thenReturn(true);
+        mMonitorListener.get().onUploadConditionsUpdated();
+        verify(mIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void checkConditionsAgainWhenTimerExpires() throws Exception {
+        when(mMonitor.areConditionsMet(UPLOAD_ON_UNMETERED_NETWORK)).thenReturn(true);
+        mChannel.setUploadConditions(TEST_GROUP, UPLOAD_ON_UNMETERED_NETWORK);
+        mChannel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        mChannel.enqueue(mock(Log.class), TEST_GROUP);
+        ArgumentCaptor<Runnable> timer = ArgumentCaptor.forClass(Runnable.class);
+        verify(mAppCenterHandler).postDelayed(timer.capture(), eq(BATCH_TIME_INTERVAL));
+
+        /* Network became metered while waiting. */
+        when(mMonitor.areConditionsMet(UPLOAD_ON_UNMETERED_NETWORK)).thenReturn(false);
+        timer.getValue().run();
+        verify(mIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* Enqueuing while deferred does not schedule the timer again. */
+        mChannel.enqueue(mock(Log.class), TEST_GROUP);
+        verify(mAppCenterHandler, times(1)).postDelayed(any(Runnable.class), anyLong());
+    }
+
+    @Test
+    public void oneCollectorGroupInheritsConditions() throws Exception {
+        mChannel.setUploadConditions(TEST_GROUP, UPLOAD_WHILE_CHARGING);
+        mChannel.addGroup(TEST_GROUP + ONE_COLLECTOR_GROUP_NAME_SUFFIX, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        mChannel.enqueue(mock(Log.class), TEST_GROUP + ONE_COLLECTOR_GROUP_NAME_SUFFIX);
+        verify(mMonitor).areConditionsMet(UPLOAD_WHILE_CHARGING);
+        verify(mIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* Changing the conditions of the parent group applies to the derived group. */
+        mChannel.setUploadConditions(TEST_GROUP, UPLOAD_ANY_TIME);
+        verify(mIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void changeConditionsOfAddedGroup() throws Exception {
+        mChannel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        mChannel.setUploadConditions(TEST_GROUP, UPLOAD_IN_BACKGROUND);
+        verifyNew(UploadConditionsMonitor.class).withArguments(any(Context.class), any(UploadConditionsMonitor.Listener.class));
+        mChannel.enqueue(mock(Log.class), TEST_GROUP);
+        verify(mPersistence, never()).getLogs(anyString(), anyInt(), anyListOf(Log.class));
+
+        /* Conditions are kept if the group is added again with pending logs. */
+        mChannel.removeGroup(TEST_GROUP);
+        when(mPersistence.countLogs(TEST_GROUP)).thenReturn(1);
+        mChannel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        verify(mIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void closeMonitorOnShutdown() throws Exception {
+        mChannel.setUploadConditions(TEST_GROUP, UPLOAD_WHILE_CHARGING);
+        mChannel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        mChannel.shutdown();
+        verify(mMonitor).close();
+    }
+}
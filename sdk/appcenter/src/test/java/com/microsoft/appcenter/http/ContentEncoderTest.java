@@ -0,0 +1,100 @@
+package com.microsoft.appcenter.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Encoded payloads are decoded the way the server does to check they can be read back.
+ */
+@SuppressWarnings("unused")
+public class ContentEncoderTest {
+
+    private static final String SMALL_PAYLOAD = "{\"logs\":[{\"type\":\"event\",\"timestamp\":\"2018-01-01T00:00:00.000Z\",\"sid\":\"a2a9d4e0-4f6d-4b2e-8cd0-8e4b1cb7b2ab\","
+            + "\"device\":{\"sdkName\":\"appcenter.android\",\"sdkVersion\":\"1.0.0\",\"model\":\"Pixel\",\"oemName\":\"Google\",\"osName\":\"Android\","
+            + "\"osVersion\":\"8.0\",\"osApiLevel\":26,\"locale\":\"en_US\",\"timeZoneOffset\":60,\"appVersion\":\"1.0\",\"appBuild\":\"1\","
+            + "\"appNamespace\":\"com.contoso\"},\"id\":\"4bdf4a6b-45e8-4c0b-a5f5-0d8bd1dc1e25\",\"name\":\"click\"}]}";
+
+    private static byte[] gunzip(byte[] payload) throws IOException {
+        InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(payload));
+        return readAll(inputStream);
+    }
+
+    private static byte[] inflate(byte[] payload, byte[] dictionary) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(payload);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        while (!inflater.finished()) {
+            int length = inflater.inflate(buffer);
+            if (length == 0 && inflater.needsDictionary()) {
+                inflater.setDictionary(dictionary);
+            }
+            output.write(buffer, 0, length);
+        }
+        inflater.end();
+        return output.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int length;
+        while ((length = inputStream.read(buffer)) != -1) {
+            output.write(buffer, 0, length);
+        }
+        inputStream.close();
+        return output.toByteArray();
+    }
+
+    @Test
+    public void gzipLevels() throws Exception {
+        byte[] payload = SMALL_PAYLOAD.getBytes("UTF-8");
+        for (int level = Deflater.BEST_SPEED; level <= Deflater.BEST_COMPRESSION; level++) {
+            GzipEncoder encoder = new GzipEncoder(level);
+            assertEquals("gzip", encoder.getContentEncoding());
+            assertEquals(level, encoder.getLevel());
+            assertArrayEquals(payload, gunzip(encoder.encode(payload)));
+        }
+    }
+
+    @Test
+    public void dictionaryDeflate() throws Exception {
+        byte[] payload = SMALL_PAYLOAD.getBytes("UTF-8");
+        DictionaryDeflateEncoder encoder = new DictionaryDeflateEncoder();
+        assertEquals("x-appcenter-deflate-dict", encoder.getContentEncoding());
+        assertEquals(DictionaryDeflateEncoder.getDictionaryId(DictionaryDeflateEncoder.getDefaultDictionary()), encoder.getDictionaryId());
+        byte[] encoded = encoder.encode(payload);
+        assertArrayEquals(payload, inflate(encoded, DictionaryDeflateEncoder.getDefaultDictionary()));
+
+        /* Dictionary makes small payloads smaller than gzip does. */
+        assertTrue(encoded.length < new GzipEncoder(Deflater.BEST_COMPRESSION).encode(payload).length);
+    }
+
+    @Test
+    public void customDictionary() throws Exception {
+        byte[] payload = "hello world hello".getBytes("UTF-8");
+        byte[] dictionary = "hello world".getBytes("UTF-8");
+        DictionaryDeflateEncoder encoder = new DictionaryDeflateEncoder(dictionary, Deflater.BEST_COMPRESSION);
+        byte[] encoded = encoder.encode(payload);
+        assertArrayEquals(payload, inflate(encoded, dictionary));
+
+        /* Identifier is the Adler-32 checksum of the dictionary. */
+        Adler32 checksum = new Adler32();
+        checksum.update(dictionary);
+        assertEquals(Long.parseLong(encoder.getDictionaryId(), 16), checksum.getValue());
+        assertEquals(8, encoder.getDictionaryId().length());
+    }
+}
@@ -0,0 +1,95 @@
+package com.microsoft.appcenter.http;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.zip.Deflater;
+
+import static com.microsoft.appcenter.http.DefaultContentEncodingPolicy.DEFAULT_LEVEL;
+import static com.microsoft.appcenter.http.DefaultContentEncodingPolicy.LARGE_PAYLOAD_LENGTH;
+import static com.microsoft.appcenter.http.DefaultContentEncodingPolicy.MIN_GZIP_LENGTH;
+import static com.microsoft.appcenter.http.DefaultContentEncodingPolicy.MIN_SMALL_PAYLOAD_LENGTH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+@SuppressWarnings("unused")
+public class DefaultContentEncodingPolicyTest {
+
+    private DefaultContentEncodingPolicy mPolicy;
+
+    @Before
+    public void setUp() {
+        mPolicy = new DefaultContentEncodingPolicy();
+    }
+
+    private int selectLevel(int payloadLength) {
+        return ((GzipEncoder) mPolicy.selectEncoder(payloadLength)).getLevel();
+    }
+
+    @Test
+    public void levelBySize() {
+        assertNull(mPolicy.selectEncoder(0));
+        assertNull(mPolicy.selectEncoder(MIN_GZIP_LENGTH - 1));
+        assertEquals(DEFAULT_LEVEL, selectLevel(MIN_GZIP_LENGTH));
+        assertEquals(DEFAULT_LEVEL, selectLevel(LARGE_PAYLOAD_LENGTH - 1));
+        assertEquals(Deflater.BEST_SPEED, selectLevel(LARGE_PAYLOAD_LENGTH));
+
+        /* Encoders are reused. */
+        assertSame(mPolicy.selectEncoder(MIN_GZIP_LENGTH), mPolicy.selectEncoder(MIN_GZIP_LENGTH));
+    }
+
+    @Test
+    public void smallPayloadEncoder() {
+        ContentEncoder encoder = mock(ContentEncoder.class);
+        mPolicy.setSmallPayloadEncoder(encoder);
+        assertNull(mPolicy.selectEncoder(MIN_SMALL_PAYLOAD_LENGTH - 1));
+        assertSame(encoder, mPolicy.selectEncoder(MIN_SMALL_PAYLOAD_LENGTH));
+        assertSame(encoder, mPolicy.selectEncoder(MIN_GZIP_LENGTH - 1));
+        assertEquals(DEFAULT_LEVEL, selectLevel(MIN_GZIP_LENGTH));
+        mPolicy.setSmallPayloadEncoder(null);
+        assertNull(mPolicy.selectEncoder(MIN_SMALL_PAYLOAD_LENGTH));
+    }
+
+    @Test
+    public void adaptLevelToCpuBudget() {
+
+        /* Without budget, level does not change. */
+        mPolicy.onPayloadEncoded("gzip", 2048, 100, Long.MAX_VALUE / 2048);
+        assertEquals(DEFAULT_LEVEL, mPolicy.getLevel());
+
+        /* Over budget: 2000ns per KB for a 1000ns budget, lower level down to fastest. */
+        mPolicy.setCpuBudget(1000);
+        for (int level = DEFAULT_LEVEL - 1; level >= Deflater.BEST_SPEED; level--) {
+            mPolicy.onPayloadEncoded("gzip", 2048, 100, 4000);
+            assertEquals(level, mPolicy.getLevel());
+            assertEquals(level, selectLevel(MIN_GZIP_LENGTH));
+        }
+        mPolicy.onPayloadEncoded("gzip", 2048, 100, 4000);
+        assertEquals(Deflater.BEST_SPEED, mPolicy.getLevel());
+
+        /* Within budget but not far below it, level is kept. */
+        mPolicy.onPayloadEncoded("gzip", 2048, 100, 1500);
+        assertEquals(Deflater.BEST_SPEED, mPolicy.getLevel());
+
+        /* Other encodings and sizes are ignored. */
+        mPolicy.onPayloadEncoded(null, 2048, 2048, 0);
+        mPolicy.onPayloadEncoded(DictionaryDeflateEncoder.CONTENT_ENCODING, 512, 100, 0);
+        mPolicy.onPayloadEncoded("gzip", LARGE_PAYLOAD_LENGTH, 100, 0);
+        assertEquals(Deflater.BEST_SPEED, mPolicy.getLevel());
+
+        /* Far below budget, raise level up to default. */
+        for (int level = Deflater.BEST_SPEED + 1; level <= DEFAULT_LEVEL; level++) {
+            mPolicy.onPayloadEncoded("gzip", 2048, 100, 0);
+            assertEquals(level, mPolicy.getLevel());
+        }
+        mPolicy.onPayloadEncoded("gzip", 2048, 100, 0);
+        assertEquals(DEFAULT_LEVEL, mPolicy.getLevel());
+
+        /* Removing budget restores default level. */
+        mPolicy.onPayloadEncoded("gzip", 2048, 100, 4000);
+        mPolicy.setCpuBudget(0);
+        assertEquals(DEFAULT_LEVEL, mPolicy.getLevel());
+    }
+}
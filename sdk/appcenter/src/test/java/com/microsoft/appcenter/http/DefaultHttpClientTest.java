@@ -14,17 +14,19 @@ import org.json.JSONObject;
 import org.junit.After;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
+import org.powermock.reflect.Whitebox;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
@@ -39,6 +41,7 @@ import javax.net.ssl.SSLSocketFactory;
 
 import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_GET;
 import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
+import static com.microsoft.appcenter.http.DefaultHttpClient.RETRY_AFTER_KEY;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -72,6 +75,7 @@ public class DefaultHttpClientTest {
     @After
     public void tearDown() throws Exception {
         TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", 0);
+        TestUtils.setInternalState(DefaultHttpClient.class, "sSocketFactory", null);
     }
 
     /**
@@ -123,12 +127,13 @@ public class DefaultHttpClientTest {
         when(url.openConnection()).thenReturn(urlConnection);
         DefaultHttpClient httpClient = new DefaultHttpClient();
         TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", apiLevel);
+        TestUtils.setInternalState(DefaultHttpClient.class, "sSocketFactory", null);
         httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), null, mock(ServiceCallback.class));
         verify(urlConnection, times(tlsSetExpectedCalls)).setSSLSocketFactory(argThat(new ArgumentMatcher<SSLSocketFactory>() {
 
             @Override
             public boolean matches(Object argument) {
-                return argument instanceof TLS1_2SocketFactory;
+                return argument instanceof KeepAliveSocketFactory && ((KeepAliveSocketFactory) argument).getDelegate() instanceof TLS1_2SocketFactory;
             }
         }));
     }
@@ -180,7 +185,7 @@ public class DefaultHttpClientTest {
         verify(urlConnection).setRequestProperty("Install-ID", installId.toString());
         verify(urlConnection).setRequestMethod("POST");
         verify(urlConnection).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         verify(callTemplate).onBeforeCalling(eq(url), anyMapOf(String.class, String.class));
         verify(callTemplate).buildRequestBody();
         httpClient.close();
@@ -234,7 +239,7 @@ public class DefaultHttpClientTest {
         verify(urlConnection).setRequestProperty("Install-ID", installId.toString());
         verify(urlConnection).setRequestMethod("POST");
         verify(urlConnection, never()).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         httpClient.close();
 
         /* Verify payload. */
@@ -278,7 +283,7 @@ public class DefaultHttpClientTest {
         verify(urlConnection).setRequestProperty("Install-ID", installId.toString());
         verify(urlConnection).setRequestMethod("GET");
         verify(urlConnection, never()).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         verify(inputStream).close();
         verify(callTemplate).onBeforeCalling(eq(url), anyMapOf(String.class, String.class));
         verify(callTemplate, never()).buildRequestBody();
@@ -321,6 +326,29 @@ public class DefaultHttpClientTest {
         httpClient.close();
     }
 
+    @Test
+    public void plainHttpConnection() throws Exception {
+
+        /* Configure mock HTTP, test servers don't use TLS. */
+        String urlString = "http://127.0.0.1:8080/get";
+        URL url = mock(URL.class);
+        whenNew(URL.class).withArguments(urlString).thenReturn(url);
+        HttpURLConnection urlConnection = mock(HttpURLConnection.class);
+        when(url.openConnection()).thenReturn(urlConnection);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+
+        /* Test calling code. */
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_GET, new HashMap<String, String>(), null, serviceCallback);
+        verify(serviceCallback).onCallSucceeded("OK");
+        verifyNoMoreInteractions(serviceCallback);
+        assertEquals(1, DefaultHttpClient.getSocketFactory().getCallCount());
+        httpClient.close();
+    }
+
     @Test
     public void get100() throws Exception {
 
@@ -344,7 +372,7 @@ public class DefaultHttpClientTest {
         httpClient.callAsync("", METHOD_POST, headers, null, serviceCallback);
         verify(serviceCallback).onCallFailed(new HttpException(100, "Continue"));
         verifyNoMoreInteractions(serviceCallback);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
     }
 
     @Test
@@ -381,7 +409,7 @@ public class DefaultHttpClientTest {
         verify(urlConnection).setRequestProperty("Install-ID", installId.toString());
         verify(urlConnection).setRequestMethod("GET");
         verify(urlConnection, never()).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         httpClient.close();
     }
 
@@ -417,7 +445,7 @@ public class DefaultHttpClientTest {
         verifyNoMoreInteractions(serviceCallback);
         verify(urlConnection).setRequestMethod("GET");
         verify(urlConnection, never()).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         verify(inputStream).close();
         verify(callTemplate).onBeforeCalling(eq(url), anyMapOf(String.class, String.class));
         verify(callTemplate, never()).buildRequestBody();
@@ -477,7 +505,7 @@ public class DefaultHttpClientTest {
         verifyNoMoreInteractions(serviceCallback);
         verify(urlConnection).setRequestMethod("GET");
         verify(urlConnection, never()).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         verify(inputStream).close();
         verify(callTemplate).onBeforeCalling(eq(url), anyMapOf(String.class, String.class));
         verify(callTemplate, never()).buildRequestBody();
@@ -507,6 +535,7 @@ public class DefaultHttpClientTest {
         ByteArrayOutputStream buffer = new ByteArrayOutputStream();
         when(urlConnection.getOutputStream()).thenReturn(buffer);
         when(urlConnection.getErrorStream()).thenReturn(new ByteArrayInputStream("Busy".getBytes()));
+        when(urlConnection.getHeaderField(RETRY_AFTER_KEY)).thenReturn("30");
 
         /* Configure API client. */
         HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
@@ -522,9 +551,12 @@ public class DefaultHttpClientTest {
         ServiceCallback serviceCallback = mock(ServiceCallback.class);
         mockCall();
         httpClient.callAsync("", METHOD_POST, headers, callTemplate, serviceCallback);
-        verify(serviceCallback).onCallFailed(new HttpException(503, "Busy"));
+        ArgumentCaptor<Exception> exception = ArgumentCaptor.forClass(Exception.class);
+        verify(serviceCallback).onCallFailed(exception.capture());
+        assertEquals(new HttpException(503, "Busy"), exception.getValue());
+        assertEquals("30", ((HttpException) exception.getValue()).getHeaders().get(RETRY_AFTER_KEY));
         verifyNoMoreInteractions(serviceCallback);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
 
         /* Verify socket tagged to avoid strict mode error. */
         verifyStatic();
@@ -533,6 +565,61 @@ public class DefaultHttpClientTest {
         TrafficStats.clearThreadStatsTag();
     }
 
+    @Test
+    public void errorWithoutBody() throws Exception {
+
+        /* Configure mock HTTP, there is no error stream. */
+        URL url = mock(URL.class);
+        whenNew(URL.class).withAnyArguments().thenReturn(url);
+        HttpsURLConnection urlConnection = mock(HttpsURLConnection.class);
+        when(url.openConnection()).thenReturn(urlConnection);
+        when(urlConnection.getResponseCode()).thenReturn(404);
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+
+        /* Test calling code. */
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync("", METHOD_GET, new HashMap<String, String>(), null, serviceCallback);
+        verify(serviceCallback).onCallFailed(new HttpException(404, ""));
+        verifyNoMoreInteractions(serviceCallback);
+        verify(urlConnection, never()).disconnect();
+    }
+
+    @Test
+    public void connectionReuseCounters() throws Exception {
+
+        /* Configure mock HTTP. */
+        URL url = mock(URL.class);
+        whenNew(URL.class).withAnyArguments().thenReturn(url);
+        HttpsURLConnection urlConnection = mock(HttpsURLConnection.class);
+        when(url.openConnection()).thenReturn(urlConnection);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        when(urlConnection.getInputStream()).thenAnswer(new Answer<InputStream>() {
+
+            @Override
+            public InputStream answer(InvocationOnMock invocation) {
+                return new ByteArrayInputStream("OK".getBytes());
+            }
+        });
+
+        /* The same shared socket factory is used by all calls and all clients. */
+        mockCall();
+        for (int i = 0; i < 3; i++) {
+            new DefaultHttpClient().callAsync("", METHOD_GET, new HashMap<String, String>(), null, mock(ServiceCallback.class));
+        }
+        KeepAliveSocketFactory socketFactory = DefaultHttpClient.getSocketFactory();
+        verify(urlConnection, times(3)).setSSLSocketFactory(socketFactory);
+
+        /* Mock connection did not create any socket so all calls are counted as reused. */
+        assertEquals(0, DefaultHttpClient.getConnectionCount());
+        assertEquals(3, DefaultHttpClient.getReusedConnectionCount());
+
+        /* Simulate a handshake. */
+        Whitebox.setInternalState(socketFactory, "mConnectionCount", 1L);
+        assertEquals(1, DefaultHttpClient.getConnectionCount());
+        assertEquals(2, DefaultHttpClient.getReusedConnectionCount());
+    }
+
     @Test
     public void cancel() throws Exception {
 
@@ -580,9 +667,7 @@ public class DefaultHttpClientTest {
         when(urlConnection.getResponseCode()).thenReturn(200);
         InputStream inputStream = mock(InputStream.class);
         when(urlConnection.getInputStream()).thenReturn(inputStream);
-        InputStreamReader inputStreamReader = mock(InputStreamReader.class);
-        whenNew(InputStreamReader.class).withAnyArguments().thenReturn(inputStreamReader);
-        when(inputStreamReader.read(any(char[].class))).thenThrow(exception);
+        when(inputStream.read(any(byte[].class), anyInt(), anyInt())).thenThrow(exception);
         HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
         ServiceCallback serviceCallback = mock(ServiceCallback.class);
         DefaultHttpClient httpClient = new DefaultHttpClient();
@@ -591,6 +676,7 @@ public class DefaultHttpClientTest {
         verify(serviceCallback).onCallFailed(exception);
         verifyZeroInteractions(serviceCallback);
         verify(inputStream).close();
+        verify(urlConnection).disconnect();
         verifyStatic();
         TrafficStats.setThreadStatsTag(anyInt());
         verifyStatic();
@@ -720,7 +806,7 @@ public class DefaultHttpClientTest {
         verify(urlConnection).setRequestProperty("Content-Encoding", "gzip");
         verify(urlConnection).setRequestMethod("POST");
         verify(urlConnection).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         verify(callTemplate).onBeforeCalling(eq(url), anyMapOf(String.class, String.class));
         verify(callTemplate).buildRequestBody();
         httpClient.close();
@@ -785,7 +871,7 @@ public class DefaultHttpClientTest {
         verify(urlConnection, never()).setRequestProperty("Content-Encoding", "gzip");
         verify(urlConnection).setRequestMethod("POST");
         verify(urlConnection).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         verify(callTemplate).onBeforeCalling(eq(url), anyMapOf(String.class, String.class));
         verify(callTemplate).buildRequestBody();
         httpClient.close();
@@ -802,4 +888,81 @@ public class DefaultHttpClientTest {
             }
         }));
     }
-}
\ No newline at end of file
+
+    private static ServiceCallback callWithResponse(int status, InputStream stream, int contentLength, boolean discardBody) throws Exception {
+        String urlString = "http://mock/logs?api-version=1.0.0";
+        URL url = mock(URL.class);
+        whenNew(URL.class).withArguments(urlString).thenReturn(url);
+        HttpsURLConnection urlConnection = mock(HttpsURLConnection.class);
+        when(url.openConnection()).thenReturn(urlConnection);
+        when(urlConnection.getResponseCode()).thenReturn(status);
+        when(urlConnection.getContentLength()).thenReturn(contentLength);
+        when(urlConnection.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        if (status < 400) {
+            when(urlConnection.getInputStream()).thenReturn(stream);
+        } else {
+            when(urlConnection.getErrorStream()).thenReturn(stream);
+        }
+        HttpClient.DiscardableResponseCallTemplate callTemplate = mock(HttpClient.DiscardableResponseCallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn("mockPayload");
+        when(callTemplate.shouldDiscardResponseBody()).thenReturn(discardBody);
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        new DefaultHttpClient().callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(urlConnection, never()).disconnect();
+        return serviceCallback;
+    }
+
+    @Test
+    public void discardResponseBody() throws Exception {
+        mockStatic(AppCenterLog.class);
+        when(AppCenterLog.getLogLevel()).thenReturn(Log.WARN);
+        ByteArrayInputStream stream = spy(new ByteArrayInputStream(TestUtils.generateString(DefaultHttpClient.READ_BUFFER_SIZE * 3, '*').getBytes()));
+        ServiceCallback serviceCallback = callWithResponse(200, stream, -1, true);
+        verify(serviceCallback).onCallSucceeded("");
+
+        /* Body is fully read so that the connection can be reused. */
+        assertEquals(0, stream.available());
+        verify(stream).close();
+    }
+
+    @Test
+    public void keepResponseBodyWhenVerbose() throws Exception {
+        mockStatic(AppCenterLog.class);
+        when(AppCenterLog.getLogLevel()).thenReturn(Log.VERBOSE);
+        ServiceCallback serviceCallback = callWithResponse(200, new ByteArrayInputStream("OK".getBytes()), 2, true);
+        verify(serviceCallback).onCallSucceeded("OK");
+    }
+
+    @Test
+    public void keepErrorResponseBody() throws Exception {
+        mockStatic(AppCenterLog.class);
+        when(AppCenterLog.getLogLevel()).thenReturn(Log.WARN);
+        ServiceCallback serviceCallback = callWithResponse(400, new ByteArrayInputStream("Bad".getBytes()), -1, true);
+        verify(serviceCallback).onCallFailed(new HttpException(400, "Bad"));
+    }
+
+    @Test
+    public void readResponsesLargerThanBuffer() throws Exception {
+
+        /* Without content length, buffer grows while reading. */
+        String body = TestUtils.generateString(DefaultHttpClient.READ_BUFFER_SIZE * 3 + 1, 'a');
+        ServiceCallback serviceCallback = callWithResponse(200, new ByteArrayInputStream(body.getBytes()), -1, false);
+        verify(serviceCallback).onCallSucceeded(body);
+
+        /* With content length, buffer is allocated once and does not grow at the end of the stream. */
+        body = TestUtils.generateString(DefaultHttpClient.getReadBufferSize() * 2, 'b');
+        serviceCallback = callWithResponse(200, new ByteArrayInputStream(body.getBytes()), body.length(), false);
+        verify(serviceCallback).onCallSucceeded(body);
+        assertEquals(body.length() + 1, DefaultHttpClient.getReadBufferSize());
+
+        /* Responses too large to keep their buffer pooled are read entirely. */
+        body = TestUtils.generateString(DefaultHttpClient.MAX_POOLED_BUFFER_SIZE + 1, 'c');
+        serviceCallback = callWithResponse(200, new ByteArrayInputStream(body.getBytes()), -1, false);
+        verify(serviceCallback).onCallSucceeded(body);
+
+        /* Pooled buffer is reused for smaller responses. */
+        serviceCallback = callWithResponse(200, new ByteArrayInputStream("OK".getBytes()), -1, false);
+        verify(serviceCallback).onCallSucceeded("OK");
+    }
+}
@@ -0,0 +1,115 @@
+package com.microsoft.appcenter.http;
+
+import android.os.SystemClock;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.Arrays;
+
+import static com.microsoft.appcenter.http.EndpointSelector.DEFAULT_HEDGING_DELAY;
+import static com.microsoft.appcenter.http.EndpointSelector.FAILURE_PENALTY;
+import static com.microsoft.appcenter.http.EndpointSelector.LATENCY_SAMPLES;
+import static com.microsoft.appcenter.http.EndpointSelector.MIN_HEDGING_DELAY;
+import static com.microsoft.appcenter.http.EndpointSelector.MIN_LATENCY_SAMPLES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@SuppressWarnings("unused")
+@PrepareForTest(SystemClock.class)
+public class EndpointSelectorTest {
+
+    private static final String FIRST = "https://first";
+
+    private static final String SECOND = "https://second";
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    private EndpointSelector mSelector;
+
+    @Before
+    public void setUp() {
+        mockStatic(SystemClock.class);
+        mSelector = new EndpointSelector(FIRST, SECOND);
+    }
+
+    private void addSamples(String url, long... latencies) {
+        for (long latency : latencies) {
+            mSelector.onCallSucceeded(url, latency);
+        }
+    }
+
+    @Test
+    public void configurationOrderUntilMeasured() {
+        assertEquals(Arrays.asList(FIRST, SECOND), mSelector.getEndpoints());
+        assertTrue(mSelector.contains(FIRST));
+        assertFalse(mSelector.contains("https://other"));
+        assertFalse(mSelector.isHedgingEnabled());
+        mSelector.setHedgingEnabled(true);
+        assertTrue(mSelector.isHedgingEnabled());
+
+        /* Not enough samples yet. */
+        addSamples(SECOND, 10, 10, 10, 10);
+        assertEquals(Arrays.asList(FIRST, SECOND), mSelector.getEndpoints());
+        assertEquals(DEFAULT_HEDGING_DELAY, mSelector.getHedgingDelay(SECOND));
+
+        /* Measured endpoint is preferred over unknown one. */
+        addSamples(SECOND, 10);
+        assertEquals(Arrays.asList(SECOND, FIRST), mSelector.getEndpoints());
+    }
+
+    @Test
+    public void preferFastestEndpoint() {
+        addSamples(FIRST, 300, 300, 300, 300, 300);
+        addSamples(SECOND, 100, 100, 100, 100, 100);
+        assertEquals(Arrays.asList(SECOND, FIRST), mSelector.getEndpoints());
+
+        /* Only the latest samples count. */
+        for (int i = 0; i < LATENCY_SAMPLES; i++) {
+            mSelector.onCallSucceeded(SECOND, 500);
+        }
+        assertEquals(Arrays.asList(FIRST, SECOND), mSelector.getEndpoints());
+
+        /* Unknown endpoints are ignored. */
+        mSelector.onCallSucceeded("https://other", 1);
+        mSelector.onCallFailed("https://other");
+        assertEquals(Arrays.asList(FIRST, SECOND), mSelector.getEndpoints());
+    }
+
+    @Test
+    public void hedgingDelayIs95thPercentile() {
+        for (int i = 1; i <= LATENCY_SAMPLES; i++) {
+            mSelector.onCallSucceeded(FIRST, i * 1000);
+        }
+        assertEquals(19000, mSelector.getHedgingDelay(FIRST));
+
+        /* Fast endpoints are not hedged too early. */
+        addSamples(SECOND, 1, 1, 1, 1, MIN_LATENCY_SAMPLES);
+        assertEquals(MIN_HEDGING_DELAY, mSelector.getHedgingDelay(SECOND));
+        assertEquals(DEFAULT_HEDGING_DELAY, mSelector.getHedgingDelay("https://other"));
+    }
+
+    @Test
+    public void avoidFailedEndpoint() {
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L);
+        mSelector.onCallFailed(FIRST);
+        assertEquals(Arrays.asList(SECOND, FIRST), mSelector.getEndpoints());
+
+        /* Penalty expires. */
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L + FAILURE_PENALTY);
+        assertEquals(Arrays.asList(FIRST, SECOND), mSelector.getEndpoints());
+
+        /* A success clears it. */
+        mSelector.onCallFailed(FIRST);
+        assertEquals(Arrays.asList(SECOND, FIRST), mSelector.getEndpoints());
+        mSelector.onCallSucceeded(FIRST, 100);
+        assertEquals(Arrays.asList(FIRST, SECOND), mSelector.getEndpoints());
+    }
+}
@@ -0,0 +1,224 @@
+package com.microsoft.appcenter.http;
+
+import android.os.Handler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
+import static com.microsoft.appcenter.http.EndpointSelector.DEFAULT_HEDGING_DELAY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * The decorated client stands for two endpoints whose responses are delivered by the tests in any order.
+ */
+@SuppressWarnings("unused")
+public class HedgingHttpClientTest {
+
+    private static final String FIRST = "https://first";
+
+    private static final String SECOND = "https://second";
+
+    private static final String PATH = "/logs?api-version=1.0.0";
+
+    private HttpClient mHttpClient;
+
+    private Handler mHandler;
+
+    private ServiceCall mFirstCall;
+
+    private ServiceCall mSecondCall;
+
+    private HttpClient.CallTemplate mCallTemplate;
+
+    private ServiceCallback mServiceCallback;
+
+    private EndpointSelector mSelector;
+
+    private HedgingHttpClient mHedgingHttpClient;
+
+    @Before
+    public void setUp() {
+        mHttpClient = mock(HttpClient.class);
+        mHandler = mock(Handler.class);
+        mFirstCall = mock(ServiceCall.class);
+        mSecondCall = mock(ServiceCall.class);
+        mCallTemplate = mock(HttpClient.CallTemplate.class);
+        mServiceCallback = mock(ServiceCallback.class);
+        when(mHttpClient.callAsync(eq(FIRST + PATH), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).thenReturn(mFirstCall);
+        when(mHttpClient.callAsync(eq(SECOND + PATH), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).thenReturn(mSecondCall);
+        mSelector = new EndpointSelector(FIRST, SECOND);
+        mSelector.setHedgingEnabled(true);
+        HttpUtils.addEndpointSelector(mSelector);
+        mHedgingHttpClient = new HedgingHttpClient(mHttpClient, mHandler);
+    }
+
+    @After
+    public void tearDown() {
+        HttpUtils.removeEndpointSelector(mSelector);
+    }
+
+    private ServiceCall call() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("key", "value");
+        return mHedgingHttpClient.callAsync(FIRST + PATH, METHOD_POST, headers, mCallTemplate, mServiceCallback);
+    }
+
+    private ServiceCallback verifySent(String endpoint) {
+        ArgumentCaptor<ServiceCallback> callback = ArgumentCaptor.forClass(ServiceCallback.class);
+        verify(mHttpClient).callAsync(eq(endpoint + PATH), eq(METHOD_POST), eq(Collections.singletonMap("key", "value")), eq(mCallTemplate), callback.capture());
+        return callback.getValue();
+    }
+
+    private Runnable verifyHedgingScheduled() {
+        ArgumentCaptor<Runnable> runnable = ArgumentCaptor.forClass(Runnable.class);
+        verify(mHandler).postDelayed(runnable.capture(), eq(DEFAULT_HEDGING_DELAY));
+        return runnable.getValue();
+    }
+
+    @Test
+    public void forwardCallsWithoutSelector() {
+        ServiceCall serviceCall = mock(ServiceCall.class);
+        Map<String, String> headers = new HashMap<>();
+        when(mHttpClient.callAsync("https://other/path", METHOD_POST, headers, mCallTemplate, mServiceCallback)).thenReturn(serviceCall);
+        assertSame(serviceCall, mHedgingHttpClient.callAsync("https://other/path", METHOD_POST, headers, mCallTemplate, mServiceCallback));
+        verifyZeroInteractions(mHandler);
+    }
+
+    @Test
+    public void firstSuccessWins() {
+        call();
+        ServiceCallback firstCallback = verifySent(FIRST);
+        Runnable hedging = verifyHedgingScheduled();
+
+        /* First endpoint is slow, send to second one as well. */
+        hedging.run();
+        ServiceCallback secondCallback = verifySent(SECOND);
+
+        /* Second endpoint answers first, the other attempt is canceled and its result ignored. */
+        secondCallback.onCallSucceeded("OK");
+        verify(mServiceCallback).onCallSucceeded("OK");
+        verify(mFirstCall).cancel();
+        firstCallback.onCallSucceeded("OK");
+        firstCallback.onCallFailed(new SocketException());
+        verifyNoMoreInteractions(mServiceCallback);
+        verify(mSecondCall, never()).cancel();
+
+        /* Only the winner latency is recorded. */
+        assertEquals(Arrays.asList(FIRST, SECOND), mSelector.getEndpoints());
+    }
+
+    @Test
+    public void successBeforeHedgingDelay() {
+        call();
+        Runnable hedging = verifyHedgingScheduled();
+        verifySent(FIRST).onCallSucceeded("OK");
+        verify(mServiceCallback).onCallSucceeded("OK");
+        verify(mHandler).removeCallbacks(hedging);
+
+        /* Timer firing late has no effect. */
+        hedging.run();
+        verify(mHttpClient, never()).callAsync(eq(SECOND + PATH), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void noHedgingWhenDisabled() {
+        mSelector.setHedgingEnabled(false);
+        call();
+        verifySent(FIRST);
+        verify(mHandler, never()).postDelayed(any(Runnable.class), anyLong());
+    }
+
+    @Test
+    public void failoverOnRecoverableError() {
+        mSelector.setHedgingEnabled(false);
+        call();
+        verifySent(FIRST).onCallFailed(new SocketException());
+        verifyZeroInteractions(mServiceCallback);
+        verifySent(SECOND).onCallSucceeded("OK");
+        verify(mServiceCallback).onCallSucceeded("OK");
+
+        /* Failed endpoint is avoided by next calls. */
+        assertEquals(Arrays.asList(SECOND, FIRST), mSelector.getEndpoints());
+    }
+
+    @Test
+    public void reportNonRecoverableError() {
+        call();
+        Exception exception = new HttpException(400);
+        verifySent(FIRST).onCallFailed(exception);
+        verify(mServiceCallback).onCallFailed(exception);
+        verify(mHttpClient, never()).callAsync(eq(SECOND + PATH), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        verify(mHandler).removeCallbacks(any(Runnable.class));
+    }
+
+    @Test
+    public void waitForOtherAttemptBeforeFailing() {
+        call();
+        ServiceCallback firstCallback = verifySent(FIRST);
+        verifyHedgingScheduled().run();
+        ServiceCallback secondCallback = verifySent(SECOND);
+
+        /* Second attempt is still pending. */
+        firstCallback.onCallFailed(new SocketException());
+        verifyZeroInteractions(mServiceCallback);
+
+        /* No endpoint left. */
+        Exception exception = new SocketException();
+        secondCallback.onCallFailed(exception);
+        verify(mServiceCallback).onCallFailed(exception);
+    }
+
+    @Test
+    public void cancelAllAttempts() {
+        ServiceCall call = call();
+        ServiceCallback firstCallback = verifySent(FIRST);
+        Runnable hedging = verifyHedgingScheduled();
+        hedging.run();
+        verifySent(SECOND);
+        call.cancel();
+        verify(mFirstCall).cancel();
+        verify(mSecondCall).cancel();
+        firstCallback.onCallSucceeded("OK");
+        verifyZeroInteractions(mServiceCallback);
+    }
+
+    @Test
+    public void failOverBeforeRetrying() {
+        mSelector.setHedgingEnabled(false);
+        Handler retryHandler = mock(Handler.class);
+        HttpClient retryer = new HttpClientRetryer(mHedgingHttpClient, retryHandler);
+        Map<String, String> headers = new HashMap<>();
+        headers.put("key", "value");
+        retryer.callAsync(FIRST + PATH, METHOD_POST, headers, mCallTemplate, mServiceCallback);
+
+        /* First error of the preferred endpoint sends the call to the next one without waiting for retries. */
+        verifySent(FIRST).onCallFailed(new SocketException());
+        verifyZeroInteractions(retryHandler);
+        verifySent(SECOND).onCallFailed(new SocketException());
+
+        /* Retries start only once all endpoints failed. */
+        verify(retryHandler).postDelayed(any(Runnable.class), anyLong());
+        verifyZeroInteractions(mServiceCallback);
+    }
+}
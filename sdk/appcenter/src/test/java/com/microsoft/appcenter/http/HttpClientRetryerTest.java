@@ -3,22 +3,33 @@ package com.microsoft.appcenter.http;
 import android.os.Handler;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
 
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.longThat;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
 @SuppressWarnings("unused")
 public class HttpClientRetryerTest {
@@ -173,4 +184,165 @@ public class HttpClientRetryerTest {
         verifyNoMoreInteractions(callback);
         verify(call).cancel();
     }
+
+    private static List<ServiceCallback> captureCallbacks(HttpClient httpClient, int count) {
+        ArgumentCaptor<ServiceCallback> callbacks = ArgumentCaptor.forClass(ServiceCallback.class);
+        verify(httpClient, times(count)).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), callbacks.capture());
+        return callbacks.getAllValues();
+    }
+
+    private static Runnable captureTimer(Handler handler, long delay) {
+        ArgumentCaptor<Runnable> timer = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler).postDelayed(timer.capture(), delay < 0 ? anyLong() : eq(delay));
+        return timer.getValue();
+    }
+
+    @Test
+    public void circuitBreakerPausesEndpoint() {
+        HttpClient httpClient = mock(HttpClient.class);
+        when(httpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).thenReturn(mock(ServiceCall.class));
+        Handler handler = mock(Handler.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
+        ServiceCallback firstCallback = mock(ServiceCallback.class);
+        ServiceCallback secondCallback = mock(ServiceCallback.class);
+        ServiceCallback thirdCallback = mock(ServiceCallback.class);
+        retryer.callAsync("https://mock/logs", "", null, null, firstCallback);
+        retryer.callAsync("https://mock/logs", "", null, null, secondCallback);
+
+        /* First failure opens the circuit. */
+        List<ServiceCallback> callbacks = captureCallbacks(httpClient, 2);
+        callbacks.get(0).onCallFailed(new SocketException());
+        Runnable timer = captureTimer(handler, -1);
+
+        /* Other calls wait for the same timer. */
+        callbacks.get(1).onCallFailed(new SocketException());
+        retryer.callAsync("https://mock/logs", "", null, null, thirdCallback);
+        captureCallbacks(httpClient, 2);
+        verify(handler).postDelayed(any(Runnable.class), anyLong());
+
+        /* Other endpoints are not affected. */
+        retryer.callAsync("https://other/logs", "", null, null, mock(ServiceCallback.class));
+        captureCallbacks(httpClient, 3);
+
+        /* When timer expires, a single probe is sent. */
+        timer.run();
+        callbacks = captureCallbacks(httpClient, 4);
+
+        /* Waiting calls are sent once the probe succeeds. */
+        callbacks.get(3).onCallSucceeded("OK");
+        verify(firstCallback).onCallSucceeded("OK");
+        callbacks = captureCallbacks(httpClient, 6);
+        callbacks.get(4).onCallSucceeded("OK");
+        callbacks.get(5).onCallSucceeded("OK");
+        verify(secondCallback).onCallSucceeded("OK");
+        verify(thirdCallback).onCallSucceeded("OK");
+        verify(handler, never()).removeCallbacks(any(Runnable.class));
+    }
+
+    @Test
+    public void honorRetryAfter() {
+        HttpClient httpClient = mock(HttpClient.class);
+        Handler handler = mock(Handler.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
+        ServiceCallback callback = mock(ServiceCallback.class);
+        retryer.callAsync("https://mock/logs", "", null, null, callback);
+        Map<String, String> headers = new HashMap<>();
+        headers.put(DefaultHttpClient.RETRY_AFTER_KEY, "42");
+        captureCallbacks(httpClient, 1).get(0).onCallFailed(new HttpException(429, "", headers));
+        Runnable timer = captureTimer(handler, 42000);
+
+        /* Probe failing again without header uses the interval of the second retry. */
+        timer.run();
+        captureCallbacks(httpClient, 2).get(1).onCallFailed(new HttpException(503));
+        verifyDelay(handler, 1);
+
+        /* Server delay is capped. */
+        headers.put(DefaultHttpClient.RETRY_AFTER_KEY, "86400");
+        retryer.callAsync("https://other/logs", "", null, null, mock(ServiceCallback.class));
+        captureCallbacks(httpClient, 3).get(2).onCallFailed(new HttpException(503, "", headers));
+        captureTimer(handler, HttpClientRetryer.MAX_RETRY_AFTER);
+        verifyZeroInteractions(callback);
+    }
+
+    @Test
+    public void cancelProbe() {
+        HttpClient httpClient = mock(HttpClient.class);
+        ServiceCall probeCall = mock(ServiceCall.class);
+        when(httpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).thenReturn(probeCall);
+        Handler handler = mock(Handler.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
+        ServiceCall first = retryer.callAsync("https://mock/logs", "", null, null, mock(ServiceCallback.class));
+        captureCallbacks(httpClient, 1).get(0).onCallFailed(new SocketException());
+        Runnable timer = captureTimer(handler, -1);
+
+        /* Calls waiting before being sent can be canceled. */
+        ServiceCall second = retryer.callAsync("https://mock/logs", "", null, null, mock(ServiceCallback.class));
+        ServiceCall third = retryer.callAsync("https://mock/logs", "", null, null, mock(ServiceCallback.class));
+        third.cancel();
+        verify(handler, never()).removeCallbacks(any(Runnable.class));
+
+        /* Canceling the probe sends the next waiting call as the probe. */
+        timer.run();
+        captureCallbacks(httpClient, 2);
+        first.cancel();
+        verify(probeCall).cancel();
+        captureCallbacks(httpClient, 3);
+
+        /* Nothing left waiting. */
+        second.cancel();
+        verify(handler, never()).removeCallbacks(any(Runnable.class));
+        captureCallbacks(httpClient, 3);
+    }
+
+    @Test
+    public void probeExhaustingRetriesKeepsTimerForWaitingCalls() {
+        HttpClient httpClient = mock(HttpClient.class);
+        Handler handler = mock(Handler.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
+        ServiceCallback firstCallback = mock(ServiceCallback.class);
+        ServiceCallback secondCallback = mock(ServiceCallback.class);
+        retryer.callAsync("https://mock/logs", "", null, null, firstCallback);
+
+        /* Use all the retries but the last one. */
+        captureCallbacks(httpClient, 1).get(0).onCallFailed(new SocketException());
+        Runnable timer = captureTimer(handler, -1);
+        for (int i = 1; i < HttpClientRetryer.RETRY_INTERVALS.length; i++) {
+            timer.run();
+            captureCallbacks(httpClient, i + 1).get(i).onCallFailed(new SocketException());
+        }
+
+        /* Another call waits behind the probe. */
+        retryer.callAsync("https://mock/logs", "", null, null, secondCallback);
+        int calls = HttpClientRetryer.RETRY_INTERVALS.length;
+        captureCallbacks(httpClient, calls);
+
+        /* Probe runs out of retries, the timer is still scheduled for the waiting call. */
+        timer.run();
+        captureCallbacks(httpClient, calls + 1).get(calls).onCallFailed(new SocketException());
+        verify(firstCallback).onCallFailed(any(SocketException.class));
+        verify(handler, times(calls + 1)).postDelayed(eq(timer), anyLong());
+        timer.run();
+        captureCallbacks(httpClient, calls + 2).get(calls + 1).onCallSucceeded("OK");
+        verify(secondCallback).onCallSucceeded("OK");
+    }
+
+    @Test
+    public void cancelLastWaitingCallStopsTimer() {
+        HttpClient httpClient = mock(HttpClient.class);
+        Handler handler = mock(Handler.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
+        ServiceCall call = retryer.callAsync("https://mock/logs", "", null, null, mock(ServiceCallback.class));
+        captureCallbacks(httpClient, 1).get(0).onCallFailed(new SocketException());
+        Runnable timer = captureTimer(handler, -1);
+        call.cancel();
+        verify(handler).removeCallbacks(timer);
+    }
+
+    @Test
+    public void getEndpoint() {
+        assertEquals("", HttpClientRetryer.getEndpoint(null));
+        assertEquals("https://mock", HttpClientRetryer.getEndpoint("https://mock"));
+        assertEquals("https://mock:443", HttpClientRetryer.getEndpoint("https://mock:443/logs?api-version=1.0.0"));
+        assertEquals("mock", HttpClientRetryer.getEndpoint("mock/logs"));
+    }
 }
@@ -1,13 +1,40 @@
 package com.microsoft.appcenter.http;
 
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.net.SocketException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
+
+import static com.microsoft.appcenter.http.DefaultContentEncodingPolicy.MIN_GZIP_LENGTH;
+import static com.microsoft.appcenter.http.DefaultHttpClient.RETRY_AFTER_KEY;
+import static com.microsoft.appcenter.http.HttpUtils.CONTENT_ENCODING_KEY;
 import static com.microsoft.appcenter.http.HttpUtils.MAX_CHARACTERS_DISPLAYED_FOR_SECRET;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @SuppressWarnings("unused")
 public class HttpUtilsTest {
 
+    @After
+    public void tearDown() {
+        HttpUtils.setContentEncodingPolicy(null);
+        HttpUtils.setPayloadEncodingListener(null);
+    }
+
     @Test
     public void hideNullSecret() {
         Assert.assertNull(HttpUtils.hideSecret(null));
@@ -33,4 +60,106 @@ public class HttpUtilsTest {
         Assert.assertEquals(secret.length(), obfuscatedSecret.length());
         Assert.assertTrue(obfuscatedSecret.endsWith("*" + secret.substring(secret.length() - MAX_CHARACTERS_DISPLAYED_FOR_SECRET)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void retryAfter() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(RETRY_AFTER_KEY, " 120 ");
+        Assert.assertEquals(120000, HttpUtils.getRetryAfter(new HttpException(429, "", headers)));
+        Assert.assertEquals(120000, HttpUtils.getRetryAfter(new HttpException(503, "", headers)));
+
+        /* Ignored for other errors. */
+        Assert.assertEquals(-1, HttpUtils.getRetryAfter(new HttpException(500, "", headers)));
+        Assert.assertEquals(-1, HttpUtils.getRetryAfter(new SocketException()));
+
+        /* Missing or invalid. */
+        Assert.assertEquals(-1, HttpUtils.getRetryAfter(new HttpException(503)));
+        headers.put(RETRY_AFTER_KEY, "later");
+        Assert.assertEquals(-1, HttpUtils.getRetryAfter(new HttpException(503, "", headers)));
+
+        /* Negative delay or date in the past. */
+        headers.put(RETRY_AFTER_KEY, "-1");
+        Assert.assertEquals(0, HttpUtils.getRetryAfter(new HttpException(503, "", headers)));
+        headers.put(RETRY_AFTER_KEY, "Wed, 21 Oct 2015 07:28:00 GMT");
+        Assert.assertEquals(0, HttpUtils.getRetryAfter(new HttpException(503, "", headers)));
+
+        /* Date in the future. */
+        DateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        headers.put(RETRY_AFTER_KEY, dateFormat.format(new Date(System.currentTimeMillis() + 3600000)));
+        long delay = HttpUtils.getRetryAfter(new HttpException(503, "", headers));
+        Assert.assertTrue(delay > 3590000 && delay <= 3600000);
+    }
+
+    @Test
+    public void defaultContentEncodingPolicy() {
+        Assert.assertTrue(HttpUtils.getContentEncodingPolicy() instanceof DefaultContentEncodingPolicy);
+        Assert.assertSame(HttpUtils.getContentEncodingPolicy(), HttpUtils.getContentEncodingPolicy());
+        ContentEncodingPolicy policy = mock(ContentEncodingPolicy.class);
+        HttpUtils.setContentEncodingPolicy(policy);
+        Assert.assertSame(policy, HttpUtils.getContentEncodingPolicy());
+    }
+
+    @Test
+    public void encodeSmallPayload() throws Exception {
+        PayloadEncodingListener listener = mock(PayloadEncodingListener.class);
+        HttpUtils.setPayloadEncodingListener(listener);
+        byte[] payload = new byte[MIN_GZIP_LENGTH - 1];
+        Map<String, String> headers = new HashMap<>();
+        Assert.assertSame(payload, HttpUtils.encodePayload(payload, headers));
+        Assert.assertTrue(headers.isEmpty());
+        verify(listener).onPayloadEncoded(null, payload.length, payload.length, 0);
+    }
+
+    @Test
+    public void encodeSmallPayloadWithDictionary() throws Exception {
+        DefaultContentEncodingPolicy policy = new DefaultContentEncodingPolicy();
+        DictionaryDeflateEncoder encoder = new DictionaryDeflateEncoder();
+        policy.setSmallPayloadEncoder(encoder);
+        HttpUtils.setContentEncodingPolicy(policy);
+        byte[] payload = ("{\"logs\":[{\"type\":\"event\",\"timestamp\":\"2018-01-01T00:00:00.000Z\",\"sid\":\"a2a9d4e0-4f6d-4b2e-8cd0-8e4b1cb7b2ab\","
+                + "\"id\":\"4bdf4a6b-45e8-4c0b-a5f5-0d8bd1dc1e25\",\"name\":\"click\",\"properties\":{}}]}").getBytes("UTF-8");
+        Map<String, String> headers = new HashMap<>();
+        HttpUtils.encodePayload(payload, headers);
+        Assert.assertEquals("x-appcenter-deflate-dict", headers.get(CONTENT_ENCODING_KEY));
+        Assert.assertEquals(encoder.getDictionaryId(), headers.get(DictionaryDeflateEncoder.DICTIONARY_ID_KEY));
+    }
+
+    @Test
+    public void encodeLargePayload() throws Exception {
+        PayloadEncodingListener listener = mock(PayloadEncodingListener.class);
+        HttpUtils.setPayloadEncodingListener(listener);
+        byte[] payload = new byte[MIN_GZIP_LENGTH];
+        Map<String, String> headers = new HashMap<>();
+        byte[] encoded = HttpUtils.encodePayload(payload, headers);
+        Assert.assertEquals("gzip", headers.get(CONTENT_ENCODING_KEY));
+        verify(listener).onPayloadEncoded(eq("gzip"), eq(payload.length), eq(encoded.length), anyLong());
+
+        /* Decode as the server does. */
+        GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(encoded));
+        byte[] decoded = new byte[payload.length + 1];
+        int length = 0;
+        int read;
+        while ((read = inputStream.read(decoded, length, decoded.length - length)) > 0) {
+            length += read;
+        }
+        Assert.assertEquals(payload.length, length);
+    }
+
+    @Test
+    public void sendAsIsIfEncodingDoesNotReduceSize() throws Exception {
+        ContentEncoder encoder = mock(ContentEncoder.class);
+        when(encoder.getContentEncoding()).thenReturn("mock");
+        when(encoder.encode(new byte[10])).thenReturn(new byte[10]);
+        ContentEncodingPolicy policy = mock(ContentEncodingPolicy.class);
+        when(policy.selectEncoder(10)).thenReturn(encoder);
+        HttpUtils.setContentEncodingPolicy(policy);
+        Map<String, String> headers = new HashMap<>();
+        byte[] payload = new byte[10];
+        Assert.assertSame(payload, HttpUtils.encodePayload(payload, headers));
+        Assert.assertTrue(headers.isEmpty());
+
+        /* Policy is notified without encoding. */
+        verify(policy).onPayloadEncoded((String) isNull(), eq(10), eq(10), anyLong());
+    }
+}
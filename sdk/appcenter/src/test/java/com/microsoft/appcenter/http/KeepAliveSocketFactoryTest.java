@@ -0,0 +1,185 @@
+package com.microsoft.appcenter.http;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import static com.microsoft.appcenter.http.KeepAliveSocketFactory.IDLE_TIMEOUT;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@SuppressWarnings("unused")
+@PrepareForTest({SystemClock.class, AppCenterLog.class})
+@RunWith(PowerMockRunner.class)
+public class KeepAliveSocketFactoryTest {
+
+    private SSLSocketFactory mDelegate;
+
+    private SSLSocket mSocket;
+
+    private Handler mHandler;
+
+    private KeepAliveSocketFactory mFactory;
+
+    @Before
+    public void setUp() throws IOException {
+        mockStatic(SystemClock.class);
+        mockStatic(AppCenterLog.class);
+        mDelegate = mock(SSLSocketFactory.class);
+        mSocket = mock(SSLSocket.class);
+        when(mDelegate.createSocket()).thenReturn(mSocket);
+        when(mDelegate.createSocket(anyString(), anyInt())).thenReturn(mSocket);
+        when(mDelegate.createSocket(any(InetAddress.class), anyInt())).thenReturn(mSocket);
+        when(mDelegate.createSocket(anyString(), anyInt(), any(InetAddress.class), anyInt())).thenReturn(mSocket);
+        when(mDelegate.createSocket(any(Socket.class), anyString(), anyInt(), anyBoolean())).thenReturn(mSocket);
+        when(mDelegate.createSocket(any(InetAddress.class), anyInt(), any(InetAddress.class), anyInt())).thenReturn(mSocket);
+        mHandler = mock(Handler.class);
+        mFactory = new KeepAliveSocketFactory(mDelegate, mHandler);
+    }
+
+    @Test
+    public void delegateAndCountConnections() throws Exception {
+        when(mDelegate.getDefaultCipherSuites()).thenReturn(new String[]{"mockCipher1"});
+        when(mDelegate.getSupportedCipherSuites()).thenReturn(new String[]{"mockCipher1", "mockCipher2"});
+        assertSame(mDelegate, mFactory.getDelegate());
+        assertSame(mSocket, mFactory.createSocket());
+        assertSame(mSocket, mFactory.createSocket("localhost", 80));
+        assertSame(mSocket, mFactory.createSocket(mock(InetAddress.class), 80));
+        assertSame(mSocket, mFactory.createSocket("localhost", 80, mock(InetAddress.class), 8080));
+        assertSame(mSocket, mFactory.createSocket(mock(InetAddress.class), 80, mock(InetAddress.class), 8080));
+        assertSame(mSocket, mFactory.createSocket(mock(Socket.class), "localhost", 80, true));
+        assertArrayEquals(new String[]{"mockCipher1"}, mFactory.getDefaultCipherSuites());
+        assertArrayEquals(new String[]{"mockCipher1", "mockCipher2"}, mFactory.getSupportedCipherSuites());
+        assertEquals(6, mFactory.getConnectionCount());
+        assertEquals(0, mFactory.getCallCount());
+    }
+
+    @Test
+    public void reuseConnectionsOnBatches() throws Exception {
+
+        /* Simulate 100 batches sent at short intervals: only the first one opens a connection. */
+        for (int i = 0; i < 100; i++) {
+            when(SystemClock.elapsedRealtime()).thenReturn(i * 3000L);
+            mFactory.onCallStarted();
+            if (i == 0) {
+                mFactory.createSocket(mock(Socket.class), "localhost", 443, true);
+            }
+            mFactory.onCallCompleted();
+        }
+        assertEquals(100, mFactory.getCallCount());
+        assertEquals(1, mFactory.getConnectionCount());
+        verify(mSocket, never()).close();
+    }
+
+    @Test
+    public void closeIdleConnections() throws Exception {
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L);
+        mFactory.onCallStarted();
+        mFactory.createSocket(mock(Socket.class), "localhost", 443, true);
+        mFactory.onCallCompleted();
+
+        /* Not idle for long enough yet. */
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L + IDLE_TIMEOUT - 1);
+        mFactory.onCallStarted();
+        mFactory.onCallCompleted();
+        verify(mSocket, never()).close();
+
+        /* Idle connection is not closed while another call is in progress. */
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L + 3 * IDLE_TIMEOUT);
+        mFactory.onCallStarted();
+        mFactory.onCallStarted();
+        verify(mSocket, never()).close();
+        mFactory.onCallCompleted();
+        mFactory.onCallCompleted();
+
+        /* Close it when idle, even if closing fails. */
+        doThrow(new IOException("mock")).when(mSocket).close();
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L + 5 * IDLE_TIMEOUT);
+        mFactory.onCallStarted();
+        verify(mSocket).close();
+        mFactory.onCallCompleted();
+
+        /* It's forgotten after that. */
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L + 7 * IDLE_TIMEOUT);
+        mFactory.onCallStarted();
+        mFactory.onCallCompleted();
+        verify(mSocket).close();
+    }
+
+    @Test
+    public void closeIdleConnectionsFromTimer() throws Exception {
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L);
+        mFactory.onCallStarted();
+        mFactory.createSocket(mock(Socket.class), "localhost", 443, true);
+        mFactory.onCallCompleted();
+        ArgumentCaptor<Runnable> timer = ArgumentCaptor.forClass(Runnable.class);
+        verify(mHandler).postDelayed(timer.capture(), eq(IDLE_TIMEOUT));
+
+        /* Timer is canceled by the next call and scheduled again when it completes. */
+        when(SystemClock.elapsedRealtime()).thenReturn(2000L);
+        mFactory.onCallStarted();
+        verify(mHandler).removeCallbacks(timer.getValue());
+        mFactory.onCallCompleted();
+        verify(mHandler, times(2)).postDelayed(timer.getValue(), IDLE_TIMEOUT);
+
+        /* Timer firing while a call is in progress keeps the connection. */
+        when(SystemClock.elapsedRealtime()).thenReturn(2000L + IDLE_TIMEOUT);
+        mFactory.onCallStarted();
+        timer.getValue().run();
+        verify(mSocket, never()).close();
+        mFactory.onCallCompleted();
+        verify(mHandler, times(3)).postDelayed(timer.getValue(), IDLE_TIMEOUT);
+
+        /* Close it when the timer expires without any call. */
+        when(SystemClock.elapsedRealtime()).thenReturn(2000L + 2 * IDLE_TIMEOUT);
+        timer.getValue().run();
+        verify(mSocket).close();
+
+        /* No timer once there is no socket left. */
+        mFactory.onCallStarted();
+        mFactory.onCallCompleted();
+        verify(mHandler, times(3)).postDelayed(timer.getValue(), IDLE_TIMEOUT);
+    }
+
+    @Test
+    public void forgetClosedSockets() throws Exception {
+        mFactory.onCallStarted();
+        mFactory.createSocket(mock(Socket.class), "localhost", 443, true);
+        when(mSocket.isClosed()).thenReturn(true);
+        mFactory.onCallCompleted();
+
+        /* Socket closed by the pool is not closed again. */
+        when(SystemClock.elapsedRealtime()).thenReturn(2 * IDLE_TIMEOUT);
+        mFactory.onCallStarted();
+        mFactory.onCallCompleted();
+        verify(mSocket, never()).close();
+    }
+}
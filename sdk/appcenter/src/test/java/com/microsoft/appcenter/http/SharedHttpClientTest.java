@@ -0,0 +1,130 @@
+package com.microsoft.appcenter.http;
+
+import android.content.Context;
+
+import com.microsoft.appcenter.test.TestUtils;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.NetworkStateHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.HashMap;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyNew;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
+
+@SuppressWarnings("unused")
+@PrepareForTest({SharedHttpClient.class, NetworkStateHelper.class, AppCenterLog.class})
+public class SharedHttpClientTest {
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    private HttpClientNetworkStateHandler mPipeline;
+
+    @Before
+    public void setUp() throws Exception {
+        mockStatic(AppCenterLog.class);
+        mockStatic(NetworkStateHelper.class);
+        when(NetworkStateHelper.getSharedInstance(any(Context.class))).thenReturn(mock(NetworkStateHelper.class));
+        mPipeline = mock(HttpClientNetworkStateHandler.class);
+        whenNew(HttpClientNetworkStateHandler.class).withAnyArguments().thenReturn(mPipeline);
+        when(mPipeline.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).thenReturn(mock(ServiceCall.class));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtils.setInternalState(SharedHttpClient.class, "sPipeline", null);
+        TestUtils.setInternalState(SharedHttpClient.class, "sReferenceCount", 0);
+    }
+
+    private ServiceCallback call(HttpClient httpClient, ServiceCall[] pipelineCall) {
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        ServiceCall serviceCall = mock(ServiceCall.class);
+        when(mPipeline.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).thenReturn(serviceCall);
+        pipelineCall[0] = serviceCall;
+        httpClient.callAsync("", "", new HashMap<String, String>(), null, serviceCallback);
+        return serviceCallback;
+    }
+
+    @Test
+    public void sharePipeline() throws Exception {
+
+        /* Pipeline is created once for all references. */
+        SharedHttpClient first = new SharedHttpClient(mock(Context.class));
+        SharedHttpClient second = new SharedHttpClient(mock(Context.class));
+        verifyNew(HttpClientNetworkStateHandler.class, times(1)).withArguments(any(HttpClientRetryer.class), any(NetworkStateHelper.class));
+
+        /* Make a call on each reference. */
+        ServiceCall[] firstPipelineCall = new ServiceCall[1];
+        call(first, firstPipelineCall);
+        ServiceCall[] secondPipelineCall = new ServiceCall[1];
+        ServiceCallback secondCallback = call(second, secondPipelineCall);
+
+        /* Closing the first reference cancels only its calls and keeps the pipeline open. */
+        first.close();
+        verify(firstPipelineCall[0]).cancel();
+        verify(secondPipelineCall[0], never()).cancel();
+        verify(mPipeline, never()).close();
+
+        /* Closing twice has no effect. */
+        first.close();
+        verify(firstPipelineCall[0]).cancel();
+
+        /* Completing the second call forwards the result. */
+        ArgumentCaptor<ServiceCallback> pipelineCallback = ArgumentCaptor.forClass(ServiceCallback.class);
+        verify(mPipeline, times(2)).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), pipelineCallback.capture());
+        pipelineCallback.getAllValues().get(1).onCallSucceeded("OK");
+        verify(secondCallback).onCallSucceeded("OK");
+
+        /* Completed call is not canceled when closing the last reference, which closes the pipeline. */
+        second.close();
+        verify(secondPipelineCall[0], never()).cancel();
+        verify(mPipeline).close();
+
+        /* Reopening a reference reopens the pipeline without creating a new one. */
+        first.reopen();
+        first.reopen();
+        second.reopen();
+        verify(mPipeline).reopen();
+        verifyNew(HttpClientNetworkStateHandler.class, times(1)).withArguments(any(HttpClientRetryer.class), any(NetworkStateHelper.class));
+    }
+
+    @Test
+    public void cancelCall() throws Exception {
+        SharedHttpClient httpClient = new SharedHttpClient(mock(Context.class));
+        ServiceCall[] pipelineCall = new ServiceCall[1];
+        ServiceCallback serviceCallback = call(httpClient, pipelineCall);
+        ArgumentCaptor<ServiceCallback> pipelineCallback = ArgumentCaptor.forClass(ServiceCallback.class);
+        verify(mPipeline).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), pipelineCallback.capture());
+
+        /* Failure is forwarded. */
+        Exception exception = new Exception("mock");
+        pipelineCallback.getValue().onCallFailed(exception);
+        verify(serviceCallback).onCallFailed(exception);
+
+        /* Cancel a new call, it's not canceled again on close. */
+        ServiceCall call = httpClient.callAsync("", "", new HashMap<String, String>(), null, mock(ServiceCallback.class));
+        call.cancel();
+        httpClient.close();
+        verify(pipelineCall[0]).cancel();
+        verify(mPipeline).close();
+        verifyNoMoreInteractions(serviceCallback);
+    }
+}
@@ -3,10 +3,10 @@ package com.microsoft.appcenter.ingestion;
 import android.content.Context;
 
 import com.microsoft.appcenter.http.HttpClient;
-import com.microsoft.appcenter.http.HttpClientNetworkStateHandler;
 import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.http.SharedHttpClient;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
@@ -33,6 +33,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.contains;
@@ -67,8 +68,8 @@ public class AppCenterIngestionTest {
         when(serializer.serializeContainer(any(LogContainer.class))).thenReturn("mockPayload");
 
         /* Configure mock HTTP. */
-        HttpClientNetworkStateHandler httpClient = mock(HttpClientNetworkStateHandler.class);
-        whenNew(HttpClientNetworkStateHandler.class).withAnyArguments().thenReturn(httpClient);
+        SharedHttpClient httpClient = mock(SharedHttpClient.class);
+        whenNew(SharedHttpClient.class).withAnyArguments().thenReturn(httpClient);
         final ServiceCall call = mock(ServiceCall.class);
         final AtomicReference<HttpClient.CallTemplate> callTemplate = new AtomicReference<>();
         when(httpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).then(new Answer<ServiceCall>() {
@@ -119,8 +120,8 @@ public class AppCenterIngestionTest {
         when(serializer.serializeContainer(any(LogContainer.class))).thenThrow(exception);
 
         /* Configure mock HTTP. */
-        HttpClientNetworkStateHandler httpClient = mock(HttpClientNetworkStateHandler.class);
-        whenNew(HttpClientNetworkStateHandler.class).withAnyArguments().thenReturn(httpClient);
+        SharedHttpClient httpClient = mock(SharedHttpClient.class);
+        whenNew(SharedHttpClient.class).withAnyArguments().thenReturn(httpClient);
         final ServiceCall call = mock(ServiceCall.class);
         final AtomicReference<HttpClient.CallTemplate> callTemplate = new AtomicReference<>();
         when(httpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).then(new Answer<ServiceCall>() {
@@ -212,13 +213,18 @@ public class AppCenterIngestionTest {
         AppCenterLog.verbose(anyString(), anyString());
     }
 
+    @Test
+    public void discardResponseBody() throws Exception {
+        assertTrue(HttpUtils.shouldDiscardResponseBody(getCallTemplate(UUIDUtils.randomUUID().toString())));
+    }
+
     private HttpClient.CallTemplate getCallTemplate(String appSecret) throws Exception {
 
         /* Configure mock HTTP to get an instance of IngestionCallTemplate. */
         final ServiceCall call = mock(ServiceCall.class);
         final AtomicReference<HttpClient.CallTemplate> callTemplate = new AtomicReference<>();
-        HttpClientNetworkStateHandler httpClient = mock(HttpClientNetworkStateHandler.class);
-        whenNew(HttpClientNetworkStateHandler.class).withAnyArguments().thenReturn(httpClient);
+        SharedHttpClient httpClient = mock(SharedHttpClient.class);
+        whenNew(SharedHttpClient.class).withAnyArguments().thenReturn(httpClient);
         when(httpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).then(new Answer<ServiceCall>() {
 
             @Override
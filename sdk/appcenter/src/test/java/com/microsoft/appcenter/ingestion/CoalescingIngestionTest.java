@@ -0,0 +1,284 @@
+package com.microsoft.appcenter.ingestion;
+
+import android.os.Handler;
+
+import com.microsoft.appcenter.http.HttpException;
+import com.microsoft.appcenter.http.ServiceCall;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.UUIDUtils;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static com.microsoft.appcenter.ingestion.CoalescingIngestion.COALESCING_WINDOW;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@SuppressWarnings("unused")
+@PrepareForTest(AppCenterLog.class)
+public class CoalescingIngestionTest {
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    private Ingestion mIngestion;
+
+    private Handler mHandler;
+
+    private ServiceCall mServiceCall;
+
+    private CoalescingIngestion mCoalescingIngestion;
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+        mIngestion = mock(Ingestion.class);
+        mHandler = mock(Handler.class);
+        mServiceCall = mock(ServiceCall.class);
+        when(mIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).thenReturn(mServiceCall);
+        mCoalescingIngestion = new CoalescingIngestion(mIngestion, mHandler);
+    }
+
+    private static LogContainer container(Log... logs) {
+        LogContainer logContainer = new LogContainer();
+        logContainer.setLogs(Arrays.asList(logs));
+        return logContainer;
+    }
+
+    private Runnable captureFlush() {
+        ArgumentCaptor<Runnable> runnable = ArgumentCaptor.forClass(Runnable.class);
+        verify(mHandler).postDelayed(runnable.capture(), eq(COALESCING_WINDOW));
+        return runnable.getValue();
+    }
+
+    private ServiceCallback captureCallback(LogContainer[] logContainer) {
+        ArgumentCaptor<LogContainer> container = ArgumentCaptor.forClass(LogContainer.class);
+        ArgumentCaptor<ServiceCallback> callback = ArgumentCaptor.forClass(ServiceCallback.class);
+        verify(mIngestion).sendAsync(anyString(), any(UUID.class), container.capture(), callback.capture());
+        logContainer[0] = container.getValue();
+        return callback.getValue();
+    }
+
+    @Test
+    public void mergeBatches() {
+        UUID installId = UUIDUtils.randomUUID();
+        Log firstLog = mock(Log.class);
+        Log secondLog = mock(Log.class);
+        Log thirdLog = mock(Log.class);
+        ServiceCallback firstCallback = mock(ServiceCallback.class);
+        ServiceCallback secondCallback = mock(ServiceCallback.class);
+        mCoalescingIngestion.sendAsync("secret", installId, container(firstLog), firstCallback);
+        mCoalescingIngestion.sendAsync("secret", installId, container(secondLog, thirdLog), secondCallback);
+
+        /* Nothing is sent before the window elapses, and the window is scheduled once. */
+        verifyZeroInteractions(mIngestion);
+        captureFlush().run();
+
+        /* Logs are sent in a single request. */
+        LogContainer[] logContainer = new LogContainer[1];
+        ServiceCallback callback = captureCallback(logContainer);
+        verify(mIngestion).sendAsync(eq("secret"), eq(installId), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(Arrays.asList(firstLog, secondLog, thirdLog), logContainer[0].getLogs());
+
+        /* Result is reported to every batch. */
+        callback.onCallSucceeded("OK");
+        verify(firstCallback).onCallSucceeded("OK");
+        verify(secondCallback).onCallSucceeded("OK");
+    }
+
+    @Test
+    public void doNotMergeDifferentSecrets() {
+        UUID installId = UUIDUtils.randomUUID();
+        LogContainer firstContainer = container(mock(Log.class));
+        LogContainer secondContainer = container(mock(Log.class));
+        ServiceCallback firstCallback = mock(ServiceCallback.class);
+        mCoalescingIngestion.sendAsync("first", installId, firstContainer, firstCallback);
+        mCoalescingIngestion.sendAsync("second", installId, secondContainer, mock(ServiceCallback.class));
+        captureFlush().run();
+
+        /* Each batch is sent as is. */
+        ArgumentCaptor<ServiceCallback> callback = ArgumentCaptor.forClass(ServiceCallback.class);
+        verify(mIngestion).sendAsync(eq("first"), eq(installId), eq(firstContainer), callback.capture());
+        verify(mIngestion).sendAsync(eq("second"), eq(installId), eq(secondContainer), any(ServiceCallback.class));
+
+        /* Failure is forwarded. */
+        Exception exception = new IOException("mock");
+        callback.getValue().onCallFailed(exception);
+        verify(firstCallback).onCallFailed(exception);
+    }
+
+    @Test
+    public void recoverableFailureOfMergedRequest() {
+        ServiceCallback firstCallback = mock(ServiceCallback.class);
+        ServiceCallback secondCallback = mock(ServiceCallback.class);
+        mCoalescingIngestion.sendAsync("secret", null, container(mock(Log.class)), firstCallback);
+        mCoalescingIngestion.sendAsync("secret", null, container(mock(Log.class)), secondCallback);
+        captureFlush().run();
+        ServiceCallback callback = captureCallback(new LogContainer[1]);
+
+        /* Failure is reported to every batch and nothing is resent. */
+        Exception exception = new HttpException(503);
+        callback.onCallFailed(exception);
+        verify(firstCallback).onCallFailed(exception);
+        verify(secondCallback).onCallFailed(exception);
+        verify(mIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void nonRecoverableFailureOfMergedRequest() {
+        UUID installId = UUIDUtils.randomUUID();
+        LogContainer firstContainer = container(mock(Log.class));
+        LogContainer secondContainer = container(mock(Log.class));
+        ServiceCallback firstCallback = mock(ServiceCallback.class);
+        ServiceCallback secondCallback = mock(ServiceCallback.class);
+        mCoalescingIngestion.sendAsync("secret", installId, firstContainer, firstCallback);
+        mCoalescingIngestion.sendAsync("secret", installId, secondContainer, secondCallback);
+        captureFlush().run();
+        ArgumentCaptor<ServiceCallback> callback = ArgumentCaptor.forClass(ServiceCallback.class);
+        verify(mIngestion).sendAsync(eq("secret"), eq(installId), any(LogContainer.class), callback.capture());
+
+        /* Batches are sent again separately. */
+        callback.getValue().onCallFailed(new HttpException(400));
+        verifyZeroInteractions(firstCallback, secondCallback);
+        ArgumentCaptor<ServiceCallback> firstBatchCallback = ArgumentCaptor.forClass(ServiceCallback.class);
+        ArgumentCaptor<ServiceCallback> secondBatchCallback = ArgumentCaptor.forClass(ServiceCallback.class);
+        verify(mIngestion).sendAsync(eq("secret"), eq(installId), eq(firstContainer), firstBatchCallback.capture());
+        verify(mIngestion).sendAsync(eq("secret"), eq(installId), eq(secondContainer), secondBatchCallback.capture());
+
+        /* Only the rejected batch fails. */
+        Exception exception = new HttpException(400);
+        firstBatchCallback.getValue().onCallFailed(exception);
+        secondBatchCallback.getValue().onCallSucceeded("OK");
+        verify(firstCallback).onCallFailed(exception);
+        verify(secondCallback).onCallSucceeded("OK");
+        verifyNoMoreInteractions(firstCallback, secondCallback);
+    }
+
+    @Test
+    public void cancelPendingBatch() {
+        ServiceCall call = mCoalescingIngestion.sendAsync("secret", null, container(mock(Log.class)), mock(ServiceCallback.class));
+        Runnable flush = captureFlush();
+
+        /* Canceling the last pending batch stops waiting. */
+        call.cancel();
+        call.cancel();
+        verify(mHandler).removeCallbacks(flush);
+        flush.run();
+        verifyZeroInteractions(mIngestion);
+    }
+
+    @Test
+    public void cancelSentBatch() {
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        ServiceCall call = mCoalescingIngestion.sendAsync("secret", null, container(mock(Log.class)), serviceCallback);
+        captureFlush().run();
+        ServiceCallback callback = captureCallback(new LogContainer[1]);
+
+        /* Cancel the underlying call, callback is not called anymore. */
+        call.cancel();
+        verify(mServiceCall).cancel();
+        callback.onCallSucceeded("OK");
+        verifyZeroInteractions(serviceCallback);
+    }
+
+    @Test
+    public void cancelMergedBatches() {
+        Log firstLog = mock(Log.class);
+        Log secondLog = mock(Log.class);
+        Log thirdLog = mock(Log.class);
+        ServiceCallback firstCallback = mock(ServiceCallback.class);
+        ServiceCallback secondCallback = mock(ServiceCallback.class);
+        ServiceCallback thirdCallback = mock(ServiceCallback.class);
+        ServiceCall firstCall = mCoalescingIngestion.sendAsync("secret", null, container(firstLog), firstCallback);
+        mCoalescingIngestion.sendAsync("secret", null, container(secondLog), secondCallback);
+        mCoalescingIngestion.sendAsync("secret", null, container(thirdLog), thirdCallback);
+        captureFlush().run();
+        ServiceCallback callback = captureCallback(new LogContainer[1]);
+
+        /* Canceling a batch cancels the merged request and sends the other batches again without it. */
+        firstCall.cancel();
+        verify(mServiceCall).cancel();
+        ArgumentCaptor<LogContainer> containers = ArgumentCaptor.forClass(LogContainer.class);
+        ArgumentCaptor<ServiceCallback> callbacks = ArgumentCaptor.forClass(ServiceCallback.class);
+        verify(mIngestion, times(2)).sendAsync(anyString(), any(UUID.class), containers.capture(), callbacks.capture());
+        assertEquals(Arrays.asList(secondLog, thirdLog), containers.getAllValues().get(1).getLogs());
+
+        /* Result of the canceled request is ignored. */
+        callback.onCallSucceeded("OK");
+        verifyZeroInteractions(firstCallback, secondCallback, thirdCallback);
+        callbacks.getAllValues().get(1).onCallSucceeded("OK");
+        verifyZeroInteractions(firstCallback);
+        verify(secondCallback).onCallSucceeded("OK");
+        verify(thirdCallback).onCallSucceeded("OK");
+    }
+
+    @Test
+    public void doNotResendCanceledBatches() {
+        ServiceCall firstCall = mCoalescingIngestion.sendAsync("secret", null, container(mock(Log.class)), mock(ServiceCallback.class));
+        ServiceCallback secondCallback = mock(ServiceCallback.class);
+        ServiceCall secondCall = mCoalescingIngestion.sendAsync("secret", null, container(mock(Log.class)), secondCallback);
+        captureFlush().run();
+        ServiceCallback callback = captureCallback(new LogContainer[1]);
+
+        /* The remaining batch is sent alone. */
+        firstCall.cancel();
+        callback.onCallFailed(new HttpException(400));
+        verify(mIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verifyZeroInteractions(secondCallback);
+
+        /* Nothing left to send. */
+        secondCall.cancel();
+        verify(mServiceCall, times(2)).cancel();
+        verify(mIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void closeAndReopen() throws Exception {
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mCoalescingIngestion.sendAsync("secret", null, container(mock(Log.class)), serviceCallback);
+        Runnable flush = captureFlush();
+
+        /* Pending batches are dropped. */
+        mCoalescingIngestion.close();
+        verify(mHandler).removeCallbacks(flush);
+        verify(mIngestion).close();
+        flush.run();
+        verify(mIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verifyZeroInteractions(serviceCallback);
+
+        /* Other calls are delegated. */
+        mCoalescingIngestion.reopen();
+        verify(mIngestion).reopen();
+        mCoalescingIngestion.setLogUrl("http://mock");
+        verify(mIngestion).setLogUrl("http://mock");
+    }
+
+    @Test
+    public void windowScheduledAgainAfterFlush() {
+        mCoalescingIngestion.sendAsync("secret", null, container(mock(Log.class)), mock(ServiceCallback.class));
+        captureFlush().run();
+        mCoalescingIngestion.sendAsync("secret", null, container(mock(Log.class)), mock(ServiceCallback.class));
+        verify(mHandler, times(2)).postDelayed(any(Runnable.class), eq(COALESCING_WINDOW));
+    }
+}
@@ -5,10 +5,10 @@ import android.content.Context;
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.http.DefaultHttpClient;
 import com.microsoft.appcenter.http.HttpClient;
-import com.microsoft.appcenter.http.HttpClientNetworkStateHandler;
 import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.http.SharedHttpClient;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
@@ -142,8 +142,8 @@ public class OneCollectorIngestionTest {
         when(serializer.serializeLog(log2)).thenReturn("mockPayload2");
 
         /* Configure mock HTTP. */
-        HttpClientNetworkStateHandler httpClient = mock(HttpClientNetworkStateHandler.class);
-        whenNew(HttpClientNetworkStateHandler.class).withAnyArguments().thenReturn(httpClient);
+        SharedHttpClient httpClient = mock(SharedHttpClient.class);
+        whenNew(SharedHttpClient.class).withAnyArguments().thenReturn(httpClient);
         ServiceCall call = mock(ServiceCall.class);
         ArgumentCaptor<HttpClient.CallTemplate> callTemplate = ArgumentCaptor.forClass(HttpClient.CallTemplate.class);
         when(httpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), callTemplate.capture(), any(ServiceCallback.class))).thenReturn(call);
@@ -215,8 +215,8 @@ public class OneCollectorIngestionTest {
         }};
 
         /* Configure mock HTTP. */
-        HttpClientNetworkStateHandler httpClient = mock(HttpClientNetworkStateHandler.class);
-        whenNew(HttpClientNetworkStateHandler.class).withAnyArguments().thenReturn(httpClient);
+        SharedHttpClient httpClient = mock(SharedHttpClient.class);
+        whenNew(SharedHttpClient.class).withAnyArguments().thenReturn(httpClient);
         ServiceCall call = mock(ServiceCall.class);
         when(httpClient.callAsync(anyString(), anyString(), mHeadersCaptor.capture(), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).thenReturn(call);
 
@@ -260,8 +260,8 @@ public class OneCollectorIngestionTest {
         when(ticketJson.put(anyString(), anyString())).thenThrow(new JSONException("mock"));
 
         /* Configure mock HTTP. */
-        HttpClientNetworkStateHandler httpClient = mock(HttpClientNetworkStateHandler.class);
-        whenNew(HttpClientNetworkStateHandler.class).withAnyArguments().thenReturn(httpClient);
+        SharedHttpClient httpClient = mock(SharedHttpClient.class);
+        whenNew(SharedHttpClient.class).withAnyArguments().thenReturn(httpClient);
         ServiceCall call = mock(ServiceCall.class);
         when(httpClient.callAsync(anyString(), anyString(), mHeadersCaptor.capture(), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).thenReturn(call);
 
@@ -295,8 +295,8 @@ public class OneCollectorIngestionTest {
         when(serializer.serializeLog(log)).thenThrow(exception);
 
         /* Configure mock HTTP. */
-        HttpClientNetworkStateHandler httpClient = mock(HttpClientNetworkStateHandler.class);
-        whenNew(HttpClientNetworkStateHandler.class).withAnyArguments().thenReturn(httpClient);
+        SharedHttpClient httpClient = mock(SharedHttpClient.class);
+        whenNew(SharedHttpClient.class).withAnyArguments().thenReturn(httpClient);
         ServiceCall call = mock(ServiceCall.class);
         ArgumentCaptor<HttpClient.CallTemplate> callTemplate = ArgumentCaptor.forClass(HttpClient.CallTemplate.class);
         when(httpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), callTemplate.capture(), any(ServiceCallback.class))).thenReturn(call);
@@ -374,13 +374,18 @@ public class OneCollectorIngestionTest {
         AppCenterLog.verbose(anyString(), anyString());
     }
 
+    @Test
+    public void discardResponseBody() throws Exception {
+        assertTrue(HttpUtils.shouldDiscardResponseBody(getCallTemplate()));
+    }
+
     private HttpClient.CallTemplate getCallTemplate() throws Exception {
 
         /* Configure mock HTTP to get an instance of IngestionCallTemplate. */
         ServiceCall call = mock(ServiceCall.class);
         ArgumentCaptor<HttpClient.CallTemplate> callTemplate = ArgumentCaptor.forClass(HttpClient.CallTemplate.class);
-        HttpClientNetworkStateHandler httpClient = mock(HttpClientNetworkStateHandler.class);
-        whenNew(HttpClientNetworkStateHandler.class).withAnyArguments().thenReturn(httpClient);
+        SharedHttpClient httpClient = mock(SharedHttpClient.class);
+        whenNew(SharedHttpClient.class).withAnyArguments().thenReturn(httpClient);
         when(httpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), callTemplate.capture(), any(ServiceCallback.class))).thenReturn(call);
         OneCollectorIngestion ingestion = new OneCollectorIngestion(mock(Context.class), mock(LogSerializer.class));
         ingestion.setLogUrl("http://mock");
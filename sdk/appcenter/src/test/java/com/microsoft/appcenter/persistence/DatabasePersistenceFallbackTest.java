@@ -0,0 +1,232 @@
+package com.microsoft.appcenter.persistence;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.database.sqlite.SQLiteException;
+import android.os.SystemClock;
+
+import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogWithProperties;
+import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.LogFactory;
+import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
+import com.microsoft.appcenter.test.TestUtils;
+import com.microsoft.appcenter.utils.metrics.MetricsRegistry;
+import com.microsoft.appcenter.utils.storage.StorageHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.microsoft.appcenter.persistence.DatabasePersistence.DATABASE_RETRY_INTERVAL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Store logs in the fallback storage then move them back to a real SQLite database.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class DatabasePersistenceFallbackTest {
+
+    private static final String GROUP = "group_test";
+
+    private static final String LOG_TYPE = "test";
+
+    private static final String NAME = "name";
+
+    private static final String PADDING = "padding";
+
+    private Context mContext;
+
+    private DatabasePersistence mPersistence;
+
+    private Persistence.LogIdsListener mLogIdsListener;
+
+    private static Log newLog(String name, int size) {
+        TestLog log = new TestLog();
+        log.setTimestamp(new Date());
+        Map<String, String> properties = new HashMap<>();
+        properties.put(NAME, name);
+        properties.put(PADDING, TestUtils.generateString(size, 'x'));
+        log.setProperties(properties);
+        return log;
+    }
+
+    private static List<String> getNames(List<Log> logs) {
+        List<String> names = new ArrayList<>();
+        for (Log log : logs) {
+            names.add(((TestLog) log).getProperties().get(NAME));
+        }
+        return names;
+    }
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        StorageHelper.initialize(mContext);
+        Constants.loadFromContext(mContext);
+        DefaultLogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(LOG_TYPE, new TestLogFactory());
+        mPersistence = new DatabasePersistence(mContext);
+        mPersistence.setLogSerializer(logSerializer);
+        mLogIdsListener = mock(Persistence.LogIdsListener.class);
+        mPersistence.setLogIdsListener(mLogIdsListener);
+    }
+
+    @After
+    public void tearDown() {
+        mPersistence.deleteLogs(GROUP);
+        mPersistence.close();
+        mContext.deleteDatabase(DatabasePersistence.DATABASE);
+        MetricsRegistry.unsetInstance();
+    }
+
+    /**
+     * Simulate a SQLite failure: the persistence switches to the fallback storage.
+     */
+    private void failDatabase() {
+        Object databaseStorage = ReflectionHelpers.getField(mPersistence, "mDatabaseStorage");
+        Object databaseManager = ReflectionHelpers.getField(databaseStorage, "mDatabaseManager");
+        ReflectionHelpers.callInstanceMethod(databaseManager, "switchToFallback",
+                ReflectionHelpers.ClassParameter.from(String.class, "test"),
+                ReflectionHelpers.ClassParameter.from(RuntimeException.class, new SQLiteException("test")));
+    }
+
+    private Map<Long, Long> verifyLogIdsChanged() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<Long, Long>> identifiers = ArgumentCaptor.forClass((Class) Map.class);
+        verify(mLogIdsListener).onLogIdsChanged(identifiers.capture());
+        return identifiers.getValue();
+    }
+
+    @Test
+    public void moveLogsBackAfterRetryInterval() throws Exception {
+
+        /* One log is stored in SQLite before the failure. */
+        mPersistence.putLog(GROUP, newLog("sqlite", 0));
+        failDatabase();
+
+        /* Logs stored in the fallback storage, including a large payload stored as a file. */
+        long smallId = mPersistence.putLog(GROUP, newLog("small", 0));
+        long largeId = mPersistence.putLog(GROUP, newLog("large", 2 * 1024 * 1024));
+        long lastId = mPersistence.putLog(GROUP, newLog("last", 0));
+        File directory = mPersistence.getLargePayloadGroupDirectory(GROUP);
+        assertTrue(mPersistence.getLargePayloadFile(directory, largeId).exists());
+        assertEquals(3, mPersistence.countLogs(GROUP));
+
+        /* Send a batch while still using the fallback storage, SQLite is not retried yet. */
+        List<Log> logs = new ArrayList<>();
+        String batchId = mPersistence.getLogs(GROUP, 2, logs);
+        assertNotNull(batchId);
+        assertEquals(Arrays.asList("small", "large"), getNames(logs));
+        verify(mLogIdsListener, never()).onLogIdsChanged(anyMapOf(Long.class, Long.class));
+
+        /* SQLite is retried after the interval, logs are moved back with new identifiers. */
+        SystemClock.sleep(DATABASE_RETRY_INTERVAL);
+        logs.clear();
+        String secondBatchId = mPersistence.getLogs(GROUP, 10, logs);
+        Map<Long, Long> identifiers = verifyLogIdsChanged();
+        assertEquals(3, identifiers.size());
+        assertTrue(identifiers.containsKey(smallId));
+        assertTrue(identifiers.containsKey(largeId));
+        assertTrue(identifiers.containsKey(lastId));
+
+        /* Logs of the first batch are still pending under their new identifiers. */
+        assertNotNull(secondBatchId);
+        assertEquals(Arrays.asList("sqlite", "last"), getNames(logs));
+
+        /* Large payload file is renamed after the new identifier. */
+        assertFalse(mPersistence.getLargePayloadFile(directory, largeId).exists());
+        File largePayloadFile = mPersistence.getLargePayloadFile(directory, identifiers.get(largeId));
+        assertTrue(largePayloadFile.exists());
+
+        /* Logs stored in SQLite before the failure are counted again. */
+        assertEquals(4, mPersistence.countLogs(GROUP));
+
+        /* Deleting the batch sent before moving removes the right rows and the payload file. */
+        mPersistence.deleteLogs(GROUP, batchId);
+        assertFalse(largePayloadFile.exists());
+        assertEquals(2, mPersistence.countLogs(GROUP));
+        mPersistence.deleteLogs(GROUP, secondBatchId);
+        assertEquals(0, mPersistence.countLogs(GROUP));
+        logs.clear();
+        mPersistence.clearPendingLogState();
+        assertNull(mPersistence.getLogs(GROUP, 10, logs));
+    }
+
+    @Test
+    public void moveLogsBackOnTrimMemory() throws Exception {
+        failDatabase();
+        long smallId = mPersistence.putLog(GROUP, newLog("small", 0));
+        long largeId = mPersistence.putLog(GROUP, newLog("large", 2 * 1024 * 1024));
+        File directory = mPersistence.getLargePayloadGroupDirectory(GROUP);
+        List<Log> logs = new ArrayList<>();
+        String batchId = mPersistence.getLogs(GROUP, 1, logs);
+        assertEquals(Collections.singletonList("small"), getNames(logs));
+
+        /* Moderate pressure keeps the fallback storage. */
+        mPersistence.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        verify(mLogIdsListener, never()).onLogIdsChanged(anyMapOf(Long.class, Long.class));
+
+        /* Running low frees the in-memory storage without waiting for the retry interval. */
+        mPersistence.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        Map<Long, Long> identifiers = verifyLogIdsChanged();
+        assertEquals(2, identifiers.size());
+        assertTrue(identifiers.containsKey(smallId));
+        assertTrue(mPersistence.getLargePayloadFile(directory, identifiers.get(largeId)).exists());
+        assertEquals(2, mPersistence.countLogs(GROUP));
+
+        /* Pending small log is deleted, the large one is sent next. */
+        mPersistence.deleteLogs(GROUP, batchId);
+        assertEquals(1, mPersistence.countLogs(GROUP));
+        logs.clear();
+        assertNotNull(mPersistence.getLogs(GROUP, 10, logs));
+        assertEquals(Collections.singletonList("large"), getNames(logs));
+    }
+
+    private static class TestLog extends LogWithProperties {
+
+        @Override
+        public String getType() {
+            return LOG_TYPE;
+        }
+    }
+
+    private static class TestLogFactory implements LogFactory {
+
+        @Override
+        public Log create() {
+            return new TestLog();
+        }
+
+        @Override
+        public Collection<CommonSchemaLog> toCommonSchemaLogs(Log log) {
+            return null;
+        }
+    }
+}
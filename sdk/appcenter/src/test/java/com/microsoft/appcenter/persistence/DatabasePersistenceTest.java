@@ -2,6 +2,8 @@ package com.microsoft.appcenter.persistence;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.ingestion.models.Log;
@@ -21,18 +23,25 @@ import org.powermock.modules.junit4.rule.PowerMockRule;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.microsoft.appcenter.persistence.DatabasePersistence.COLUMN_GROUP;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -51,7 +60,7 @@ public class DatabasePersistenceTest {
         /* Mock instances. */
         mockStatic(AppCenterLog.class);
         LogSerializer mockSerializer = mock(DefaultLogSerializer.class);
-        when(mockSerializer.serializeLog(any(Log.class))).thenReturn("{}");
+        when(mockSerializer.serializeLogBinary(any(Log.class))).thenReturn(new byte[0]);
         DatabasePersistence mockPersistence = spy(new DatabasePersistence(mock(Context.class), 1, DatabasePersistence.SCHEMA, Persistence.DEFAULT_CAPACITY));
         doReturn(mockSerializer).when(mockPersistence).getLogSerializer();
         try {
@@ -260,4 +269,171 @@ public class DatabasePersistenceTest {
         /* Verify that the only log we deleted in the entire test was the one from previous test (id=1). */
         verify(databaseStorage).delete(anyLong());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void logTypeCodes() throws Persistence.PersistenceException, JSONException {
+
+        /* Mock database. */
+        mockStatic(StorageHelper.DatabaseStorage.class);
+        StorageHelper.DatabaseStorage databaseStorage = mock(StorageHelper.DatabaseStorage.class);
+        when(StorageHelper.DatabaseStorage.getDatabaseStorage(anyString(), anyString(), anyInt(), any(ContentValues.class),
+                anyInt(), any(DatabaseManager.Listener.class))).thenReturn(databaseStorage);
+        byte[] payload = new byte[0];
+        ContentValues contentValues = mock(ContentValues.class);
+        when(contentValues.getAsLong(DatabaseManager.PRIMARY_KEY)).thenReturn(0L);
+        when(contentValues.getAsByteArray(DatabasePersistence.COLUMN_LOG)).thenReturn(payload);
+        when(contentValues.getAsInteger(DatabasePersistence.COLUMN_DATA_TYPE_CODE)).thenReturn(1);
+        StorageHelper.DatabaseStorage.DatabaseScanner databaseScanner = mock(StorageHelper.DatabaseStorage.DatabaseScanner.class);
+        when(databaseStorage.getScanner(anyString(), anyString())).thenReturn(databaseScanner);
+        when(databaseScanner.iterator()).thenReturn(Collections.singletonList(contentValues).iterator());
+
+        /* Mock log types table with a code saved by a previous process, then queries for a new type. */
+        final SQLiteDatabase database = mock(SQLiteDatabase.class);
+        Cursor codesCursor = mock(Cursor.class);
+        when(codesCursor.moveToNext()).thenReturn(true, false);
+        when(codesCursor.getInt(0)).thenReturn(1);
+        when(codesCursor.getString(1)).thenReturn("first");
+        Cursor lookupCursor = mock(Cursor.class);
+        Cursor maxCursor = mock(Cursor.class);
+        when(maxCursor.moveToFirst()).thenReturn(true);
+        when(maxCursor.getInt(0)).thenReturn(1);
+        when(database.query(anyString(), any(String[].class), anyString(), any(String[].class), anyString(), anyString(), anyString()))
+                .thenReturn(codesCursor, lookupCursor, maxCursor);
+        when(databaseStorage.runTransaction(any(DatabaseManager.Transaction.class))).thenAnswer(new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                ((DatabaseManager.Transaction) invocation.getArguments()[0]).run(database, null);
+                return true;
+            }
+        });
+        final ContentValues transactionValues = mock(ContentValues.class);
+        when(databaseStorage.put(any(ContentValues.class), any(DatabaseManager.Transaction.class))).thenAnswer(new Answer<Long>() {
+
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                ((DatabaseManager.Transaction) invocation.getArguments()[1]).run(database, transactionValues);
+                return 2L;
+            }
+        });
+
+        /* Serializer codes differ from database codes. */
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.getTypeCode("first")).thenReturn(5);
+        when(logSerializer.serializeLogBinary(any(Log.class))).thenReturn(payload);
+        when(logSerializer.deserializeLogBinary(payload, 5)).thenReturn(mock(Log.class));
+        DatabasePersistence persistence = new DatabasePersistence(mock(Context.class));
+        persistence.setLogSerializer(logSerializer);
+
+        /* Read log using stored code. */
+        List<Log> outLogs = new ArrayList<>();
+        persistence.getLogs("test", 1, outLogs);
+        assertEquals(1, outLogs.size());
+        verify(database).execSQL(startsWith("CREATE TABLE IF NOT EXISTS"));
+
+        /* A known type is inserted without transaction. */
+        Log log = mock(Log.class);
+        when(log.getType()).thenReturn("first");
+        persistence.putLog("test", log);
+        verify(databaseStorage).put(any(ContentValues.class));
+        verify(databaseStorage, never()).put(any(ContentValues.class), any(DatabaseManager.Transaction.class));
+
+        /* A new type gets the next code in the transaction inserting the log. */
+        when(log.getType()).thenReturn("second");
+        persistence.putLog("test", log);
+        verify(database).insertOrThrow(eq(DatabasePersistence.TABLE_LOG_TYPES), anyString(), any(ContentValues.class));
+        verify(transactionValues).put(DatabasePersistence.COLUMN_DATA_TYPE_CODE, 2);
+
+        /* Committed code is then reused. */
+        persistence.putLog("test", log);
+        verify(databaseStorage, times(2)).put(any(ContentValues.class));
+        verify(databaseStorage).put(any(ContentValues.class), any(DatabaseManager.Transaction.class));
+        verify(databaseStorage).runTransaction(any(DatabaseManager.Transaction.class));
+    }
+
+    @Test
+    public void logTypeCodeNotSavedInFallback() throws Persistence.PersistenceException, JSONException {
+
+        /* Mock database failing. */
+        mockStatic(StorageHelper.DatabaseStorage.class);
+        StorageHelper.DatabaseStorage databaseStorage = mock(StorageHelper.DatabaseStorage.class);
+        when(StorageHelper.DatabaseStorage.getDatabaseStorage(anyString(), anyString(), anyInt(), any(ContentValues.class),
+                anyInt(), any(DatabaseManager.Listener.class))).thenReturn(databaseStorage);
+        when(databaseStorage.isUsingFallback()).thenReturn(true);
+        final SQLiteDatabase database = mock(SQLiteDatabase.class);
+        Cursor cursor = mock(Cursor.class);
+        when(cursor.moveToFirst()).thenReturn(true);
+        when(cursor.getInt(0)).thenReturn(3);
+        when(database.query(anyString(), any(String[].class), anyString(), any(String[].class), anyString(), anyString(), anyString())).thenReturn(cursor);
+        when(databaseStorage.put(any(ContentValues.class), any(DatabaseManager.Transaction.class))).thenAnswer(new Answer<Long>() {
+
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+
+                /* Transaction rolled back. */
+                ((DatabaseManager.Transaction) invocation.getArguments()[1]).run(database, mock(ContentValues.class));
+                return Long.MIN_VALUE;
+            }
+        });
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLogBinary(any(Log.class))).thenReturn(new byte[0]);
+        DatabasePersistence persistence = new DatabasePersistence(mock(Context.class));
+        persistence.setLogSerializer(logSerializer);
+
+        /* Logs in the fallback storage have no code, the code is allocated again once the database works. */
+        Log log = mock(Log.class);
+        when(log.getType()).thenReturn("type");
+        persistence.putLog("test", log);
+        persistence.putLog("test", log);
+        verify(databaseStorage, times(2)).put(any(ContentValues.class), any(DatabaseManager.Transaction.class));
+        verify(databaseStorage, never()).put(any(ContentValues.class));
+    }
+
+    @Test
+    public void countLogsWithSingleQuery() throws Persistence.PersistenceException, JSONException {
+
+        /* Mock database. */
+        mockStatic(StorageHelper.DatabaseStorage.class);
+        StorageHelper.DatabaseStorage databaseStorage = mock(StorageHelper.DatabaseStorage.class);
+        when(StorageHelper.DatabaseStorage.getDatabaseStorage(anyString(), anyString(), anyInt(), any(ContentValues.class),
+                anyInt(), any(DatabaseManager.Listener.class))).thenReturn(databaseStorage);
+        Map<String, Integer> counts = new HashMap<>();
+        counts.put("test-p1", 2);
+        counts.put("test-p2", 1);
+        Map<String, Integer> countsAfterPurge = new HashMap<>();
+        countsAfterPurge.put("test-p2", 3);
+        countsAfterPurge.put("test-p3", 2);
+        when(databaseStorage.countGroupedBy(COLUMN_GROUP)).thenReturn(counts, countsAfterPurge);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLogBinary(any(Log.class))).thenReturn(new byte[0]);
+        DatabasePersistence persistence = new DatabasePersistence(mock(Context.class), 1, DatabasePersistence.SCHEMA, 5);
+        persistence.setLogSerializer(logSerializer);
+        Log log = mock(Log.class);
+        when(log.getType()).thenReturn("type");
+
+        /* Counts are loaded once for all groups. */
+        assertEquals(2, persistence.countLogs("test-p1"));
+        assertEquals(1, persistence.countLogs("test-p2"));
+        assertEquals(0, persistence.countLogs("test-p3"));
+        verify(databaseStorage).countGroupedBy(COLUMN_GROUP);
+
+        /* Then updated without querying. */
+        persistence.putLog("test-p3", log);
+        persistence.deleteLogs("test-p1");
+        assertEquals(0, persistence.countLogs("test-p1"));
+        assertEquals(1, persistence.countLogs("test-p2"));
+        assertEquals(1, persistence.countLogs("test-p3"));
+        verify(databaseStorage).countGroupedBy(COLUMN_GROUP);
+        verify(databaseStorage, never()).getScanner(anyString(), anyString(), anyBoolean());
+
+        /* When full, storing a log purges a log of any group: counts are loaded again. */
+        persistence.putLog("test-p2", log);
+        persistence.putLog("test-p2", log);
+        persistence.putLog("test-p2", log);
+        assertEquals(4, persistence.countLogs("test-p2"));
+        persistence.putLog("test-p3", log);
+        assertEquals(3, persistence.countLogs("test-p2"));
+        assertEquals(2, persistence.countLogs("test-p3"));
+        verify(databaseStorage, times(2)).countGroupedBy(COLUMN_GROUP);
+    }
+}
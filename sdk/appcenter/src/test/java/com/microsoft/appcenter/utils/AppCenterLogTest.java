@@ -12,7 +12,11 @@ import org.mockito.verification.VerificationMode;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.never;
@@ -37,8 +41,10 @@ public class AppCenterLogTest {
         AppCenterLog.info("my-tag", "info with my-tag with exception", new Exception());
         AppCenterLog.debug("my-tag", "debug with my-tag");
         AppCenterLog.debug("my-tag", "debug with my-tag with exception", new Exception());
+        AppCenterLog.debug("my-tag", "debug with %s and %d argument(s)", "my-tag", 2);
         AppCenterLog.verbose("my-tag", "verbose with my-tag");
         AppCenterLog.verbose("my-tag", "verbose with my-tag with exception", new Exception());
+        AppCenterLog.verbose("my-tag", "verbose with %s and %d argument(s)", "my-tag", 2);
     }
 
     private static void verifyAssert(VerificationMode verificationMode) {
@@ -75,6 +81,8 @@ public class AppCenterLogTest {
         Log.d("my-tag", "debug with my-tag");
         verifyStatic(verificationMode);
         Log.d(eq("my-tag"), eq("debug with my-tag with exception"), any(Exception.class));
+        verifyStatic(verificationMode);
+        Log.d("my-tag", "debug with my-tag and 2 argument(s)");
     }
 
     private static void verifyVerbose(VerificationMode verificationMode) {
@@ -82,6 +90,8 @@ public class AppCenterLogTest {
         Log.v("my-tag", "verbose with my-tag");
         verifyStatic(verificationMode);
         Log.v(eq("my-tag"), eq("verbose with my-tag with exception"), any(Exception.class));
+        verifyStatic(verificationMode);
+        Log.v("my-tag", "verbose with my-tag and 2 argument(s)");
     }
 
     @BeforeClass
@@ -188,4 +198,47 @@ public class AppCenterLogTest {
         verifyError(times(1));
         verifyAssert(times(1));
     }
+
+    @Test
+    public void levelChecks() {
+        AppCenter.setLogLevel(Log.DEBUG);
+        assertFalse(AppCenterLog.isVerboseEnabled());
+        assertTrue(AppCenterLog.isDebugEnabled());
+        assertFalse(AppCenterLog.isLoggable(Log.VERBOSE));
+        assertTrue(AppCenterLog.isLoggable(Log.DEBUG));
+        assertTrue(AppCenterLog.isLoggable(Log.ERROR));
+        AppCenter.setLogLevel(Log.VERBOSE);
+        assertTrue(AppCenterLog.isVerboseEnabled());
+        assertTrue(AppCenterLog.isDebugEnabled());
+        AppCenter.setLogLevel(Log.WARN);
+        assertFalse(AppCenterLog.isVerboseEnabled());
+        assertFalse(AppCenterLog.isDebugEnabled());
+        assertFalse(AppCenterLog.isLoggable(Log.INFO));
+        assertTrue(AppCenterLog.isLoggable(Log.WARN));
+        AppCenter.setLogLevel(AppCenterLog.NONE);
+        assertFalse(AppCenterLog.isLoggable(Log.ASSERT));
+    }
+
+    @Test
+    public void formatArgumentsNotFormattedWhenNotLogged() {
+        final AtomicInteger formatCount = new AtomicInteger();
+        Object argument = new Object() {
+
+            @Override
+            public String toString() {
+                formatCount.incrementAndGet();
+                return "argument";
+            }
+        };
+        AppCenter.setLogLevel(Log.WARN);
+        AppCenterLog.debug("my-tag", "debug %s", argument);
+        AppCenterLog.verbose("my-tag", "verbose %s", argument);
+        assertEquals(0, formatCount.get());
+        AppCenter.setLogLevel(Log.DEBUG);
+        AppCenterLog.debug("my-tag", "debug %s", argument);
+        AppCenterLog.verbose("my-tag", "verbose %s", argument);
+        assertEquals(1, formatCount.get());
+        verifyStatic();
+        Log.d("my-tag", "debug argument");
+    }
 }
@@ -141,4 +141,46 @@ public class NetworkStateHelperTestBeforeLollipop extends AbstractNetworkStateHe
         verify(mConnectivityManager, never()).unregisterNetworkCallback(any(ConnectivityManager.NetworkCallback.class));
         verify(mConnectivityManager, never()).registerNetworkCallback(any(NetworkRequest.class), any(ConnectivityManager.NetworkCallback.class));
     }
+
+    @Test
+    public void listenUnmeteredNetwork() {
+        final AtomicReference<BroadcastReceiver> receiverRef = new AtomicReference<>();
+        when(mContext.registerReceiver(any(BroadcastReceiver.class), any(IntentFilter.class))).then(new Answer<Intent>() {
+
+            @Override
+            public Intent answer(InvocationOnMock invocation) {
+                receiverRef.set((BroadcastReceiver) invocation.getArguments()[0]);
+                return mock(Intent.class);
+            }
+        });
+        NetworkInfo networkInfo = mock(NetworkInfo.class);
+        when(networkInfo.isConnected()).thenReturn(true);
+        when(networkInfo.getTypeName()).thenReturn("MOBILE");
+        when(mConnectivityManager.getActiveNetworkInfo()).thenReturn(networkInfo);
+        when(mConnectivityManager.isActiveNetworkMetered()).thenReturn(true);
+        NetworkStateHelper helper = new NetworkStateHelper(mContext);
+        NetworkStateHelper.UnmeteredListener listener = mock(NetworkStateHelper.UnmeteredListener.class);
+        helper.addUnmeteredListener(listener);
+        assertFalse(helper.isNetworkUnmetered());
+
+        /* Switch to WIFI. */
+        when(networkInfo.getTypeName()).thenReturn("WIFI");
+        when(mConnectivityManager.isActiveNetworkMetered()).thenReturn(false);
+        receiverRef.get().onReceive(mContext, mock(Intent.class));
+        assertTrue(helper.isNetworkUnmetered());
+        verify(listener).onNetworkUnmeteredUpdated(true);
+
+        /* Roaming counts as metered. */
+        when(networkInfo.getTypeName()).thenReturn("ROAMING");
+        when(networkInfo.isRoaming()).thenReturn(true);
+        receiverRef.get().onReceive(mContext, mock(Intent.class));
+        assertFalse(helper.isNetworkUnmetered());
+        verify(listener).onNetworkUnmeteredUpdated(false);
+
+        /* Close resets state. */
+        helper.removeUnmeteredListener(listener);
+        helper.close();
+        assertFalse(helper.isNetworkUnmetered());
+        verifyNoMoreInteractions(listener);
+    }
 }
@@ -26,6 +26,7 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 
 @PrepareForTest(NetworkStateHelper.class)
@@ -153,4 +154,52 @@ public class NetworkStateHelperTestFromLollipop extends AbstractNetworkStateHelp
         verify(builder).addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
         verify(builder).addCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
     }
+
+    @Test
+    public void listenUnmeteredNetwork() throws Exception {
+        NetworkStateHelper helper = new NetworkStateHelper(mContext);
+        ArgumentCaptor<ConnectivityManager.NetworkCallback> callback = ArgumentCaptor.forClass(ConnectivityManager.NetworkCallback.class);
+        verify(mConnectivityManager).registerNetworkCallback(any(NetworkRequest.class), callback.capture());
+        NetworkStateHelper.UnmeteredListener listener = mock(NetworkStateHelper.UnmeteredListener.class);
+        helper.addUnmeteredListener(listener);
+        assertFalse(helper.isNetworkUnmetered());
+
+        /* Metered network. */
+        Network network = mock(Network.class);
+        NetworkCapabilities capabilities = mock(NetworkCapabilities.class);
+        callback.getValue().onAvailable(network);
+        callback.getValue().onCapabilitiesChanged(network, capabilities);
+        assertFalse(helper.isNetworkUnmetered());
+        verify(listener, never()).onNetworkUnmeteredUpdated(anyBoolean());
+
+        /* Becomes unmetered. */
+        when(capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)).thenReturn(true);
+        callback.getValue().onCapabilitiesChanged(network, capabilities);
+        callback.getValue().onCapabilitiesChanged(network, capabilities);
+        assertTrue(helper.isNetworkUnmetered());
+        verify(listener).onNetworkUnmeteredUpdated(true);
+
+        /* Roaming is checked from Android P. */
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.P);
+        callback.getValue().onCapabilitiesChanged(network, capabilities);
+        assertFalse(helper.isNetworkUnmetered());
+        verify(listener).onNetworkUnmeteredUpdated(false);
+        when(capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_ROAMING)).thenReturn(true);
+        callback.getValue().onCapabilitiesChanged(network, capabilities);
+        assertTrue(helper.isNetworkUnmetered());
+        verify(listener, times(2)).onNetworkUnmeteredUpdated(true);
+
+        /* Losing the network. */
+        callback.getValue().onLost(network);
+        assertFalse(helper.isNetworkUnmetered());
+        verify(listener, times(2)).onNetworkUnmeteredUpdated(false);
+
+        /* No more callback after removing listener. */
+        helper.removeUnmeteredListener(listener);
+        callback.getValue().onCapabilitiesChanged(network, capabilities);
+        assertTrue(helper.isNetworkUnmetered());
+        helper.close();
+        assertFalse(helper.isNetworkUnmetered());
+        verifyNoMoreInteractions(listener);
+    }
 }
@@ -0,0 +1,75 @@
+package com.microsoft.appcenter.utils.metrics;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class MetricsRegistryTest {
+
+    @After
+    public void tearDown() {
+        MetricsRegistry.unsetInstance();
+    }
+
+    @Test
+    public void sameMetricForSameName() {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        assertSame(registry, MetricsRegistry.getInstance());
+        assertSame(registry.getCounter("a"), registry.getCounter("a"));
+        assertNotSame(registry.getCounter("a"), registry.getCounter("b"));
+        assertSame(registry.getGauge("a"), registry.getGauge("a"));
+        assertSame(registry.getHistogram("a"), registry.getHistogram("a"));
+    }
+
+    @Test
+    public void histogramBuckets() {
+        assertEquals(0, Histogram.getBucket(-1));
+        assertEquals(0, Histogram.getBucket(0));
+        assertEquals(1, Histogram.getBucket(1));
+        assertEquals(2, Histogram.getBucket(2));
+        assertEquals(2, Histogram.getBucket(3));
+        assertEquals(3, Histogram.getBucket(4));
+        assertEquals(Histogram.BUCKET_COUNT - 1, Histogram.getBucket(Long.MAX_VALUE));
+        assertEquals(0, Histogram.getBucketUpperBound(0));
+        assertEquals(3, Histogram.getBucketUpperBound(2));
+        assertEquals(Long.MAX_VALUE, Histogram.getBucketUpperBound(Histogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void snapshot() {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.getCounter(MetricsSnapshot.HTTP_RETRIES).add(3);
+        registry.getGauge(MetricsSnapshot.getGroupMetricName(MetricsSnapshot.CHANNEL_PENDING_LOGS, "group")).set(7);
+        Histogram histogram = registry.getHistogram(MetricsSnapshot.PERSISTENCE_LOG_SIZE_BYTES);
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        MetricsSnapshot snapshot = registry.snapshot();
+        assertEquals(3, snapshot.getCounter(MetricsSnapshot.HTTP_RETRIES));
+        assertEquals(0, snapshot.getCounter(MetricsSnapshot.HTTP_CIRCUIT_OPENINGS));
+        assertEquals(7, snapshot.getGauge("channel.pendingLogs:group"));
+        assertNull(snapshot.getHistogram(MetricsSnapshot.PERSISTENCE_PUT_LATENCY_MICROS));
+        MetricsSnapshot.Distribution distribution = snapshot.getHistogram(MetricsSnapshot.PERSISTENCE_LOG_SIZE_BYTES);
+        assertNotNull(distribution);
+        assertEquals(100, distribution.getCount());
+        assertEquals(5050, distribution.getSum());
+        assertEquals(50.5, distribution.getMean(), 0);
+
+        /* 50th value is 50, in bucket [32, 63]. */
+        assertEquals(63, distribution.getPercentile(50));
+
+        /* 99th value is 99, in bucket [64, 127]. */
+        assertEquals(127, distribution.getPercentile(99));
+        assertEquals(1, distribution.getBucketCount(1));
+        assertEquals(0, new Histogram().snapshot().getPercentile(50));
+
+        /* Snapshot is not updated afterwards. */
+        histogram.record(1);
+        assertEquals(100, distribution.getCount());
+    }
+}
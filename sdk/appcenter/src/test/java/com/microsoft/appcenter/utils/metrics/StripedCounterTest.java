@@ -0,0 +1,46 @@
+package com.microsoft.appcenter.utils.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class StripedCounterTest {
+
+    @Test
+    public void addAndSum() {
+        StripedCounter counter = new StripedCounter();
+        assertEquals(0, counter.sum());
+        counter.increment();
+        counter.add(41);
+        counter.add(-2);
+        assertEquals(40, counter.sum());
+    }
+
+    @Test
+    public void concurrentIncrements() throws InterruptedException {
+        final StripedCounter counter = new StripedCounter();
+        final int threadCount = StripedCounter.MAX_STRIPES * 2;
+        final int increments = 10000;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < increments; j++) {
+                        counter.increment();
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(threadCount * increments, counter.sum());
+    }
+}
@@ -0,0 +1,233 @@
+package com.microsoft.appcenter.utils.storage;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.microsoft.appcenter.utils.metrics.MetricsRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class DatabaseManagerJournalTest {
+
+    private static final String DATABASE = "database";
+
+    private static final String TABLE = "entries";
+
+    private Context mContext;
+
+    private File mJournalFile;
+
+    private ContentValues mSchema;
+
+    private static ContentValues values(String category, String payload) {
+        ContentValues values = new ContentValues();
+        values.put("category", category);
+        values.put("payload", payload);
+        values.put("priority", 1);
+        return values;
+    }
+
+    private static String largePayload() {
+        char[] payload = new char[DatabaseManager.MAX_INDEXED_VALUE_BYTES];
+        Arrays.fill(payload, 'x');
+        return new String(payload);
+    }
+
+    private DatabaseManager newDatabaseManager(int maxRecords) {
+        return new DatabaseManager(mContext, DATABASE, TABLE, 1, mSchema, maxRecords, new DatabaseManager.Listener() {
+
+            @Override
+            public boolean onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+                return false;
+            }
+
+            @Override
+            public void onError(String operation, RuntimeException e) {
+            }
+        });
+    }
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mJournalFile = new File(mContext.getFilesDir(), DATABASE + "." + TABLE + ".journal");
+        mSchema = values("", "");
+    }
+
+    @After
+    public void tearDown() {
+
+        //noinspection ResultOfMethodCallIgnored
+        mJournalFile.delete();
+        mContext.deleteDatabase(DATABASE);
+        MetricsRegistry.unsetInstance();
+    }
+
+    /**
+     * Store 3 entries in the journal and delete the last one.
+     *
+     * @return identifiers of the entries.
+     */
+    private long[] putJournalEntries(DatabaseManager databaseManager, String payload) {
+        databaseManager.switchToFallback("test", null);
+        long id1 = databaseManager.put(values("a", payload));
+        long id2 = databaseManager.put(values("b", "small"));
+        long id3 = databaseManager.put(values("a", "other"));
+        databaseManager.delete(id3);
+        assertTrue(mJournalFile.length() > 0);
+        return new long[]{id1, id2, id3};
+    }
+
+    @Test
+    public void journalSurvivesRestart() {
+        DatabaseManager databaseManager = newDatabaseManager(0);
+        String payload = largePayload();
+        long[] ids = putJournalEntries(databaseManager, payload);
+        long id1 = ids[0];
+        long id2 = ids[1];
+        long id3 = ids[2];
+
+        /* Fallback identifiers cannot collide with SQLite ones and keep insertion order. */
+        assertTrue(id1 < 0);
+        assertTrue(id1 < id2);
+
+        /* Large values are read back from the journal. */
+        ContentValues values = databaseManager.get(id1);
+        assertNotNull(values);
+        assertEquals(payload, values.getAsString("payload"));
+        assertEquals(Integer.valueOf(1), values.getAsInteger("priority"));
+        assertEquals(id2, databaseManager.get("payload", "small").getAsLong(DatabaseManager.PRIMARY_KEY).longValue());
+        Map<String, Integer> counts = databaseManager.countGroupedBy("category");
+        assertEquals(Integer.valueOf(1), counts.get("a"));
+        assertEquals(Integer.valueOf(1), counts.get("b"));
+        databaseManager.close();
+
+        /* Entries are moved to SQLite by the next process. */
+        databaseManager = newDatabaseManager(0);
+        assertEquals(2, databaseManager.getRowCount());
+        assertFalse(databaseManager.isUsingFallback());
+        assertFalse(mJournalFile.exists());
+        assertNull(databaseManager.get(id3));
+        ContentValues values = databaseManager.get("payload", payload);
+        assertNotNull(values);
+        assertEquals("a", values.getAsString("category"));
+        assertEquals(Integer.valueOf(1), values.getAsInteger("priority"));
+        assertNotNull(databaseManager.get("payload", "small"));
+        assertTrue(databaseManager.put(values("c", "new")) > 0);
+        databaseManager.close();
+    }
+
+    @Test
+    public void loadJournalIfDatabaseStillFails() {
+        DatabaseManager databaseManager = newDatabaseManager(0);
+        String payload = largePayload();
+        long[] ids = putJournalEntries(databaseManager, payload);
+        databaseManager.close();
+
+        /* Entries are loaded again by the next process. */
+        databaseManager = newDatabaseManager(0);
+        SQLiteOpenHelper helper = mock(SQLiteOpenHelper.class);
+        when(helper.getWritableDatabase()).thenThrow(new SQLiteException());
+        databaseManager.setSQLiteOpenHelper(helper);
+        assertEquals(2, databaseManager.getRowCount());
+        assertTrue(databaseManager.isUsingFallback());
+        assertEquals(payload, databaseManager.get(ids[0]).getAsString("payload"));
+        assertNull(databaseManager.get(ids[2]));
+
+        /* New identifiers do not collide with journaled ones. */
+        long id4 = databaseManager.put(values("c", "new"));
+        assertTrue(id4 > ids[2]);
+        databaseManager.close();
+    }
+
+    @Test
+    public void moveToDatabase() {
+        DatabaseManager databaseManager = newDatabaseManager(0);
+        databaseManager.switchToFallback("test", null);
+        String payload = largePayload();
+        long id1 = databaseManager.put(values("a", payload));
+        long id2 = databaseManager.put(values("b", "small"));
+
+        /* Move entries to SQLite, which works in this test. */
+        Map<Long, Long> identifiers = databaseManager.moveToDatabase();
+        assertNotNull(identifiers);
+        assertEquals(2, identifiers.size());
+        assertFalse(databaseManager.isUsingFallback());
+        assertFalse(mJournalFile.exists());
+        assertEquals(payload, databaseManager.get(identifiers.get(id1)).getAsString("payload"));
+        assertEquals("small", databaseManager.get(identifiers.get(id2)).getAsString("payload"));
+        assertNull(databaseManager.moveToDatabase());
+        databaseManager.close();
+    }
+
+    @Test
+    public void purgeOldestEntries() {
+        DatabaseManager databaseManager = newDatabaseManager(2);
+        databaseManager.switchToFallback("test", null);
+        long id1 = databaseManager.put(values("a", "1"));
+        databaseManager.put(values("a", "2"));
+        databaseManager.put(values("a", "3"));
+        assertEquals(2, databaseManager.getRowCount());
+        assertNull(databaseManager.get(id1));
+        databaseManager.close();
+
+        /* The purged entry is not moved again. */
+        databaseManager = newDatabaseManager(2);
+        assertEquals(2, databaseManager.getRowCount());
+        assertNull(databaseManager.get(id1));
+        databaseManager.close();
+    }
+
+    @Test
+    public void ignoreIncompleteRecord() throws Exception {
+        Journal journal = new Journal(mJournalFile);
+        journal.appendPut(0, values("a", "complete"));
+        long length = journal.length();
+        journal.close();
+
+        /* Simulate a process killed while appending a record. */
+        FileOutputStream outputStream = new FileOutputStream(mJournalFile, true);
+        outputStream.write(new byte[]{1, 0, 0, 0});
+        outputStream.close();
+
+        journal = new Journal(mJournalFile);
+        Map<Long, ContentValues> entries = new LinkedHashMap<>();
+        journal.load(entries, Integer.MAX_VALUE);
+        assertEquals(1, entries.size());
+        assertEquals("complete", entries.get(0L).getAsString("payload"));
+        assertEquals(length, journal.length());
+
+        /* Large values are skipped while loading, but can still be read. */
+        entries.clear();
+        Map<Long, Journal.Position> positions = journal.load(entries, 4);
+        assertFalse(entries.get(0L).containsKey("payload"));
+        assertEquals(Integer.valueOf(1), entries.get(0L).getAsInteger("priority"));
+        assertEquals("complete", journal.read(positions.get(0L)).getAsString("payload"));
+        journal.close();
+    }
+}
@@ -0,0 +1,151 @@
+package com.microsoft.appcenter.utils.storage;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.microsoft.appcenter.utils.metrics.MetricsRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class DatabaseManagerStatementsTest {
+
+    private static final String DATABASE = "database";
+
+    private static final String TABLE = "entries";
+
+    /**
+     * The benchmark is skipped unless run with a number of entries, for example:
+     * {@code ./gradlew :sdk:appcenter:testDebugUnitTest --tests '*DatabaseManagerStatementsTest' -PdatabaseBenchmarkEntries=2000}.
+     */
+    private static final String BENCHMARK_ENTRIES_PROPERTY = "databaseBenchmarkEntries";
+
+    /**
+     * Tolerated slowdown of compiled statements, as timings are noisy with the host SQLite used by Robolectric.
+     */
+    private static final double BENCHMARK_TOLERANCE = 1.1;
+
+    private Context mContext;
+
+    private static ContentValues values(String category, String payload) {
+        ContentValues values = new ContentValues();
+        values.put("category", category);
+        values.put("payload", payload);
+        values.put("priority", 1);
+        return values;
+    }
+
+    private DatabaseManager newDatabaseManager() {
+        return new DatabaseManager(mContext, DATABASE, TABLE, 1, values("", ""), 0, new DatabaseManager.Listener() {
+
+            @Override
+            public boolean onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+                return false;
+            }
+
+            @Override
+            public void onError(String operation, RuntimeException e) {
+            }
+        });
+    }
+
+    /**
+     * Inserts then deletes entries one by one.
+     *
+     * @return elapsed time in nanoseconds.
+     */
+    private static long insertAndDelete(DatabaseManager databaseManager, int entries) {
+        long[] ids = new long[entries];
+        long start = System.nanoTime();
+        for (int i = 0; i < entries; i++) {
+            ids[i] = databaseManager.put(values("category" + (i % 3), "payload" + i));
+        }
+        assertEquals(entries, databaseManager.getRowCount());
+        for (long id : ids) {
+            databaseManager.delete(id);
+        }
+        long elapsed = System.nanoTime() - start;
+        assertEquals(0, databaseManager.getRowCount());
+        return elapsed;
+    }
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+    }
+
+    @After
+    public void tearDown() {
+
+        //noinspection ResultOfMethodCallIgnored
+        new File(mContext.getFilesDir(), DATABASE + "." + TABLE + ".journal").delete();
+        mContext.deleteDatabase(DATABASE);
+        MetricsRegistry.unsetInstance();
+    }
+
+    @Test
+    public void compiledStatements() {
+        DatabaseManager databaseManager = newDatabaseManager();
+        long id = databaseManager.put(values("a", "payload"));
+        ContentValues values = databaseManager.get(id);
+        assertNotNull(values);
+        assertEquals("a", values.getAsString("category"));
+        assertEquals("payload", values.getAsString("payload"));
+        assertEquals(Integer.valueOf(1), values.getAsInteger("priority"));
+
+        /* Missing columns are inserted as null. */
+        ContentValues partial = new ContentValues();
+        partial.put("category", "b");
+        long partialId = databaseManager.put(partial);
+        assertNull(databaseManager.get(partialId).getAsString("payload"));
+        assertEquals(2, databaseManager.getRowCount());
+
+        /* Statements are compiled again after reopening the database. */
+        databaseManager.close();
+        databaseManager.delete(id);
+        assertNull(databaseManager.get(id));
+        assertEquals(1, databaseManager.getRowCount());
+        assertFalse(databaseManager.isUsingFallback());
+        databaseManager.close();
+    }
+
+    @Test
+    public void compareThroughput() {
+        assumeTrue(System.getProperty(BENCHMARK_ENTRIES_PROPERTY) != null);
+        int entries = Integer.parseInt(System.getProperty(BENCHMARK_ENTRIES_PROPERTY));
+        DatabaseManager databaseManager = newDatabaseManager();
+
+        /* Warm up both paths. */
+        databaseManager.setCompiledStatementsEnabled(false);
+        insertAndDelete(databaseManager, entries);
+        databaseManager.setCompiledStatementsEnabled(true);
+        insertAndDelete(databaseManager, entries);
+
+        /* Compiled statements must not be slower. */
+        databaseManager.setCompiledStatementsEnabled(false);
+        long uncompiled = insertAndDelete(databaseManager, entries);
+        databaseManager.setCompiledStatementsEnabled(true);
+        long compiled = insertAndDelete(databaseManager, entries);
+        assertTrue("Insert and delete " + entries + " entries took " + compiled / 1000000 + "ms with compiled statements, "
+                + uncompiled / 1000000 + "ms without", compiled <= uncompiled * BENCHMARK_TOLERANCE);
+        assertFalse(databaseManager.isUsingFallback());
+        databaseManager.close();
+    }
+}
@@ -49,34 +49,34 @@ public class DatabaseManagerTest {
     }
 
     @Test
-    public void switchInMemory() {
+    public void switchToFallback() {
         DatabaseManager databaseManagerMock;
 
         /* Put. */
         databaseManagerMock = getDatabaseManagerMock();
         databaseManagerMock.put(new ContentValues());
-        verify(databaseManagerMock).switchToInMemory(eq("put"), any(RuntimeException.class));
+        verify(databaseManagerMock).switchToFallback(eq("put"), any(RuntimeException.class));
 
         /* Update. */
         databaseManagerMock = getDatabaseManagerMock();
         databaseManagerMock.update(0, new ContentValues());
-        verify(databaseManagerMock).switchToInMemory(eq("update"), any(RuntimeException.class));
+        verify(databaseManagerMock).switchToFallback(eq("update"), any(RuntimeException.class));
 
         /* Get. */
         databaseManagerMock = getDatabaseManagerMock();
         databaseManagerMock.get(0);
-        verify(databaseManagerMock).switchToInMemory(eq("get"), any(RuntimeException.class));
+        verify(databaseManagerMock).switchToFallback(eq("get"), any(RuntimeException.class));
 
         /* Scanner. */
         {
             databaseManagerMock = getDatabaseManagerMock();
             databaseManagerMock.getScanner(null, null, false).iterator();
-            verify(databaseManagerMock).switchToInMemory(eq("scan.iterator"), any(RuntimeException.class));
+            verify(databaseManagerMock).switchToFallback(eq("scan.iterator"), any(RuntimeException.class));
         }
         {
             databaseManagerMock = getDatabaseManagerMock();
             databaseManagerMock.getScanner(null, null, false).getCount();
-            verify(databaseManagerMock).switchToInMemory(eq("scan.count"), any(RuntimeException.class));
+            verify(databaseManagerMock).switchToFallback(eq("scan.count"), any(RuntimeException.class));
         }
         {
             /* Cursor next failing but closing working. */
@@ -89,12 +89,12 @@ public class DatabaseManagerTest {
             when(cursor.moveToNext()).thenThrow(new RuntimeException());
             DatabaseManager.Scanner scanner = databaseManagerMock.getScanner(null, null, false);
             assertFalse(scanner.iterator().hasNext());
-            verify(databaseManagerMock).switchToInMemory(eq("scan.hasNext"), any(RuntimeException.class));
+            verify(databaseManagerMock).switchToFallback(eq("scan.hasNext"), any(RuntimeException.class));
 
             /* We switched over in memory so closing will not switch again. Cursor is closed already. */
             doThrow(new RuntimeException()).when(cursor).close();
             scanner.close();
-            verify(databaseManagerMock, never()).switchToInMemory(eq("scan.close"), any(RuntimeException.class));
+            verify(databaseManagerMock, never()).switchToFallback(eq("scan.close"), any(RuntimeException.class));
         }
         {
             /* Cursor next failing and closing failing. */
@@ -108,11 +108,11 @@ public class DatabaseManagerTest {
             doThrow(new RuntimeException()).when(cursor).close();
             DatabaseManager.Scanner scanner = databaseManagerMock.getScanner(null, null, false);
             assertFalse(scanner.iterator().hasNext());
-            verify(databaseManagerMock).switchToInMemory(eq("scan.hasNext"), any(RuntimeException.class));
+            verify(databaseManagerMock).switchToFallback(eq("scan.hasNext"), any(RuntimeException.class));
 
             /* We switched over in memory so closing will not switch again. Cursor is closed already in hasNext(). */
             scanner.close();
-            verify(databaseManagerMock, never()).switchToInMemory(eq("scan.close"), any(RuntimeException.class));
+            verify(databaseManagerMock, never()).switchToFallback(eq("scan.close"), any(RuntimeException.class));
         }
         {
             /* Cursor closing failing. */
@@ -126,36 +126,36 @@ public class DatabaseManagerTest {
             DatabaseManager.Scanner scanner = databaseManagerMock.getScanner(null, null, false);
             assertFalse(scanner.iterator().hasNext());
             scanner.close();
-            verify(databaseManagerMock).switchToInMemory(eq("scan.close"), any(RuntimeException.class));
+            verify(databaseManagerMock).switchToFallback(eq("scan.close"), any(RuntimeException.class));
         }
 
         /* Delete. */
         databaseManagerMock = getDatabaseManagerMock();
         databaseManagerMock.delete(0);
-        verify(databaseManagerMock).switchToInMemory(eq("delete"), any(RuntimeException.class));
+        verify(databaseManagerMock).switchToFallback(eq("delete"), any(RuntimeException.class));
 
         /* Delete multiple IDs. */
         databaseManagerMock = getDatabaseManagerMock();
         databaseManagerMock.delete(new ArrayList<Long>());
-        verify(databaseManagerMock, never()).switchToInMemory(eq("delete"), any(RuntimeException.class));
+        verify(databaseManagerMock, never()).switchToFallback(eq("delete"), any(RuntimeException.class));
         databaseManagerMock = getDatabaseManagerMock();
         databaseManagerMock.delete(Arrays.asList(0L, 1L));
-        verify(databaseManagerMock).switchToInMemory(eq("delete"), any(RuntimeException.class));
+        verify(databaseManagerMock).switchToFallback(eq("delete"), any(RuntimeException.class));
 
         /* Clear. */
         databaseManagerMock = getDatabaseManagerMock();
         databaseManagerMock.clear();
-        verify(databaseManagerMock).switchToInMemory(eq("clear"), any(RuntimeException.class));
+        verify(databaseManagerMock).switchToFallback(eq("clear"), any(RuntimeException.class));
 
         /* Close. */
         databaseManagerMock = getDatabaseManagerMock();
         databaseManagerMock.close();
-        verify(databaseManagerMock).switchToInMemory(eq("close"), any(RuntimeException.class));
+        verify(databaseManagerMock).switchToFallback(eq("close"), any(RuntimeException.class));
 
         /* Row count. */
         databaseManagerMock = getDatabaseManagerMock();
         databaseManagerMock.getRowCount();
-        verify(databaseManagerMock).switchToInMemory(eq("count"), any(RuntimeException.class));
+        verify(databaseManagerMock).switchToFallback(eq("count"), any(RuntimeException.class));
 
     }
 
@@ -287,7 +287,7 @@ public class DatabaseManagerTest {
 
         /* Instantiate real instance for DatabaseManager. */
         DatabaseManager databaseManager = spy(new DatabaseManager(contextMock, "database", "table", 1, null, 2, null));
-        databaseManager.switchToInMemory("test", null);
+        databaseManager.switchToFallback("test", null);
 
         ContentValues value1 = mock(ContentValues.class);
         ContentValues value2 = mock(ContentValues.class);